@@ -0,0 +1,92 @@
+package de.upsj.bukkit.advertising.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Deterministic synthetic chat corpora for the benchmarks.
+ * Addresses in the 192.0.2.0/24 documentation range are meant to be blocklisted by the benchmark setup.
+ * @author upsj
+ * @version 1.0
+ */
+public final class ChatCorpus {
+    /** Count of lines per corpus. */
+    public static final int SIZE = 1024;
+
+    /** Everyday chat lines. */
+    private static final String[] CLEAN = {
+        "hi", "lol", "anyone want to trade diamonds for iron?", "brb dinner",
+        "how do I get to the nether from spawn", "gg", "that creeper just blew up my house :(",
+        "can someone tp me pls", "is the server restarting soon?", "version 1.5.2 still? when update",
+        "meet me at 120, 64, -300", "who griefed my farm!!", "i have 3.5 stacks of wheat",
+        "ok thx", "what does /warp do", "the shop is at the end of the road, next to the bank",
+        "haha no way", "need help with redstone", "is pvp on in the arena?", "see you tomorrow everyone"
+    };
+    /** Advertisement lines, {} is replaced by an address. */
+    private static final String[] ADS = {
+        "join {} best server ever", "come play on {} !!!", "{} <- free ranks", "new server: {}",
+        "Hey guys check out {} we have mcmmo and factions", "IP: {} 24/7 no lag"
+    };
+    /** Advertised addresses, including obfuscated ones. */
+    private static final String[] ADDRESSES = {
+        "play.craftmine.net", "mc.example-server.com:25566", "192.0.2.55", "192.0.2.17:25570",
+        "play . craftmine . net", "play(dot)example(dot)org", "hub.pvpnetwork.co.uk", "192 . 0 . 2 . 99"
+    };
+    /** Command prefixes. */
+    private static final String[] COMMANDS = {"/msg Notch ", "/mail send Steve ", "/r ", "/tell Alex ", "/me "};
+
+    /** The corpora. */
+    public enum Kind {
+        /** Mostly clean chat, 5 % advertisement. */
+        CLEAN_HEAVY,
+        /** Mostly advertisement (a bot wave), 60 % advertisement. */
+        AD_HEAVY,
+        /** Long private messages and mails, 10 % advertisement. */
+        LONG_COMMANDS
+    }
+
+    /** Avoid instances. */
+    private ChatCorpus() { }
+
+    /**
+     * @param kind The kind of corpus.
+     * @return {@link #SIZE} lines of the corpus, the same for every call.
+     */
+    public static String[] generate(Kind kind) {
+        Random random = new Random(kind.ordinal() + 42);
+        String[] lines = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            switch (kind) {
+            case CLEAN_HEAVY:
+                lines[i] = random.nextInt(100) < 5 ? ad(random) : clean(random);
+                break;
+            case AD_HEAVY:
+                lines[i] = random.nextInt(100) < 60 ? ad(random) : clean(random);
+                break;
+            default:
+                StringBuilder line = new StringBuilder(COMMANDS[random.nextInt(COMMANDS.length)]);
+                while (line.length() < 200) {
+                    line.append(random.nextInt(100) < 3 ? ad(random) : clean(random)).append(' ');
+                }
+                lines[i] = line.toString();
+                break;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * @param random The random generator.
+     * @return A clean line.
+     */
+    private static String clean(Random random) {
+        return CLEAN[random.nextInt(CLEAN.length)];
+    }
+
+    /**
+     * @param random The random generator.
+     * @return An advertisement line.
+     */
+    private static String ad(Random random) {
+        return ADS[random.nextInt(ADS.length)].replace("{}", ADDRESSES[random.nextInt(ADDRESSES.length)]);
+    }
+}
@@ -0,0 +1,98 @@
+package de.upsj.bukkit.advertising.benchmarks;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing and censoring chat messages, one corpus line per operation.
+ * @author upsj
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChatMessageBenchmark {
+    /** Domain matches as found by the scanner. */
+    private static final String[] DOMAINS = {"play.craftmine.net", "mc.example-server.com:25566", "hub.pvp.co.uk"};
+    /** IP matches as found by the scanner. */
+    private static final String[] IPS = {"192.0.2.55", "203.0.113.17:25570", "198.51.100.1"};
+
+    @Param({"CLEAN_HEAVY", "AD_HEAVY", "LONG_COMMANDS"})
+    private ChatCorpus.Kind corpus;
+
+    private String[] lines;
+    private ChatMessage[] parsed;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        Log.setDebugMode(false);
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+        lines = ChatCorpus.generate(corpus);
+        parsed = new ChatMessage[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            parsed[i] = ChatMessage.parse("Player", lines[i]);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+    }
+
+    /** @return The index of the next corpus line. */
+    private int next() {
+        next = (next + 1) & (ChatCorpus.SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public ChatMessage parse() {
+        return ChatMessage.parse("Player", lines[next()]);
+    }
+
+    /** Baseline for {@link #censorAll()}, which has to work on a copy. */
+    @Benchmark
+    public ChatMessage copy() {
+        return parsed[next()].clone();
+    }
+
+    @Benchmark
+    public String censorAll() {
+        ChatMessage msg = parsed[next()].clone();
+        msg.censorAll();
+        return msg.getMessage();
+    }
+
+    @Benchmark
+    public PotentialServer parseDomain() {
+        return ChatMessage.parseDomain(DOMAINS[next() % DOMAINS.length], false);
+    }
+
+    @Benchmark
+    public PotentialServer parseIP() {
+        return ChatMessage.parseIP(IPS[next() % IPS.length], false);
+    }
+}
@@ -0,0 +1,225 @@
+package de.upsj.bukkit.advertising.benchmarks;
+
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.ServerChecker;
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Contention on the monitors of {@link ServerChecker} and {@link ChatListener}:
+ * many async chat threads registering servers and classifying messages while the main thread drains
+ * the finished checks every tick. Probes are stubbed, so the checks complete instantly on the pool
+ * without any network access and only the locking and bookkeeping is measured.
+ * <p>
+ * The groups run with 3 producers and 1 ticking thread by default. {@link #main(String[])} runs them
+ * with 1 to 63 producers (2 to 64 threads) and prints the throughput per thread count, so throughput
+ * that flattens as threads are added shows up as a falling efficiency.
+ * @author upsj
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ContentionBenchmark {
+    /** Count of distinct stubbed servers, so hits, joins and misses all occur. */
+    private static final int SERVERS = 1024;
+    /** Lifetime of a stubbed verdict (ms) before it expires and the server is checked again. */
+    private static final long LIFETIME = 20;
+    /** Producer counts of the scaling run. */
+    private static final int[] PRODUCERS = {1, 3, 7, 15, 31, 63};
+
+    /** State shared by all threads. */
+    @State(Scope.Benchmark)
+    public static class Shared {
+        private ServerChecker checker;
+        private ChatListener listener;
+        private String[] lines;
+
+        @Setup
+        public void setUp() throws IOException {
+            Log.setDebugMode(false);
+            IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+            checker = new ServerChecker();
+            checker.setCacheTime(60000);
+            listener = new ChatListener(checker, new ActionHandler(null));
+            lines = offlineLines();
+        }
+
+        @TearDown
+        public void tearDown() {
+            checker.shutdown();
+            IPBlocklist.set(IPBlocklist.EMPTY);
+        }
+    }
+
+    /** State of a single thread (one chatting player). */
+    @State(Scope.Thread)
+    public static class Chatter {
+        private final UUID id = UUID.randomUUID();
+        private final String name = "Player" + (id.getLeastSignificantBits() & 0xffff);
+        private int next;
+
+        /**
+         * @param bound The exclusive upper bound.
+         * @return The next index of this thread's sequence.
+         */
+        private int next(int bound) {
+            next = (next + 1) % bound;
+            return next;
+        }
+    }
+
+    /**
+     * A server whose check completes instantly with a verdict expiring after {@link #LIFETIME}.
+     */
+    private static final class StubServer extends PotentialServer {
+        /** The server number. */
+        private final int index;
+
+        /**
+         * Initializes the server.
+         * @param index The server number.
+         */
+        private StubServer(int index) {
+            super("mc" + index + ".example.net");
+            this.index = index;
+        }
+
+        @Override
+        public PotentialServer call() {
+            byte[] ip = {10, 0, (byte) (index >> 8), (byte) index};
+            return ServerVerdict.restore(getMatchedAddress(), getPort(), ip, ServerVerdict.State.NO_SERVER,
+                    null, -1, -1, System.currentTimeMillis() - 60000 + LIFETIME);
+        }
+    }
+
+    /**
+     * @return The lines of the ad-heavy corpus that are decided without network access
+     * (clean or only containing blocklisted addresses), needs the blocklist to be set.
+     */
+    private static String[] offlineLines() {
+        List<String> result = new ArrayList<String>();
+        for (String line : ChatCorpus.generate(ChatCorpus.Kind.AD_HEAVY)) {
+            ChatMessage msg = ChatMessage.parse("Player", line);
+            boolean offline = true;
+            for (int i = 0; i < msg.getMatchCount(); i++) {
+                offline &= msg.getMatch(i) == null || msg.getMatch(i).isFinal();
+            }
+            if (offline) {
+                result.add(line);
+            }
+        }
+        return result.toArray(new String[result.size()]);
+    }
+
+    /** An async chat thread adds a server. */
+    @Benchmark
+    @Group("checker")
+    @GroupThreads(3)
+    public PotentialServer add(Shared shared, Chatter chatter) {
+        return shared.checker.add(new StubServer(chatter.next(SERVERS)), null);
+    }
+
+    /** The main thread drains the finished checks. */
+    @Benchmark
+    @Group("checker")
+    @GroupThreads(1)
+    public void checkerTick(Shared shared) {
+        shared.checker.run();
+    }
+
+    /** An async chat thread classifies a message (what checkMessage does under the listener's lock). */
+    @Benchmark
+    @Group("chat")
+    @GroupThreads(3)
+    public ChatMessage classify(Shared shared, Chatter chatter) {
+        return shared.listener.classify(chatter.name, chatter.id, shared.lines[chatter.next(shared.lines.length)]);
+    }
+
+    /** The main thread drains the finished checks while the chat is classified. */
+    @Benchmark
+    @Group("chat")
+    @GroupThreads(1)
+    public void chatTick(Shared shared) {
+        shared.checker.run();
+    }
+
+    /**
+     * Runs the groups with 1 to 63 producers and a single ticking thread,
+     * printing the producer throughput per thread count.
+     * @param args Further JMH options (e.g. -f 3).
+     * @throws RunnerException If running a benchmark fails.
+     * @throws CommandLineOptionException If the options are invalid.
+     */
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions options = new CommandLineOptions(args);
+        List<String> report = new ArrayList<String>();
+        double[] baseline = new double[2];
+        for (int producers : PRODUCERS) {
+            int group = 0;
+            for (String name : new String[] {"checker", "chat"}) {
+                RunResult result = new Runner(new OptionsBuilder().parent(options)
+                        .include(ContentionBenchmark.class.getName() + "." + name + "$")
+                        .threadGroups(producers, 1).build()).run().iterator().next();
+                double score = producerScore(result);
+                if (producers == 1) {
+                    baseline[group] = score;
+                }
+                report.add(String.format("%-8s %2d threads: %,14.0f ops/s, %,12.0f per producer, efficiency %3.0f%%",
+                        name, producers + 1, score, score / producers,
+                        100 * score / (baseline[group] * producers)));
+                group++;
+            }
+        }
+        for (String line : report) {
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * @param result The result of a group.
+     * @return The throughput of the producers (everything but the ticks).
+     */
+    private static double producerScore(RunResult result) {
+        for (Map.Entry<String, Result> entry : result.getSecondaryResults().entrySet()) {
+            if (!entry.getKey().endsWith("Tick")) {
+                return entry.getValue().getScore();
+            }
+        }
+        return result.getPrimaryResult().getScore();
+    }
+}
@@ -0,0 +1,56 @@
+package de.upsj.bukkit.advertising.benchmarks;
+
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.servers.ResolvedServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning ping responses into verdicts ({@link ServerVerdict#pinged}), for both protocol versions.
+ * @author upsj
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PingResponseBenchmark {
+    /** Response of a 1.4+ server: fields separated by NUL characters. */
+    private static final String RESPONSE = "§1\u000061\u00001.5.2\u0000§6A Minecraft Server"
+            + " §a[Factions] §b[mcMMO] §cNo lag!\u000017\u0000100";
+    /** Response of a pre-1.4 server: fields separated by section signs. */
+    private static final String LEGACY_RESPONSE = "A Minecraft Server - Factions, mcMMO§17§100";
+
+    private ResolvedServer server;
+
+    @Setup
+    public void setUp() throws UnknownHostException {
+        Log.setDebugMode(false);
+        server = new ResolvedServer(InetAddress.getByAddress(new byte[] {(byte) 203, 0, 113, 7}));
+    }
+
+    @Benchmark
+    public ServerVerdict pinged() {
+        return ServerVerdict.pinged(server, RESPONSE);
+    }
+
+    @Benchmark
+    public ServerVerdict pingedLegacy() {
+        return ServerVerdict.pinged(server, LEGACY_RESPONSE);
+    }
+}
@@ -0,0 +1,121 @@
+package de.upsj.bukkit.advertising.benchmarks;
+
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.ServerChecker;
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ResolvedServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.VerdictCacheFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ServerChecker#add} against a warm verdict cache, without any network access:
+ * the cache is restored from a snapshot and only known or final servers are added.
+ * @author upsj
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ServerCheckerBenchmark {
+    /** Count of distinct servers looked up. */
+    private static final int LOOKUPS = 256;
+
+    @Param({"100", "10000"})
+    private int cached;
+
+    private ServerChecker checker;
+    private PotentialServer[] byName;
+    private PotentialServer[] byAddress;
+    private PotentialServer verdict;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        Log.setDebugMode(false);
+        List<ServerVerdict> verdicts = new ArrayList<ServerVerdict>(cached);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < cached; i++) {
+            verdicts.add(ServerVerdict.restore("mc" + i + ".example.net", 25565, address(i),
+                    i % 2 == 0 ? ServerVerdict.State.SERVER : ServerVerdict.State.NO_SERVER,
+                    "A Minecraft Server", i % 20, 20, now));
+        }
+        File file = File.createTempFile("verdicts", ".bin");
+        file.deleteOnExit();
+        VerdictCacheFile.save(file, verdicts);
+
+        checker = new ServerChecker();
+        checker.restore(file);
+        while (checker.getKnownCount() < cached) {
+            Thread.sleep(10);
+            checker.run();
+        }
+
+        byName = new PotentialServer[LOOKUPS];
+        byAddress = new PotentialServer[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            int index = (int) ((i * 2654435761L) % cached);
+            byName[i] = new PotentialServer("MC" + index + ".example.net");
+            byAddress[i] = new ResolvedServer(InetAddress.getByAddress(address(index)));
+        }
+        verdict = ServerVerdict.keyword("minestorm");
+    }
+
+    @TearDown
+    public void tearDown() {
+        checker.shutdown();
+    }
+
+    /**
+     * @param i The server index.
+     * @return A distinct IP address per index.
+     */
+    private static byte[] address(int i) {
+        return new byte[] {10, (byte) (i >> 16), (byte) (i >> 8), (byte) i};
+    }
+
+    /** @return The index of the next lookup. */
+    private int next() {
+        next = (next + 1) & (LOOKUPS - 1);
+        return next;
+    }
+
+    /** Cache hit by address (a directly advertised IP). */
+    @Benchmark
+    public PotentialServer addKnownAddress() {
+        return checker.add(byAddress[next()], null);
+    }
+
+    /** Cache hit by name (a domain whose verdict is cached), scans the cache. */
+    @Benchmark
+    public PotentialServer addKnownName() {
+        return checker.add(byName[next()], null);
+    }
+
+    /** Final verdicts (keywords, blocklists) pass straight through. */
+    @Benchmark
+    public PotentialServer addFinal() {
+        return checker.add(verdict, null);
+    }
+}
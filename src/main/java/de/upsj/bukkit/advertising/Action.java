@@ -57,6 +57,15 @@ public abstract class Action implements Configurable {
         return true;
     }
 
+    /**
+     * Returns whether the action notifies other players.
+     * Notifications are replaced by a single summary during raids.
+     * @return True if the action is a notification.
+     */
+    public boolean isNotification() {
+        return false;
+    }
+
     public boolean isEnabled() {
         return attemptCount > 0;
     }
@@ -1,8 +1,13 @@
 package de.upsj.bukkit.advertising;
 
 import de.upsj.bukkit.advertising.actions.Actions;
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
 import de.upsj.bukkit.advertising.util.CountMap;
 import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+import org.bukkit.ChatColor;
 import org.bukkit.Server;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.entity.Player;
@@ -20,9 +25,25 @@ import java.util.concurrent.ConcurrentLinkedQueue;
  */
 @ConfigSection(name = AntiAdvertisingPlugin.CONF_ACTIONS,
                description = "Configuration of the actions performed when a player advertises a server.",
-               parent = AntiAdvertisingPlugin.class
+               parent = AntiAdvertisingPlugin.class,
+               values = {
+                   @ConfigVar(name = ActionHandler.CONF_RAID_PLAYERS, type = ConfigVarType.INTEGER,
+                              description = "The count of distinct players advertising the same server "
+                                          + "within the raid window that is considered a raid (0 disables it)."),
+                   @ConfigVar(name = ActionHandler.CONF_RAID_WINDOW, type = ConfigVarType.INTEGER,
+                              description = "The raid detection time window (in seconds)."),
+                   @ConfigVar(name = ActionHandler.CONF_RAID_COOLDOWN, type = ConfigVarType.INTEGER,
+                              description = "The time (in seconds) messages containing a raided server "
+                                          + "are blocked instantly and only a summary is sent to the moderators.")
+               }
 )
 public class ActionHandler implements Runnable, Configurable {
+    /** Config value for the raid player count. */
+    public static final String CONF_RAID_PLAYERS = "raidPlayers";
+    /** Config value for the raid time window. */
+    public static final String CONF_RAID_WINDOW = "raidWindow";
+    /** Config value for the raid cooldown. */
+    public static final String CONF_RAID_COOLDOWN = "raidCooldown";
     /** Attempt counter. */
     private final CountMap<String> attempts;
     /** Messages not completely processed. */
@@ -33,6 +54,10 @@ public class ActionHandler implements Runnable, Configurable {
     private final Server server;
     /** Listener to approve messages. */
     private ChatListener listener;
+    /** Raid detection. */
+    private final RaidDetector raids;
+    /** Top advertised servers and advertisers. */
+    private final AdvertisementStats stats;
 
     /**
      * Initializes the action handler.
@@ -43,25 +68,35 @@ public class ActionHandler implements Runnable, Configurable {
         this.attempts = new CountMap<String>();
         this.actions = new ArrayList<Action>(Actions.values().length);
         this.server = server;
+        this.raids = new RaidDetector(5, 60000, 600000);
+        this.stats = new AdvertisementStats();
     }
 
-    /** Checks pending messages for completion, passing them through. */
+    /** Checks pending messages for completion, passing them through, and expires raids. */
     public void run() {
         Iterator<ChatMessage> it = pending.iterator();
         ChatMessage msg;
         ChatMessage.State state;
+        int depth = 0;
         while (it.hasNext()) {
             msg = it.next();
             state = msg.getState();
-            if (state.hasFinished()) {
+            if (!state.hasFinished()) {
+                depth++;
+            } else {
                 it.remove();
+                Metrics.HOLD.recordSince(msg.getCreationTime());
+                PipelineTrace.record(PipelineTrace.Stage.RELEASE, msg.getSender(), msg.getCreationTime());
+                listener.remember(msg);
                 if (!state.hasAdvertisement()) {
                     approveMessage(msg);
                 } else {
-                    doActions(msg);
+                    doActions(msg, true);
                 }
             }
         }
+        Metrics.setPending(depth);
+        raids.expire(System.currentTimeMillis());
     }
 
     /**
@@ -69,7 +104,7 @@ public class ActionHandler implements Runnable, Configurable {
      * @param msg The message.
      */
     private void approveMessage(ChatMessage msg) {
-        Log.debug("Approving message '" + msg.getMessage() + "' by " + msg.getSender());
+        Log.debug(Log.Subsystem.ACTIONS, "Approving message '{}' by {}", msg.getMessage(), msg.getSender());
         Player player = server.getPlayerExact(msg.getSender());
         if (player != null) {
             listener.approve(msg);
@@ -77,31 +112,119 @@ public class ActionHandler implements Runnable, Configurable {
         }
     }
 
+    /**
+     * Takes the actions because of advertisement in a text that isn't sent again
+     * (like a sign or a book), the caller reverts the text itself. Has to be called on the main thread.
+     * @param msg The finished message.
+     */
+    public void takeActions(ChatMessage msg) {
+        listener.remember(msg);
+        if (msg.getState().hasAdvertisement()) {
+            doActions(msg, false);
+        }
+    }
+
     /**
      * Perform actions because of the given message.
      * @param msg The message.
+     * @param resend True iff the message should be sent again if no action hides it.
      */
-    private void doActions(ChatMessage msg) {
+    private void doActions(ChatMessage msg, boolean resend) {
         boolean mayShow = true;
         if (mayIgnore(msg)) {
-            Log.debug("Ignoring '" + msg.getMessage() + "' by " + msg.getSender());
+            Log.debug(Log.Subsystem.ACTIONS, "Ignoring '{}' by {}", msg.getMessage(), msg.getSender());
         } else {
             Log.log("Taking actions because of '" + msg.getMessage() + "' by " + msg.getSender());
+            Metrics.ADVERTISEMENT.increment();
+            boolean raid = recordRaid(msg);
+            stats.record(msg, System.currentTimeMillis());
             String name = msg.getSender().toLowerCase();
             attempts.increment(name);
-            for (Action action : actions) {
+            Actions[] types = Actions.values();
+            for (int i = 0; i < actions.size(); i++) {
+                Action action = actions.get(i);
+                if (raid && action.isNotification()) {
+                    // replaced by the raid summary
+                    continue;
+                }
+                if (!usesAction(msg, types[i])) {
+                    continue;
+                }
                 if (action.shouldUse(attempts.get(name))) {
-                    Log.debug("Taking action " + action.getClass().getSimpleName() + " - mayShow() = " + action.mayShow());
+                    if (Log.isDebug(Log.Subsystem.ACTIONS)) {
+                        Log.debug(Log.Subsystem.ACTIONS, "Taking action {} - mayShow() = {}",
+                                  action.getClass().getSimpleName(), action.mayShow());
+                    }
                     mayShow &= action.mayShow();
                     action.doAction(msg);
                 }
             }
         }
-        if (mayShow) {
+        if (mayShow && resend) {
             approveMessage(msg);
         }
     }
 
+    /**
+     * @param msg The message.
+     * @param type The action type.
+     * @return True iff the action should be taken: always, unless only custom patterns matched
+     * and none of them uses the action.
+     */
+    private boolean usesAction(ChatMessage msg, Actions type) {
+        CustomPatterns patterns = CustomPatterns.get();
+        boolean found = false;
+        for (int i = 0; i <= msg.getMatchCount(); i++) {
+            PotentialServer match = i < msg.getMatchCount() ? msg.getMatch(i) : msg.getInheritedVerdict();
+            if (match != null && match.isServer()) {
+                if (((ServerVerdict) match).getState() != ServerVerdict.State.PATTERN
+                        || patterns.usesAction(match.getMatchedAddress(), type.name())) {
+                    return true;
+                }
+                found = true;
+            }
+        }
+        return !found;
+    }
+
+    /**
+     * Records the advertised servers of a message for the raid detection,
+     * notifies the moderators once a raid is detected.
+     * @param msg The message.
+     * @return True iff one of the servers is being raided.
+     */
+    private boolean recordRaid(ChatMessage msg) {
+        long now = System.currentTimeMillis();
+        boolean raid = false;
+        for (int i = 0; i <= msg.getMatchCount(); i++) {
+            PotentialServer match = i < msg.getMatchCount() ? msg.getMatch(i) : msg.getInheritedVerdict();
+            if (match != null && match.isServer() && !((ServerVerdict) match).isSynthetic()) {
+                ServerVerdict verdict = (ServerVerdict) match;
+                if (raids.record(verdict, msg.getSender(), now)) {
+                    server.broadcast(ChatColor.RED + "Raid: " + raids.getPlayerCount(verdict)
+                            + " players advertised " + verdict.toDisplayString()
+                            + ", blocking it instantly.", Permissions.NOTIFY);
+                }
+                raid |= raids.isRaided(verdict, now);
+            }
+        }
+        return raid;
+    }
+
+    /**
+     * @return The raid detection.
+     */
+    public RaidDetector getRaids() {
+        return raids;
+    }
+
+    /**
+     * @return The top advertised servers and advertisers.
+     */
+    public AdvertisementStats getStats() {
+        return stats;
+    }
+
     /**
      * Checks if a given message may be ignored.
      * (if the sender has the IGNORE permission)
@@ -123,6 +246,14 @@ public class ActionHandler implements Runnable, Configurable {
 
     @Override
     public void reloadConfig(ConfigurationSection config) {
+        int raidPlayers = config.getInt(CONF_RAID_PLAYERS, 5);
+        int raidWindow = config.getInt(CONF_RAID_WINDOW, 60);
+        int raidCooldown = config.getInt(CONF_RAID_COOLDOWN, 600);
+        config.set(CONF_RAID_PLAYERS, raidPlayers);
+        config.set(CONF_RAID_WINDOW, raidWindow);
+        config.set(CONF_RAID_COOLDOWN, raidCooldown);
+        raids.setLimits(raidPlayers, raidWindow * 1000L, raidCooldown * 1000L);
+
         onDisable();
         Action action;
         for (Actions a : Actions.values()) {
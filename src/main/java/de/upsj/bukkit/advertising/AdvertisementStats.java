@@ -0,0 +1,139 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.SlidingTopK;
+import de.upsj.bukkit.advertising.util.SpaceSaving;
+
+import java.util.List;
+
+/**
+ * Streaming statistics of the advertisement acted on: the most advertised domains and IP addresses
+ * and the most offending players over the last hour and day, and the count of distinct domains.
+ * Uses probabilistic sketches, so memory stays fixed no matter how many distinct keys are seen
+ * and the top lists are available instantly. Thread-safe.
+ * @author upsj
+ * @version 1.0
+ */
+public class AdvertisementStats {
+    /** Count of keys tracked per time slot. */
+    private static final int CAPACITY = 64;
+    /** Length of an hour window slot (ms): 12 slots of 5 minutes. */
+    private static final long HOUR_SLOT = 5 * 60000;
+    /** Length of a day window slot (ms): 24 slots of an hour. */
+    private static final long DAY_SLOT = 60 * 60000;
+
+    /** The counted categories. */
+    public enum Category {
+        /** Advertised domains (and addresses, as written in the message). */
+        DOMAINS,
+        /** Resolved IP addresses of the advertised servers. */
+        IPS,
+        /** Offending players. */
+        PLAYERS
+    }
+
+    /** The windows. */
+    public enum Window {
+        /** The last hour. */
+        HOUR,
+        /** The last day. */
+        DAY
+    }
+
+    /** The counters by category and window. */
+    private final SlidingTopK[][] counters;
+
+    /** Initializes empty statistics. */
+    public AdvertisementStats() {
+        counters = new SlidingTopK[Category.values().length][];
+        for (Category category : Category.values()) {
+            counters[category.ordinal()] = new SlidingTopK[] {
+                new SlidingTopK(12, HOUR_SLOT, CAPACITY),
+                new SlidingTopK(24, DAY_SLOT, CAPACITY)
+            };
+        }
+    }
+
+    /**
+     * Counts a key in both windows.
+     * @param category The category.
+     * @param key The key.
+     * @param now The current time (ms).
+     */
+    public void record(Category category, String key, long now) {
+        for (SlidingTopK counter : counters[category.ordinal()]) {
+            counter.add(key, now);
+        }
+    }
+
+    /**
+     * Counts the sender and the advertised servers of a message.
+     * @param msg The advertising message.
+     * @param now The current time (ms).
+     */
+    public void record(ChatMessage msg, long now) {
+        record(Category.PLAYERS, msg.getSender().toLowerCase(), now);
+        for (int i = 0; i <= msg.getMatchCount(); i++) {
+            PotentialServer match = i < msg.getMatchCount() ? msg.getMatch(i) : msg.getInheritedVerdict();
+            if (match != null && match.isServer() && !((ServerVerdict) match).isSynthetic()) {
+                ServerVerdict verdict = (ServerVerdict) match;
+                record(Category.DOMAINS, verdict.getMatchedAddress().toLowerCase(), now);
+                if (verdict.getRawAddress().length > 0) {
+                    record(Category.IPS, verdict.getHostAddress(), now);
+                }
+            }
+        }
+    }
+
+    /**
+     * @param category The category.
+     * @param window The window.
+     * @param n The maximal count of keys.
+     * @param now The current time (ms).
+     * @return The most frequent keys, most frequent first.
+     */
+    public List<SpaceSaving.Entry> top(Category category, Window window, int n, long now) {
+        return counters[category.ordinal()][window.ordinal()].top(n, now);
+    }
+
+    /**
+     * @param category The category.
+     * @param window The window.
+     * @param key The key.
+     * @param now The current time (ms).
+     * @return The estimated count of the key (never too low).
+     */
+    public long estimate(Category category, Window window, String key, long now) {
+        return counters[category.ordinal()][window.ordinal()].estimate(key, now);
+    }
+
+    /**
+     * @param category The category.
+     * @param window The window.
+     * @param now The current time (ms).
+     * @return The estimated count of distinct keys.
+     */
+    public long distinct(Category category, Window window, long now) {
+        return counters[category.ordinal()][window.ordinal()].distinct(now);
+    }
+
+    /**
+     * @param category The category.
+     * @param window The window.
+     * @param now The current time (ms).
+     * @return The total count of keys.
+     */
+    public long total(Category category, Window window, long now) {
+        return counters[category.ordinal()][window.ordinal()].total(now);
+    }
+
+    /** Removes all counts. */
+    public void clear() {
+        for (SlidingTopK[] windows : counters) {
+            for (SlidingTopK counter : windows) {
+                counter.clear();
+            }
+        }
+    }
+}
@@ -1,19 +1,32 @@
 package de.upsj.bukkit.advertising;
 
+import de.upsj.bukkit.advertising.commands.BlocklistCommand;
 import de.upsj.bukkit.advertising.commands.PingCommand;
 import de.upsj.bukkit.advertising.commands.ReloadCommand;
-import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.commands.StatsCommand;
+import de.upsj.bukkit.advertising.commands.TopCommand;
+import de.upsj.bukkit.advertising.jmx.MBeans;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
 import de.upsj.bukkit.annotations.ConfigVar;
 import de.upsj.bukkit.annotations.ConfigVarType;
 import de.upsj.bukkit.annotations.Plugin;
 import de.upsj.bukkit.annotations.ConfigSection;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitScheduler;
 
-import java.util.Iterator;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 /**
@@ -34,8 +47,24 @@ import java.util.logging.Logger;
                               description = "Set this to true to enable the debug mode. "
                                           + "This will produce a more detailed server log output."),
                    @ConfigVar(name = AntiAdvertisingPlugin.CONF_WHITELIST, type = ConfigVarType.STRING_LIST,
-                             description = "The list of servers allowed to be mentioned in the chat."
-                                         + "Format: server-address or server-address:port")
+                             description = "The list of servers allowed to be mentioned in the chat. "
+                                         + "Format: server-address, *.domain (including all subdomains) "
+                                         + "or IP range (CIDR notation like 10.0.0.0/8), optionally "
+                                         + "followed by :port to only allow that port"),
+                   @ConfigVar(name = AntiAdvertisingPlugin.CONF_BLOCKED_RANGES, type = ConfigVarType.STRING_LIST,
+                             description = "The list of IP ranges (CIDR notation like 10.0.0.0/8 or 2001:db8::/32) "
+                                         + "whose servers are considered advertisement without pinging them."),
+                   @ConfigVar(name = AntiAdvertisingPlugin.CONF_BLOCKED_RANGES_FILE, type = ConfigVarType.STRING,
+                             description = "Name of a file in the plugin folder containing additional blocked "
+                                         + "IP ranges, one per line."),
+                   @ConfigVar(name = AntiAdvertisingPlugin.CONF_DOMAIN_BLOCKLIST, type = ConfigVarType.STRING,
+                             description = "Name of a file in the plugin folder containing blocked domains "
+                                         + "(one per line, including subdomains). Changes are applied using the "
+                                         + "/" + BlocklistCommand.NAME + " command."),
+                   @ConfigVar(name = AntiAdvertisingPlugin.CONF_KEYWORDS, type = ConfigVarType.STRING_LIST,
+                             description = "The list of words (like network names) that are advertisement "
+                                         + "even without an address. Format: keyword "
+                                         + "or keyword=server-address to check the server instead.")
                }
 )
 public class AntiAdvertisingPlugin extends JavaPlugin {
@@ -49,8 +78,26 @@ public class AntiAdvertisingPlugin extends JavaPlugin {
     public static final String CONF_NETWORK = "network";
     /** Config section for ChatListener. */
     public static final String CONF_CHAT    = "chat";
+    /** Config section for InputListener. */
+    public static final String CONF_INPUTS  = "inputs";
+    /** Config section for PrometheusEndpoint. */
+    public static final String CONF_PROMETHEUS = "prometheus";
+    /** Config section for LogConfig. */
+    public static final String CONF_LOGGING = "logging";
     /** Config section for whitelist. */
     public static final String CONF_WHITELIST = "whitelist";
+    /** Config value for the blocked IP ranges. */
+    public static final String CONF_BLOCKED_RANGES = "blockedRanges";
+    /** Config value for the blocked IP ranges file. */
+    public static final String CONF_BLOCKED_RANGES_FILE = "blockedRangesFile";
+    /** Config value for the blocked domains file. */
+    public static final String CONF_DOMAIN_BLOCKLIST = "domainBlocklist";
+    /** Config value for the blocked keywords. */
+    public static final String CONF_KEYWORDS = "keywords";
+    /** File name of the server verdict cache. */
+    private static final String CACHE_FILE = "verdicts.dat";
+    /** Ticks per minute. */
+    private static final long MINUTE_TICKS = 20 * 60;
 
     /** The server checker. */
     private ServerChecker serverChecker;
@@ -58,25 +105,59 @@ public class AntiAdvertisingPlugin extends JavaPlugin {
     private ActionHandler handler;
     /** The chat listener. */
     private ChatListener listener;
+    /** The classification service for commands and other inputs. */
+    private ClassificationService service;
+    /** The listener for signs, books and anvils. */
+    private InputListener inputs;
+    /** The Prometheus endpoint. */
+    private PrometheusEndpoint prometheus;
+    /** The logging configuration. */
+    private LogConfig logConfig;
+    /** True while the domain blocklist is being rebuilt. */
+    private final AtomicBoolean rebuildingBlocklist = new AtomicBoolean();
+    /** Count of keyword reloads, only the compiled keywords of the latest one are used. */
+    private final AtomicInteger keywordReloads = new AtomicInteger();
+    /** Count of custom pattern reloads, only the compiled patterns of the latest one are used. */
+    private final AtomicInteger patternReloads = new AtomicInteger();
 
     @Override
     public void onEnable() {
         Log.init(logger(), isDebugMode());
+        logConfig = new LogConfig(getDataFolder());
         serverChecker = new ServerChecker();
         handler = new ActionHandler(getServer());
         listener = new ChatListener(serverChecker, handler);
+        service = new ClassificationService(listener);
+        inputs = new InputListener(service, handler);
+        prometheus = new PrometheusEndpoint(serverChecker);
         // Save possibly missing default values
         reload();
+        serverChecker.restore(getCacheFile());
 
         // Register listeners, tasks
         getServer().getPluginManager().registerEvents(listener, this);
+        getServer().getPluginManager().registerEvents(inputs, this);
         BukkitScheduler scheduler = getServer().getScheduler();
         scheduler.scheduleSyncRepeatingTask(this, serverChecker, 1, 1);
         scheduler.scheduleSyncRepeatingTask(this, handler, 1, 1);
+        scheduler.scheduleSyncRepeatingTask(this, service, 1, 1);
+        scheduler.runTaskTimerAsynchronously(this, new Runnable() {
+            public void run() {
+                ServerChecker checker = serverChecker;
+                if (checker != null) {
+                    checker.snapshotIfDue(getCacheFile());
+                }
+            }
+        }, MINUTE_TICKS, MINUTE_TICKS);
 
         // Register commands
         getCommand(ReloadCommand.NAME).setExecutor(new ReloadCommand(this));
         getCommand(PingCommand.NAME).setExecutor(new PingCommand(serverChecker, getServer()));
+        getCommand(BlocklistCommand.NAME).setExecutor(new BlocklistCommand(this));
+        getCommand(StatsCommand.NAME).setExecutor(new StatsCommand(this));
+        getCommand(TopCommand.NAME).setExecutor(new TopCommand(handler.getStats()));
+
+        MBeans.register(serverChecker, handler, listener);
     }
 
     /** Reloads config values, adds possibly missing default values. */
@@ -84,12 +165,20 @@ public class AntiAdvertisingPlugin extends JavaPlugin {
         Log.log("(Re-)loading config...");
         reloadConfig();
         Log.setDebugMode(isDebugMode());
+        logConfig.reloadConfig(getSection(CONF_LOGGING));
         listener.setEnabled(isCheckEnabled());
+        inputs.setEnabled(isCheckEnabled());
         serverChecker.reloadConfig(getSection(CONF_NETWORK));
         handler.reloadConfig(getSection(CONF_ACTIONS));
         listener.reloadConfig(getSection(CONF_CHAT));
-        serverChecker.clear();
+        inputs.reloadConfig(getSection(CONF_INPUTS));
+        prometheus.reloadConfig(getSection(CONF_PROMETHEUS));
+        // keep cached verdicts, only the whitelist has to be re-applied
         loadWhiteList();
+        loadBlockedRanges();
+        loadDomainBlocklist();
+        loadKeywords();
+        loadPatterns();
         saveConfig();
         Log.log("(Re-)loading config finished");
     }
@@ -121,32 +210,241 @@ public class AntiAdvertisingPlugin extends JavaPlugin {
         return getConfig().getBoolean(CONF_DEBUG, false);
     }
 
-    /** Loads the white list. */
+    /** @return The file the server verdict cache is saved to. */
+    private File getCacheFile() {
+        return new File(getDataFolder(), CACHE_FILE);
+    }
+
+    /**
+     * Compiles the white list and replaces the current one.
+     * The whitelisted host names are resolved asynchronously, their addresses are added when finished.
+     */
     private void loadWhiteList() {
-        // FIXME possible issue: server advertised short before the whitelist is reloaded.
         List<String> whitelist = getConfig().getStringList(CONF_WHITELIST);
-        Iterator<String> it = whitelist.iterator();
-        String serverName;
-        PotentialServer server;
-        while (it.hasNext()) {
-            serverName = it.next();
-            server = ChatMessage.parseSingleServer(serverName, true);
-            if (server == null) {
-                it.remove();
-                Log.warn("Couldn't parse whitelisted server " + serverName);
-            } else {
-                serverChecker.add(server, null);
-            }
+        List<String> invalid = new ArrayList<String>();
+        final Whitelist compiled = Whitelist.compile(whitelist, invalid);
+        for (String serverName : invalid) {
+            Log.warn("Couldn't parse whitelisted server " + serverName);
         }
+        whitelist.removeAll(invalid);
+        Whitelist.set(compiled);
+        serverChecker.applyWhitelist(compiled);
         getConfig().set(CONF_WHITELIST, whitelist);
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            public void run() {
+                Whitelist resolved = compiled.resolve();
+                // unless reloaded in the meantime
+                if (Whitelist.replace(compiled, resolved)) {
+                    serverChecker.applyWhitelist(resolved);
+                }
+            }
+        });
+    }
+
+    /** Compiles the blocked IP ranges and replaces the current ones. */
+    private void loadBlockedRanges() {
+        FileConfiguration conf = getConfig();
+        List<String> ranges = conf.getStringList(CONF_BLOCKED_RANGES);
+        String fileName = conf.getString(CONF_BLOCKED_RANGES_FILE, "blocked-ranges.txt");
+        List<String> invalid = new ArrayList<String>();
+        IPBlocklist blocklist;
+        try {
+            blocklist = IPBlocklist.compile(ranges, new File(getDataFolder(), fileName), invalid);
+        } catch (IOException e) {
+            Log.warn("Couldn't read blocked IP ranges from " + fileName + ": " + e.getMessage());
+            blocklist = IPBlocklist.EMPTY;
+        }
+        for (String range : invalid) {
+            Log.warn("Couldn't parse blocked IP range " + range);
+        }
+        ranges.removeAll(invalid);
+        IPBlocklist.set(blocklist);
+        serverChecker.removeKnown(ServerVerdict.State.BLOCKED);
+        conf.set(CONF_BLOCKED_RANGES, ranges);
+        conf.set(CONF_BLOCKED_RANGES_FILE, fileName);
+    }
+
+    /** Compiles the keywords asynchronously and replaces the current ones when finished. */
+    private void loadKeywords() {
+        final List<String> keywords = getConfig().getStringList(CONF_KEYWORDS);
+        List<String> invalid = new ArrayList<String>();
+        for (String keyword : keywords) {
+            if (!Keywords.isValid(keyword)) {
+                Log.warn("Couldn't parse keyword " + keyword);
+                invalid.add(keyword);
+            }
+        }
+        keywords.removeAll(invalid);
+        getConfig().set(CONF_KEYWORDS, keywords);
+        final int generation;
+        synchronized (keywordReloads) {
+            generation = keywordReloads.incrementAndGet();
+        }
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            public void run() {
+                Keywords compiled = Keywords.compile(keywords, new ArrayList<String>());
+                // unless reloaded in the meantime
+                synchronized (keywordReloads) {
+                    if (keywordReloads.get() == generation) {
+                        Keywords.set(compiled);
+                    }
+                }
+                Log.debug(Log.Subsystem.GENERAL, "Compiled {} keyword(s)", compiled.size());
+            }
+        });
+    }
+
+    /** Compiles the custom patterns asynchronously and replaces the current ones when finished. */
+    private void loadPatterns() {
+        ConfigurationSection chat = getSection(CONF_CHAT);
+        ConfigurationSection section = chat.isConfigurationSection(ChatListener.CONF_PATTERNS)
+                ? chat.getConfigurationSection(ChatListener.CONF_PATTERNS)
+                : chat.createSection(ChatListener.CONF_PATTERNS);
+        final Map<String, String> regexes = new LinkedHashMap<String, String>();
+        final Map<String, List<String>> actions = new HashMap<String, List<String>>();
+        for (String name : section.getKeys(false)) {
+            if (!section.isConfigurationSection(name)) {
+                Log.warn("Custom pattern " + name + " is no section");
+                continue;
+            }
+            ConfigurationSection pattern = section.getConfigurationSection(name);
+            String regex = pattern.getString(CustomPatterns.CONF_REGEX, "");
+            List<String> actionNames = pattern.getStringList(CustomPatterns.CONF_ACTIONS);
+            pattern.set(CustomPatterns.CONF_REGEX, regex);
+            pattern.set(CustomPatterns.CONF_ACTIONS, actionNames);
+            regexes.put(name, regex);
+            actions.put(name, actionNames);
+        }
+        final int generation;
+        synchronized (patternReloads) {
+            generation = patternReloads.incrementAndGet();
+        }
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            public void run() {
+                List<String> invalid = new ArrayList<String>();
+                CustomPatterns compiled = CustomPatterns.compile(regexes, actions, invalid);
+                for (String name : invalid) {
+                    Log.warn("Couldn't compile custom pattern " + name);
+                }
+                // unless reloaded in the meantime
+                synchronized (patternReloads) {
+                    if (patternReloads.get() == generation) {
+                        CustomPatterns.set(compiled);
+                    }
+                }
+                Log.debug(Log.Subsystem.GENERAL, "Compiled {} custom pattern(s)", compiled.size());
+            }
+        });
+    }
+
+    /** Maps the compiled domain blocklist. */
+    private void loadDomainBlocklist() {
+        FileConfiguration conf = getConfig();
+        conf.set(CONF_DOMAIN_BLOCKLIST, conf.getString(CONF_DOMAIN_BLOCKLIST, "blocked-domains.txt"));
+        try {
+            File file = DomainBlocklist.latest(getDataFolder());
+            DomainBlocklist.set(DomainBlocklist.open(file));
+            DomainBlocklist.deleteGenerations(getDataFolder(), file);
+        } catch (IOException e) {
+            Log.warn("Couldn't load the domain blocklist: " + e.getMessage());
+            DomainBlocklist.set(DomainBlocklist.EMPTY);
+        }
+    }
+
+    /**
+     * Rebuilds the domain blocklist from its plain text list asynchronously.
+     * @param sender The command sender to be notified when finished.
+     * @return False if the blocklist is already being rebuilt.
+     */
+    public boolean rebuildDomainBlocklist(final CommandSender sender) {
+        if (!rebuildingBlocklist.compareAndSet(false, true)) {
+            return false;
+        }
+        final File text = new File(getDataFolder(),
+                                   getConfig().getString(CONF_DOMAIN_BLOCKLIST, "blocked-domains.txt"));
+        // never overwrite the mapped file, the old generation is deleted once replaced
+        final File out = DomainBlocklist.nextGeneration(getDataFolder());
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            public void run() {
+                String result;
+                try {
+                    int count = DomainBlocklist.build(text, out);
+                    DomainBlocklist.set(DomainBlocklist.open(out));
+                    DomainBlocklist.deleteGenerations(getDataFolder(), out);
+                    result = "Rebuilt the domain blocklist: " + count + " domain(s)";
+                } catch (IOException e) {
+                    result = "Rebuilding the domain blocklist failed: " + e.getMessage();
+                } finally {
+                    rebuildingBlocklist.set(false);
+                }
+                Log.log(result);
+                final String message = ChatColor.GOLD + "[AntiAd] " + result;
+                getServer().getScheduler().runTask(AntiAdvertisingPlugin.this, new Runnable() {
+                    public void run() {
+                        sender.sendMessage(message);
+                    }
+                });
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Writes the metrics report into a new file in the plugin folder asynchronously.
+     * @param sender The command sender to be notified when finished.
+     */
+    public void dumpMetrics(CommandSender sender) {
+        dump(sender, false);
+    }
+
+    /**
+     * Writes the pipeline trace into a new file in the plugin folder asynchronously.
+     * @param sender The command sender to be notified when finished.
+     */
+    public void dumpTrace(CommandSender sender) {
+        dump(sender, true);
+    }
+
+    /**
+     * Writes the metrics report or the pipeline trace into a new file in the plugin folder asynchronously.
+     * @param sender The command sender to be notified when finished.
+     * @param trace True to write the trace, false to write the metrics.
+     */
+    private void dump(final CommandSender sender, final boolean trace) {
+        final File folder = getDataFolder();
+        final String what = trace ? "pipeline trace" : "metrics";
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            public void run() {
+                String result;
+                try {
+                    File file = trace ? PipelineTrace.dump(folder) : Metrics.dump(folder);
+                    result = "Dumped the " + what + " to " + file.getName();
+                } catch (IOException e) {
+                    result = "Dumping the " + what + " failed: " + e.getMessage();
+                }
+                Log.log(result);
+                final String message = ChatColor.GOLD + "[AntiAd] " + result;
+                getServer().getScheduler().runTask(AntiAdvertisingPlugin.this, new Runnable() {
+                    public void run() {
+                        sender.sendMessage(message);
+                    }
+                });
+            }
+        });
     }
 
     @Override
     public void onDisable() {
+        // no more periodic snapshots; one still running finishes before the final one is written
+        getServer().getScheduler().cancelTasks(this);
+        MBeans.unregister();
+        prometheus.stop();
         handler.onDisable();
+        service.shutdown();
+        serverChecker.snapshot(getCacheFile());
         serverChecker.shutdown();
         serverChecker = null;
-        getServer().getScheduler().cancelTasks(this);
+        logConfig.close();
     }
 
     /** Returns the logger for the plugin. Used because getLogger is final now. */
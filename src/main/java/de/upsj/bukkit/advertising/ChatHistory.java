@@ -0,0 +1,197 @@
+package de.upsj.bukkit.advertising;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Recent chat lines of every online player, used to detect addresses
+ * spread over consecutive lines ("join play", ".example", ".net").
+ * Every player has a small ring buffer of lines, lines older than the maximal age are ignored.
+ * Not thread-safe, the chat listener synchronizes all accesses.
+ * @author upsj
+ * @version 1.0
+ */
+public class ChatHistory {
+    /** Maximal length of the context in front of a new line. */
+    public static final int MAX_CONTEXT = 64;
+
+    /** The ring buffers by player. */
+    private final Map<UUID, Lines> history;
+    /** Count of stored lines per player. */
+    private int maxLines;
+    /** Maximal line age (ms), 0 if disabled. */
+    private long maxAge;
+
+    /**
+     * Initializes the chat history.
+     * @param maxLines Count of stored lines per player.
+     * @param maxAge Maximal line age (ms), 0 to disable the history.
+     */
+    public ChatHistory(int maxLines, long maxAge) {
+        this.history = new HashMap<UUID, Lines>();
+        setLimits(maxLines, maxAge);
+    }
+
+    /**
+     * Changes the limits, clearing the history.
+     * @param maxLines Count of stored lines per player.
+     * @param maxAge Maximal line age (ms), 0 to disable the history.
+     */
+    public void setLimits(int maxLines, long maxAge) {
+        this.maxLines = Math.max(1, maxLines);
+        this.maxAge = Math.max(0, maxAge);
+        history.clear();
+    }
+
+    /** @return True iff lines are stored at all. */
+    public boolean isEnabled() {
+        return maxAge > 0;
+    }
+
+    /**
+     * Builds the context in front of a new line: the tail of the recent lines of the player,
+     * joined the way they might be read in chat. Lines are separated by a space,
+     * unless a dot is at the line boundary ("play." + "example.net").
+     * @param player The player.
+     * @param next The new line.
+     * @param now The current time (ms).
+     * @return The context (at most {@link #MAX_CONTEXT} characters plus separator) or null if there is none.
+     */
+    public String getContext(UUID player, String next, long now) {
+        Lines lines = isEnabled() ? history.get(player) : null;
+        if (lines == null) {
+            return null;
+        }
+        StringBuilder context = new StringBuilder();
+        char after = first(next);
+        // newest to oldest, prepending
+        for (int i = 1; i <= lines.count && context.length() < MAX_CONTEXT; i++) {
+            int index = (lines.next - i + lines.text.length) % lines.text.length;
+            if (now - lines.time[index] > maxAge) {
+                break;
+            }
+            String line = lines.text[index];
+            if (!isDot(last(line)) && !isDot(after)) {
+                context.insert(0, ' ');
+            }
+            context.insert(0, line);
+            after = first(line);
+        }
+        if (context.length() == 0) {
+            return null;
+        }
+        int cut = context.length() - MAX_CONTEXT;
+        return cut > 0 ? context.substring(cut) : context.toString();
+    }
+
+    /**
+     * Joins lines (e.g. of a sign or book) the way they might be read,
+     * separated by a space unless a dot is at the line boundary.
+     * @param lines The lines.
+     * @return The joined lines.
+     */
+    public static String join(String[] lines) {
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            if (line == null || first(line) == 0) {
+                continue;
+            }
+            if (result.length() > 0 && !isDot(last(result.toString())) && !isDot(first(line))) {
+                result.append(' ');
+            }
+            result.append(line);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Stores a new line.
+     * @param player The player.
+     * @param line The line.
+     * @param now The current time (ms).
+     */
+    public void add(UUID player, String line, long now) {
+        if (!isEnabled()) {
+            return;
+        }
+        Lines lines = history.get(player);
+        if (lines == null) {
+            lines = new Lines(maxLines);
+            history.put(player, lines);
+        }
+        // only the tail can be part of the context
+        lines.text[lines.next] = line.length() > MAX_CONTEXT ? line.substring(line.length() - MAX_CONTEXT) : line;
+        lines.time[lines.next] = now;
+        lines.next = (lines.next + 1) % lines.text.length;
+        lines.count = Math.min(lines.count + 1, lines.text.length);
+    }
+
+    /**
+     * Frees the lines of the given player.
+     * @param player The player.
+     */
+    public void remove(UUID player) {
+        history.remove(player);
+    }
+
+    /** @return The count of players with stored lines. */
+    public int size() {
+        return history.size();
+    }
+
+    /**
+     * @param s The string.
+     * @return The first non-whitespace character or 0.
+     */
+    private static char first(String s) {
+        for (int i = 0; i < s.length(); i++) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return s.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param s The string.
+     * @return The last non-whitespace character or 0.
+     */
+    private static char last(String s) {
+        for (int i = s.length() - 1; i >= 0; i--) {
+            if (!Character.isWhitespace(s.charAt(i))) {
+                return s.charAt(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the character is a (fullwidth or ideographic) dot.
+     */
+    private static boolean isDot(char c) {
+        return c == '.' || c == '\uFF0E' || c == '\u3002' || c == '\uFF61';
+    }
+
+    /** Ring buffer of the recent lines of a player. */
+    private static final class Lines {
+        /** The lines. */
+        private final String[] text;
+        /** The times the lines were sent. */
+        private final long[] time;
+        /** The index of the next line. */
+        private int next;
+        /** The count of stored lines. */
+        private int count;
+
+        /**
+         * Initializes an empty buffer.
+         * @param size The maximal line count.
+         */
+        private Lines(int size) {
+            this.text = new String[size];
+            this.time = new long[size];
+        }
+    }
+}
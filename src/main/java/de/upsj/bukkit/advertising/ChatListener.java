@@ -1,5 +1,6 @@
 package de.upsj.bukkit.advertising;
 
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
 import de.upsj.bukkit.annotations.ConfigSection;
 import de.upsj.bukkit.annotations.ConfigVar;
 import de.upsj.bukkit.annotations.ConfigVarType;
@@ -10,11 +11,13 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerChatEvent;
 import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.UUID;
 
 /**
  * Chat listener storing messages to be passed through.
@@ -28,11 +31,42 @@ import java.util.List;
                    @ConfigVar(name = ChatListener.CONF_COMMANDS,
                               description = "List of commands whose parameters should be checked "
                                           + "in addition to the normal chat. (like /msg)",
-                              type = ConfigVarType.STRING_LIST)
+                              type = ConfigVarType.STRING_LIST),
+                   @ConfigVar(name = ChatListener.CONF_SPLIT_TIME,
+                              description = "Time (in seconds) the recent chat lines of a player are kept "
+                                          + "to find addresses spread over several lines. 0 disables it.",
+                              type = ConfigVarType.INTEGER),
+                   @ConfigVar(name = ChatListener.CONF_SPLIT_LINES,
+                              description = "Count of recent chat lines per player kept "
+                                          + "to find addresses spread over several lines.",
+                              type = ConfigVarType.INTEGER),
+                   @ConfigVar(name = ChatListener.CONF_MESSAGE_CACHE,
+                              description = "Count of recently checked messages whose results are cached, "
+                                          + "so that repeated messages are decided immediately. 0 disables it.",
+                              type = ConfigVarType.INTEGER),
+                   @ConfigVar(name = ChatListener.CONF_SIMILAR,
+                              description = "Minimal similarity (in percent) of a message to a recent advertisement "
+                                          + "to be treated as advertisement immediately. 0 disables it.",
+                              type = ConfigVarType.INTEGER),
+                   @ConfigVar(name = ChatListener.CONF_SIMILAR_TIME,
+                              description = "Time (in seconds) advertisement is remembered "
+                                          + "to find similar messages.",
+                              type = ConfigVarType.INTEGER),
+                   @ConfigVar(name = ChatListener.CONF_MAX_MATCHES,
+                              description = "Maximal count of possible addresses per message that are checked, "
+                                          + "messages with more are treated as advertisement.",
+                              type = ConfigVarType.INTEGER)
                }
 )
 public class ChatListener implements Listener, Configurable {
     public static final String CONF_COMMANDS = "commands";
+    public static final String CONF_SPLIT_TIME = "splitMessageTime";
+    public static final String CONF_SPLIT_LINES = "splitMessageLines";
+    public static final String CONF_MESSAGE_CACHE = "messageCache";
+    public static final String CONF_SIMILAR = "similarMessages";
+    public static final String CONF_SIMILAR_TIME = "similarMessageTime";
+    public static final String CONF_PATTERNS = "patterns";
+    public static final String CONF_MAX_MATCHES = "maxMatches";
 
     /** The server checker. */
     private final ServerChecker checker;
@@ -42,8 +76,16 @@ public class ChatListener implements Listener, Configurable {
     private final List<ChatMessage> approved;
     /** List of commands to be checked as well. */
     private List<String> commands;
+    /** Recent chat lines of the players. */
+    private final ChatHistory history;
+    /** Verdicts of recently checked messages. */
+    private final MessageCache cache;
+    /** Recent advertisement to find near-duplicates. */
+    private final SimilarMessages similar;
+    /** Classification service checking the other inputs off the main thread or null. */
+    private volatile ClassificationService service;
     /** Should the chat be checked? */
-    private boolean enabled;
+    private volatile boolean enabled;
 
     /**
      * Initializes the chat listener.
@@ -56,6 +98,9 @@ public class ChatListener implements Listener, Configurable {
         this.handler.setListener(this);
         this.approved = new LinkedList<ChatMessage>();
         this.commands = new ArrayList<String>();
+        this.history = new ChatHistory(3, 10000);
+        this.cache = new MessageCache(1000, checker.getCacheTime());
+        this.similar = new SimilarMessages(80, 300000);
         this.enabled = true;
     }
 
@@ -75,6 +120,23 @@ public class ChatListener implements Listener, Configurable {
         approved.add(msg);
     }
 
+    /**
+     * Stores the verdicts of a completely processed message, so that repetitions
+     * and similar messages are decided immediately.
+     * @param msg The message.
+     */
+    public void remember(ChatMessage msg) {
+        cache.put(msg);
+        if (msg.getState().hasAdvertisement() && msg.getInheritedVerdict() == null) {
+            for (int i = 0; i < msg.getMatchCount(); i++) {
+                if (msg.getMatch(i) != null && msg.getMatch(i).isServer()) {
+                    similar.add(msg.getMessage(), (ServerVerdict) msg.getMatch(i), System.currentTimeMillis());
+                    break;
+                }
+            }
+        }
+    }
+
     /**
      * Called when a player chats.
      * @param event The chat event.
@@ -83,7 +145,18 @@ public class ChatListener implements Listener, Configurable {
     /* Low priority to let anti spam plugins kick in first
      * as checking for server ad is performance intensive. */
     public void onChat(AsyncPlayerChatEvent event) {
-        checkMessage(event, event.getPlayer().getName(), event.getMessage());
+        checkMessage(event, event.getPlayer().getName(), event.getPlayer().getUniqueId(), event.getMessage());
+    }
+
+    /**
+     * Called when a player leaves, frees the recent chat lines.
+     * @param event The quit event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        synchronized (this) {
+            history.remove(event.getPlayer().getUniqueId());
+        }
     }
 
     /**
@@ -98,7 +171,9 @@ public class ChatListener implements Listener, Configurable {
         for (String command : commands) {
             String lowCommand = command.toLowerCase();
             if (message.startsWith(lowCommand + " ") || message.equals(lowCommand)) {
-                checkMessage(event, event.getPlayer().getName(), event.getMessage());
+                // parsed right away, only the servers are checked in the background;
+                // commands are not part of the chat history
+                checkMessage(event, event.getPlayer().getName(), null, event.getMessage());
                 return;
             }
         }
@@ -109,35 +184,142 @@ public class ChatListener implements Listener, Configurable {
      * (if approved before, it will be passed through)
      * @param event The cancelable event.
      * @param player The sending player.
+     * @param id The id of the sending player, null if the message should not be checked
+     *           together with the recent chat lines.
      * @param message The message.
      */
-    private synchronized void checkMessage(Cancellable event, String player, String message) {
-        if (!enabled) {
+    private synchronized void checkMessage(Cancellable event, String player, UUID id, String message) {
+        if (!enabled || isApproved(player, message)) {
             return;
         }
 
-        ChatMessage msg = ChatMessage.parse(player, message);
+        ChatMessage msg = classify(player, id, message);
+
+        // If not clean: Cancel first, check further
+        if (msg.getState() != ChatMessage.State.CLEAN) {
+            event.setCancelled(true);
+            handler.putPending(msg);
+        }
+    }
 
-        // Check for approved messages
+    /**
+     * Checks for an approved message, removing it.
+     * @param player The sending player.
+     * @param message The message.
+     * @return True iff the message was approved before (and is already in the history).
+     */
+    private synchronized boolean isApproved(String player, String message) {
         Iterator<ChatMessage> it = approved.iterator();
         while (it.hasNext()) {
-            if (it.next().equals(msg)) {
+            ChatMessage next = it.next();
+            if (next.getMessage().equals(message) && next.getSender().equals(player)) {
                 it.remove();
-                return;
+                return true;
             }
         }
+        return false;
+    }
 
-        // If not clean: Cancel first, check further
+    /**
+     * Parses a message (with the recent lines of its sender) and registers its servers to be checked.
+     * Messages containing a raided server or similar to recent advertisement are decided immediately.
+     * @param player The sending player.
+     * @param id The id of the sending player, null if the message should not be checked
+     *           together with the recent chat lines.
+     * @param message The message.
+     * @return The parsed message.
+     */
+    public synchronized ChatMessage classify(String player, UUID id, String message) {
+        ChatMessage msg;
+        long start = System.nanoTime();
+        if (id == null) {
+            msg = ChatMessage.parse(player, message, null, cache);
+        } else {
+            long now = System.currentTimeMillis();
+            msg = ChatMessage.parse(player, message, history.getContext(id, message, now), cache);
+            history.add(id, message, now);
+        }
+        Metrics.PARSE.recordSince(start);
+        PipelineTrace.record(PipelineTrace.Stage.PARSE, player, start);
+
+        // Raided server or similar to recent advertisement: don't wait for the checks
+        if (!msg.getState().hasFinished()) {
+            long now = System.currentTimeMillis();
+            ServerVerdict verdict = handler.getRaids().find(msg, now);
+            if (verdict != null) {
+                Log.debug(Log.Subsystem.CHAT, "'{}' by {} contains raided server {}", message, player, verdict);
+                msg.inherit(verdict);
+            } else {
+                verdict = similar.find(message, now);
+                if (verdict != null) {
+                    Log.debug(Log.Subsystem.CHAT, "'{}' by {} is similar to advertisement of {}", message, player, verdict);
+                    msg.inherit(verdict);
+                }
+            }
+        }
+
+        Log.trace(Log.Subsystem.CHAT, "Classified '{}' as {}", message, msg.getState());
         if (msg.getState() != ChatMessage.State.CLEAN) {
             checker.registerMessage(msg);
-            event.setCancelled(true);
-            handler.putPending(msg);
         }
+        return msg;
+    }
+
+    /**
+     * Links the listener to the classification service checking the other inputs off the main thread.
+     * @param service The classification service.
+     */
+    public void setService(ClassificationService service) {
+        this.service = service;
+    }
+
+    /** @return The classification service or null. */
+    public ClassificationService getService() {
+        return service;
+    }
+
+    /** @return True iff the chat is checked. */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** @return The message cache. */
+    public MessageCache getCache() {
+        return cache;
+    }
+
+    /** @return The count of players with stored chat lines. */
+    public synchronized int getHistorySize() {
+        return history.size();
+    }
+
+    /** @return The count of recent advertisement messages kept for the near-duplicate detection. */
+    public int getSimilarCount() {
+        return similar.size();
     }
 
     @Override
     public void reloadConfig(ConfigurationSection section) {
         commands = section.getStringList(CONF_COMMANDS);
+        int splitTime = section.getInt(CONF_SPLIT_TIME, 10);
+        int splitLines = section.getInt(CONF_SPLIT_LINES, 3);
+        int cacheSize = section.getInt(CONF_MESSAGE_CACHE, 1000);
+        int similarity = section.getInt(CONF_SIMILAR, 80);
+        int similarTime = section.getInt(CONF_SIMILAR_TIME, 300);
+        int maxMatches = Math.max(1, section.getInt(CONF_MAX_MATCHES, 16));
+        ChatMessage.setMaxMatches(maxMatches);
+        synchronized (this) {
+            history.setLimits(splitLines, splitTime * 1000L);
+        }
+        // after the server checker, whose cache time is used
+        cache.setLimits(cacheSize, checker.getCacheTime());
+        similar.setLimits(similarity, similarTime * 1000L);
         section.set(CONF_COMMANDS, commands);
+        section.set(CONF_SPLIT_TIME, splitTime);
+        section.set(CONF_SPLIT_LINES, splitLines);
+        section.set(CONF_MESSAGE_CACHE, cacheSize);
+        section.set(CONF_SIMILAR, similarity);
+        section.set(CONF_SIMILAR_TIME, similarTime);
+        section.set(CONF_MAX_MATCHES, maxMatches);
     }
 }
@@ -3,13 +3,17 @@ package de.upsj.bukkit.advertising;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 import de.upsj.bukkit.advertising.servers.PotentialServer;
 import de.upsj.bukkit.advertising.servers.ResolvedServer;
 import de.upsj.bukkit.advertising.servers.ServerRequestListener;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.AddressScanner;
+import de.upsj.bukkit.advertising.util.AhoCorasick;
+import de.upsj.bukkit.advertising.util.NormalizedText;
+import de.upsj.bukkit.advertising.util.PatternDFA;
 
 /**
  * A chat message possibly containing server advertisement.
@@ -50,19 +54,18 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
         public boolean hasAdvertisement() { return ad; }
     }
 
-    /** Regex pattern to match domain name + port. */
-    private static final String DOMAIN_PATTERN = "([a-zA-Z0-9\\-]+\\.)+[a-zA-Z]{2,}(:[0-9]{1,5})?";
-    /** Regex pattern to match IP + port. */
-    private static final String IP_PATTERN = "[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}(:[0-9]{1,5})?";
-    /** Compiled domain regex. */
-    public static final Pattern DOMAIN = Pattern.compile(DOMAIN_PATTERN);
-    /** Compiled IP regex. */
-    public static final Pattern IP = Pattern.compile(IP_PATTERN);
+    /** Name of the pattern verdict of messages with more matches than {@link #getMaxMatches()}. */
+    public static final String TOO_MANY_MATCHES = "too many addresses";
+
+    /** Maximal count of checked matches of a message. */
+    private static volatile int maxMatches = 16;
 
     /** The message. */
     private String message;
     /** The sender name. */
     private final String senderName;
+    /** The recent lines of the sender in front of the message or null. */
+    private final String context;
     /** The server matches. */
     private final PotentialServer[] serverMatches;
     /** The start indices of the matches. */
@@ -71,22 +74,44 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
     private final int[] matchEnd;
     /** The current processing state of the message. */
     private State state;
+    /** The key of the message in the message cache or null. */
+    private MessageCache.Key cacheKey;
+    /** The verdict of a similar earlier advertisement or null. */
+    private ServerVerdict inherited;
+    /** Creation time ({@link System#nanoTime()}), when the message was held back. */
+    private final long created;
 
     /**
      * Initializes a suspicious chat message.
      * @param msg The message.
      * @param sender The sender.
+     * @param context The recent lines in front of the message or null.
      * @param matches The possible matches.
      * @param matchStart The start indices of the matches.
      * @param matchEnd The end indices of the matches.
      */
-    private ChatMessage(String msg, String sender, PotentialServer[] matches, int[] matchStart, int[] matchEnd) {
+    private ChatMessage(String msg, String sender, String context, PotentialServer[] matches,
+                        int[] matchStart, int[] matchEnd) {
         this.message = msg;
         this.senderName = sender;
+        this.context = context;
         this.serverMatches = matches;
         this.matchStart = matchStart;
         this.matchEnd = matchEnd;
+        this.created = System.nanoTime();
         this.state = matches.length == 0 ? State.CLEAN : State.UNKNOWN;
+        for (PotentialServer match : matches) {
+            if (match.isFinal()) {
+                // e.g. blocked IP: update state
+                updateStatus(null, null);
+                break;
+            }
+        }
+    }
+
+    /** @return The creation time ({@link System#nanoTime()}). */
+    public long getCreationTime() {
+        return created;
     }
 
     /**
@@ -110,6 +135,37 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
         return senderName;
     }
 
+    /**
+     * @return The recent lines of the sender the message was checked with or null.
+     */
+    public String getContext() {
+        return context;
+    }
+
+    /**
+     * @return The key of the message in the message cache or null if it isn't cached.
+     */
+    public MessageCache.Key getCacheKey() {
+        return cacheKey;
+    }
+
+    /**
+     * @return The verdict of a similar earlier advertisement or null.
+     */
+    public ServerVerdict getInheritedVerdict() {
+        return inherited;
+    }
+
+    /**
+     * Marks the message as advertisement because it is similar to an earlier advertisement,
+     * without waiting for its own matches to be checked.
+     * @param verdict The verdict of the earlier advertisement.
+     */
+    public synchronized void inherit(ServerVerdict verdict) {
+        inherited = verdict;
+        updateStatus(null, null);
+    }
+
     /**
      * @return The count of possible matches.
      */
@@ -126,28 +182,62 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
     }
 
     /**
-     * Replaces the match given by its index by '*' characters.
-     * @param i The index.
+     * Replaces all known advertisement in the message by '*' characters.
+     * If the message is similar to an earlier advertisement, unchecked matches are replaced, too.
      */
-    public void censorMatch(int i) {
-        int start = matchStart[i];
-        int end = matchEnd[i];
-        StringBuilder resultBuilder = new StringBuilder(message.length());
-        resultBuilder.append(message, 0, start);
-        for (int n = 0; n < end - start; n++) {
-            resultBuilder.append('*');
-        }
-        resultBuilder.append(message, end, message.length());
-        message = resultBuilder.toString();
+    public void censorAll() {
+        censorAll("*");
     }
 
-    /** Replaces all known advertisement in the message. */
-    public void censorAll() {
+    /**
+     * Replaces all known advertisement in the message in a single pass over the sorted, merged match ranges.
+     * If the message is similar to an earlier advertisement, unchecked matches are replaced, too.
+     * Afterwards, the match indices don't refer to the message anymore.
+     * @param replacement A single character replacing every censored character
+     *                    or a text (like "[ad]") replacing every censored range as a whole.
+     */
+    public void censorAll(String replacement) {
+        // ranges packed as start << 32 | end, so that sorting them sorts by start
+        long[] ranges = new long[serverMatches.length];
+        int count = 0;
+        int length = message.length();
         for (int i = 0; i < serverMatches.length; i++) {
-            if (serverMatches[i].isFinal() && serverMatches[i].isServer()) {
-                censorMatch(i);
+            PotentialServer match = serverMatches[i];
+            int start = Math.min(matchStart[i], length);
+            int end = Math.min(matchEnd[i], length);
+            if (match != null && start < end && (match.isServer() || inherited != null && !match.isFinal())) {
+                ranges[count++] = ((long) start << 32) | end;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        Arrays.sort(ranges, 0, count);
+
+        boolean perChar = replacement.length() == 1;
+        StringBuilder result = new StringBuilder(length + count * replacement.length());
+        int copied = 0;
+        int i = 0;
+        while (i < count) {
+            int start = (int) (ranges[i] >>> 32);
+            int end = (int) ranges[i];
+            // merge overlapping and adjacent ranges (e.g. a domain containing an IP)
+            while (++i < count && (int) (ranges[i] >>> 32) <= end) {
+                end = Math.max(end, (int) ranges[i]);
             }
+            result.append(message, copied, start);
+            if (perChar) {
+                char c = replacement.charAt(0);
+                for (int n = start; n < end; n++) {
+                    result.append(c);
+                }
+            } else {
+                result.append(replacement);
+            }
+            copied = end;
         }
+        result.append(message, copied, length);
+        message = result.toString();
     }
 
     /**
@@ -159,7 +249,7 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
      */
     public synchronized void updateStatus(PotentialServer old, PotentialServer srv) {
         // DEBUG assert srv == null || (srv == null && old == null) || old.equals(srv)  : "Invalid replace";
-        int adCount = 0;
+        int adCount = inherited == null ? 0 : 1;
         int unknownCount = 0;
         for (int i = 0; i < serverMatches.length; i++) {
             if (serverMatches[i] == old) {
@@ -173,10 +263,25 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
                 }
             }
         }
+        if (inherited != null) {
+            // don't wait for the checks of the matches
+            unknownCount = 0;
+        }
         state = (adCount > 0 ? (unknownCount > 0 ? State.ADVERTISEMENT_PENDING : State.ADVERTISEMENT)
                              : (unknownCount > 0 ? State.UNKNOWN : State.CLEAN));
     }
 
+    /**
+     * Creates a message that couldn't be checked (e.g. because parsing it failed).
+     * It is clean, so that it is passed through like text whose check failed before.
+     * @param playerName The message sender.
+     * @param message The message.
+     * @return The clean message without matches.
+     */
+    public static ChatMessage unchecked(String playerName, String message) {
+        return new ChatMessage(message, playerName, null, new PotentialServer[0], new int[0], new int[0]);
+    }
+
     /**
      * Parses a chat message for possible advertisement.
      * @param playerName The message sender.
@@ -184,76 +289,268 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
      * @return The ChatMessage instance.
      */
     public static ChatMessage parse(String playerName, String message) {
+        return parse(playerName, message, null);
+    }
+
+    /**
+     * Parses a message together with the recent lines of its sender,
+     * finding addresses spread over several lines.
+     * Only matches reaching into the message are reported, matches within the context
+     * have already been reported with the earlier lines.
+     * The match indices refer to the message, matches starting in the context start at 0.
+     * @param playerName The sender.
+     * @param message The message.
+     * @param context The recent lines in front of the message or null.
+     * @return The parsed message.
+     */
+    public static ChatMessage parse(String playerName, String message, String context) {
+        return parse(playerName, message, context, null);
+    }
+
+    /**
+     * Parses a message, reusing the verdicts of an identical earlier message if they are cached.
+     * @param playerName The sender.
+     * @param message The message.
+     * @param context The recent lines in front of the message or null.
+     * @param cache The message cache or null.
+     * @return The parsed message, already finished if it was cached.
+     */
+    public static ChatMessage parse(String playerName, String message, String context, MessageCache cache) {
+        Whitelist whitelist = Whitelist.get();
+        // only the context tail near the line boundary is scanned again
+        int offset = context == null ? 0 : context.length();
+        // scan the deobfuscated text, but store the original indices
+        NormalizedText normalized = NormalizedText.normalize(context == null ? message : context + message);
+        String text = normalized.getText();
+
+        MessageCache.Key key = null;
+        if (cache != null && cache.isEnabled()) {
+            key = new MessageCache.Key(text, normalized.normalizedIndex(offset), whitelist);
+            MessageCache.Entry entry = cache.get(key, System.currentTimeMillis());
+            if (entry != null) {
+                return fromCache(playerName, message, context, normalized, entry);
+            }
+        }
+
         List<PotentialServer> matches = new ArrayList<PotentialServer>();
         List<Integer> matchStarts = new ArrayList<Integer>();
         List<Integer> matchEnds = new ArrayList<Integer>();
+        List<Integer> normalizedStarts = new ArrayList<Integer>();
+        List<Integer> normalizedEnds = new ArrayList<Integer>();
         PotentialServer server;
 
+        // the scanners are linear, so the whole message is scanned,
+        // but a message with more matches than checked is treated as advertisement
+        int maxCount = maxMatches;
+        boolean truncated = false;
+        int limit = text.length();
+        int[] range = new int[2];
+
         // Domain matches
-        Matcher domainMatcher = DOMAIN.matcher(message);
-        while (domainMatcher.find()) {
-            server = parseDomain(domainMatcher.group(), false);
-            if (server != null) {
-                matchStarts.add(domainMatcher.start());
-                matchEnds.add(domainMatcher.end());
+        int from = 0;
+        while (!truncated && AddressScanner.findDomain(text, from, limit, range)) {
+            from = range[1];
+            server = parseDomain(text.substring(range[0], range[1]), false);
+            int end = normalized.originalEnd(range[1]) - offset;
+            if (end > 0 && server != null && !whitelist.matchesDomain(server.getMatchedAddress(), server.getPort())) {
+                if (matches.size() >= maxCount) {
+                    truncated = true;
+                    break;
+                }
+                matchStarts.add(Math.max(0, normalized.originalStart(range[0]) - offset));
+                matchEnds.add(end);
+                normalizedStarts.add(range[0]);
+                normalizedEnds.add(range[1]);
                 matches.add(server);
             }
         }
 
         // IP matches
-        Matcher ipMatcher = IP.matcher(message);
-        while (ipMatcher.find()) {
-            server = parseIP(ipMatcher.group(), false);
-            if (server != null) {
-                matchStarts.add(ipMatcher.start());
-                matchEnds.add(ipMatcher.end());
+        from = 0;
+        while (!truncated && AddressScanner.findIP(text, from, limit, range)) {
+            from = range[1];
+            server = parseIP(text.substring(range[0], range[1]), false);
+            int end = normalized.originalEnd(range[1]) - offset;
+            if (end > 0 && server != null && !whitelist.matchesAddress(((ResolvedServer) server).getRawAddress(),
+                                                                            server.getPort())) {
+                if (matches.size() >= maxCount) {
+                    truncated = true;
+                    break;
+                }
+                matchStarts.add(Math.max(0, normalized.originalStart(range[0]) - offset));
+                matchEnds.add(end);
+                normalizedStarts.add(range[0]);
+                normalizedEnds.add(range[1]);
                 matches.add(server);
             }
         }
 
+        // Keyword matches (whole words only)
+        Keywords keywords = Keywords.get();
+        AhoCorasick automaton = keywords.getAutomaton();
+        if (automaton != null) {
+            int state = AhoCorasick.START;
+            for (int i = 0; i < limit && !truncated; i++) {
+                state = automaton.next(state, text.charAt(i));
+                int keyword = automaton.getMatch(state);
+                if (keyword < 0 || !isWordBoundary(text, i + 1)) {
+                    continue;
+                }
+                int end = normalized.originalEnd(i + 1) - offset;
+                if (end <= 0) {
+                    continue;
+                }
+                // the longest keyword ending here that is a whole word, shorter ones might be
+                for (; keyword >= 0; keyword = automaton.getSuffixMatch(keyword)) {
+                    int start = i + 1 - automaton.getLength(keyword);
+                    if (!isWordBoundary(text, start)) {
+                        continue;
+                    }
+                    server = keywords.getServer(keyword);
+                    if (server != null && !(server instanceof ResolvedServer
+                            ? whitelist.matchesAddress(((ResolvedServer) server).getRawAddress(), server.getPort())
+                            : whitelist.matchesDomain(server.getMatchedAddress(), server.getPort()))) {
+                        if (matches.size() >= maxCount) {
+                            truncated = true;
+                            break;
+                        }
+                        matchStarts.add(Math.max(0, normalized.originalStart(start) - offset));
+                        matchEnds.add(end);
+                        normalizedStarts.add(start);
+                        normalizedEnds.add(i + 1);
+                        matches.add(server);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Custom pattern matches
+        CustomPatterns patterns = CustomPatterns.get();
+        PatternDFA patternAutomaton = patterns.getAutomaton();
+        if (patternAutomaton != null && !truncated) {
+            for (int[] match : patternAutomaton.findAll(text, maxCount - matches.size() + 1)) {
+                int end = normalized.originalEnd(match[1]) - offset;
+                if (end > 0) {
+                    if (matches.size() >= maxCount) {
+                        truncated = true;
+                        break;
+                    }
+                    matchStarts.add(Math.max(0, normalized.originalStart(match[0]) - offset));
+                    matchEnds.add(end);
+                    normalizedStarts.add(match[0]);
+                    normalizedEnds.add(match[1]);
+                    matches.add(ServerVerdict.pattern(patterns.getName(match[2])));
+                }
+            }
+        }
+
+        if (truncated) {
+            // the unchecked matches could be advertisement, so the whole message is
+            matchStarts.add(0);
+            matchEnds.add(message.length());
+            normalizedStarts.add(normalized.normalizedIndex(offset));
+            normalizedEnds.add(text.length());
+            matches.add(ServerVerdict.synthetic(TOO_MANY_MATCHES));
+        }
+
         // copy lists to arrays
         PotentialServer[] matchArray = matches.toArray(new PotentialServer[matches.size()]);
         int[] startArray = new int[matches.size()];
         int[] endArray = new int[matches.size()];
 
+        int[] normalizedStartArray = new int[matches.size()];
+        int[] normalizedEndArray = new int[matches.size()];
+
         for (int i = 0; i < matchArray.length; i++) {
             startArray[i] = matchStarts.get(i);
             endArray[i] = matchEnds.get(i);
+            normalizedStartArray[i] = normalizedStarts.get(i);
+            normalizedEndArray[i] = normalizedEnds.get(i);
         }
 
-        Log.debug("Parsed chat message: '" + message + "' by " + playerName);
-        return new ChatMessage(message, playerName, matchArray, startArray, endArray);
+        Log.debug(Log.Subsystem.CHAT, "Parsed chat message: '{}' by {}", message, playerName);
+        ChatMessage result = new ChatMessage(message, playerName, context, matchArray, startArray, endArray);
+        if (key != null) {
+            key.setMatches(normalizedStartArray, normalizedEndArray);
+            result.cacheKey = key;
+        }
+        return result;
+    }
+
+    /**
+     * @param text The text.
+     * @param i An index between two characters.
+     * @return True iff the index is at the start or end of a word.
+     */
+    private static boolean isWordBoundary(String text, int i) {
+        return i == 0 || i == text.length()
+            || !Character.isLetterOrDigit(text.charAt(i - 1)) || !Character.isLetterOrDigit(text.charAt(i));
+    }
+
+    /**
+     * Creates a message from the cached verdicts of an identical earlier message.
+     * The normalized texts are identical, so the match positions can be mapped to this message.
+     * @param playerName The sender.
+     * @param message The message.
+     * @param context The recent lines in front of the message or null.
+     * @param normalized The normalized context and message.
+     * @param entry The cache entry.
+     * @return The finished message.
+     */
+    private static ChatMessage fromCache(String playerName, String message, String context,
+                                         NormalizedText normalized, MessageCache.Entry entry) {
+        int offset = context == null ? 0 : context.length();
+        int count = entry.getMatchCount();
+        PotentialServer[] matchArray = new PotentialServer[count];
+        int[] startArray = new int[count];
+        int[] endArray = new int[count];
+        for (int i = 0; i < count; i++) {
+            matchArray[i] = entry.getVerdict(i);
+            startArray[i] = Math.max(0, normalized.originalStart(entry.getKey().getStart(i)) - offset);
+            endArray[i] = normalized.originalEnd(entry.getKey().getEnd(i)) - offset;
+        }
+        Log.debug(Log.Subsystem.CHAT, "Cached chat message: '{}' by {}", message, playerName);
+        ChatMessage result = new ChatMessage(message, playerName, context, matchArray, startArray, endArray);
+        result.cacheKey = entry.getKey();
+        return result;
     }
 
     /**
      * @param domainString The domain match (with optional port part).
      * @param whitelisted If the server should be whitelisted.
-     * @return The parsed server or null if the parsing failed.
+     * @return The parsed server (already final if its domain is blocked)
+     * or null if the parsing failed.
      */
     public static PotentialServer parseDomain(String domainString, boolean whitelisted) {
         String[] parts = domainString.split(":");
+        PotentialServer server = null;
 
         // No port number
         if (parts.length == 1) {
-            return new PotentialServer(parts[0], whitelisted);
+            server = new PotentialServer(parts[0], whitelisted);
 
         // Port number
         } else {
             try {
                 int port = Integer.parseInt(parts[1]);
                 if (port <= 65535) {
-                    return new PotentialServer(parts[0], port, whitelisted);
+                    server = new PotentialServer(parts[0], port, whitelisted);
                 }
             } catch (NumberFormatException e) { /* nothing to do here */ }
         }
 
-        return null;
+        if (server != null && !whitelisted && DomainBlocklist.get().matches(parts[0])) {
+            return ServerVerdict.blockedDomain(server);
+        }
+        return server;
     }
 
     /**
      * @param ipString The IP match (with optional port part).
      * @param whitelisted If the server should be whitelisted.
-     * @return The parsed server or null if the parsing failed.
+     * @return The parsed server (already final if it is in a blocked IP range)
+     * or null if the parsing failed.
      */
     public static PotentialServer parseIP(String ipString, boolean whitelisted) {
         String[] parts = ipString.split(":");
@@ -271,17 +568,22 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
             InetAddress address = InetAddress.getByAddress(
                     new byte[] {(byte) ip1, (byte) ip2, (byte) ip3, (byte) ip4});
 
+            ResolvedServer server = null;
             // No port number
             if (parts.length == 1) {
-                return new ResolvedServer(address, whitelisted);
+                server = new ResolvedServer(address, whitelisted);
 
             // Port number
             } else {
                 int port = Integer.parseInt(parts[1]);
                 if (port <= 65535) {
-                    return new ResolvedServer(address, port, whitelisted);
+                    server = new ResolvedServer(address, port, whitelisted);
                 }
             }
+            if (server != null && !whitelisted && IPBlocklist.get().match(server.getRawAddress()) != null) {
+                return ServerVerdict.blocked(server);
+            }
+            return server;
         } catch (NumberFormatException e) { // nothing to do here
         } catch (UnknownHostException e) { /* shouldn't happen */ }
 
@@ -294,20 +596,31 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
      * @return The parsed server or null if the parsing failed.
      */
     public static PotentialServer parseSingleServer(String name, boolean whitelisted) {
-        Matcher m = DOMAIN.matcher(name);
+        int[] range = new int[2];
         PotentialServer match = null;
-        if (m.find()) {
-            match = parseDomain(m.group(), whitelisted);
+        if (AddressScanner.findDomain(name, 0, name.length(), range)) {
+            match = parseDomain(name.substring(range[0], range[1]), whitelisted);
         }
-        if (match == null) {
-            m = IP.matcher(name);
-            if (m.find()) {
-                match = ChatMessage.parseIP(m.group(), whitelisted);
-            }
+        if (match == null && AddressScanner.findIP(name, 0, name.length(), range)) {
+            match = ChatMessage.parseIP(name.substring(range[0], range[1]), whitelisted);
         }
         return match;
     }
 
+    /**
+     * Limits the count of checked matches per message, so that a single message can't flood the server checker.
+     * Messages with more matches are treated as advertisement ({@link #TOO_MANY_MATCHES}).
+     * @param matchCount The maximal count of checked matches of a message, at least 1.
+     */
+    public static void setMaxMatches(int matchCount) {
+        maxMatches = Math.max(1, matchCount);
+    }
+
+    /** @return The maximal count of checked matches of a message. */
+    public static int getMaxMatches() {
+        return maxMatches;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -332,7 +645,8 @@ public final class ChatMessage implements Cloneable, ServerRequestListener {
 
     @Override
     public ChatMessage clone() {
-        ChatMessage result = new ChatMessage(message, senderName, serverMatches, matchStart, matchEnd);
+        ChatMessage result = new ChatMessage(message, senderName, context, serverMatches, matchStart, matchEnd);
+        result.cacheKey = cacheKey;
         // update state
         result.updateStatus(null, null);
         return result;
@@ -0,0 +1,245 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.util.NamedThreadFactory;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Classifies text of input sources other than the chat (signs, books, anvils) off the main thread.
+ * The text is parsed by a worker thread like a chat message (sharing the message cache,
+ * the raid detection and the near-duplicate detection), its servers are checked by the
+ * server checker (sharing its verdict cache). The result is a future message,
+ * finished once all its servers are checked. Listeners are called on the main thread,
+ * so that they can act on the verdict (e.g. clear a sign).
+ * @author upsj
+ * @version 1.0
+ */
+public class ClassificationService implements Runnable {
+    /** Count of worker threads parsing the texts. */
+    private static final int WORKERS = 2;
+    /** Interval (ms) a blocking {@link Classification#get()} polls the message state. */
+    private static final long POLL_INTERVAL = 5;
+
+    /** The chat listener parsing the texts. */
+    private final ChatListener listener;
+    /** The worker threads. */
+    private final ThreadPoolExecutor workers;
+    /** Classifications whose listeners haven't been called yet. */
+    private final Queue<Classification> pending;
+
+    /**
+     * Initializes the classification service.
+     * @param listener The chat listener.
+     */
+    public ClassificationService(ChatListener listener) {
+        this.listener = listener;
+        this.listener.setService(this);
+        this.workers = new ThreadPoolExecutor(WORKERS, WORKERS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new NamedThreadFactory("AntiAdvertising classifier"));
+        this.pending = new ConcurrentLinkedQueue<Classification>();
+    }
+
+    /**
+     * Classifies a text asynchronously.
+     * @param sender The name of the player who wrote the text.
+     * @param text The text.
+     * @param callback Called on the main thread once the classification is finished or null.
+     * @return The future classification.
+     */
+    public Classification classify(final String sender, final String text, Callback callback) {
+        final Classification result = new Classification(sender, text, callback);
+        pending.add(result);
+        workers.execute(new Runnable() {
+            public void run() {
+                try {
+                    result.message = listener.classify(sender, null, text);
+                } catch (Throwable e) {
+                    // errors, too (like a stack overflow), so that the classification always finishes
+                    Log.warn("Classifying '" + text + "' by " + sender + " failed: " + e);
+                    result.failure = e;
+                }
+            }
+        });
+        return result;
+    }
+
+    /** Calls the listeners of finished classifications. Has to be called on the main thread. */
+    public void run() {
+        Iterator<Classification> it = pending.iterator();
+        while (it.hasNext()) {
+            Classification classification = it.next();
+            if (classification.isCancelled()) {
+                it.remove();
+            } else if (classification.isDone()) {
+                it.remove();
+                if (classification.callback == null) {
+                    continue;
+                }
+                if (classification.failure != null) {
+                    // the caller may have held the text back, so it has to learn about it either way
+                    classification.callback.classified(ChatMessage.unchecked(classification.sender,
+                                                                             classification.text));
+                } else {
+                    classification.callback.classified(classification.message);
+                }
+            }
+        }
+    }
+
+    /** @return The count of unfinished classifications. */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Changes the count of worker threads.
+     * @param count The worker count, at least 1.
+     */
+    public void setWorkers(int count) {
+        int size = Math.max(1, count);
+        synchronized (workers) {
+            if (size > workers.getMaximumPoolSize()) {
+                workers.setMaximumPoolSize(size);
+                workers.setCorePoolSize(size);
+            } else {
+                workers.setCorePoolSize(size);
+                workers.setMaximumPoolSize(size);
+            }
+        }
+    }
+
+    /** @return The count of worker threads. */
+    public int getWorkers() {
+        return workers.getMaximumPoolSize();
+    }
+
+    /** Shuts down the worker threads, dropping all unfinished classifications. */
+    public void shutdown() {
+        workers.shutdownNow();
+        pending.clear();
+    }
+
+    /** Listener for finished classifications. */
+    public interface Callback {
+        /**
+         * Called on the main thread once all servers of a text are checked.
+         * If parsing the text failed, it is passed as clean message without matches.
+         * @param msg The classified text.
+         */
+        void classified(ChatMessage msg);
+    }
+
+    /** Future result of a classification: the text as chat message, finished once its servers are checked. */
+    public static final class Classification implements Future<ChatMessage> {
+        /** The name of the player who wrote the text. */
+        private final String sender;
+        /** The text. */
+        private final String text;
+        /** The listener or null. */
+        private final Callback callback;
+        /** The parsed message, null while parsing. */
+        private volatile ChatMessage message;
+        /** The exception thrown while parsing or null. */
+        private volatile Throwable failure;
+        /** True iff the classification was cancelled. */
+        private volatile boolean cancelled;
+
+        /**
+         * Initializes the classification.
+         * @param sender The name of the player who wrote the text.
+         * @param text The text.
+         * @param callback The listener or null.
+         */
+        private Classification(String sender, String text, Callback callback) {
+            this.sender = sender;
+            this.text = text;
+            this.callback = callback;
+        }
+
+        /**
+         * Cancels the classification, its listener won't be called.
+         * The servers are still checked, as other messages may wait for them.
+         * @param mayInterruptIfRunning Ignored.
+         * @return True iff the classification wasn't finished before.
+         */
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            if (isDone()) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+
+        /** @return True iff the classification was cancelled. */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /** @return True iff the text is parsed and all its servers are checked (or it failed or was cancelled). */
+        public boolean isDone() {
+            ChatMessage msg = message;
+            return cancelled || failure != null || msg != null && msg.getState().hasFinished();
+        }
+
+        /**
+         * Waits for the classification.
+         * @return The classified text.
+         * @throws InterruptedException If the thread was interrupted.
+         * @throws ExecutionException If parsing the text failed.
+         */
+        public ChatMessage get() throws InterruptedException, ExecutionException {
+            try {
+                return get(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        /**
+         * Waits for the classification.
+         * Mustn't be called on the main thread with a long timeout, as the servers are checked there.
+         * @param timeout The maximal time to wait.
+         * @param unit The time unit.
+         * @return The classified text.
+         * @throws InterruptedException If the thread was interrupted.
+         * @throws ExecutionException If parsing the text failed.
+         * @throws TimeoutException If the classification isn't finished in time.
+         */
+        public ChatMessage get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            long wait = unit.toMillis(timeout);
+            long deadline = System.currentTimeMillis() + wait;
+            if (deadline < 0) {
+                deadline = Long.MAX_VALUE;
+            }
+            while (!isDone()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                Thread.sleep(Math.min(remaining, POLL_INTERVAL));
+            }
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return message;
+        }
+
+        /** @return The parsed message (possibly not finished yet) or null while parsing. */
+        public ChatMessage getMessage() {
+            return message;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.actions.Actions;
+import de.upsj.bukkit.advertising.util.PatternDFA;
+import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable set of custom patterns defined by the administrator (e.g. invite links of chat services),
+ * compiled into a single DFA. Every pattern has a name and optionally its own list of actions.
+ * @author upsj
+ * @version 1.0
+ */
+@ConfigSection(name = ChatListener.CONF_PATTERNS + ".<pattern>",
+               description = "A custom pattern (one subsection per pattern name), "
+                           + "its matches are treated as advertisement.",
+               parent = ChatListener.class,
+               values = {
+                   @ConfigVar(name = CustomPatterns.CONF_REGEX, type = ConfigVarType.STRING,
+                              description = "The regular expression, matched case-insensitively against the "
+                                          + "deobfuscated message. Supported: [] classes, \\d \\w \\s, groups, | "
+                                          + "and the quantifiers * + ? {n,m}. No anchors or back references."),
+                   @ConfigVar(name = CustomPatterns.CONF_ACTIONS, type = ConfigVarType.STRING_LIST,
+                              description = "The names of the actions taken when only this pattern matched "
+                                          + "(like hide or log). Empty to take all enabled actions.")
+               }
+)
+public final class CustomPatterns {
+    /** Config value for the regular expression. */
+    public static final String CONF_REGEX = "regex";
+    /** Config value for the actions. */
+    public static final String CONF_ACTIONS = "actions";
+    /** Maximal count of states of the compiled automata. */
+    public static final int MAX_STATES = 4096;
+    /** Pattern set without any patterns. */
+    public static final CustomPatterns EMPTY = new CustomPatterns(null, new ArrayList<String>(),
+            new ArrayList<Set<String>>());
+    /** The current pattern set, replaced atomically. */
+    private static volatile CustomPatterns current = EMPTY;
+
+    /** The automaton, null if empty. */
+    private final PatternDFA automaton;
+    /** The pattern names. */
+    private final List<String> names;
+    /** The action names of each pattern, null for all actions. */
+    private final List<Set<String>> actions;
+
+    /**
+     * Initializes the pattern set.
+     * @param automaton The automaton.
+     * @param names The pattern names.
+     * @param actions The action names of the patterns.
+     */
+    private CustomPatterns(PatternDFA automaton, List<String> names, List<Set<String>> actions) {
+        this.automaton = automaton;
+        this.names = names;
+        this.actions = actions;
+    }
+
+    /**
+     * Compiles the given patterns. Expensive for complex patterns, should be called asynchronously.
+     * @param regexes The regular expressions by pattern name.
+     * @param actionNames The action names by pattern name.
+     * @param invalid Receives the names of all patterns that couldn't be parsed
+     *                or would exceed {@link #MAX_STATES} together with the previous patterns.
+     * @return The compiled pattern set of all other patterns.
+     */
+    public static CustomPatterns compile(Map<String, String> regexes, Map<String, List<String>> actionNames,
+                                         Collection<String> invalid) {
+        List<String> names = new ArrayList<String>();
+        List<String> patterns = new ArrayList<String>();
+        List<Set<String>> actions = new ArrayList<Set<String>>();
+        PatternDFA automaton = null;
+        for (Map.Entry<String, String> entry : regexes.entrySet()) {
+            try {
+                PatternDFA.check(entry.getValue());
+            } catch (IllegalArgumentException e) {
+                Log.warn(e.getMessage());
+                invalid.add(entry.getKey());
+                continue;
+            }
+            // add the patterns one at a time, so that only the pattern exceeding the state limit is rejected
+            patterns.add(entry.getValue());
+            try {
+                automaton = new PatternDFA(patterns, MAX_STATES);
+            } catch (IllegalArgumentException e) {
+                Log.warn(e.getMessage());
+                patterns.remove(patterns.size() - 1);
+                invalid.add(entry.getKey());
+                continue;
+            }
+            List<String> list = actionNames.get(entry.getKey());
+            Set<String> set = null;
+            if (list != null && !list.isEmpty()) {
+                set = new HashSet<String>();
+                for (String action : list) {
+                    if (isAction(action)) {
+                        set.add(action.toLowerCase());
+                    } else {
+                        Log.warn("Unknown action " + action + " of pattern " + entry.getKey());
+                    }
+                }
+            }
+            names.add(entry.getKey());
+            actions.add(set);
+        }
+        if (names.isEmpty()) {
+            return EMPTY;
+        }
+        return new CustomPatterns(automaton, names, actions);
+    }
+
+    /**
+     * @param name The name.
+     * @return True iff there is an action type of this name.
+     */
+    private static boolean isAction(String name) {
+        for (Actions a : Actions.values()) {
+            if (a.name().equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return The automaton or null if there are no patterns. */
+    public PatternDFA getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * @param pattern The pattern index reported by the automaton.
+     * @return The pattern name.
+     */
+    public String getName(int pattern) {
+        return names.get(pattern);
+    }
+
+    /**
+     * @param name The pattern name.
+     * @param action The action name.
+     * @return True iff the action should be taken for a match of the pattern.
+     */
+    public boolean usesAction(String name, String action) {
+        int index = names.indexOf(name);
+        if (index < 0) {
+            // removed pattern
+            return true;
+        }
+        Set<String> set = actions.get(index);
+        return set == null || set.contains(action.toLowerCase());
+    }
+
+    /** @return The count of patterns. */
+    public int size() {
+        return names.size();
+    }
+
+    /** @return The current pattern set. */
+    public static CustomPatterns get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current pattern set.
+     * @param patterns The new pattern set.
+     */
+    public static void set(CustomPatterns patterns) {
+        current = patterns;
+    }
+}
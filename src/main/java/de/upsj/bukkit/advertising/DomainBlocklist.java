@@ -0,0 +1,612 @@
+package de.upsj.bukkit.advertising;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Large, memory-mapped list of blocked (known advertised) domains.
+ * The domains are stored sorted in a binary file, fronted by a Bloom filter,
+ * so that almost all lookups of unlisted domains are rejected without a binary search.
+ * Lookups don't allocate and are thread-safe.
+ * <p>File format: magic, version, domain count, Bloom filter word count, hash count,
+ * Bloom filter words, domain offsets (count + 1), domain bytes (lower case ASCII).</p>
+ * @author upsj
+ * @version 1.0
+ */
+public final class DomainBlocklist {
+    /** Blocklist without any entries. */
+    public static final DomainBlocklist EMPTY = new DomainBlocklist(null, 0, 0, 0);
+    /** The current blocklist, replaced atomically. */
+    private static volatile DomainBlocklist current = EMPTY;
+
+    /** File magic ("AADB"). */
+    private static final int MAGIC = 0x41414442;
+    /** Current format version. */
+    private static final int VERSION = 1;
+    /** Header size in bytes. */
+    private static final int HEADER_SIZE = 20;
+    /** Bloom filter bits per domain (~1% false positives). */
+    private static final int BITS_PER_DOMAIN = 10;
+    /** Bloom filter hash function count. */
+    private static final int HASHES = 7;
+    /** Maximum count of domains sorted in memory while building. */
+    public static final int CHUNK_SIZE = 262144;
+    /** Blocklist file name prefix. */
+    private static final String FILE_PREFIX = "blocked-domains";
+    /** Blocklist file name suffix. */
+    private static final String FILE_SUFFIX = ".dat";
+
+    /** The mapped file, null if empty. */
+    private final ByteBuffer buf;
+    /** The domain count. */
+    private final int count;
+    /** The Bloom filter size in bits. */
+    private final long bloomBits;
+    /** The Bloom filter hash function count. */
+    private final int hashes;
+
+    /**
+     * Initializes the blocklist.
+     * @param buf The mapped file.
+     * @param count The domain count.
+     * @param bloomWords The Bloom filter size in longs.
+     * @param hashes The hash function count.
+     */
+    private DomainBlocklist(ByteBuffer buf, int count, int bloomWords, int hashes) {
+        this.buf = buf;
+        this.count = count;
+        this.bloomBits = bloomWords * 64L;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Maps a blocklist file created by {@link #build(File, File)}.
+     * @param file The file.
+     * @return The blocklist, empty if the file doesn't exist.
+     * @throws IOException If the file can't be read or has an unknown format.
+     */
+    public static DomainBlocklist open(File file) throws IOException {
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        ByteBuffer buf;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            raf.close(); // the mapping stays valid
+        }
+        if (buf.capacity() < HEADER_SIZE || buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            throw new IOException("unknown format");
+        }
+        int count = buf.getInt(8);
+        int bloomWords = buf.getInt(12);
+        int hashes = buf.getInt(16);
+        long size = HEADER_SIZE + bloomWords * 8L + (count + 1) * 4L;
+        if (count < 0 || bloomWords <= 0 || hashes <= 0 || size > buf.capacity()
+                || size + buf.getInt((int) size - 4) > buf.capacity()) {
+            throw new IOException("corrupt file");
+        }
+        return new DomainBlocklist(buf, count, bloomWords, hashes);
+    }
+
+    /**
+     * Builds a blocklist file from a plain text list with one domain per line.
+     * Lines starting with '#' and invalid domains are ignored,
+     * leading "*." and upper case letters are normalized.
+     * The domains are sorted externally, so only {@link #CHUNK_SIZE} of them are held in memory at once.
+     * Expensive, should be called asynchronously.
+     * The output file must not be mapped, use {@link #nextGeneration(File)} to replace a mapped blocklist.
+     * @param text The plain text list.
+     * @param out The blocklist file.
+     * @return The count of stored domains.
+     * @throws IOException If reading or writing fails.
+     */
+    public static int build(File text, File out) throws IOException {
+        return build(text, out, CHUNK_SIZE);
+    }
+
+    /**
+     * Builds a blocklist file, see {@link #build(File, File)}.
+     * @param text The plain text list.
+     * @param out The blocklist file.
+     * @param chunkSize The maximum count of domains sorted in memory.
+     * @return The count of stored domains.
+     * @throws IOException If reading or writing fails.
+     */
+    public static int build(File text, File out, int chunkSize) throws IOException {
+        List<File> runs = new ArrayList<File>();
+        File data = new File(out.getPath() + ".data");
+        File tmp = new File(out.getPath() + ".tmp");
+        try {
+            long total = writeRuns(text, out, chunkSize, runs);
+            int bloomWords = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 8, (total * BITS_PER_DOMAIN + 63) / 64));
+            long[] bloom = new long[bloomWords];
+            int unique = merge(runs, tmp, data, bloom);
+
+            RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+            try {
+                raf.writeInt(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(unique);
+                raf.writeInt(bloomWords);
+                raf.writeInt(HASHES);
+                ByteBuffer words = ByteBuffer.allocate(bloomWords * 8);
+                words.asLongBuffer().put(bloom);
+                raf.write(words.array());
+                raf.getFD().sync();
+            } finally {
+                raf.close();
+            }
+            if (!tmp.renameTo(out) && (!out.delete() || !tmp.renameTo(out))) {
+                throw new IOException("Couldn't replace " + out);
+            }
+            return unique;
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+            data.delete();
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Splits the plain text list into sorted runs without duplicates.
+     * @param text The plain text list.
+     * @param out The blocklist file, the runs are stored next to it.
+     * @param chunkSize The maximum count of domains per run.
+     * @param runs The list the run files are added to.
+     * @return The count of domains in all runs.
+     * @throws IOException If reading or writing fails.
+     */
+    private static long writeRuns(File text, File out, int chunkSize, List<File> runs) throws IOException {
+        long total = 0;
+        List<String> chunk = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(text), "UTF-8"));
+        try {
+            String line;
+            do {
+                line = reader.readLine();
+                String domain = line == null ? null : canonicalize(line);
+                if (domain != null) {
+                    chunk.add(domain);
+                }
+                if (chunk.size() >= chunkSize || line == null && !chunk.isEmpty()) {
+                    File run = new File(out.getPath() + ".run" + runs.size());
+                    runs.add(run);
+                    total += writeRun(chunk, run);
+                    chunk.clear();
+                }
+            } while (line != null);
+        } finally {
+            reader.close();
+        }
+        return total;
+    }
+
+    /**
+     * Sorts the domains and writes them into a run file, skipping duplicates.
+     * @param chunk The domains.
+     * @param run The run file.
+     * @return The count of written domains.
+     * @throws IOException If writing fails.
+     */
+    private static int writeRun(List<String> chunk, File run) throws IOException {
+        Collections.sort(chunk);
+        int written = 0;
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)));
+        try {
+            String last = null;
+            for (String domain : chunk) {
+                if (!domain.equals(last)) {
+                    os.writeUTF(domain);
+                    written++;
+                }
+                last = domain;
+            }
+        } finally {
+            os.close();
+        }
+        return written;
+    }
+
+    /**
+     * Merges the sorted runs. Writes a placeholder header and Bloom filter followed by the offsets into out
+     * and the domain bytes into data, which is then appended to out. Fills the Bloom filter.
+     * @param runs The run files.
+     * @param out The blocklist file.
+     * @param data The temporary file for the domain bytes.
+     * @param bloom The Bloom filter.
+     * @return The count of unique domains.
+     * @throws IOException If reading or writing fails.
+     */
+    private static int merge(List<File> runs, File out, File data, long[] bloom) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(Math.max(1, runs.size()));
+        DataOutputStream offsets = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(out)));
+        int unique = 0;
+        try {
+            DataOutputStream bytes = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(data)));
+            try {
+                for (File file : runs) {
+                    Run run = new Run(file);
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+                offsets.write(new byte[HEADER_SIZE + bloom.length * 8]);
+                long bits = bloom.length * 64L;
+                String last = null;
+                int offset = 0;
+                while (!queue.isEmpty()) {
+                    Run run = queue.poll();
+                    String domain = run.head;
+                    if (!domain.equals(last)) {
+                        if ((long) offset + domain.length() > Integer.MAX_VALUE) {
+                            throw new IOException("blocklist too large");
+                        }
+                        offsets.writeInt(offset);
+                        bytes.writeBytes(domain);
+                        offset += domain.length();
+                        long hash = hash(domain, 0, domain.length());
+                        for (int i = 0; i < HASHES; i++) {
+                            long bit = bloomIndex(hash, i, bits);
+                            bloom[(int) (bit >>> 6)] |= 1L << bit;
+                        }
+                        unique++;
+                        last = domain;
+                    }
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+                offsets.writeInt(offset);
+            } finally {
+                for (Run run : queue) {
+                    run.close();
+                }
+                bytes.close();
+            }
+            InputStream is = new FileInputStream(data);
+            try {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = is.read(buffer)) > 0) {
+                    offsets.write(buffer, 0, read);
+                }
+            } finally {
+                is.close();
+            }
+        } finally {
+            offsets.close();
+        }
+        return unique;
+    }
+
+    /** A sorted run file being merged, ordered by its current domain. */
+    private static final class Run implements Comparable<Run> {
+        /** The run file. */
+        private final DataInputStream in;
+        /** The current domain. */
+        private String head;
+
+        /**
+         * Opens the run.
+         * @param file The run file.
+         * @throws IOException If the file can't be opened.
+         */
+        private Run(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        }
+
+        /**
+         * Reads the next domain.
+         * @return False if the run is exhausted.
+         * @throws IOException If reading fails.
+         */
+        private boolean next() throws IOException {
+            try {
+                head = in.readUTF();
+                return true;
+            } catch (EOFException e) {
+                return false;
+            }
+        }
+
+        /** Closes the run file. */
+        private void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+
+        public int compareTo(Run o) {
+            return head.compareTo(o.head);
+        }
+    }
+
+    /**
+     * Finds the newest blocklist file generation in the folder.
+     * @param folder The folder.
+     * @return The newest generation, doesn't exist if there is none.
+     */
+    public static File latest(File folder) {
+        int generation = newestGeneration(folder);
+        return generation(folder, Math.max(0, generation));
+    }
+
+    /**
+     * Returns a new blocklist file generation, so that a rebuild never replaces a mapped file.
+     * @param folder The folder.
+     * @return The file for the next generation.
+     */
+    public static File nextGeneration(File folder) {
+        return generation(folder, newestGeneration(folder) + 1);
+    }
+
+    /**
+     * Deletes all other blocklist file generations in the folder.
+     * Fails silently for files which are still mapped (on Windows), those are deleted next time.
+     * @param folder The folder.
+     * @param keep The generation to keep.
+     */
+    public static void deleteGenerations(File folder, File keep) {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (generationOf(file.getName()) >= 0 && !file.equals(keep) && !file.delete()) {
+                Log.debug(Log.Subsystem.GENERAL, "Couldn't delete the old domain blocklist {}", file.getName());
+            }
+        }
+    }
+
+    /**
+     * @param folder The folder.
+     * @return The newest existing generation number, -1 if there is none.
+     */
+    private static int newestGeneration(File folder) {
+        int newest = -1;
+        String[] names = folder.list();
+        if (names != null) {
+            for (String name : names) {
+                newest = Math.max(newest, generationOf(name));
+            }
+        }
+        return newest;
+    }
+
+    /**
+     * @param folder The folder.
+     * @param generation The generation number.
+     * @return The blocklist file (generation 0 is the unnumbered file of older versions).
+     */
+    private static File generation(File folder, int generation) {
+        return new File(folder, generation == 0 ? FILE_PREFIX + FILE_SUFFIX
+                                                : FILE_PREFIX + "." + generation + FILE_SUFFIX);
+    }
+
+    /**
+     * @param name A file name.
+     * @return The generation number of the blocklist file or -1 if it isn't one.
+     */
+    private static int generationOf(String name) {
+        if (name.equals(FILE_PREFIX + FILE_SUFFIX)) {
+            return 0;
+        } else if (!name.startsWith(FILE_PREFIX + ".") || !name.endsWith(FILE_SUFFIX)) {
+            return -1;
+        }
+        String number = name.substring(FILE_PREFIX.length() + 1, name.length() - FILE_SUFFIX.length());
+        if (number.isEmpty() || number.length() > 9) {
+            return -1;
+        }
+        for (int i = 0; i < number.length(); i++) {
+            if (!Character.isDigit(number.charAt(i))) {
+                return -1;
+            }
+        }
+        return Integer.parseInt(number);
+    }
+
+    /**
+     * @param line A line of the plain text list.
+     * @return The canonical domain or null if the line doesn't contain a valid domain.
+     */
+    private static String canonicalize(String line) {
+        String domain = line.trim().toLowerCase();
+        if (domain.startsWith("*.")) {
+            domain = domain.substring(2);
+        }
+        if (domain.endsWith(".")) {
+            domain = domain.substring(0, domain.length() - 1);
+        }
+        if (domain.indexOf('.') <= 0 || domain.startsWith("#")) {
+            return null;
+        }
+        for (int i = 0; i < domain.length(); i++) {
+            char c = domain.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= '0' && c <= '9' || c == '-' || c == '.')) {
+                return null;
+            }
+        }
+        return domain;
+    }
+
+    /**
+     * Checks whether the domain or one of its parent domains is blocked.
+     * @param domain The domain, case-insensitive.
+     * @return True iff the domain is blocked.
+     */
+    public boolean matches(CharSequence domain) {
+        if (count == 0) {
+            return false;
+        }
+        int length = domain.length();
+        int from = 0;
+        while (from < length) {
+            int dot = indexOf(domain, '.', from);
+            if (dot < 0) {
+                break; // don't check top level domains
+            }
+            if (contains(domain, from, length)) {
+                return true;
+            }
+            from = dot + 1;
+        }
+        return false;
+    }
+
+    /**
+     * @param domain The domain.
+     * @param from Start index of the suffix to check.
+     * @param to End index of the suffix to check.
+     * @return True iff the suffix is stored.
+     */
+    private boolean contains(CharSequence domain, int from, int to) {
+        long hash = hash(domain, from, to);
+        for (int i = 0; i < hashes; i++) {
+            long bit = bloomIndex(hash, i, bloomBits);
+            if ((buf.getLong(HEADER_SIZE + (int) (bit >>> 6) * 8) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        // binary search
+        int offsets = HEADER_SIZE + (int) (bloomBits / 8);
+        int data = offsets + (count + 1) * 4;
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int start = data + buf.getInt(offsets + mid * 4);
+            int end = data + buf.getInt(offsets + mid * 4 + 4);
+            int cmp = compare(start, end, domain, from, to);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compares a stored domain with a part of the given domain.
+     * @param start Start position of the stored domain.
+     * @param end End position of the stored domain.
+     * @param domain The domain.
+     * @param from Start index in the domain.
+     * @param to End index in the domain.
+     * @return The comparison result (negative iff the stored domain is smaller).
+     */
+    private int compare(int start, int end, CharSequence domain, int from, int to) {
+        while (start < end && from < to) {
+            int diff = (buf.get(start++) & 0xFF) - toLower(domain.charAt(from++));
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return (end - start) - (to - from);
+    }
+
+    /** @return The count of stored domains. */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @param s The string.
+     * @param c The character.
+     * @param from The start index.
+     * @return The index of the first occurrence of c after from or -1.
+     */
+    private static int indexOf(CharSequence s, char c, int from) {
+        for (int i = from; i < s.length(); i++) {
+            if (s.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param c The character.
+     * @return The lower case character (ASCII only).
+     */
+    private static int toLower(char c) {
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the lower case characters, finalized by a MurmurHash3 mix.
+     * @param s The string.
+     * @param from The start index.
+     * @param to The end index.
+     * @return The hash.
+     */
+    private static long hash(CharSequence s, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= toLower(s.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Double hashing: index_i = h1 + i * h2.
+     * @param hash The hash.
+     * @param i The hash function index.
+     * @param bits The Bloom filter size in bits.
+     * @return The bit index.
+     */
+    private static long bloomIndex(long hash, int i, long bits) {
+        long h1 = hash & 0xFFFFFFFFL;
+        long h2 = (hash >>> 32) | 1;
+        return (h1 + i * h2) % bits;
+    }
+
+    /** @return The current blocklist. */
+    public static DomainBlocklist get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current blocklist.
+     * @param blocklist The new blocklist.
+     */
+    public static void set(DomainBlocklist blocklist) {
+        current = blocklist;
+    }
+}
@@ -0,0 +1,102 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.util.IPPrefixTree;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collection;
+
+/**
+ * Immutable list of blocked IP ranges (e.g. known server hosting ranges).
+ * Servers resolving to one of these ranges are considered servers without being pinged.
+ * @author upsj
+ * @version 1.0
+ */
+public final class IPBlocklist {
+    /** Blocklist without any entries. */
+    public static final IPBlocklist EMPTY = new IPBlocklist(new IPPrefixTree<String>());
+    /** The current blocklist, replaced atomically on reload. */
+    private static volatile IPBlocklist current = EMPTY;
+
+    /** The blocked ranges, mapped to their textual representation. */
+    private final IPPrefixTree<String> ranges;
+
+    /**
+     * Initializes the blocklist.
+     * @param ranges The blocked ranges.
+     */
+    private IPBlocklist(IPPrefixTree<String> ranges) {
+        this.ranges = ranges;
+    }
+
+    /**
+     * Compiles the given ranges and the ranges from the given file.
+     * @param entries The IP ranges in CIDR notation (or single addresses).
+     * @param file A file containing one range per line ('#' starts a comment) or null.
+     * @param invalid Receives all entries that couldn't be parsed.
+     * @return The compiled blocklist.
+     * @throws IOException If reading the file fails.
+     */
+    public static IPBlocklist compile(Collection<String> entries, File file, Collection<String> invalid)
+            throws IOException {
+        IPPrefixTree<String> ranges = new IPPrefixTree<String>();
+        for (String entry : entries) {
+            addRange(ranges, entry, invalid);
+        }
+        if (file != null && file.isFile()) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comment = line.indexOf('#');
+                    addRange(ranges, comment < 0 ? line : line.substring(0, comment), invalid);
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        return new IPBlocklist(ranges);
+    }
+
+    /**
+     * @param ranges The ranges.
+     * @param entry The entry to add.
+     * @param invalid Receives the entry if it couldn't be parsed.
+     */
+    private static void addRange(IPPrefixTree<String> ranges, String entry, Collection<String> invalid) {
+        String range = entry.trim();
+        if (range.length() > 0 && !ranges.put(range, range)) {
+            invalid.add(entry);
+        }
+    }
+
+    /**
+     * Allocation-free longest-prefix match.
+     * @param address The packed IP address.
+     * @return The blocked range containing the address or null.
+     */
+    public String match(byte[] address) {
+        return ranges.longestMatch(address);
+    }
+
+    /** @return The count of blocked ranges. */
+    public int size() {
+        return ranges.size();
+    }
+
+    /** @return The current blocklist. */
+    public static IPBlocklist get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current blocklist.
+     * @param blocklist The new blocklist.
+     */
+    public static void set(IPBlocklist blocklist) {
+        current = blocklist;
+    }
+}
@@ -0,0 +1,295 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+import org.bukkit.Material;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.Sign;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.HumanEntity;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.block.SignChangeEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryType;
+import org.bukkit.event.player.PlayerEditBookEvent;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import org.bukkit.inventory.meta.BookMeta;
+import org.bukkit.inventory.meta.ItemMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks text players enter outside of the chat (signs, books and items renamed in an anvil).
+ * The text is classified off the main thread, the input itself isn't delayed.
+ * Once it turned out to be advertisement, the actions are taken and the text is removed again.
+ * @author upsj
+ * @version 1.0
+ */
+@ConfigSection(name = AntiAdvertisingPlugin.CONF_INPUTS,
+               description = "Configuration of the input sources checked besides the chat and commands.",
+               parent = AntiAdvertisingPlugin.class,
+               values = {
+                   @ConfigVar(name = InputListener.CONF_SIGNS, type = ConfigVarType.BOOLEAN,
+                              description = "Check the text written on signs, advertising signs are cleared."),
+                   @ConfigVar(name = InputListener.CONF_BOOKS, type = ConfigVarType.BOOLEAN,
+                              description = "Check the title and pages of edited books, "
+                                          + "advertising books are reverted to their previous content."),
+                   @ConfigVar(name = InputListener.CONF_ANVILS, type = ConfigVarType.BOOLEAN,
+                              description = "Check the names of items renamed in an anvil, "
+                                          + "advertising names are removed from the items.")
+               }
+)
+public class InputListener implements Listener, Configurable {
+    /** Config value for checking signs. */
+    public static final String CONF_SIGNS = "signs";
+    /** Config value for checking books. */
+    public static final String CONF_BOOKS = "books";
+    /** Config value for checking anvils. */
+    public static final String CONF_ANVILS = "anvils";
+
+    /** The classification service. */
+    private final ClassificationService service;
+    /** The action handler. */
+    private final ActionHandler handler;
+    /** Should the inputs be checked at all? */
+    private boolean enabled;
+    /** Should signs be checked? */
+    private boolean signs;
+    /** Should books be checked? */
+    private boolean books;
+    /** Should anvils be checked? */
+    private boolean anvils;
+
+    /**
+     * Initializes the input listener.
+     * @param service The classification service.
+     * @param handler The action handler.
+     */
+    public InputListener(ClassificationService service, ActionHandler handler) {
+        this.service = service;
+        this.handler = handler;
+        this.enabled = true;
+    }
+
+    /**
+     * Sets the enabled status of the input listener.
+     * @param enabled The enabled status.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Called when a player writes on a sign.
+     * @param event The sign event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSignChange(SignChangeEvent event) {
+        if (!signs || !shouldCheck(event.getPlayer())) {
+            return;
+        }
+        String text = ChatHistory.join(event.getLines());
+        if (text.isEmpty()) {
+            return;
+        }
+        final Block block = event.getBlock();
+        service.classify(event.getPlayer().getName(), text, new ActionCallback() {
+            @Override
+            protected void revert(ChatMessage msg) {
+                if (block.getType() != Material.SIGN_POST && block.getType() != Material.WALL_SIGN) {
+                    return;
+                }
+                BlockState state = block.getState();
+                if (state instanceof Sign) {
+                    Sign sign = (Sign) state;
+                    for (int i = 0; i < sign.getLines().length; i++) {
+                        sign.setLine(i, "");
+                    }
+                    sign.update();
+                }
+            }
+        });
+    }
+
+    /**
+     * Called when a player edits or signs a book.
+     * @param event The book event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEditBook(PlayerEditBookEvent event) {
+        final Player player = event.getPlayer();
+        if (!books || !shouldCheck(player)) {
+            return;
+        }
+        BookMeta book = event.getNewBookMeta();
+        List<String> parts = new ArrayList<String>();
+        if (book.hasTitle()) {
+            parts.add(book.getTitle());
+        }
+        parts.addAll(book.getPages());
+        // every page on its own, so the scan limits apply per page, and every page boundary
+        List<String> texts = new ArrayList<String>();
+        String previous = null;
+        for (String part : parts) {
+            if (part == null || part.trim().isEmpty()) {
+                continue;
+            }
+            if (previous != null) {
+                texts.add(ChatHistory.join(new String[] {tail(previous), head(part)}));
+            }
+            texts.add(part);
+            previous = part;
+        }
+        if (texts.isEmpty()) {
+            return;
+        }
+        final int slot = event.getSlot();
+        final BookMeta previousMeta = event.getPreviousBookMeta().clone();
+        ActionCallback callback = new ActionCallback() {
+            /** True once the book was reverted. */
+            private boolean reverted;
+
+            @Override
+            public void classified(ChatMessage msg) {
+                // the actions are taken once per book, for the first advertising part
+                if (!reverted) {
+                    super.classified(msg);
+                }
+            }
+
+            @Override
+            protected void revert(ChatMessage msg) {
+                reverted = true;
+                PlayerInventory inventory = player.getInventory();
+                ItemStack item = slot >= 0 && slot < inventory.getSize() ? inventory.getItem(slot) : null;
+                if (item == null || item.getType() != Material.BOOK_AND_QUILL
+                        && item.getType() != Material.WRITTEN_BOOK) {
+                    return;
+                }
+                item.setType(Material.BOOK_AND_QUILL);
+                item.setItemMeta(previousMeta);
+                inventory.setItem(slot, item);
+            }
+        };
+        for (String text : texts) {
+            service.classify(player.getName(), text, callback);
+        }
+    }
+
+    /**
+     * @param page A page.
+     * @return The last words of the page (at most {@link ChatHistory#MAX_CONTEXT} characters).
+     */
+    private static String tail(String page) {
+        if (page.length() <= ChatHistory.MAX_CONTEXT) {
+            return page;
+        }
+        String tail = page.substring(page.length() - ChatHistory.MAX_CONTEXT);
+        int space = tail.indexOf(' ');
+        return space < 0 ? tail : tail.substring(space + 1);
+    }
+
+    /**
+     * @param page A page.
+     * @return The first words of the page (at most {@link ChatHistory#MAX_CONTEXT} characters).
+     */
+    private static String head(String page) {
+        if (page.length() <= ChatHistory.MAX_CONTEXT) {
+            return page;
+        }
+        String head = page.substring(0, ChatHistory.MAX_CONTEXT);
+        int space = head.lastIndexOf(' ');
+        return space < 0 ? head : head.substring(0, space);
+    }
+
+    /**
+     * Called when a player clicks in an inventory, checks taking a renamed item out of an anvil.
+     * @param event The inventory event.
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (!anvils || event.getInventory().getType() != InventoryType.ANVIL
+                || event.getSlotType() != InventoryType.SlotType.RESULT) {
+            return;
+        }
+        final HumanEntity entity = event.getWhoClicked();
+        ItemStack item = event.getCurrentItem();
+        if (!(entity instanceof Player) || !shouldCheck((Player) entity)
+                || item == null || !item.hasItemMeta() || !item.getItemMeta().hasDisplayName()) {
+            return;
+        }
+        final String name = item.getItemMeta().getDisplayName();
+        service.classify(entity.getName(), name, new ActionCallback() {
+            @Override
+            protected void revert(ChatMessage msg) {
+                // the renamed item may be anywhere by now
+                entity.setItemOnCursor(stripName(entity.getItemOnCursor(), name));
+                PlayerInventory inventory = entity.getInventory();
+                ItemStack[] contents = inventory.getContents();
+                for (int i = 0; i < contents.length; i++) {
+                    if (contents[i] != null) {
+                        inventory.setItem(i, stripName(contents[i], name));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes the display name from an item if it has the given one.
+     * @param item The item or null.
+     * @param name The display name.
+     * @return The item.
+     */
+    private static ItemStack stripName(ItemStack item, String name) {
+        if (item != null && item.hasItemMeta() && name.equals(item.getItemMeta().getDisplayName())) {
+            ItemMeta meta = item.getItemMeta();
+            meta.setDisplayName(null);
+            item.setItemMeta(meta);
+        }
+        return item;
+    }
+
+    /**
+     * @param player The player.
+     * @return True iff input by the player should be checked.
+     */
+    private boolean shouldCheck(Player player) {
+        return enabled && !player.hasPermission(Permissions.IGNORE);
+    }
+
+    @Override
+    public void reloadConfig(ConfigurationSection config) {
+        signs = config.getBoolean(CONF_SIGNS, true);
+        books = config.getBoolean(CONF_BOOKS, true);
+        anvils = config.getBoolean(CONF_ANVILS, true);
+        config.set(CONF_SIGNS, signs);
+        config.set(CONF_BOOKS, books);
+        config.set(CONF_ANVILS, anvils);
+    }
+
+    /** Takes the actions and reverts the input once it turned out to be advertisement. */
+    private abstract class ActionCallback implements ClassificationService.Callback {
+        @Override
+        public void classified(ChatMessage msg) {
+            handler.takeActions(msg);
+            if (msg.getState().hasAdvertisement()) {
+                Log.debug(Log.Subsystem.CHAT, "Reverting '{}' by {}", msg.getMessage(), msg.getSender());
+                revert(msg);
+            }
+        }
+
+        /**
+         * Removes the advertising text again.
+         * @param msg The advertising text.
+         */
+        protected abstract void revert(ChatMessage msg);
+    }
+}
@@ -0,0 +1,118 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.AhoCorasick;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Immutable, precompiled list of keywords (e.g. names of advertised networks)
+ * that are advertisement even without an address.
+ * A keyword is either advertisement by itself ({@code minestorm})
+ * or a hint to the address to be checked ({@code minestorm=play.minestorm.net}).
+ * Keywords only match whole words, case-insensitively.
+ * @author upsj
+ * @version 1.0
+ */
+public final class Keywords {
+    /** Keyword list without any entries. */
+    public static final Keywords EMPTY = new Keywords(null, new ArrayList<String>(), new ArrayList<String>());
+    /** The current keyword list, replaced atomically. */
+    private static volatile Keywords current = EMPTY;
+
+    /** The automaton, null if empty. */
+    private final AhoCorasick automaton;
+    /** The keywords (lower case). */
+    private final List<String> keywords;
+    /** The hinted addresses or null for keywords that are advertisement by themselves. */
+    private final List<String> hints;
+
+    /**
+     * Initializes the keyword list.
+     * @param automaton The automaton.
+     * @param keywords The keywords.
+     * @param hints The hinted addresses.
+     */
+    private Keywords(AhoCorasick automaton, List<String> keywords, List<String> hints) {
+        this.automaton = automaton;
+        this.keywords = keywords;
+        this.hints = hints;
+    }
+
+    /**
+     * Compiles the given keyword entries. Expensive for long lists, should be called asynchronously.
+     * @param entries The entries ({@code keyword} or {@code keyword=address}).
+     * @param invalid Receives all entries that couldn't be parsed.
+     * @return The compiled keyword list.
+     */
+    public static Keywords compile(Collection<String> entries, Collection<String> invalid) {
+        List<String> keywords = new ArrayList<String>();
+        List<String> hints = new ArrayList<String>();
+        for (String entry : entries) {
+            int separator = entry.indexOf('=');
+            String keyword = (separator < 0 ? entry : entry.substring(0, separator)).trim().toLowerCase();
+            String hint = separator < 0 ? null : entry.substring(separator + 1).trim();
+            if (!isValid(entry)) {
+                invalid.add(entry);
+            } else if (!keywords.contains(keyword)) {
+                keywords.add(keyword);
+                hints.add(hint);
+            }
+        }
+        if (keywords.isEmpty()) {
+            return EMPTY;
+        }
+        return new Keywords(new AhoCorasick(keywords), keywords, hints);
+    }
+
+    /**
+     * Checks a keyword entry without compiling it, cheap enough for the main thread.
+     * @param entry The entry ({@code keyword} or {@code keyword=address}).
+     * @return True iff the keyword isn't empty and the address (if any) can be parsed.
+     */
+    public static boolean isValid(String entry) {
+        int separator = entry.indexOf('=');
+        String keyword = (separator < 0 ? entry : entry.substring(0, separator)).trim();
+        String hint = separator < 0 ? null : entry.substring(separator + 1).trim();
+        return keyword.length() > 0 && (hint == null || ChatMessage.parseSingleServer(hint, false) != null);
+    }
+
+    /** @return The automaton or null if there are no keywords. */
+    public AhoCorasick getAutomaton() {
+        return automaton;
+    }
+
+    /**
+     * @param keyword The keyword index reported by the automaton.
+     * @return The server the keyword stands for: a final verdict
+     * or a potential server to be checked (null if the hint couldn't be parsed).
+     */
+    public PotentialServer getServer(int keyword) {
+        String hint = hints.get(keyword);
+        if (hint == null) {
+            return ServerVerdict.keyword(keywords.get(keyword));
+        }
+        return ChatMessage.parseSingleServer(hint, false);
+    }
+
+    /** @return The count of keywords. */
+    public int size() {
+        return keywords.size();
+    }
+
+    /** @return The current keyword list. */
+    public static Keywords get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current keyword list.
+     * @param keywords The new keyword list.
+     */
+    public static void set(Keywords keywords) {
+        current = keywords;
+    }
+}
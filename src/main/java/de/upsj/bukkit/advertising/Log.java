@@ -1,21 +1,76 @@
 package de.upsj.bukkit.advertising;
 
+import de.upsj.bukkit.advertising.util.AsyncFileAppender;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 /**
  * Utility class for logging.
+ * Debug and trace messages take a format with {} placeholders and their arguments,
+ * which are only formatted (and converted to strings) if the level of their subsystem is enabled,
+ * so disabled messages don't allocate anything. Enabled debug and trace messages are written to
+ * the plugin's own log file by an asynchronous appender if configured, to the server log otherwise.
  * @author upsj
  * @version 1.0
  */
 public final class Log {
+    /** Placeholder for the arguments. */
+    private static final String PLACEHOLDER = "{}";
+
+    /** The parts of the plugin with separate log levels. */
+    public enum Subsystem {
+        /** Chat and input listeners, message parsing. */
+        CHAT,
+        /** Server checker and verdict cache. */
+        CHECKER,
+        /** DNS lookups and pings. */
+        NETWORK,
+        /** Action handler and actions. */
+        ACTIONS,
+        /** Everything else (configuration, commands). */
+        GENERAL
+    }
+
+    /** The log levels. */
+    public enum Level {
+        /** Information and warnings only. */
+        INFO,
+        /** Debug messages. */
+        DEBUG,
+        /** Debug messages and a sample of the trace messages. */
+        TRACE
+    }
+
     /** Logger. */
     private static Logger log = Logger.getLogger("Minecraft");
     /** Debug mode. */
     private static boolean debug = true;
+    /** The level of every subsystem, replaced as a whole. */
+    private static volatile Level[] levels = levels(Level.DEBUG);
+    /** Every n-th trace message is logged. */
+    private static volatile int traceSampling = 1;
+    /** Count of trace messages, only counted if tracing is enabled. */
+    private static final AtomicLong TRACED = new AtomicLong();
+    /** The file appender or null to log to the server log. */
+    private static volatile AsyncFileAppender appender;
 
     /** Avoid instances. */
     private Log() { }
 
+    /**
+     * @param level The level.
+     * @return A level array with all subsystems at the given level.
+     */
+    private static Level[] levels(Level level) {
+        Level[] result = new Level[Subsystem.values().length];
+        Arrays.fill(result, level);
+        return result;
+    }
+
     /**
      * Initializes the logging.
      * @param logger The logger.
@@ -23,15 +78,70 @@ public final class Log {
      */
     public static void init(Logger logger, boolean dbg) {
         log = logger;
-        debug = dbg;
+        setDebugMode(dbg);
     }
 
     /**
-     * Sets the debug mode status.
+     * Sets the debug mode status, setting all subsystems to debug or info level.
      * @param dbg Debug mode?
      */
     public static void setDebugMode(boolean dbg) {
         debug = dbg;
+        levels = levels(dbg ? Level.DEBUG : Level.INFO);
+    }
+
+    /**
+     * @return True iff the debug mode is enabled.
+     */
+    public static boolean isDebugMode() {
+        return debug;
+    }
+
+    /**
+     * Sets the level of a single subsystem.
+     * @param subsystem The subsystem.
+     * @param level The level.
+     */
+    public static synchronized void setLevel(Subsystem subsystem, Level level) {
+        Level[] copy = levels.clone();
+        copy[subsystem.ordinal()] = level;
+        levels = copy;
+    }
+
+    /**
+     * @param subsystem The subsystem.
+     * @return The level of the subsystem.
+     */
+    public static Level getLevel(Subsystem subsystem) {
+        return levels[subsystem.ordinal()];
+    }
+
+    /**
+     * @param subsystem The subsystem.
+     * @return True iff debug messages of the subsystem are logged.
+     */
+    public static boolean isDebug(Subsystem subsystem) {
+        return levels[subsystem.ordinal()] != Level.INFO;
+    }
+
+    /**
+     * Sets the trace sampling rate.
+     * @param n Every n-th trace message is logged.
+     */
+    public static void setTraceSampling(int n) {
+        traceSampling = Math.max(1, n);
+    }
+
+    /**
+     * Replaces the file appender, closing the old one.
+     * @param fileAppender The new appender or null to log to the server log.
+     */
+    public static synchronized void setAppender(AsyncFileAppender fileAppender) {
+        AsyncFileAppender old = appender;
+        appender = fileAppender;
+        if (old != null) {
+            old.close();
+        }
     }
 
     /**
@@ -40,6 +150,7 @@ public final class Log {
      */
     public static void log(String message) {
         log.info(message);
+        append("INFO", null, message);
     }
 
     /**
@@ -48,6 +159,7 @@ public final class Log {
      */
     public static void warn(String message) {
         log.warning(message);
+        append("WARN", null, message);
     }
 
     /**
@@ -55,8 +167,117 @@ public final class Log {
      * @param message The message.
      */
     public static void debug(String message) {
-        if (debug) {
-            log.info("[DEBUG] " + message);
+        if (isDebug(Subsystem.GENERAL)) {
+            write("DEBUG", Subsystem.GENERAL, message);
+        }
+    }
+
+    /**
+     * Prints a debug message, if the subsystem is at debug level.
+     * @param subsystem The subsystem.
+     * @param format The message, {} is replaced by the argument.
+     * @param arg The argument.
+     */
+    public static void debug(Subsystem subsystem, String format, Object arg) {
+        if (isDebug(subsystem)) {
+            write("DEBUG", subsystem, format(format, arg, null, null));
+        }
+    }
+
+    /**
+     * Prints a debug message, if the subsystem is at debug level.
+     * @param subsystem The subsystem.
+     * @param format The message, the {} are replaced by the arguments.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     */
+    public static void debug(Subsystem subsystem, String format, Object arg1, Object arg2) {
+        if (isDebug(subsystem)) {
+            write("DEBUG", subsystem, format(format, arg1, arg2, null));
+        }
+    }
+
+    /**
+     * Prints a debug message, if the subsystem is at debug level.
+     * @param subsystem The subsystem.
+     * @param format The message, the {} are replaced by the arguments.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     */
+    public static void debug(Subsystem subsystem, String format, Object arg1, Object arg2, Object arg3) {
+        if (isDebug(subsystem)) {
+            write("DEBUG", subsystem, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    /**
+     * Prints a sample of the trace messages, if the subsystem is at trace level.
+     * @param subsystem The subsystem.
+     * @param format The message, the {} are replaced by the arguments.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     */
+    public static void trace(Subsystem subsystem, String format, Object arg1, Object arg2) {
+        if (levels[subsystem.ordinal()] == Level.TRACE && TRACED.getAndIncrement() % traceSampling == 0) {
+            write("TRACE", subsystem, format(format, arg1, arg2, null));
+        }
+    }
+
+    /**
+     * Writes an enabled debug or trace message to the file appender or the server log.
+     * @param level The level name.
+     * @param subsystem The subsystem.
+     * @param message The message.
+     */
+    private static void write(String level, Subsystem subsystem, String message) {
+        if (!append(level, subsystem, message)) {
+            log.info("[" + level + "] " + message);
+        }
+    }
+
+    /**
+     * Appends a message to the file appender.
+     * @param level The level name.
+     * @param subsystem The subsystem or null.
+     * @param message The message.
+     * @return False iff there is no file appender.
+     */
+    private static boolean append(String level, Subsystem subsystem, String message) {
+        AsyncFileAppender out = appender;
+        if (out == null) {
+            return false;
+        }
+        StringBuilder line = new StringBuilder(message.length() + 48);
+        line.append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()))
+            .append(' ').append(level);
+        if (subsystem != null) {
+            line.append(' ').append(subsystem);
+        }
+        line.append(" [").append(Thread.currentThread().getName()).append("] ").append(message);
+        out.append(line.toString());
+        return true;
+    }
+
+    /**
+     * Replaces the placeholders by the arguments.
+     * @param format The format.
+     * @param arg1 The first argument.
+     * @param arg2 The second argument.
+     * @param arg3 The third argument.
+     * @return The formatted message.
+     */
+    static String format(String format, Object arg1, Object arg2, Object arg3) {
+        StringBuilder result = new StringBuilder(format.length() + 64);
+        int from = 0;
+        for (int i = 0; i < 3; i++) {
+            int index = format.indexOf(PLACEHOLDER, from);
+            if (index < 0) {
+                break;
+            }
+            result.append(format, from, index).append(i == 0 ? arg1 : (i == 1 ? arg2 : arg3));
+            from = index + PLACEHOLDER.length();
         }
+        return result.append(format, from, format.length()).toString();
     }
 }
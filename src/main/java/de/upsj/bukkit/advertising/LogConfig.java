@@ -0,0 +1,119 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.util.AsyncFileAppender;
+import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Configuration of the log levels per subsystem and the plugin's own log file.
+ * @author upsj
+ * @version 1.0
+ */
+@ConfigSection(name = AntiAdvertisingPlugin.CONF_LOGGING,
+               description = "Logging configuration. The levels are default (following the debug mode), "
+                           + "info, debug or trace.",
+               parent = AntiAdvertisingPlugin.class,
+               values = {
+                   @ConfigVar(name = "chat", type = ConfigVarType.STRING,
+                              description = "The log level of the chat and input listeners."),
+                   @ConfigVar(name = "checker", type = ConfigVarType.STRING,
+                              description = "The log level of the server checker."),
+                   @ConfigVar(name = "network", type = ConfigVarType.STRING,
+                              description = "The log level of DNS lookups and pings."),
+                   @ConfigVar(name = "actions", type = ConfigVarType.STRING,
+                              description = "The log level of the actions."),
+                   @ConfigVar(name = "general", type = ConfigVarType.STRING,
+                              description = "The log level of everything else."),
+                   @ConfigVar(name = LogConfig.CONF_TRACE_SAMPLING, type = ConfigVarType.INTEGER,
+                              description = "Only every n-th trace message is logged."),
+                   @ConfigVar(name = LogConfig.CONF_FILE, type = ConfigVarType.STRING,
+                              description = "Name of a file in the plugin folder debug and trace messages "
+                                          + "are written to (in the background), empty for the server log.")
+               }
+)
+public class LogConfig implements Configurable {
+    /** Config value for the trace sampling. */
+    public static final String CONF_TRACE_SAMPLING = "traceSampling";
+    /** Config value for the log file. */
+    public static final String CONF_FILE = "file";
+    /** Level value following the debug mode. */
+    private static final String DEFAULT = "default";
+
+    /** The plugin folder. */
+    private final File folder;
+    /** The current log file or null. */
+    private File file;
+
+    /**
+     * Initializes the logging configuration.
+     * @param folder The plugin folder.
+     */
+    public LogConfig(File folder) {
+        this.folder = folder;
+    }
+
+    @Override
+    public void reloadConfig(ConfigurationSection config) {
+        for (Log.Subsystem subsystem : Log.Subsystem.values()) {
+            String name = subsystem.name().toLowerCase();
+            String level = config.getString(name, DEFAULT);
+            if (!level.equalsIgnoreCase(DEFAULT)) {
+                try {
+                    Log.setLevel(subsystem, Log.Level.valueOf(level.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    Log.warn("Unknown log level " + level + " of " + name);
+                    level = DEFAULT;
+                }
+            }
+            config.set(name, level);
+        }
+
+        int sampling = config.getInt(CONF_TRACE_SAMPLING, 100);
+        if (sampling < 1) {
+            sampling = 100;
+        }
+        config.set(CONF_TRACE_SAMPLING, sampling);
+        Log.setTraceSampling(sampling);
+
+        String fileName = config.getString(CONF_FILE, "");
+        config.set(CONF_FILE, fileName);
+        File newFile = fileName.isEmpty() || folder == null ? null : new File(folder, fileName);
+        if (newFile == null ? file != null : !newFile.equals(file)) {
+            AsyncFileAppender appender = open(newFile);
+            Log.setAppender(appender);
+            // retried on the next reload if it couldn't be opened
+            file = appender == null ? null : newFile;
+        }
+    }
+
+    /**
+     * @param logFile The log file or null.
+     * @return The appender of the file or null.
+     */
+    private static AsyncFileAppender open(File logFile) {
+        if (logFile == null) {
+            return null;
+        }
+        try {
+            File parent = logFile.getAbsoluteFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Couldn't create " + parent);
+            }
+            return new AsyncFileAppender(logFile);
+        } catch (IOException e) {
+            Log.warn("Couldn't open the log file " + logFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Closes the log file. */
+    public void close() {
+        Log.setAppender(null);
+        file = null;
+    }
+}
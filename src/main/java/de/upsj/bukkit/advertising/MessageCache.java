@@ -0,0 +1,306 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of the verdicts of recently checked messages,
+ * keyed by a 64 bit fingerprint of the normalized message.
+ * The fingerprint only selects the entry; as players control the text and could craft collisions,
+ * a hit also has to match the normalized text itself.
+ * A repeated message (e.g. by a spam bot) is decided without scanning it again
+ * and without waiting for the server checker.
+ * Entries are invalid as soon as one of their server verdicts expires
+ * or the whitelist, blocklists, keywords or custom patterns are replaced.
+ * Thread-safe.
+ * @author upsj
+ * @version 1.0
+ */
+public class MessageCache {
+    /** The entries in access order. */
+    private final LinkedHashMap<Long, Entry> entries;
+    /** The maximal entry count, 0 if disabled. */
+    private volatile int capacity;
+    /** The maximal server verdict age (ms). */
+    private volatile long maxAge;
+
+    /**
+     * Initializes the cache.
+     * @param capacity The maximal entry count, 0 to disable the cache.
+     * @param maxAge The maximal server verdict age (ms).
+     */
+    public MessageCache(int capacity, long maxAge) {
+        this.entries = new LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MessageCache.Entry> eldest) {
+                return size() > MessageCache.this.capacity;
+            }
+        };
+        this.capacity = capacity;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Changes the limits, clearing the cache.
+     * @param capacity The maximal entry count, 0 to disable the cache.
+     * @param maxAge The maximal server verdict age (ms).
+     */
+    public synchronized void setLimits(int capacity, long maxAge) {
+        this.capacity = Math.max(0, capacity);
+        this.maxAge = maxAge;
+        entries.clear();
+    }
+
+    /**
+     * Changes the capacity, dropping the least recently used entries beyond it.
+     * @param capacity The maximal entry count, 0 to disable the cache.
+     */
+    public synchronized void setCapacity(int capacity) {
+        this.capacity = Math.max(0, capacity);
+        Iterator<Long> it = entries.keySet().iterator();
+        while (entries.size() > this.capacity) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    /**
+     * Changes the maximal server verdict age, applied to the cached entries, too.
+     * @param maxAge The maximal server verdict age (ms).
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /** @return The maximal server verdict age (ms). */
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    /** @return The maximal entry count, 0 if disabled. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /** @return True iff messages should be looked up at all. */
+    public boolean isEnabled() {
+        return capacity > 0;
+    }
+
+    /**
+     * Looks up the verdicts of a message.
+     * @param key The key of the message.
+     * @param now The current time (ms).
+     * @return The cached entry or null if there is no valid one.
+     */
+    public synchronized Entry get(Key key, long now) {
+        Entry entry = entries.get(key.hash);
+        if (entry == null) {
+            return null;
+        }
+        if (!entry.key.sameText(key) || !entry.key.sameConfiguration(key) || entry.isExpired(now, maxAge)) {
+            entries.remove(key.hash);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores the verdicts of a completely processed message.
+     * Messages with unfinished or failed server checks are ignored.
+     * @param msg The message.
+     */
+    public void put(ChatMessage msg) {
+        Key key = msg.getCacheKey();
+        if (key == null || !isEnabled() || !msg.getState().hasFinished()) {
+            return;
+        }
+        ServerVerdict[] verdicts = new ServerVerdict[msg.getMatchCount()];
+        for (int i = 0; i < verdicts.length; i++) {
+            PotentialServer match = msg.getMatch(i);
+            if (match == null || !match.isFinal()) {
+                return;
+            }
+            verdicts[i] = (ServerVerdict) match;
+        }
+        synchronized (this) {
+            entries.put(key.hash, new Entry(key, verdicts));
+        }
+    }
+
+    /** Removes all entries. */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /** @return The current entry count. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the scanned text, finalized by a MurmurHash3 mix.
+     * @param text The normalized text.
+     * @param boundary The index of the first character of the message
+     *                 (after the recent lines of its sender).
+     * @return The fingerprint.
+     */
+    public static long fingerprint(CharSequence text, int boundary) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= boundary;
+        h *= 0x100000001b3L;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Normalized text of a message together with the configuration it was checked with
+     * and the positions of its matches in the normalized text.
+     */
+    public static final class Key {
+        /** The fingerprint. */
+        private final long hash;
+        /** The normalized text (recent lines and message). */
+        private final String text;
+        /** The index of the first character of the message in the text. */
+        private final int boundary;
+        /** The whitelist the message was checked with. */
+        private final Whitelist whitelist;
+        /** The IP blocklist the message was checked with. */
+        private final IPBlocklist ipBlocklist;
+        /** The domain blocklist the message was checked with. */
+        private final DomainBlocklist domainBlocklist;
+        /** The keywords the message was checked with. */
+        private final Keywords keywords;
+        /** The custom patterns the message was checked with. */
+        private final CustomPatterns patterns;
+        /** Start indices of the matches in the normalized text. */
+        private int[] start;
+        /** End indices of the matches in the normalized text. */
+        private int[] end;
+
+        /**
+         * Initializes the key with the current configuration.
+         * @param text The normalized text.
+         * @param boundary The index of the first character of the message
+         *                 (after the recent lines of its sender).
+         * @param whitelist The whitelist used to check the message.
+         */
+        public Key(String text, int boundary, Whitelist whitelist) {
+            this.hash = fingerprint(text, boundary);
+            this.text = text;
+            this.boundary = boundary;
+            this.whitelist = whitelist;
+            this.ipBlocklist = IPBlocklist.get();
+            this.domainBlocklist = DomainBlocklist.get();
+            this.keywords = Keywords.get();
+            this.patterns = CustomPatterns.get();
+        }
+
+        /**
+         * Sets the positions of the matches, once the message has been scanned.
+         * @param start Start indices of the matches in the normalized text.
+         * @param end End indices of the matches in the normalized text.
+         */
+        public void setMatches(int[] start, int[] end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @param i The match index.
+         * @return The start index of the match in the normalized text.
+         */
+        public int getStart(int i) {
+            return start[i];
+        }
+
+        /**
+         * @param i The match index.
+         * @return The end index of the match in the normalized text.
+         */
+        public int getEnd(int i) {
+            return end[i];
+        }
+
+        /**
+         * @param other Another key (with the same fingerprint).
+         * @return True iff both messages have the same normalized text and boundary.
+         */
+        private boolean sameText(Key other) {
+            return boundary == other.boundary && text.equals(other.text);
+        }
+
+        /**
+         * @param other Another key.
+         * @return True iff both messages were checked with the same whitelist, blocklists, keywords and patterns.
+         */
+        private boolean sameConfiguration(Key other) {
+            return whitelist == other.whitelist && ipBlocklist == other.ipBlocklist
+                    && domainBlocklist == other.domainBlocklist && keywords == other.keywords
+                    && patterns == other.patterns;
+        }
+    }
+
+    /** Cached verdicts of a message. */
+    public static final class Entry {
+        /** The key of the message. */
+        private final Key key;
+        /** The server verdicts of the matches. */
+        private final ServerVerdict[] verdicts;
+
+        /**
+         * Initializes the entry.
+         * @param key The key.
+         * @param verdicts The server verdicts.
+         */
+        private Entry(Key key, ServerVerdict[] verdicts) {
+            this.key = key;
+            this.verdicts = verdicts;
+        }
+
+        /** @return The key (with the match positions). */
+        public Key getKey() {
+            return key;
+        }
+
+        /** @return The count of matches. */
+        public int getMatchCount() {
+            return verdicts.length;
+        }
+
+        /**
+         * @param i The match index.
+         * @return The server verdict of the match.
+         */
+        public ServerVerdict getVerdict(int i) {
+            return verdicts[i];
+        }
+
+        /**
+         * @param now The current time (ms).
+         * @param maxAge The maximal server verdict age (ms).
+         * @return True iff one of the server verdicts is expired.
+         */
+        private boolean isExpired(long now, long maxAge) {
+            for (ServerVerdict verdict : verdicts) {
+                if (verdict.isExpired(now, maxAge)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
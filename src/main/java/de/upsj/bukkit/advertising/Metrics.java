@@ -0,0 +1,181 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.util.LatencyHistogram;
+import de.upsj.bukkit.advertising.util.StripedCounter;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Instrumentation of the checking pipeline: latency histograms, verdict cache hit rates and queue depths.
+ * Recording is lock-free and doesn't allocate, so it is always enabled.
+ * @author upsj
+ * @version 1.0
+ */
+public final class Metrics {
+    /** Time (µs) spent in {@link ChatMessage#parse}. */
+    public static final LatencyHistogram PARSE = new LatencyHistogram();
+    /** Time (µs) of DNS lookups (SRV record and address). */
+    public static final LatencyHistogram DNS = new LatencyHistogram();
+    /** Time (µs) of server pings, including failed ones. */
+    public static final LatencyHistogram PING = new LatencyHistogram();
+    /** Time (µs) messages are held back from cancelling to passing them through or taking actions. */
+    public static final LatencyHistogram HOLD = new LatencyHistogram();
+    /** Servers answered by the verdict cache. */
+    public static final StripedCounter CACHE_HITS = new StripedCounter();
+    /** Servers joining a check already in progress. */
+    public static final StripedCounter CACHE_JOINS = new StripedCounter();
+    /** Servers that had to be checked. */
+    public static final StripedCounter CACHE_MISSES = new StripedCounter();
+    /** Failed DNS lookups. */
+    public static final StripedCounter DNS_FAILURES = new StripedCounter();
+    /** Failed pings. */
+    public static final StripedCounter PING_FAILURES = new StripedCounter();
+    /** Messages actions were taken for. */
+    public static final StripedCounter ADVERTISEMENT = new StripedCounter();
+
+    /** Count of servers being checked, updated every tick. */
+    private static volatile int processing;
+    /** Largest count of servers being checked. */
+    private static volatile int peakProcessing;
+    /** Count of held messages, updated every tick. */
+    private static volatile int pending;
+    /** Largest count of held messages. */
+    private static volatile int peakPending;
+    /** Time (ms) of the last reset. */
+    private static volatile long since = System.currentTimeMillis();
+
+    /** Avoid instances. */
+    private Metrics() { }
+
+    /**
+     * Updates the count of servers being checked. Only called by the main thread.
+     * @param depth The queue depth.
+     */
+    static void setProcessing(int depth) {
+        processing = depth;
+        if (depth > peakProcessing) {
+            peakProcessing = depth;
+        }
+    }
+
+    /**
+     * Updates the count of held messages. Only called by the main thread.
+     * @param depth The queue depth.
+     */
+    static void setPending(int depth) {
+        pending = depth;
+        if (depth > peakPending) {
+            peakPending = depth;
+        }
+    }
+
+    /** @return The count of servers being checked (as of the last tick). */
+    public static int getProcessing() {
+        return processing;
+    }
+
+    /** @return The largest count of servers being checked since the last reset. */
+    public static int getPeakProcessing() {
+        return peakProcessing;
+    }
+
+    /** @return The count of held messages (as of the last tick). */
+    public static int getPending() {
+        return pending;
+    }
+
+    /** @return The largest count of held messages since the last reset. */
+    public static int getPeakPending() {
+        return peakPending;
+    }
+
+    /** Removes all recorded values. */
+    public static void reset() {
+        PARSE.reset();
+        DNS.reset();
+        PING.reset();
+        HOLD.reset();
+        CACHE_HITS.reset();
+        CACHE_JOINS.reset();
+        CACHE_MISSES.reset();
+        DNS_FAILURES.reset();
+        PING_FAILURES.reset();
+        ADVERTISEMENT.reset();
+        peakProcessing = processing;
+        peakPending = pending;
+        since = System.currentTimeMillis();
+    }
+
+    /** @return Human readable report of all metrics, one line each. */
+    public static List<String> report() {
+        List<String> lines = new ArrayList<String>();
+        lines.add("Since " + format(since));
+        lines.add(line("Parse", PARSE));
+        lines.add(line("DNS", DNS) + " failed=" + DNS_FAILURES.get());
+        lines.add(line("Ping", PING) + " failed=" + PING_FAILURES.get());
+        lines.add(line("Hold", HOLD) + " advertisement=" + ADVERTISEMENT.get());
+        long hits = CACHE_HITS.get();
+        long joins = CACHE_JOINS.get();
+        long misses = CACHE_MISSES.get();
+        long total = hits + joins + misses;
+        lines.add(String.format(Locale.ENGLISH, "Verdict cache: %d hits, %d joined, %d misses (%.1f%% hit rate)",
+                hits, joins, misses, total == 0 ? 0.0 : 100.0 * (hits + joins) / total));
+        lines.add("Queues: " + processing + " servers checked (peak " + peakProcessing + "), "
+                + pending + " messages held (peak " + peakPending + ")");
+        return lines;
+    }
+
+    /**
+     * @param name The histogram name.
+     * @param histogram The histogram.
+     * @return Summary of the histogram in milliseconds.
+     */
+    private static String line(String name, LatencyHistogram histogram) {
+        return String.format(Locale.ENGLISH, "%s: n=%d mean=%.2fms p50=%.2fms p99=%.2fms max=%.2fms",
+                name, histogram.getCount(), histogram.getMean() / 1000,
+                histogram.getPercentile(50) / 1000.0, histogram.getPercentile(99) / 1000.0,
+                histogram.getMax() / 1000.0);
+    }
+
+    /**
+     * @param time The time (ms).
+     * @return The formatted time.
+     */
+    private static String format(long time) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(time));
+    }
+
+    /**
+     * Writes the report into a new file in the given folder.
+     * @param folder The folder.
+     * @return The file.
+     * @throws IOException If writing fails.
+     */
+    public static File dump(File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Couldn't create " + folder);
+        }
+        String name = "metrics-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt";
+        File file = new File(folder, name);
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            for (String line : report()) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+        return file;
+    }
+}
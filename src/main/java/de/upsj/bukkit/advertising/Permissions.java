@@ -24,4 +24,13 @@ public final class Permissions {
 
     @Permission("Permissions to ping potential servers manually.")
     public static final String PING   = PREFIX + "ping";
+
+    @Permission("Permissions to rebuild the domain blocklist.")
+    public static final String BLOCKLIST = PREFIX + "blocklist";
+
+    @Permission("Permissions to view and dump the pipeline metrics.")
+    public static final String STATS = PREFIX + "stats";
+
+    @Permission("Permissions to view the most advertised servers and the most offending players.")
+    public static final String TOP = PREFIX + "top";
 }
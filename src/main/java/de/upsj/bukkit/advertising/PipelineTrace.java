@@ -0,0 +1,202 @@
+package de.upsj.bukkit.advertising;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Trace of the pipeline stages, recorded on demand to find the cause of lag spikes.
+ * Every event carries its stage, thread, target (player or server address), start time and duration,
+ * so slow probes can be lined up with stalled ticks. The most recent events are kept in a ring buffer.
+ * While tracing is off, recording costs a single volatile read and doesn't allocate.
+ * @author upsj
+ * @version 1.0
+ */
+public final class PipelineTrace {
+    /** Count of events kept. */
+    public static final int CAPACITY = 4096;
+    /** Is tracing enabled? */
+    private static volatile boolean enabled;
+    /** The events, a ring buffer. */
+    private static final AtomicReferenceArray<Event> EVENTS = new AtomicReferenceArray<Event>(CAPACITY);
+    /** Count of events ever recorded, the next index is this modulo the capacity. */
+    private static final AtomicLong RECORDED = new AtomicLong();
+
+    /** The pipeline stages. */
+    public enum Stage {
+        /** A message is parsed, target is the sender. */
+        PARSE,
+        /** A server is enqueued in the checker (including waiting for its lock), target is the server. */
+        ENQUEUE,
+        /** A server's SRV record and address are resolved, target is the server. */
+        RESOLVE,
+        /** A server is pinged, target is the resolved address. */
+        PING,
+        /** One tick of the server checker (holding its lock), target is empty. */
+        CHECKER_TICK,
+        /** A held message is released or acted on, target is the sender, duration is the hold time. */
+        RELEASE
+    }
+
+    /** Avoid instances. */
+    private PipelineTrace() { }
+
+    /** @return True iff tracing is enabled. */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables tracing, enabling removes all earlier events.
+     * @param enable True to enable tracing.
+     */
+    public static synchronized void setEnabled(boolean enable) {
+        if (enable && !enabled) {
+            for (int i = 0; i < CAPACITY; i++) {
+                EVENTS.set(i, null);
+            }
+            RECORDED.set(0);
+        }
+        enabled = enable;
+    }
+
+    /**
+     * Records an event that ends now, if tracing is enabled.
+     * @param stage The stage.
+     * @param target The target (player or server), may be null.
+     * @param startNanos The start time ({@link System#nanoTime()}).
+     */
+    public static void record(Stage stage, Object target, long startNanos) {
+        if (!enabled) {
+            return;
+        }
+        long duration = System.nanoTime() - startNanos;
+        Event event = new Event(stage, Thread.currentThread().getName(),
+                                target == null ? "" : target.toString(),
+                                System.currentTimeMillis() - duration / 1000000, duration / 1000);
+        EVENTS.set((int) (RECORDED.getAndIncrement() % CAPACITY), event);
+    }
+
+    /** @return The kept events ordered by start time. */
+    public static List<Event> getEvents() {
+        List<Event> events = new ArrayList<Event>(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            Event event = EVENTS.get(i);
+            if (event != null) {
+                events.add(event);
+            }
+        }
+        Collections.sort(events, new Comparator<Event>() {
+            public int compare(Event a, Event b) {
+                return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+            }
+        });
+        return events;
+    }
+
+    /** @return The count of events recorded since tracing was enabled. */
+    public static long getRecordedCount() {
+        return RECORDED.get();
+    }
+
+    /**
+     * Writes the kept events into a new CSV file in the given folder.
+     * @param folder The folder.
+     * @return The file.
+     * @throws IOException If writing fails.
+     */
+    public static File dump(File folder) throws IOException {
+        if (!folder.isDirectory() && !folder.mkdirs()) {
+            throw new IOException("Couldn't create " + folder);
+        }
+        String name = "trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".csv";
+        File file = new File(folder, name);
+        SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        PrintWriter writer = new PrintWriter(new FileWriter(file));
+        try {
+            writer.println("start,stage,thread,target,micros");
+            for (Event event : getEvents()) {
+                writer.println(format.format(new Date(event.start)) + "," + event.stage + ","
+                        + quote(event.thread) + "," + quote(event.target) + "," + event.micros);
+            }
+        } finally {
+            writer.close();
+        }
+        if (writer.checkError()) {
+            throw new IOException("Couldn't write " + file);
+        }
+        return file;
+    }
+
+    /**
+     * @param value The value.
+     * @return The value as CSV field.
+     */
+    private static String quote(String value) {
+        return "\"" + value.replace("\"", "\"\"") + "\"";
+    }
+
+    /** A recorded event. */
+    public static final class Event {
+        /** The stage. */
+        private final Stage stage;
+        /** The name of the recording thread. */
+        private final String thread;
+        /** The target. */
+        private final String target;
+        /** The start time (ms). */
+        private final long start;
+        /** The duration (µs). */
+        private final long micros;
+
+        /**
+         * Initializes the event.
+         * @param stage The stage.
+         * @param thread The name of the recording thread.
+         * @param target The target.
+         * @param start The start time (ms).
+         * @param micros The duration (µs).
+         */
+        private Event(Stage stage, String thread, String target, long start, long micros) {
+            this.stage = stage;
+            this.thread = thread;
+            this.target = target;
+            this.start = start;
+            this.micros = micros;
+        }
+
+        /** @return The stage. */
+        public Stage getStage() {
+            return stage;
+        }
+
+        /** @return The name of the recording thread. */
+        public String getThread() {
+            return thread;
+        }
+
+        /** @return The target (player or server address). */
+        public String getTarget() {
+            return target;
+        }
+
+        /** @return The start time (ms). */
+        public long getStart() {
+            return start;
+        }
+
+        /** @return The duration (µs). */
+        public long getMicros() {
+            return micros;
+        }
+    }
+}
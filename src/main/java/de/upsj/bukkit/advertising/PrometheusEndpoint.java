@@ -0,0 +1,251 @@
+package de.upsj.bukkit.advertising;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import de.upsj.bukkit.advertising.util.LatencyHistogram;
+import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Optional HTTP endpoint serving the pipeline metrics in the Prometheus text format.
+ * It only listens on the loopback address. Scrapes are answered by an own thread
+ * from the lock-free metrics only, they never wait for the server checker or the main thread.
+ * @author upsj
+ * @version 1.0
+ */
+@ConfigSection(name = AntiAdvertisingPlugin.CONF_PROMETHEUS,
+               description = "Prometheus endpoint serving the pipeline metrics on the loopback address.",
+               parent = AntiAdvertisingPlugin.class,
+               values = {
+                   @ConfigVar(name = PrometheusEndpoint.CONF_ENABLED, type = ConfigVarType.BOOLEAN,
+                              description = "Set this to true to serve the metrics at http://127.0.0.1:<port>/metrics"),
+                   @ConfigVar(name = PrometheusEndpoint.CONF_PORT, type = ConfigVarType.INTEGER,
+                              description = "The port of the endpoint.")
+               }
+)
+public class PrometheusEndpoint implements Configurable, HttpHandler {
+    /** Config value for the enabled status. */
+    public static final String CONF_ENABLED = "enabled";
+    /** Config value for the port. */
+    public static final String CONF_PORT = "port";
+    /** The path of the metrics. */
+    public static final String PATH = "/metrics";
+    /** Content type of the text format. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /** Quantiles reported for every histogram. */
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    /** The server checker. */
+    private final ServerChecker checker;
+    /** The HTTP server, null if stopped. */
+    private HttpServer server;
+    /** The thread answering scrapes, null if stopped. */
+    private ExecutorService executor;
+    /** The port of the running server. */
+    private int port;
+
+    /**
+     * Initializes the endpoint (stopped).
+     * @param checker The server checker.
+     */
+    public PrometheusEndpoint(ServerChecker checker) {
+        this.checker = checker;
+    }
+
+    @Override
+    public synchronized void reloadConfig(ConfigurationSection config) {
+        boolean enabled = config.getBoolean(CONF_ENABLED, false);
+        int newPort = config.getInt(CONF_PORT, 9225);
+        if (newPort < 1 || newPort > 65535) {
+            newPort = 9225;
+        }
+        config.set(CONF_ENABLED, enabled);
+        config.set(CONF_PORT, newPort);
+        if (server != null && (!enabled || newPort != port)) {
+            stop();
+        }
+        if (enabled && server == null) {
+            start(newPort);
+        }
+    }
+
+    /**
+     * Starts the server.
+     * @param newPort The port.
+     */
+    private void start(int newPort) {
+        try {
+            InetAddress loopback = InetAddress.getByAddress(new byte[] {127, 0, 0, 1});
+            server = HttpServer.create(new InetSocketAddress(loopback, newPort), 0);
+        } catch (IOException e) {
+            Log.warn("Couldn't start the Prometheus endpoint on port " + newPort + ": " + e.getMessage());
+            server = null;
+            return;
+        }
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AntiAdvertising Prometheus endpoint");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.createContext(PATH, this);
+        server.setExecutor(executor);
+        server.start();
+        port = newPort;
+        Log.log("Serving metrics at http://127.0.0.1:" + port + PATH);
+    }
+
+    /** Stops the server, if running. */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /** @return The port of the running server, 0 if stopped. */
+    public synchronized int getPort() {
+        return server == null ? 0 : port;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(body);
+            out.close();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** @return The metrics in the Prometheus text format. */
+    public String scrape() {
+        StringBuilder out = new StringBuilder(4096);
+        summary(out, "antiad_parse_seconds", "Time spent parsing messages.", Metrics.PARSE);
+        summary(out, "antiad_dns_seconds", "Time of DNS lookups (SRV record and address).", Metrics.DNS);
+        summary(out, "antiad_ping_seconds", "Time of server pings, including failed ones.", Metrics.PING);
+        summary(out, "antiad_hold_seconds", "Time messages are held back until their servers are checked.",
+                Metrics.HOLD);
+
+        header(out, "antiad_verdict_cache_requests_total", "Servers looked up in the verdict cache.", "counter");
+        sample(out, "antiad_verdict_cache_requests_total{result=\"hit\"}", Metrics.CACHE_HITS.get());
+        sample(out, "antiad_verdict_cache_requests_total{result=\"join\"}", Metrics.CACHE_JOINS.get());
+        sample(out, "antiad_verdict_cache_requests_total{result=\"miss\"}", Metrics.CACHE_MISSES.get());
+        counter(out, "antiad_dns_failures_total", "Failed DNS lookups.", Metrics.DNS_FAILURES.get());
+        counter(out, "antiad_ping_failures_total", "Failed pings.", Metrics.PING_FAILURES.get());
+        counter(out, "antiad_advertisement_total", "Messages actions were taken for.", Metrics.ADVERTISEMENT.get());
+
+        gauge(out, "antiad_known_servers", "Cached server verdicts.", checker.getKnownCount());
+        gauge(out, "antiad_processing_servers", "Servers being resolved or pinged.", Metrics.getProcessing());
+        gauge(out, "antiad_probes_in_flight", "Servers currently resolved or pinged by a thread.",
+                checker.getActiveCount());
+        gauge(out, "antiad_probes_queued", "Servers waiting for a free thread.", checker.getQueuedCount());
+        gauge(out, "antiad_pending_messages", "Messages held back until their servers are checked.",
+                Metrics.getPending());
+        return out.toString();
+    }
+
+    /**
+     * Appends a histogram as summary in seconds.
+     * @param out The output.
+     * @param name The metric name.
+     * @param help The description.
+     * @param histogram The histogram (µs).
+     */
+    private static void summary(StringBuilder out, String name, String help, LatencyHistogram histogram) {
+        header(out, name, help, "summary");
+        for (double quantile : QUANTILES) {
+            sample(out, name + "{quantile=\"" + quantile + "\"}",
+                   seconds(histogram.getPercentile(quantile * 100)));
+        }
+        sample(out, name + "_sum", seconds(histogram.getSum()));
+        sample(out, name + "_count", histogram.getCount());
+    }
+
+    /**
+     * Appends a counter.
+     * @param out The output.
+     * @param name The metric name.
+     * @param help The description.
+     * @param value The value.
+     */
+    private static void counter(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "counter");
+        sample(out, name, value);
+    }
+
+    /**
+     * Appends a gauge.
+     * @param out The output.
+     * @param name The metric name.
+     * @param help The description.
+     * @param value The value.
+     */
+    private static void gauge(StringBuilder out, String name, String help, long value) {
+        header(out, name, help, "gauge");
+        sample(out, name, value);
+    }
+
+    /**
+     * Appends the HELP and TYPE lines.
+     * @param out The output.
+     * @param name The metric name.
+     * @param help The description.
+     * @param type The metric type.
+     */
+    private static void header(StringBuilder out, String name, String help, String type) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * Appends a sample line.
+     * @param out The output.
+     * @param name The metric name with labels.
+     * @param value The value.
+     */
+    private static void sample(StringBuilder out, String name, long value) {
+        out.append(name).append(' ').append(value).append('\n');
+    }
+
+    /**
+     * Appends a sample line.
+     * @param out The output.
+     * @param name The metric name with labels.
+     * @param value The value.
+     */
+    private static void sample(StringBuilder out, String name, double value) {
+        out.append(name).append(' ').append(String.format(Locale.ENGLISH, "%.6f", value)).append('\n');
+    }
+
+    /**
+     * @param micros A duration (µs).
+     * @return The duration (s).
+     */
+    private static double seconds(long micros) {
+        return micros / 1000000.0;
+    }
+}
@@ -0,0 +1,300 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Detects coordinated advertisement (bot raids):
+ * Many distinct players advertising the same server within a short time window.
+ * During a raid, messages containing the raided server are blocked instantly.
+ * Thread-safe.
+ * @author upsj
+ * @version 1.0
+ */
+public class RaidDetector {
+    /** Maximal count of tracked servers, the least recently advertised ones are evicted. */
+    private static final int MAX_TARGETS = 1024;
+    /** Minimal time between two expiries (ms). */
+    private static final long EXPIRE_INTERVAL = 1000;
+
+    /** Tracked servers by address, least recently advertised first. */
+    private final LinkedHashMap<String, Target> targets;
+    /** Raided servers by all names and addresses they were advertised with. */
+    private final Map<String, Target> raided;
+    /** Count of distinct players starting a raid, 0 if disabled. */
+    private int minPlayers;
+    /** Time window (ms). */
+    private long window;
+    /** Time a server is blocked instantly after a raid (ms). */
+    private long cooldown;
+    /** Time of the last expiry (ms). */
+    private long lastExpiry;
+
+    /**
+     * Initializes the raid detector.
+     * @param minPlayers Count of distinct players starting a raid, 0 to disable the detection.
+     * @param window Time window (ms).
+     * @param cooldown Time a server is blocked instantly after a raid (ms).
+     */
+    public RaidDetector(int minPlayers, long window, long cooldown) {
+        this.targets = new LinkedHashMap<String, Target>();
+        this.raided = new HashMap<String, Target>();
+        setLimits(minPlayers, window, cooldown);
+    }
+
+    /**
+     * Changes the limits, ending all raids.
+     * @param minPlayers Count of distinct players starting a raid, 0 to disable the detection.
+     * @param window Time window (ms).
+     * @param cooldown Time a server is blocked instantly after a raid (ms).
+     */
+    public synchronized void setLimits(int minPlayers, long window, long cooldown) {
+        this.minPlayers = Math.max(0, minPlayers);
+        this.window = window;
+        this.cooldown = cooldown;
+        targets.clear();
+        raided.clear();
+    }
+
+    /**
+     * Records an advertisement.
+     * @param verdict The advertised server.
+     * @param player The advertising player.
+     * @param now The current time (ms).
+     * @return True iff this advertisement started a raid.
+     */
+    public synchronized boolean record(ServerVerdict verdict, String player, long now) {
+        if (minPlayers == 0) {
+            return false;
+        }
+        String key = getKey(verdict);
+        Target target = targets.remove(key);
+        if (target == null) {
+            if (targets.size() >= MAX_TARGETS) {
+                prune(now);
+            }
+            target = new Target(verdict);
+        }
+        // move to the end
+        targets.put(key, target);
+        target.verdict = verdict;
+        target.names.add(verdict.getMatchedAddress().toLowerCase());
+        // move to the end
+        target.players.remove(player);
+        target.players.put(player, now);
+        target.evict(now - window);
+        if (target.isRaided(now)) {
+            target.blocked++;
+            raided.put(verdict.getMatchedAddress().toLowerCase(), target);
+            return false;
+        }
+        if (target.players.size() >= minPlayers) {
+            target.raidUntil = now + cooldown;
+            target.blocked = target.players.size();
+            for (String name : target.names) {
+                raided.put(name, target);
+            }
+            if (verdict.getRawAddress().length > 0) {
+                // advertised as IP address
+                raided.put(verdict.getHostAddress(), target);
+            }
+            Log.log("Raid detected: " + target.players.size() + " players advertised " + verdict.toDisplayString());
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param verdict The server.
+     * @param now The current time (ms).
+     * @return True iff the server is being raided.
+     */
+    public synchronized boolean isRaided(ServerVerdict verdict, long now) {
+        Target target = targets.get(getKey(verdict));
+        return target != null && target.isRaided(now);
+    }
+
+    /**
+     * Finds a raided server in the matches of a message.
+     * @param msg The message.
+     * @param now The current time (ms).
+     * @return The verdict of the raided server or null if the message doesn't contain one.
+     */
+    public synchronized ServerVerdict find(ChatMessage msg, long now) {
+        if (raided.isEmpty()) {
+            return null;
+        }
+        for (int i = 0; i < msg.getMatchCount(); i++) {
+            PotentialServer match = msg.getMatch(i);
+            if (match == null) {
+                continue;
+            }
+            Target target = raided.get(match.getMatchedAddress().toLowerCase());
+            if (target != null) {
+                if (target.isRaided(now)) {
+                    return target.verdict;
+                }
+                pruneRaided(now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param verdict The server.
+     * @return The count of distinct players in the last time window.
+     */
+    public synchronized int getPlayerCount(ServerVerdict verdict) {
+        Target target = targets.get(getKey(verdict));
+        return target == null ? 0 : target.players.size();
+    }
+
+    /** @return Count of distinct players starting a raid, 0 if the detection is disabled. */
+    public synchronized int getMinPlayers() {
+        return minPlayers;
+    }
+
+    /** @return Time window (ms). */
+    public synchronized long getWindow() {
+        return window;
+    }
+
+    /** @return Time a server is blocked instantly after a raid (ms). */
+    public synchronized long getCooldown() {
+        return cooldown;
+    }
+
+    /** @return The count of currently raided servers. */
+    public synchronized int getRaidCount() {
+        int count = 0;
+        long now = System.currentTimeMillis();
+        for (Target target : targets.values()) {
+            if (target.isRaided(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Expires the time windows and ended raids, logging the end of raids.
+     * Called periodically, does nothing if the last expiry was less than a second ago.
+     * @param now The current time (ms).
+     */
+    public synchronized void expire(long now) {
+        if (now - lastExpiry < EXPIRE_INTERVAL && now >= lastExpiry) {
+            return;
+        }
+        lastExpiry = now;
+        prune(now);
+    }
+
+    /**
+     * Removes all servers without advertisement in the time window and without raid,
+     * then the least recently advertised servers (preferring those without raid) while there are too many.
+     * @param now The current time (ms).
+     */
+    private void prune(long now) {
+        Iterator<Target> it = targets.values().iterator();
+        while (it.hasNext()) {
+            Target target = it.next();
+            target.evict(now - window);
+            if (target.players.isEmpty() && !target.isRaided(now)) {
+                it.remove();
+            }
+        }
+        it = targets.values().iterator();
+        while (targets.size() >= MAX_TARGETS && it.hasNext()) {
+            if (!it.next().isRaided(now)) {
+                it.remove();
+            }
+        }
+        // raided servers stay blocked by their names until the raid ends
+        it = targets.values().iterator();
+        while (targets.size() >= MAX_TARGETS && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+        pruneRaided(now);
+    }
+
+    /**
+     * Removes all ended raids.
+     * @param now The current time (ms).
+     */
+    private void pruneRaided(long now) {
+        Iterator<Target> it = raided.values().iterator();
+        while (it.hasNext()) {
+            Target target = it.next();
+            if (!target.isRaided(now)) {
+                if (target.blocked > 0) {
+                    Log.log("Raid on " + target.verdict.toDisplayString() + " ended, "
+                            + target.blocked + " message(s) blocked");
+                    target.blocked = 0;
+                }
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * @param verdict The server.
+     * @return The key identifying the server (the address or the name for unresolved servers).
+     */
+    private static String getKey(ServerVerdict verdict) {
+        if (verdict.getRawAddress().length == 0) {
+            return verdict.getMatchedAddress().toLowerCase();
+        }
+        return verdict.getHostAddress() + ":" + verdict.getPort();
+    }
+
+    /** Tracked server. */
+    private static final class Target {
+        /** Latest verdict of the server. */
+        private ServerVerdict verdict;
+        /** Names the server was advertised with. */
+        private final Set<String> names;
+        /** Advertising players and the time of their last advertisement, oldest first. */
+        private final LinkedHashMap<String, Long> players;
+        /** End of the raid (ms). */
+        private long raidUntil;
+        /** Count of messages blocked during the raid. */
+        private int blocked;
+
+        /**
+         * Initializes the target.
+         * @param verdict The server.
+         */
+        private Target(ServerVerdict verdict) {
+            this.verdict = verdict;
+            this.names = new HashSet<String>();
+            this.players = new LinkedHashMap<String, Long>();
+        }
+
+        /**
+         * Removes all players whose last advertisement is older than the given time.
+         * @param oldest The oldest time (ms) to keep.
+         */
+        private void evict(long oldest) {
+            Iterator<Long> it = players.values().iterator();
+            while (it.hasNext() && it.next() < oldest) {
+                it.remove();
+            }
+        }
+
+        /**
+         * @param now The current time (ms).
+         * @return True iff the server is being raided.
+         */
+        private boolean isRaided(long now) {
+            return now < raidUntil;
+        }
+    }
+}
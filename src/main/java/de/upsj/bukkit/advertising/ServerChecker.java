@@ -1,20 +1,27 @@
 package de.upsj.bukkit.advertising;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import de.upsj.bukkit.advertising.servers.PotentialServer;
 import de.upsj.bukkit.advertising.servers.ResolvedServer;
 import de.upsj.bukkit.advertising.servers.ServerRequestListener;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.NamedThreadFactory;
+import de.upsj.bukkit.advertising.util.VerdictCacheFile;
 import de.upsj.bukkit.annotations.ConfigSection;
 import de.upsj.bukkit.annotations.ConfigVar;
 import de.upsj.bukkit.annotations.ConfigVarType;
@@ -31,26 +38,61 @@ import org.bukkit.configuration.ConfigurationSection;
                description = "Server request configuration.",
                values = {
                    @ConfigVar(name = ServerChecker.CONF_TIMEOUT, type = ConfigVarType.INTEGER,
-                              description = "The maximal time to wait for a server to respond to a ping (in ms).")
+                              description = "The maximal time to wait for a server to respond to a ping (in ms)."),
+                   @ConfigVar(name = ServerChecker.CONF_CACHE_TIME, type = ConfigVarType.INTEGER,
+                              description = "The time a server request result is cached (in minutes)."),
+                   @ConfigVar(name = ServerChecker.CONF_SNAPSHOT, type = ConfigVarType.INTEGER,
+                              description = "The interval in which the cached results are saved to disk "
+                                          + "(in minutes, 0 to save them only on shutdown)."),
+                   @ConfigVar(name = ServerChecker.CONF_THREADS, type = ConfigVarType.INTEGER,
+                              description = "The maximal count of servers resolved and pinged at the same time.")
                }
 )
 public class ServerChecker implements Runnable, Configurable {
     /** Configuration value for the connection timeout. */
     public static final String CONF_TIMEOUT = "timeout";
+    /** Configuration value for the verdict cache time. */
+    public static final String CONF_CACHE_TIME = "cacheTime";
+    /** Configuration value for the snapshot interval. */
+    public static final String CONF_SNAPSHOT = "snapshotInterval";
+    /** Configuration value for the thread count. */
+    public static final String CONF_THREADS = "threads";
+    /** Time (s) idle threads are kept alive. */
+    private static final long KEEP_ALIVE = 60;
+    /** Milliseconds per minute. */
+    private static final long MINUTE = 60 * 1000L;
     /** Thread pool. */
-    private ExecutorService pool;
+    private final ThreadPoolExecutor pool;
     /** Servers that are currently being processed. */
     private Queue<ServerFuturePair> processing;
     /** Known servers mapped on themselves, simplifying access. */
     private Map<PotentialServer, PotentialServer> knownServers;
+    /** Verdicts being restored from disk, null if not restoring. */
+    private Future<List<ServerVerdict>> restoring;
+    /** The ping timeout (ms). */
+    private volatile int timeout;
+    /** The maximal age of cached verdicts (ms). */
+    private volatile long cacheTime;
+    /** The snapshot interval (ms), 0 if disabled. */
+    private long snapshotInterval;
+    /** Time of the last snapshot (ms). */
+    private long lastSnapshot;
+    /** Serializes the snapshots, which write the same temporary file. */
+    private final Object snapshotLock = new Object();
+    /** Count of known servers, updated every tick to be read without locking. */
+    private volatile int knownCount;
 
     /**
      * Initializes the server checker.
      */
     public ServerChecker() {
-        pool = Executors.newCachedThreadPool();
+        pool = new ThreadPoolExecutor(32, 32, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                                      new NamedThreadFactory("AntiAdvertising checker"));
+        pool.allowCoreThreadTimeOut(true);
         knownServers = new HashMap<PotentialServer, PotentialServer>();
         processing = new ConcurrentLinkedQueue<ServerFuturePair>();
+        cacheTime = 720 * MINUTE;
+        lastSnapshot = System.currentTimeMillis();
     }
 
     /**
@@ -75,30 +117,58 @@ public class ServerChecker implements Runnable, Configurable {
      * or {@code server} if no such instance exists.
      * @throws IllegalStateException If the checker has been shut down.
      */
-    public synchronized PotentialServer add(PotentialServer server, ServerRequestListener listener) throws IllegalStateException {
+    public PotentialServer add(PotentialServer server, ServerRequestListener listener) throws IllegalStateException {
+        long start = System.nanoTime();
+        try {
+            return enqueue(server, listener);
+        } finally {
+            PipelineTrace.record(PipelineTrace.Stage.ENQUEUE, server.getMatchedAddress(), start);
+        }
+    }
+
+    /**
+     * Adds a server to be checked, see {@link #add(PotentialServer, ServerRequestListener)}.
+     * @param server The server.
+     * @param listener The update listener.
+     * @return The server instance to link the listener to.
+     * @throws IllegalStateException If the checker has been shut down.
+     */
+    private synchronized PotentialServer enqueue(PotentialServer server, ServerRequestListener listener) {
         if (pool.isShutdown()) {
             throw new IllegalStateException("shutdown");
         }
 
-        Log.debug("Enqueued server " + server);
+        Log.debug(Log.Subsystem.CHECKER, "Enqueued server {}", server);
 
         if (server.isFinal()) {
             return server;
         }
 
+        long now = System.currentTimeMillis();
+
         // Already known by address?
-        if (knownServers.containsKey(server)) {
-            PotentialServer other = knownServers.get(server);
-            Log.debug("Replaced by server " + other);
-            return other;
+        PotentialServer known = knownServers.get(server);
+        if (known != null) {
+            if (!isExpired(known, now)) {
+                Metrics.CACHE_HITS.increment();
+                Log.debug(Log.Subsystem.CHECKER, "Replaced by server {}", known);
+                return known;
+            }
+            knownServers.remove(known);
         }
 
         // Already known by name?
-        for (PotentialServer other : knownServers.keySet()) {
+        Iterator<PotentialServer> knownIt = knownServers.keySet().iterator();
+        while (knownIt.hasNext()) {
+            PotentialServer other = knownIt.next();
             // DEBUG assert other.isFinal();
             if (server.equalsByName(other)) {
-                Log.debug("Replaced by server " + other);
-                return other;
+                if (!isExpired(other, now)) {
+                    Metrics.CACHE_HITS.increment();
+                    Log.debug(Log.Subsystem.CHECKER, "Replaced by server {}", other);
+                    return other;
+                }
+                knownIt.remove();
             }
         }
 
@@ -110,11 +180,13 @@ public class ServerChecker implements Runnable, Configurable {
                 if (listener != null) {
                     other.linkedMessages.add(listener);
                 }
-                Log.debug("Replaced by currently processing server " + other);
+                Metrics.CACHE_JOINS.increment();
+                Log.debug(Log.Subsystem.CHECKER, "Replaced by currently processing server {}", other);
                 return other.server;
             }
         }
 
+        Metrics.CACHE_MISSES.increment();
         ServerFuturePair pair;
         Future<PotentialServer> future = pool.submit(server);
         if (listener != null) {
@@ -137,18 +209,25 @@ public class ServerChecker implements Runnable, Configurable {
      * either to processing or to final servers)
      */
     public synchronized void run() {
+        long start = System.nanoTime();
+        if (restoring != null && restoring.isDone()) {
+            mergeRestored();
+        }
+
         Iterator<ServerFuturePair> it = processing.iterator();
         ServerFuturePair pair;
         PotentialServer server;
+        int depth = 0;
         while (it.hasNext()) {
             pair = it.next();
             if (!pair.future.isDone()) {
+                depth++;
                 continue;
             }
 
             it.remove();
             server = futureGet(pair);
-            Log.debug("Finished server " + pair.server + ", result: " + (server == null ? "null" : server));
+            Log.debug(Log.Subsystem.CHECKER, "Finished server {}, result: {}", pair.server, server);
             notifyReplace(pair, pair.server, server);
 
             // Store final, process non-final further
@@ -163,6 +242,113 @@ public class ServerChecker implements Runnable, Configurable {
                 }
             }
         }
+        Metrics.setProcessing(depth);
+        knownCount = knownServers.size();
+        PipelineTrace.record(PipelineTrace.Stage.CHECKER_TICK, null, start);
+    }
+
+    /**
+     * @param server A known server.
+     * @param now The current time (ms).
+     * @return True iff the known server's verdict is expired.
+     */
+    private boolean isExpired(PotentialServer server, long now) {
+        return server instanceof ServerVerdict && ((ServerVerdict) server).isExpired(now, cacheTime);
+    }
+
+    /**
+     * Adds the restored verdicts to the known servers.
+     * Servers that have been checked since enabling the plugin aren't replaced.
+     */
+    private void mergeRestored() {
+        List<ServerVerdict> restored;
+        try {
+            restored = restoring.get();
+        } catch (InterruptedException e) {
+            restored = null;
+        } catch (ExecutionException e) {
+            Log.warn("Restoring the server cache failed: " + e.getCause());
+            restored = null;
+        }
+        restoring = null;
+        if (restored == null) {
+            return;
+        }
+        for (ServerVerdict verdict : restored) {
+            if (!knownServers.containsKey(verdict)) {
+                knownServers.put(verdict, verdict);
+            }
+        }
+        Log.log("Restored " + restored.size() + " cached server(s)");
+    }
+
+    /**
+     * Restores the verdicts saved by {@link #snapshot(File)} in the background.
+     * They are merged into the known servers in one of the next ticks.
+     * @param file The snapshot file.
+     */
+    public synchronized void restore(final File file) {
+        final long maxAge = cacheTime;
+        restoring = pool.submit(new Callable<List<ServerVerdict>>() {
+            public List<ServerVerdict> call() throws IOException {
+                return VerdictCacheFile.load(file, maxAge);
+            }
+        });
+    }
+
+    /**
+     * Saves all non-expired, non-whitelisted verdicts to the given file.
+     * The checker is only locked while copying the verdicts, concurrent snapshots are written one after another.
+     * @param file The snapshot file.
+     */
+    public void snapshot(File file) {
+        synchronized (snapshotLock) {
+            saveSnapshot(file);
+        }
+    }
+
+    /**
+     * Saves all non-expired, non-whitelisted verdicts to the given file.
+     * @param file The snapshot file.
+     */
+    private void saveSnapshot(File file) {
+        List<ServerVerdict> verdicts = new ArrayList<ServerVerdict>();
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            lastSnapshot = now;
+            for (PotentialServer server : knownServers.keySet()) {
+                if (server instanceof ServerVerdict && !isExpired(server, now)) {
+                    ServerVerdict verdict = (ServerVerdict) server;
+                    // whitelisted, blocked, keyword and pattern verdicts depend on the current configuration
+                    if (verdict.getState() != ServerVerdict.State.WHITELISTED
+                            && verdict.getState() != ServerVerdict.State.BLOCKED
+                            && verdict.getState() != ServerVerdict.State.KEYWORD
+                            && verdict.getState() != ServerVerdict.State.PATTERN) {
+                        verdicts.add(verdict);
+                    }
+                }
+            }
+        }
+        try {
+            VerdictCacheFile.save(file, verdicts);
+            Log.debug(Log.Subsystem.CHECKER, "Saved {} cached server(s)", verdicts.size());
+        } catch (IOException e) {
+            Log.warn("Saving the server cache failed: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves a snapshot if the snapshot interval has passed since the last one.
+     * @param file The snapshot file.
+     */
+    public void snapshotIfDue(File file) {
+        boolean due;
+        synchronized (this) {
+            due = snapshotInterval > 0 && System.currentTimeMillis() - lastSnapshot >= snapshotInterval;
+        }
+        if (due) {
+            snapshot(file);
+        }
     }
 
     /**
@@ -270,22 +456,156 @@ public class ServerChecker implements Runnable, Configurable {
     }
 
     @Override
-    public void reloadConfig(ConfigurationSection config) {
-        int timeout = config.getInt(CONF_TIMEOUT, 1000);
-        if (timeout < 50) { // 50 ms ping is unrealistic
-            timeout = 1000;
-        } else if (timeout > 10000) { // max. 10 s ping
-            timeout = 10000;
-        }
-        config.set(CONF_TIMEOUT, timeout);
+    public synchronized void reloadConfig(ConfigurationSection config) {
+        int newTimeout = config.getInt(CONF_TIMEOUT, 1000);
+        if (newTimeout < 50) { // 50 ms ping is unrealistic
+            newTimeout = 1000;
+        } else if (newTimeout > 10000) { // max. 10 s ping
+            newTimeout = 10000;
+        }
+        config.set(CONF_TIMEOUT, newTimeout);
+        ResolvedServer.setTimeout(newTimeout);
+        // failed pings might succeed with a longer timeout
+        if (timeout != 0 && newTimeout > timeout) {
+            removeKnown(ServerVerdict.State.NO_SERVER);
+        }
+        timeout = newTimeout;
+
+        int cacheMinutes = config.getInt(CONF_CACHE_TIME, 720);
+        if (cacheMinutes < 1) {
+            cacheMinutes = 720;
+        }
+        config.set(CONF_CACHE_TIME, cacheMinutes);
+        cacheTime = cacheMinutes * MINUTE;
+
+        int snapshotMinutes = config.getInt(CONF_SNAPSHOT, 10);
+        if (snapshotMinutes < 0) {
+            snapshotMinutes = 0;
+        }
+        config.set(CONF_SNAPSHOT, snapshotMinutes);
+        snapshotInterval = snapshotMinutes * MINUTE;
+
+        int threads = config.getInt(CONF_THREADS, 32);
+        if (threads < 1) {
+            threads = 32;
+        }
+        config.set(CONF_THREADS, threads);
+        setThreads(threads);
+    }
+
+    /**
+     * Changes the ping timeout, keeping the cached verdicts.
+     * @param newTimeout The ping timeout (ms), limited to 50 - 10000.
+     */
+    public void setTimeout(int newTimeout) {
+        timeout = Math.max(50, Math.min(newTimeout, 10000));
         ResolvedServer.setTimeout(timeout);
     }
 
+    /** @return The ping timeout (ms). */
+    public int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Changes the maximal age of cached verdicts, keeping them.
+     * @param time The maximal age (ms), at least one minute.
+     */
+    public void setCacheTime(long time) {
+        cacheTime = Math.max(MINUTE, time);
+    }
+
+    /**
+     * Changes the count of threads resolving and pinging servers, queued servers aren't affected.
+     * @param threads The thread count, at least 1.
+     */
+    public void setThreads(int threads) {
+        int count = Math.max(1, threads);
+        synchronized (pool) {
+            if (count > pool.getMaximumPoolSize()) {
+                pool.setMaximumPoolSize(count);
+                pool.setCorePoolSize(count);
+            } else {
+                pool.setCorePoolSize(count);
+                pool.setMaximumPoolSize(count);
+            }
+        }
+    }
+
+    /** @return The count of threads resolving and pinging servers. */
+    public int getThreads() {
+        return pool.getMaximumPoolSize();
+    }
+
+    /** @return The count of servers currently resolved or pinged. */
+    public int getActiveCount() {
+        return pool.getActiveCount();
+    }
+
+    /** @return The count of servers waiting for a free thread. */
+    public int getQueuedCount() {
+        return pool.getQueue().size();
+    }
+
+    /** @return The count of finished resolve and ping tasks. */
+    public long getCompletedCount() {
+        return pool.getCompletedTaskCount();
+    }
+
+    /** @return True iff the checker has been shut down. */
+    public boolean isShutdown() {
+        return pool.isShutdown();
+    }
+
+    /** @return The count of known servers (as of the last tick). */
+    public int getKnownCount() {
+        return knownCount;
+    }
+
+    /** @return The maximal age of cached verdicts (ms). */
+    public long getCacheTime() {
+        return cacheTime;
+    }
+
     /** Clears the server list. */
     public synchronized void clear() {
         knownServers.clear();
     }
 
+    /**
+     * Removes all known servers with the given verdict state.
+     * @param state The verdict state.
+     */
+    public synchronized void removeKnown(ServerVerdict.State state) {
+        Iterator<PotentialServer> it = knownServers.keySet().iterator();
+        while (it.hasNext()) {
+            PotentialServer server = it.next();
+            if (server instanceof ServerVerdict && ((ServerVerdict) server).getState() == state) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all known servers whose verdict depends on the whitelist:
+     * Whitelisted servers and servers whitelisted by the given whitelist.
+     * @param whitelist The new whitelist.
+     */
+    public synchronized void applyWhitelist(Whitelist whitelist) {
+        Iterator<PotentialServer> it = knownServers.keySet().iterator();
+        while (it.hasNext()) {
+            PotentialServer server = it.next();
+            if (server instanceof ServerVerdict) {
+                ServerVerdict verdict = (ServerVerdict) server;
+                if (verdict.getState() == ServerVerdict.State.WHITELISTED
+                        || whitelist.matchesDomain(verdict.getMatchedAddress(), verdict.getPort())
+                        || whitelist.matchesAddress(verdict.getRawAddress(), verdict.getPort())) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
     /** Pair of a PotentialServer, its Future<> and linked listeners. */
     private static class ServerFuturePair {
         /** The server that is being processed. */
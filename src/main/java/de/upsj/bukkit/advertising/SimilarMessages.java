@@ -0,0 +1,320 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.NormalizedText;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming near-duplicate detection for advertisement messages.
+ * Every recent advertisement is sketched into a MinHash signature of its character trigrams
+ * (within words, so swapped words don't change it) and stored in an LSH table (banded signatures).
+ * A new message whose estimated similarity to a recent advertisement is high enough
+ * inherits its verdict, even if random suffixes or emoji were added.
+ * Entries are evicted after a configurable time, the entry count is bounded.
+ * Thread-safe.
+ * @author upsj
+ * @version 1.0
+ */
+public class SimilarMessages {
+    /** Maximal count of stored advertisements. */
+    public static final int MAX_ENTRIES = 512;
+    /** Signature length (count of hash functions). */
+    private static final int HASHES = 16;
+    /** Count of LSH bands. */
+    private static final int BANDS = 8;
+    /** Signature values per band. */
+    private static final int ROWS = HASHES / BANDS;
+    /** Minimal count of trigrams of a message to be sketched. */
+    private static final int MIN_FEATURES = 4;
+    /** Seeds of the hash functions. */
+    private static final long[] SEEDS = new long[HASHES];
+
+    static {
+        long seed = 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < HASHES; i++) {
+            seed = mix(seed + 0x9E3779B97F4A7C15L);
+            SEEDS[i] = seed;
+        }
+    }
+
+    /** The LSH tables, one per band, mapping band values on entries. */
+    private final List<Map<Long, List<Entry>>> bands;
+    /** The entries in insertion order. */
+    private final LinkedList<Entry> entries;
+    /** Minimal similarity (count of equal signature values) of near-duplicates, 0 if disabled. */
+    private int minEqual;
+    /** Maximal entry age (ms). */
+    private long maxAge;
+
+    /**
+     * Initializes the detector.
+     * @param similarity Minimal similarity of near-duplicates (in percent), 0 to disable the detection.
+     * @param maxAge Maximal age of the stored advertisements (ms).
+     */
+    public SimilarMessages(int similarity, long maxAge) {
+        this.bands = new ArrayList<Map<Long, List<Entry>>>(BANDS);
+        for (int i = 0; i < BANDS; i++) {
+            bands.add(new HashMap<Long, List<Entry>>());
+        }
+        this.entries = new LinkedList<Entry>();
+        setLimits(similarity, maxAge);
+    }
+
+    /**
+     * Changes the limits, removing all stored advertisements.
+     * @param similarity Minimal similarity of near-duplicates (in percent), 0 to disable the detection.
+     * @param maxAge Maximal age of the stored advertisements (ms).
+     */
+    public synchronized void setLimits(int similarity, long maxAge) {
+        int percent = Math.max(0, Math.min(100, similarity));
+        this.minEqual = (percent * HASHES + 99) / 100;
+        this.maxAge = maxAge;
+        clear();
+    }
+
+    /** @return True iff messages are compared at all. */
+    public synchronized boolean isEnabled() {
+        return minEqual > 0;
+    }
+
+    /**
+     * Stores an advertisement.
+     * @param message The message.
+     * @param verdict The verdict of the advertised server.
+     * @param now The current time (ms).
+     */
+    public synchronized void add(String message, ServerVerdict verdict, long now) {
+        if (!isEnabled()) {
+            return;
+        }
+        int[] signature = sketch(message);
+        if (signature == null) {
+            return;
+        }
+        evict(now);
+        if (entries.size() >= MAX_ENTRIES) {
+            remove(entries.removeFirst());
+        }
+        Entry entry = new Entry(signature, verdict, now);
+        entries.addLast(entry);
+        for (int b = 0; b < BANDS; b++) {
+            Long key = bandKey(signature, b);
+            List<Entry> bucket = bands.get(b).get(key);
+            if (bucket == null) {
+                bucket = new ArrayList<Entry>(1);
+                bands.get(b).put(key, bucket);
+            }
+            bucket.add(entry);
+        }
+    }
+
+    /**
+     * Finds a recent advertisement similar to the given message.
+     * @param message The message.
+     * @param now The current time (ms).
+     * @return The verdict of the most similar advertisement or null if there is none.
+     */
+    public synchronized ServerVerdict find(String message, long now) {
+        if (!isEnabled() || entries.isEmpty()) {
+            return null;
+        }
+        evict(now);
+        int[] signature = sketch(message);
+        if (signature == null) {
+            return null;
+        }
+        Entry best = null;
+        int bestEqual = minEqual - 1;
+        for (int b = 0; b < BANDS; b++) {
+            List<Entry> bucket = bands.get(b).get(bandKey(signature, b));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry candidate : bucket) {
+                int equal = countEqual(signature, candidate.signature);
+                if (equal > bestEqual) {
+                    best = candidate;
+                    bestEqual = equal;
+                }
+            }
+        }
+        return best == null ? null : best.verdict;
+    }
+
+    /** Removes all stored advertisements. */
+    public synchronized void clear() {
+        entries.clear();
+        for (Map<Long, List<Entry>> band : bands) {
+            band.clear();
+        }
+    }
+
+    /** @return The count of stored advertisements. */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all expired entries.
+     * @param now The current time (ms).
+     */
+    private void evict(long now) {
+        while (!entries.isEmpty() && now - entries.getFirst().time > maxAge) {
+            remove(entries.removeFirst());
+        }
+    }
+
+    /**
+     * Removes an entry from the LSH tables.
+     * @param entry The entry.
+     */
+    private void remove(Entry entry) {
+        for (int b = 0; b < BANDS; b++) {
+            Long key = bandKey(entry.signature, b);
+            List<Entry> bucket = bands.get(b).get(key);
+            if (bucket != null) {
+                Iterator<Entry> it = bucket.iterator();
+                while (it.hasNext()) {
+                    if (it.next() == entry) {
+                        it.remove();
+                    }
+                }
+                if (bucket.isEmpty()) {
+                    bands.get(b).remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the MinHash signature of the trigrams within the words of the normalized message.
+     * @param message The message.
+     * @return The signature or null if the message is too short.
+     */
+    public static int[] sketch(String message) {
+        String text = NormalizedText.normalize(message).getText();
+        int[] signature = new int[HASHES];
+        for (int i = 0; i < HASHES; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+        int features = 0;
+        int length = text.length();
+        int wordStart = 0;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && isWordChar(text.charAt(i))) {
+                continue;
+            }
+            // word [wordStart, i)
+            int wordLength = i - wordStart;
+            if (wordLength > 0 && wordLength < 3) {
+                features += addFeature(signature, text, wordStart, i);
+            }
+            for (int start = wordStart; start + 3 <= i; start++) {
+                features += addFeature(signature, text, start, start + 3);
+            }
+            wordStart = i + 1;
+        }
+        return features < MIN_FEATURES ? null : signature;
+    }
+
+    /**
+     * Updates the signature by a feature.
+     * @param signature The signature.
+     * @param text The text.
+     * @param from The start index of the feature.
+     * @param to The end index of the feature.
+     * @return 1.
+     */
+    private static int addFeature(int[] signature, String text, int from, int to) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            h ^= Character.toLowerCase(text.charAt(i));
+            h *= 0x100000001b3L;
+        }
+        for (int i = 0; i < HASHES; i++) {
+            int value = (int) (mix(h ^ SEEDS[i]) >>> 33);
+            if (value < signature[i]) {
+                signature[i] = value;
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the character is part of a word.
+     */
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '.';
+    }
+
+    /**
+     * @param a The first signature.
+     * @param b The second signature.
+     * @return The count of equal values.
+     */
+    private static int countEqual(int[] a, int[] b) {
+        int equal = 0;
+        for (int i = 0; i < HASHES; i++) {
+            if (a[i] == b[i]) {
+                equal++;
+            }
+        }
+        return equal;
+    }
+
+    /**
+     * @param signature The signature.
+     * @param band The band index.
+     * @return The key of the band values.
+     */
+    private static Long bandKey(int[] signature, int band) {
+        long key = 0;
+        for (int i = band * ROWS; i < (band + 1) * ROWS; i++) {
+            key = (key << 32) | (signature[i] & 0xFFFFFFFFL);
+        }
+        return key;
+    }
+
+    /**
+     * MurmurHash3 finalizer.
+     * @param h The value.
+     * @return The mixed value.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /** Stored advertisement. */
+    private static final class Entry {
+        /** The MinHash signature. */
+        private final int[] signature;
+        /** The verdict of the advertised server. */
+        private final ServerVerdict verdict;
+        /** The time the advertisement was stored (ms). */
+        private final long time;
+
+        /**
+         * Initializes the entry.
+         * @param signature The signature.
+         * @param verdict The verdict.
+         * @param time The time.
+         */
+        private Entry(int[] signature, ServerVerdict verdict, long time) {
+            this.signature = signature;
+            this.verdict = verdict;
+            this.time = time;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package de.upsj.bukkit.advertising;
+
+import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.util.AddressScanner;
+import de.upsj.bukkit.advertising.util.DnsResolver;
+import de.upsj.bukkit.advertising.util.DomainSuffixTrie;
+import de.upsj.bukkit.advertising.util.IPPrefixTree;
+import de.upsj.bukkit.advertising.util.SRVRecord;
+
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, precompiled index of whitelisted servers.
+ * Supports exact host names ({@code play.example.net}), wildcard domains ({@code *.example.net},
+ * matching the domain and all its subdomains) and IP addresses / CIDR ranges ({@code 10.0.0.0/8}).
+ * An entry with a port part ({@code :25566}) only matches servers on that port, one without matches all ports.
+ * <p>
+ * Exact host names only match the name until {@link #resolve()} has added their addresses,
+ * so that the server is also recognized when it is advertised by its IP address or another alias.
+ * @author upsj
+ * @version 1.0
+ */
+public final class Whitelist {
+    /** Port of entries matching all ports. */
+    private static final int ANY_PORT = -1;
+    /** Whitelist without any entries. */
+    public static final Whitelist EMPTY = new Whitelist(new ArrayList<String>());
+    /** The current whitelist, replaced atomically on reload. */
+    private static volatile Whitelist current = EMPTY;
+
+    /** The valid entries. */
+    private final List<String> entries;
+    /** Exact host names (lower case), with ":port" if restricted to a port. */
+    private final Set<String> hosts;
+    /** Wildcard domains by port. */
+    private final Map<Integer, DomainSuffixTrie> wildcards;
+    /** IP ranges (including resolved host names) by port. */
+    private final Map<Integer, IPPrefixTree<Boolean>> ranges;
+
+    /**
+     * Initializes an empty whitelist.
+     * @param entries The valid entries, added by {@link #add(String)}.
+     */
+    private Whitelist(List<String> entries) {
+        this.entries = entries;
+        this.hosts = new HashSet<String>();
+        this.wildcards = new HashMap<Integer, DomainSuffixTrie>();
+        this.ranges = new HashMap<Integer, IPPrefixTree<Boolean>>();
+    }
+
+    /**
+     * Compiles the given whitelist entries.
+     * @param entries The entries.
+     * @param invalid Receives all entries that couldn't be parsed.
+     * @return The compiled whitelist.
+     */
+    public static Whitelist compile(Collection<String> entries, Collection<String> invalid) {
+        Whitelist whitelist = new Whitelist(new ArrayList<String>());
+        for (String entry : entries) {
+            if (whitelist.add(entry)) {
+                whitelist.entries.add(entry);
+            } else {
+                invalid.add(entry);
+            }
+        }
+        return whitelist;
+    }
+
+    /**
+     * Adds an entry while the whitelist is built.
+     * @param entry The entry.
+     * @return False iff the entry couldn't be parsed.
+     */
+    private boolean add(String entry) {
+        String name = entry.trim();
+        int port = ANY_PORT;
+        int colon = name.lastIndexOf(':');
+        // IPv6 addresses contain more than one colon
+        if (colon >= 0 && name.indexOf(':') == colon && name.indexOf('/') < 0) {
+            try {
+                port = Integer.parseInt(name.substring(colon + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            if (port < 0 || port > 65535) {
+                return false;
+            }
+            name = name.substring(0, colon);
+        }
+        if (getRanges(port).put(name, Boolean.TRUE)) {
+            return true;
+        }
+        if (name.startsWith("*.") && isDomain(name.substring(2))) {
+            DomainSuffixTrie trie = wildcards.get(port);
+            if (trie == null) {
+                trie = new DomainSuffixTrie();
+                wildcards.put(port, trie);
+            }
+            trie.add(name.substring(2));
+        } else if (isDomain(name)) {
+            hosts.add(port == ANY_PORT ? name.toLowerCase() : name.toLowerCase() + ":" + port);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param port The port or {@link #ANY_PORT}.
+     * @return The IP ranges of the port, created if missing.
+     */
+    private IPPrefixTree<Boolean> getRanges(int port) {
+        IPPrefixTree<Boolean> tree = ranges.get(port);
+        if (tree == null) {
+            tree = new IPPrefixTree<Boolean>();
+            ranges.put(port, tree);
+        }
+        return tree;
+    }
+
+    /**
+     * Resolves the exact host names (following SRV records like a check of the server would)
+     * and adds their addresses together with the resolved ports. Blocks, so it has to be called off the main thread.
+     * Names that can't be resolved only match by name.
+     * @return A new whitelist with the same entries and the resolved addresses.
+     */
+    public Whitelist resolve() {
+        Whitelist resolved = new Whitelist(entries);
+        for (String entry : entries) {
+            resolved.add(entry);
+        }
+        for (String host : hosts) {
+            int colon = host.indexOf(':');
+            String name = colon < 0 ? host : host.substring(0, colon);
+            int port = colon < 0 ? PotentialServer.DEFAULT_PORT : Integer.parseInt(host.substring(colon + 1));
+            try {
+                SRVRecord record = new SRVRecord(name, port, "minecraft");
+                byte[] address = DnsResolver.get().resolve(record.getDomain()).getAddress();
+                // only the resolved server, not every server sharing its IP address (shared hosting)
+                resolved.getRanges(record.getPort()).put(address, address.length * 8, Boolean.TRUE);
+                Log.debug(Log.Subsystem.NETWORK, "Whitelisted server {} resolved", host);
+            } catch (UnknownHostException e) {
+                Log.warn("Couldn't resolve whitelisted server " + host + ", it only matches by name");
+            }
+        }
+        return resolved;
+    }
+
+    /**
+     * @param name The name.
+     * @return True iff the name is a syntactically valid domain.
+     */
+    private static boolean isDomain(String name) {
+        return AddressScanner.isDomain(name);
+    }
+
+    /**
+     * @param host The matched host name.
+     * @param port The port of the server.
+     * @return True iff the host name is whitelisted.
+     */
+    public boolean matchesDomain(String host, int port) {
+        String lower = host.toLowerCase();
+        return hosts.contains(lower) || hosts.contains(lower + ":" + port)
+                || matchesWildcard(ANY_PORT, lower) || matchesWildcard(port, lower);
+    }
+
+    /**
+     * @param port The port or {@link #ANY_PORT}.
+     * @param host The host name.
+     * @return True iff a wildcard domain of the port matches the host name.
+     */
+    private boolean matchesWildcard(int port, String host) {
+        DomainSuffixTrie trie = wildcards.get(port);
+        return trie != null && trie.matches(host);
+    }
+
+    /**
+     * @param address The packed IP address.
+     * @param port The port of the server.
+     * @return True iff the IP address is whitelisted.
+     */
+    public boolean matchesAddress(byte[] address, int port) {
+        IPPrefixTree<Boolean> any = ranges.get(ANY_PORT);
+        IPPrefixTree<Boolean> exact = ranges.get(port);
+        return any != null && any.contains(address) || exact != null && exact.contains(address);
+    }
+
+    /** @return True iff there are no entries. */
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /** @return The current whitelist. */
+    public static Whitelist get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current whitelist.
+     * @param whitelist The new whitelist.
+     */
+    public static void set(Whitelist whitelist) {
+        current = whitelist;
+    }
+
+    /**
+     * Replaces the current whitelist, unless it has been replaced in the meantime.
+     * @param expected The whitelist expected to be the current one.
+     * @param whitelist The new whitelist.
+     * @return True iff the whitelist was replaced.
+     */
+    public static synchronized boolean replace(Whitelist expected, Whitelist whitelist) {
+        if (current != expected) {
+            return false;
+        }
+        current = whitelist;
+        return true;
+    }
+}
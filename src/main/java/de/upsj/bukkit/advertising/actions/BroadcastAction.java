@@ -44,6 +44,11 @@ public class BroadcastAction extends Action {
         server.broadcastMessage(broadcastMessage.replace(NAME, message.getSender()));
     }
 
+    @Override
+    public boolean isNotification() {
+        return true;
+    }
+
     @Override
     public void reloadConfig(ConfigurationSection config) {
         super.reloadConfig(config);
@@ -4,22 +4,48 @@ import de.upsj.bukkit.advertising.Action;
 import de.upsj.bukkit.advertising.ActionHandler;
 import de.upsj.bukkit.advertising.ChatMessage;
 import de.upsj.bukkit.annotations.ConfigSection;
+import de.upsj.bukkit.annotations.ConfigVar;
+import de.upsj.bukkit.annotations.ConfigVarType;
+import org.bukkit.ChatColor;
+import org.bukkit.configuration.ConfigurationSection;
 
 /**
- * Censors the chat message (replaces all advertisement by '*' characters).
+ * Censors the chat message (replaces all advertisement by '*' characters or a replacement text).
  * @author upsj
  * @version 1.0
  */
 @ConfigSection(name = "censor", // keep up-do-date with the Actions enum!
         description = "Censors server advertisement (replaces it by '*' characters).",
+        values = {
+                @ConfigVar(name = CensorAction.CONF_REPLACEMENT, type = ConfigVarType.STRING,
+                          description = "A single character replacing every character of the advertisement "
+                                      + "or a text (like '[ad]' or '***') replacing the whole address. "
+                                      + "Use &0 - &f for colors.")
+        },
         parent = ActionHandler.class
 )
 public class CensorAction extends Action {
+    /** Config value for the replacement. */
+    public static final String CONF_REPLACEMENT = "replacement";
+    /** The replacement. */
+    private String replacement;
+
     /** Initializes the censor action. */
     CensorAction() { }
 
     @Override
     public void doAction(ChatMessage message) {
-        message.censorAll();
+        message.censorAll(replacement);
+    }
+
+    @Override
+    public void reloadConfig(ConfigurationSection config) {
+        super.reloadConfig(config);
+        String text = config.getString(CONF_REPLACEMENT, "*");
+        if (text.length() == 0) {
+            text = "*";
+        }
+        config.set(CONF_REPLACEMENT, text);
+        this.replacement = ChatColor.translateAlternateColorCodes('&', text);
     }
 }
@@ -65,9 +65,20 @@ public class LogAction extends Action {
                 builder.append(") ");
             }
         }
+        if (message.getInheritedVerdict() != null) {
+            builder.append("(similar to ");
+            builder.append(message.getInheritedVerdict().toDisplayString());
+            builder.append(") ");
+        }
         builder.append(" - message: '");
         builder.append(message.getMessage());
         builder.append("'");
+        if (message.getContext() != null) {
+            // address spread over several lines
+            builder.append(" after '");
+            builder.append(message.getContext());
+            builder.append("'");
+        }
         log.info(builder.toString());
     }
 
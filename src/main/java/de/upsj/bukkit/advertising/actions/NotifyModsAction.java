@@ -8,8 +8,8 @@ import org.bukkit.configuration.ConfigurationSection;
 import de.upsj.bukkit.advertising.Action;
 import de.upsj.bukkit.advertising.ChatMessage;
 import de.upsj.bukkit.advertising.Permissions;
-import de.upsj.bukkit.advertising.servers.PingedServer;
 import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
 import de.upsj.bukkit.annotations.ConfigSection;
 import de.upsj.bukkit.annotations.ConfigVar;
 import de.upsj.bukkit.annotations.ConfigVarType;
@@ -61,17 +61,36 @@ public class NotifyModsAction extends Action {
     public void doAction(ChatMessage message) {
         server.broadcast(notificationMessage.replace(NAME, message.getSender())
                                             .replace(MSG, message.getMessage()), Permissions.NOTIFY);
+        boolean notified = false;
         for (int i = 0; i < message.getMatchCount(); i++) {
             PotentialServer match = message.getMatch(i);
-            if (match.isServer()) {
-                PingedServer pinged = (PingedServer) match;
-                server.broadcast(serverFormat.replace(MOTD, pinged.getMOTD())
-                                             .replace(PLAYERS, String.valueOf(pinged.getPlayers()))
-                                             .replace(MAXPLAYERS, String.valueOf(pinged.getMaxPlayers()))
-                                             .replace(ADDRESS, pinged.getMatchedAddress()),
-                        Permissions.NOTIFY);
+            if (match != null && match.isServer()) {
+                notifyServer((ServerVerdict) match);
+                notified = true;
             }
         }
+        // similar to earlier advertisement, own matches not checked yet
+        if (!notified && message.getInheritedVerdict() != null) {
+            notifyServer(message.getInheritedVerdict());
+        }
+    }
+
+    /**
+     * Sends the server information to all players with the notify permission.
+     * @param pinged The advertised server.
+     */
+    private void notifyServer(ServerVerdict pinged) {
+        String motd = pinged.getMOTD();
+        server.broadcast(serverFormat.replace(MOTD, motd == null ? pinged.toDisplayString() : motd)
+                                     .replace(PLAYERS, String.valueOf(pinged.getPlayers()))
+                                     .replace(MAXPLAYERS, String.valueOf(pinged.getMaxPlayers()))
+                                     .replace(ADDRESS, pinged.getMatchedAddress()),
+                Permissions.NOTIFY);
+    }
+
+    @Override
+    public boolean isNotification() {
+        return true;
     }
 
     @Override
@@ -0,0 +1,46 @@
+package de.upsj.bukkit.advertising.commands;
+
+import de.upsj.bukkit.advertising.AntiAdvertisingPlugin;
+import de.upsj.bukkit.advertising.Permissions;
+import de.upsj.bukkit.annotations.CommandDef;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Rebuilds the domain blocklist from its plain text list.
+ * @author upsj
+ * @version 1.0
+ */
+@CommandDef(name = BlocklistCommand.NAME, description = "Rebuilds the domain blocklist from its plain text list.",
+            permission = Permissions.BLOCKLIST)
+public class BlocklistCommand implements CommandExecutor {
+    /** The command name. */
+    public static final String NAME = "antiadblocklist";
+    private final AntiAdvertisingPlugin plugin;
+
+    /**
+     * Initializes the blocklist command.
+     * @param plugin The plugin.
+     */
+    public BlocklistCommand(AntiAdvertisingPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender commandSender, Command command, String alias, String[] strings) {
+        if (!commandSender.hasPermission(Permissions.BLOCKLIST)) {
+            return false;
+        }
+        if (!command.getName().equalsIgnoreCase(NAME)) {
+            return false;
+        }
+        if (plugin.rebuildDomainBlocklist(commandSender)) {
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Rebuilding the domain blocklist...");
+        } else {
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] The domain blocklist is already being rebuilt");
+        }
+        return true;
+    }
+}
@@ -67,21 +67,21 @@ public class PingCommand implements CommandExecutor, ServerRequestListener {
             if (newServer.isFinal()) {
                 updateStatus(match, newServer);
             }
-            Log.debug("Serverping command: Enqueued " + match);
+            Log.debug(Log.Subsystem.GENERAL, "Serverping command: Enqueued {}", match);
         }
         return true;
     }
 
     @Override
     public void updateStatus(PotentialServer oldServer, PotentialServer newServer) {
-        Log.debug("Serverping command: Replacing " + oldServer + " by " + newServer);
+        Log.debug(Log.Subsystem.GENERAL, "Serverping command: Replacing {} by {}", oldServer, newServer);
         Iterator<ServerPlayerPair> it = requests.iterator();
         ServerPlayerPair pair;
         CommandSender sender;
         while (it.hasNext()) {
             pair = it.next();
             if (pair.server == oldServer) {
-                Log.debug("Serverping command: Found request for oldServer by " + pair.sender);
+                Log.debug(Log.Subsystem.GENERAL, "Serverping command: Found request for oldServer by {}", pair.sender);
                 pair.server = newServer;
                 sender = pair.getSender(server);
                 if (sender == null) {
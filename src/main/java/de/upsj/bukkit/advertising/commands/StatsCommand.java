@@ -0,0 +1,81 @@
+package de.upsj.bukkit.advertising.commands;
+
+import de.upsj.bukkit.advertising.AntiAdvertisingPlugin;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.Permissions;
+import de.upsj.bukkit.advertising.PipelineTrace;
+import de.upsj.bukkit.annotations.CommandDef;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Shows, dumps or resets the pipeline metrics, controls the pipeline trace.
+ * @author upsj
+ * @version 1.0
+ */
+@CommandDef(name = StatsCommand.NAME, description = "Shows the pipeline metrics (latencies, cache hit rate, queues).",
+            permission = Permissions.STATS)
+public class StatsCommand implements CommandExecutor {
+    /** The command name. */
+    public static final String NAME = "antiadstats";
+    private final AntiAdvertisingPlugin plugin;
+
+    /**
+     * Initializes the stats command.
+     * @param plugin The plugin.
+     */
+    public StatsCommand(AntiAdvertisingPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender commandSender, Command command, String alias, String[] strings) {
+        if (!commandSender.hasPermission(Permissions.STATS)) {
+            return false;
+        }
+        if (!command.getName().equalsIgnoreCase(NAME)) {
+            return false;
+        }
+        if (strings.length == 0) {
+            for (String line : Metrics.report()) {
+                commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] " + line);
+            }
+        } else if (strings.length == 1 && strings[0].equalsIgnoreCase("dump")) {
+            plugin.dumpMetrics(commandSender);
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Dumping the metrics...");
+        } else if (strings.length == 1 && strings[0].equalsIgnoreCase("reset")) {
+            Metrics.reset();
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Metrics reset");
+        } else if (strings.length == 2 && strings[0].equalsIgnoreCase("trace")) {
+            trace(commandSender, strings[1]);
+        } else {
+            commandSender.sendMessage(ChatColor.GOLD + "Usage: /" + NAME + " [dump|reset]");
+            commandSender.sendMessage(ChatColor.GOLD + " or /" + NAME + " trace on|off|dump");
+        }
+        return true;
+    }
+
+    /**
+     * Controls the pipeline trace.
+     * @param commandSender The command sender.
+     * @param argument on, off or dump.
+     */
+    private void trace(CommandSender commandSender, String argument) {
+        if (argument.equalsIgnoreCase("on")) {
+            PipelineTrace.setEnabled(true);
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Tracing the pipeline, keeping the last "
+                    + PipelineTrace.CAPACITY + " events");
+        } else if (argument.equalsIgnoreCase("off")) {
+            PipelineTrace.setEnabled(false);
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Stopped tracing after "
+                    + PipelineTrace.getRecordedCount() + " events");
+        } else if (argument.equalsIgnoreCase("dump")) {
+            plugin.dumpTrace(commandSender);
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Dumping the pipeline trace...");
+        } else {
+            commandSender.sendMessage(ChatColor.GOLD + "Usage: /" + NAME + " trace on|off|dump");
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package de.upsj.bukkit.advertising.commands;
+
+import de.upsj.bukkit.advertising.AdvertisementStats;
+import de.upsj.bukkit.advertising.Permissions;
+import de.upsj.bukkit.advertising.util.SpaceSaving;
+import de.upsj.bukkit.annotations.CommandDef;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+
+import java.util.List;
+
+/**
+ * Shows the most advertised domains or IP addresses or the most offending players.
+ * @author upsj
+ * @version 1.0
+ */
+@CommandDef(name = TopCommand.NAME, description = "Shows the most advertised servers or the most offending players.",
+            permission = Permissions.TOP)
+public class TopCommand implements CommandExecutor {
+    /** The command name. */
+    public static final String NAME = "antiadtop";
+    /** Default count of entries shown. */
+    private static final int DEFAULT_COUNT = 10;
+    /** Maximal count of entries shown. */
+    private static final int MAX_COUNT = 64;
+    private final AdvertisementStats stats;
+
+    /**
+     * Initializes the top command.
+     * @param stats The advertisement statistics.
+     */
+    public TopCommand(AdvertisementStats stats) {
+        this.stats = stats;
+    }
+
+    @Override
+    public boolean onCommand(CommandSender commandSender, Command command, String alias, String[] strings) {
+        if (!commandSender.hasPermission(Permissions.TOP)) {
+            return false;
+        }
+        if (!command.getName().equalsIgnoreCase(NAME)) {
+            return false;
+        }
+        AdvertisementStats.Category category = AdvertisementStats.Category.DOMAINS;
+        AdvertisementStats.Window window = AdvertisementStats.Window.HOUR;
+        int count = DEFAULT_COUNT;
+        try {
+            if (strings.length > 0) {
+                category = AdvertisementStats.Category.valueOf(strings[0].toUpperCase());
+            }
+            if (strings.length > 1) {
+                window = AdvertisementStats.Window.valueOf(strings[1].toUpperCase());
+            }
+            if (strings.length > 2) {
+                count = Math.min(MAX_COUNT, Math.max(1, Integer.parseInt(strings[2])));
+            }
+        } catch (IllegalArgumentException e) {
+            // also catches NumberFormatException
+            commandSender.sendMessage(ChatColor.GOLD + "Usage: /" + NAME + " [domains|ips|players] [hour|day] [count]");
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        String name = category.name().toLowerCase();
+        String period = window.name().toLowerCase();
+        List<SpaceSaving.Entry> top = stats.top(category, window, count, now);
+        commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Top " + name + " of the last " + period + " ("
+                + stats.total(category, window, now) + " total, ~" + stats.distinct(category, window, now)
+                + " distinct):");
+        if (top.isEmpty()) {
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] Nothing advertised");
+        }
+        int rank = 1;
+        for (SpaceSaving.Entry entry : top) {
+            String error = entry.getError() > 0 ? " (+-" + entry.getError() + ")" : "";
+            commandSender.sendMessage(ChatColor.GOLD + "[AntiAd] " + rank++ + ". " + entry.getKey() + ": "
+                    + entry.getCount() + error);
+        }
+        return true;
+    }
+}
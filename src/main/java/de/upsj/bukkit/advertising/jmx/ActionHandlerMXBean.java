@@ -0,0 +1,48 @@
+package de.upsj.bukkit.advertising.jmx;
+
+/**
+ * Management interface of the action handler: held messages and raid detection.
+ * Changes apply immediately, but aren't saved to the configuration.
+ * @author upsj
+ * @version 1.0
+ */
+public interface ActionHandlerMXBean {
+    /** @return The count of messages held back until their servers are checked. */
+    int getPendingMessages();
+
+    /** @return The largest count of held messages since the last metrics reset. */
+    int getPeakPendingMessages();
+
+    /** @return The count of handled messages. */
+    long getHandledMessages();
+
+    /** @return The median time (ms) a message is held back. */
+    double getHoldP50();
+
+    /** @return The 99th percentile of the time (ms) a message is held back. */
+    double getHoldP99();
+
+    /** @return The longest time (ms) a message was held back. */
+    double getHoldMax();
+
+    /** @return The count of currently raided servers. */
+    int getRaidedServers();
+
+    /** @return The count of distinct players starting a raid, 0 if disabled. */
+    int getRaidPlayers();
+
+    /** @param players The count of distinct players starting a raid, 0 to disable. Ends all raids. */
+    void setRaidPlayers(int players);
+
+    /** @return The raid detection time window (s). */
+    long getRaidWindow();
+
+    /** @param seconds The raid detection time window (s). Ends all raids. */
+    void setRaidWindow(long seconds);
+
+    /** @return The time (s) a raided server is blocked instantly. */
+    long getRaidCooldown();
+
+    /** @param seconds The time (s) a raided server is blocked instantly. Ends all raids. */
+    void setRaidCooldown(long seconds);
+}
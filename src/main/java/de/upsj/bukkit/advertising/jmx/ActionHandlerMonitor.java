@@ -0,0 +1,96 @@
+package de.upsj.bukkit.advertising.jmx;
+
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.RaidDetector;
+
+/**
+ * Exposes an action handler via JMX.
+ * @author upsj
+ * @version 1.0
+ */
+public class ActionHandlerMonitor implements ActionHandlerMXBean {
+    /** Milliseconds per second. */
+    private static final long SECOND = 1000L;
+    /** The raid detection of the action handler. */
+    private final RaidDetector raids;
+
+    /**
+     * Initializes the monitor.
+     * @param handler The action handler.
+     */
+    public ActionHandlerMonitor(ActionHandler handler) {
+        this.raids = handler.getRaids();
+    }
+
+    @Override
+    public int getPendingMessages() {
+        return Metrics.getPending();
+    }
+
+    @Override
+    public int getPeakPendingMessages() {
+        return Metrics.getPeakPending();
+    }
+
+    @Override
+    public long getHandledMessages() {
+        return Metrics.HOLD.getCount();
+    }
+
+    @Override
+    public double getHoldP50() {
+        return Metrics.HOLD.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getHoldP99() {
+        return Metrics.HOLD.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getHoldMax() {
+        return Metrics.HOLD.getMax() / 1000.0;
+    }
+
+    @Override
+    public int getRaidedServers() {
+        return raids.getRaidCount();
+    }
+
+    @Override
+    public int getRaidPlayers() {
+        return raids.getMinPlayers();
+    }
+
+    @Override
+    public void setRaidPlayers(int players) {
+        synchronized (raids) {
+            raids.setLimits(players, raids.getWindow(), raids.getCooldown());
+        }
+    }
+
+    @Override
+    public long getRaidWindow() {
+        return raids.getWindow() / SECOND;
+    }
+
+    @Override
+    public void setRaidWindow(long seconds) {
+        synchronized (raids) {
+            raids.setLimits(raids.getMinPlayers(), seconds * SECOND, raids.getCooldown());
+        }
+    }
+
+    @Override
+    public long getRaidCooldown() {
+        return raids.getCooldown() / SECOND;
+    }
+
+    @Override
+    public void setRaidCooldown(long seconds) {
+        synchronized (raids) {
+            raids.setLimits(raids.getMinPlayers(), raids.getWindow(), seconds * SECOND);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package de.upsj.bukkit.advertising.jmx;
+
+/**
+ * Management interface of the chat listener: parsing, message cache and classification service.
+ * Changes apply immediately, but aren't saved to the configuration.
+ * @author upsj
+ * @version 1.0
+ */
+public interface ChatListenerMXBean {
+    /** @return True iff the chat is checked. */
+    boolean isEnabled();
+
+    /** @param enabled True to check the chat. */
+    void setEnabled(boolean enabled);
+
+    /** @return The count of parsed messages. */
+    long getParsedMessages();
+
+    /** @return The median parse time (ms). */
+    double getParseP50();
+
+    /** @return The 99th percentile of the parse time (ms). */
+    double getParseP99();
+
+    /** @return The count of cached messages. */
+    int getMessageCacheSize();
+
+    /** @return The maximal count of cached messages. */
+    int getMessageCacheCapacity();
+
+    /** @param capacity The maximal count of cached messages, 0 to disable the cache. */
+    void setMessageCacheCapacity(int capacity);
+
+    /** @return The count of players with stored chat lines. */
+    int getHistoryPlayers();
+
+    /** @return The count of recent advertisement messages kept for the near-duplicate detection. */
+    int getSimilarMessages();
+
+    /** @return The maximal count of checked matches of a message. */
+    int getMaxMatches();
+
+    /** @param matches The maximal count of checked matches of a message. */
+    void setMaxMatches(int matches);
+
+    /** @return The count of commands and other inputs being classified. */
+    int getPendingClassifications();
+
+    /** @return The count of classification worker threads. */
+    int getClassificationWorkers();
+
+    /** @param workers The count of classification worker threads. */
+    void setClassificationWorkers(int workers);
+}
@@ -0,0 +1,104 @@
+package de.upsj.bukkit.advertising.jmx;
+
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.ClassificationService;
+import de.upsj.bukkit.advertising.Metrics;
+
+/**
+ * Exposes a chat listener via JMX.
+ * @author upsj
+ * @version 1.0
+ */
+public class ChatListenerMonitor implements ChatListenerMXBean {
+    /** The chat listener. */
+    private final ChatListener listener;
+
+    /**
+     * Initializes the monitor.
+     * @param listener The chat listener.
+     */
+    public ChatListenerMonitor(ChatListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return listener.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        listener.setEnabled(enabled);
+    }
+
+    @Override
+    public long getParsedMessages() {
+        return Metrics.PARSE.getCount();
+    }
+
+    @Override
+    public double getParseP50() {
+        return Metrics.PARSE.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getParseP99() {
+        return Metrics.PARSE.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public int getMessageCacheSize() {
+        return listener.getCache().size();
+    }
+
+    @Override
+    public int getMessageCacheCapacity() {
+        return listener.getCache().getCapacity();
+    }
+
+    @Override
+    public void setMessageCacheCapacity(int capacity) {
+        listener.getCache().setCapacity(capacity);
+    }
+
+    @Override
+    public int getHistoryPlayers() {
+        return listener.getHistorySize();
+    }
+
+    @Override
+    public int getSimilarMessages() {
+        return listener.getSimilarCount();
+    }
+
+    @Override
+    public int getMaxMatches() {
+        return ChatMessage.getMaxMatches();
+    }
+
+    @Override
+    public void setMaxMatches(int matches) {
+        ChatMessage.setMaxMatches(matches);
+    }
+
+    @Override
+    public int getPendingClassifications() {
+        ClassificationService service = listener.getService();
+        return service == null ? 0 : service.getPendingCount();
+    }
+
+    @Override
+    public int getClassificationWorkers() {
+        ClassificationService service = listener.getService();
+        return service == null ? 0 : service.getWorkers();
+    }
+
+    @Override
+    public void setClassificationWorkers(int workers) {
+        ClassificationService service = listener.getService();
+        if (service != null) {
+            service.setWorkers(workers);
+        }
+    }
+}
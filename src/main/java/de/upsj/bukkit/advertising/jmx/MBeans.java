@@ -0,0 +1,73 @@
+package de.upsj.bukkit.advertising.jmx;
+
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.ServerChecker;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registers the MBeans of the plugin components at the platform MBean server.
+ * @author upsj
+ * @version 1.0
+ */
+public final class MBeans {
+    /** The domain of the object names. */
+    public static final String DOMAIN = "de.upsj.bukkit.advertising";
+    /** The names of the registered MBeans. */
+    private static final List<ObjectName> REGISTERED = new ArrayList<ObjectName>();
+
+    /** Avoid instances. */
+    private MBeans() { }
+
+    /**
+     * Registers the MBeans, replacing those of an earlier instance (e.g. before a server reload).
+     * @param checker The server checker.
+     * @param handler The action handler.
+     * @param listener The chat listener.
+     */
+    public static synchronized void register(ServerChecker checker, ActionHandler handler, ChatListener listener) {
+        unregister();
+        register("ServerChecker", new ServerCheckerMonitor(checker, listener));
+        register("ActionHandler", new ActionHandlerMonitor(handler));
+        register("ChatListener", new ChatListenerMonitor(listener));
+    }
+
+    /**
+     * Registers a single MBean.
+     * @param type The type of the object name.
+     * @param bean The MBean.
+     */
+    private static void register(String type, Object bean) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=" + type);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(bean, name);
+            REGISTERED.add(name);
+        } catch (JMException e) {
+            Log.warn("Couldn't register the " + type + " MBean: " + e);
+        }
+    }
+
+    /** Unregisters all MBeans. */
+    public static synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : REGISTERED) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                Log.debug(Log.Subsystem.GENERAL, "Couldn't unregister {}: {}", name, e);
+            }
+        }
+        REGISTERED.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package de.upsj.bukkit.advertising.jmx;
+
+/**
+ * Management interface of the server checker: verdict cache, ping thread pool and network latencies.
+ * Changes apply immediately, keeping the cached verdicts, but aren't saved to the configuration.
+ * @author upsj
+ * @version 1.0
+ */
+public interface ServerCheckerMXBean {
+    /** @return The count of cached server verdicts. */
+    int getKnownServers();
+
+    /** @return The count of servers being resolved or pinged (including queued ones). */
+    int getProcessingServers();
+
+    /** @return The count of servers currently resolved or pinged by a thread. */
+    int getInFlightProbes();
+
+    /** @return The count of servers waiting for a free thread. */
+    int getQueuedProbes();
+
+    /** @return The count of finished resolve and ping tasks. */
+    long getCompletedProbes();
+
+    /** @return True iff the thread pool has been shut down. */
+    boolean isShutdown();
+
+    /** @return The maximal count of servers resolved and pinged at the same time. */
+    int getThreads();
+
+    /** @param threads The maximal count of servers resolved and pinged at the same time. */
+    void setThreads(int threads);
+
+    /** @return The ping timeout (ms). */
+    int getTimeout();
+
+    /** @param timeout The ping timeout (ms), limited to 50 - 10000. */
+    void setTimeout(int timeout);
+
+    /** @return The time a verdict is cached (minutes). */
+    long getCacheMinutes();
+
+    /** @param minutes The time a verdict is cached (minutes), at least 1. */
+    void setCacheMinutes(long minutes);
+
+    /** @return The verdict cache hit rate (0 - 1), counting joined checks as hits. */
+    double getCacheHitRate();
+
+    /** @return The median DNS lookup time (ms). */
+    double getDnsP50();
+
+    /** @return The 99th percentile of the DNS lookup time (ms). */
+    double getDnsP99();
+
+    /** @return The median ping time (ms). */
+    double getPingP50();
+
+    /** @return The 99th percentile of the ping time (ms). */
+    double getPingP99();
+
+    /** Removes the cached verdicts of servers that didn't respond, e.g. after raising the timeout. */
+    void forgetFailedPings();
+}
@@ -0,0 +1,124 @@
+package de.upsj.bukkit.advertising.jmx;
+
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.ServerChecker;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+
+/**
+ * Exposes a server checker via JMX.
+ * @author upsj
+ * @version 1.0
+ */
+public class ServerCheckerMonitor implements ServerCheckerMXBean {
+    /** Milliseconds per minute. */
+    private static final long MINUTE = 60 * 1000L;
+    /** The server checker. */
+    private final ServerChecker checker;
+    /** The chat listener, whose message cache uses the cache time, too. */
+    private final ChatListener listener;
+
+    /**
+     * Initializes the monitor.
+     * @param checker The server checker.
+     * @param listener The chat listener.
+     */
+    public ServerCheckerMonitor(ServerChecker checker, ChatListener listener) {
+        this.checker = checker;
+        this.listener = listener;
+    }
+
+    @Override
+    public int getKnownServers() {
+        return checker.getKnownCount();
+    }
+
+    @Override
+    public int getProcessingServers() {
+        return Metrics.getProcessing();
+    }
+
+    @Override
+    public int getInFlightProbes() {
+        return checker.getActiveCount();
+    }
+
+    @Override
+    public int getQueuedProbes() {
+        return checker.getQueuedCount();
+    }
+
+    @Override
+    public long getCompletedProbes() {
+        return checker.getCompletedCount();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return checker.isShutdown();
+    }
+
+    @Override
+    public int getThreads() {
+        return checker.getThreads();
+    }
+
+    @Override
+    public void setThreads(int threads) {
+        checker.setThreads(threads);
+    }
+
+    @Override
+    public int getTimeout() {
+        return checker.getTimeout();
+    }
+
+    @Override
+    public void setTimeout(int timeout) {
+        checker.setTimeout(timeout);
+    }
+
+    @Override
+    public long getCacheMinutes() {
+        return checker.getCacheTime() / MINUTE;
+    }
+
+    @Override
+    public void setCacheMinutes(long minutes) {
+        checker.setCacheTime(minutes * MINUTE);
+        // like a reload, the message cache expires its verdicts along with the verdict cache
+        listener.getCache().setMaxAge(checker.getCacheTime());
+    }
+
+    @Override
+    public double getCacheHitRate() {
+        long hits = Metrics.CACHE_HITS.get() + Metrics.CACHE_JOINS.get();
+        long total = hits + Metrics.CACHE_MISSES.get();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public double getDnsP50() {
+        return Metrics.DNS.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getDnsP99() {
+        return Metrics.DNS.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getPingP50() {
+        return Metrics.PING.getPercentile(50) / 1000.0;
+    }
+
+    @Override
+    public double getPingP99() {
+        return Metrics.PING.getPercentile(99) / 1000.0;
+    }
+
+    @Override
+    public void forgetFailedPings() {
+        checker.removeKnown(ServerVerdict.State.NO_SERVER);
+    }
+}
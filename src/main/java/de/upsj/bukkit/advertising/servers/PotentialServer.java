@@ -1,6 +1,9 @@
 package de.upsj.bukkit.advertising.servers;
 
 import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.PipelineTrace;
+import de.upsj.bukkit.advertising.util.DnsResolver;
 import de.upsj.bukkit.advertising.util.SRVRecord;
 
 import java.net.InetAddress;
@@ -15,7 +18,7 @@ import java.util.concurrent.Callable;
  */
 public class PotentialServer implements Callable<PotentialServer> {
     /** Default port. */
-    protected static final int DEFAULT_PORT = 25565;
+    public static final int DEFAULT_PORT = 25565;
 
     /** The matched server domain name. */
     protected final String address;
@@ -80,14 +83,18 @@ public class PotentialServer implements Callable<PotentialServer> {
         return port;
     }
 
-    /** @return True if and only if this is the server's final form. */
-    public boolean isFinal() {
-        return false;
+    /**
+     * Final check instead of a virtual method to keep call sites monomorphic.
+     * @return True if and only if this is the server's final form.
+     */
+    public final boolean isFinal() {
+        return this instanceof ServerVerdict;
     }
 
     /** @return True if and only if this is a server for sure. */
-    public boolean isServer() {
-        return false;
+    public final boolean isServer() {
+        return this instanceof ServerVerdict
+            && ((ServerVerdict) this).getState().isServer();
     }
 
     @Override
@@ -105,16 +112,26 @@ public class PotentialServer implements Callable<PotentialServer> {
      */
     public PotentialServer call() {
         PotentialServer result;
+        long start = System.nanoTime();
         try {
             SRVRecord record = new SRVRecord(address, port, "minecraft");
             // only use domain from SRV record internally - equality checks would fail otherwise
             // The port can be changed, as it isn't included in this check.
             this.port = record.getPort();
-            InetAddress ip = InetAddress.getByName(record.getDomain());
-            result = new ResolvedServer(this, ip);
-            Log.debug("Resolved " + this + ": " + result);
+            InetAddress ip = DnsResolver.get().resolve(record.getDomain());
+            Metrics.DNS.recordSince(start);
+            PipelineTrace.record(PipelineTrace.Stage.RESOLVE, address, start);
+            ResolvedServer resolved = new ResolvedServer(this, ip);
+            result = ServerVerdict.lookup(resolved);
+            if (result == null) {
+                result = resolved;
+            }
+            Log.debug(Log.Subsystem.NETWORK, "Resolved {}: {}", this, result);
         } catch (UnknownHostException e) {
-            Log.debug("Couldn't resolve " + this);
+            Metrics.DNS.recordSince(start);
+            Metrics.DNS_FAILURES.increment();
+            PipelineTrace.record(PipelineTrace.Stage.RESOLVE, address, start);
+            Log.debug(Log.Subsystem.NETWORK, "Couldn't resolve {}", this);
             result = null;
         }
         return result;
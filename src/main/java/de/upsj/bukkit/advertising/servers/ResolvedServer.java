@@ -1,15 +1,19 @@
 package de.upsj.bukkit.advertising.servers;
 
 import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.PipelineTrace;
 
 import java.io.DataInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Map;
 
 /**
  * A server match with resolved IP address.
@@ -18,10 +22,12 @@ import java.nio.charset.Charset;
  */
 public class ResolvedServer extends PotentialServer {
     /** Ping timeout. */
-    private static int timeout = 1000;
+    private static volatile int timeout = 1000;
+    /** Addresses pings are redirected to (e.g. simulated servers) or null. */
+    private static volatile Map<InetSocketAddress, InetSocketAddress> routes;
 
-    /** The server's IP address. */
-    protected final InetAddress ipAddress;
+    /** The server's IP address, packed (4 bytes IPv4, 16 bytes IPv6). */
+    protected final byte[] ipAddress;
 
     /**
      * Initializes a resolved server by a potential match and the IP address.
@@ -30,7 +36,7 @@ public class ResolvedServer extends PotentialServer {
      */
     public ResolvedServer(PotentialServer srv, InetAddress ip) {
         super(srv);
-        this.ipAddress = ip;
+        this.ipAddress = ip.getAddress();
     }
 
     /**
@@ -41,7 +47,7 @@ public class ResolvedServer extends PotentialServer {
      */
     public ResolvedServer(InetAddress ip, int port, boolean whitelisted) {
         super(ip.getHostAddress(), port, whitelisted);
-        this.ipAddress = ip;
+        this.ipAddress = ip.getAddress();
     }
 
     /**
@@ -70,6 +76,18 @@ public class ResolvedServer extends PotentialServer {
         this(ip, DEFAULT_PORT);
     }
 
+    /**
+     * Initializes a resolved server by its packed IP address.
+     * @param srvAddr The matched server address.
+     * @param port The port.
+     * @param ip The packed IP address.
+     * @param whitelisted True if the server is whitelisted.
+     */
+    protected ResolvedServer(String srvAddr, int port, byte[] ip, boolean whitelisted) {
+        super(srvAddr, port, whitelisted);
+        this.ipAddress = ip;
+    }
+
     /**
      * Copy constructor.
      * @param srv The server to copy.
@@ -83,27 +101,43 @@ public class ResolvedServer extends PotentialServer {
      * @return The IP address of the server.
      */
     public InetAddress getAddress() {
+        try {
+            return InetAddress.getByAddress(ipAddress);
+        } catch (UnknownHostException e) { // only thrown for illegal lengths
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return The packed IP address of the server. Must not be modified.
+     */
+    public byte[] getRawAddress() {
         return ipAddress;
     }
 
-    @Override
-    public boolean isFinal() {
-        return false;
+    /**
+     * @return The textual representation of the IP address.
+     */
+    public String getHostAddress() {
+        if (ipAddress.length == 0) {
+            return "unresolved";
+        }
+        return getAddress().getHostAddress();
     }
 
     @Override
     public String toString() {
         return "ResolvedServer (" + address + ":" + port
-                + " - " + ipAddress.getHostAddress() + ")";
+                + " - " + getHostAddress() + ")";
     }
 
     public String toDisplayString() {
-        return super.toDisplayString() + " (" + ipAddress.getHostAddress() + ")";
+        return super.toDisplayString() + " (" + getHostAddress() + ")";
     }
 
     @Override
     public int hashCode() {
-        return ipAddress.hashCode() + 31 * port;
+        return Arrays.hashCode(ipAddress) + 31 * port;
     }
 
     @Override
@@ -116,27 +150,33 @@ public class ResolvedServer extends PotentialServer {
         }
         ResolvedServer otherServer = (ResolvedServer) other;
         return this.port == otherServer.port
-            && this.ipAddress.equals(otherServer.ipAddress);
+            && Arrays.equals(this.ipAddress, otherServer.ipAddress);
     }
 
     /**
      * {@inheritDoc}
-     * @return A PingedServer (if successful) or ResolvedNoServer (if unsuccessful ping).
+     * @return A server verdict, positive if the ping was successful.
      */
     public PotentialServer call() {
-        PotentialServer result;
+        PotentialServer result = ServerVerdict.lookup(this);
+        if (result != null) {
+            Log.debug(Log.Subsystem.NETWORK, "Not pinging {}: {}", this, result);
         // loopback adapter
-        if (ipAddress.isLoopbackAddress()) {
-            Log.debug("Ignored " + this + ": Loopback");
-            result = new ResolvedNoServer(this);
+        } else if (getAddress().isLoopbackAddress()) {
+            Log.debug(Log.Subsystem.NETWORK, "Ignored {}: Loopback", this);
+            result = ServerVerdict.noServer(this);
         } else {
+            long start = System.nanoTime();
             try {
-                result = new PingedServer(this, ping());
-                Log.debug("Pinged " + this + ": " + result);
+                result = ServerVerdict.pinged(this, ping());
+                Log.debug(Log.Subsystem.NETWORK, "Pinged {}: {}", this, result);
             } catch (IOException e) {
-                Log.debug("Pinging " + this + " failed: " + e.getMessage());
-                result = new ResolvedNoServer(this);
+                Log.debug(Log.Subsystem.NETWORK, "Pinging {} failed: {}", this, e.getMessage());
+                Metrics.PING_FAILURES.increment();
+                result = ServerVerdict.noServer(this);
             }
+            Metrics.PING.recordSince(start);
+            PipelineTrace.record(PipelineTrace.Stage.PING, this, start);
         }
         return result;
     }
@@ -149,13 +189,17 @@ public class ResolvedServer extends PotentialServer {
     private String ping() throws IOException {
         DataInputStream in;
         OutputStream out;
-        InputStreamReader strReader;
-        char[] chars;
+        byte[] chars;
         Socket socket = new Socket();
+        InetSocketAddress target = new InetSocketAddress(getAddress(), port);
+        Map<InetSocketAddress, InetSocketAddress> currentRoutes = routes;
+        if (currentRoutes != null && currentRoutes.containsKey(target)) {
+            target = currentRoutes.get(target);
+        }
 
         try {
             socket.setSoTimeout(timeout);
-            socket.connect(new InetSocketAddress(ipAddress, port), timeout);
+            socket.connect(target, timeout);
 
             out = socket.getOutputStream();
             in = new DataInputStream(socket.getInputStream());
@@ -174,14 +218,15 @@ public class ResolvedServer extends PotentialServer {
             // ... string: 2 bytes (signed short) for string length...
             int strLen = in.readShort();
 
-            // ... and <strLen> 16bit UCS-2 characters.
-            strReader = new InputStreamReader(in, Charset.forName("UTF-16BE"));
-            chars = new char[strLen];
-            if (strReader.read(chars) != strLen) {
-                throw new IOException("End of stream");
+            if (strLen < 0) {
+                throw new IOException("Negative string length (" + strLen + ").");
             }
 
-            return new String(chars);
+            // ... and <strLen> 16bit UCS-2 characters, possibly spread over several packets.
+            chars = new byte[strLen * 2];
+            in.readFully(chars);
+
+            return new String(chars, Charset.forName("UTF-16BE"));
         } catch (IOException e) {
             throw e;
         } finally {
@@ -196,4 +241,18 @@ public class ResolvedServer extends PotentialServer {
     public static void setTimeout(int timeout) {
         ResolvedServer.timeout = timeout;
     }
+
+    /** @return The ping timeout. */
+    public static int getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Redirects pings, e.g. to simulated servers in tests.
+     * @param newRoutes The addresses pings are sent to instead of the servers' addresses (read on every ping),
+     *                  null to ping the servers themselves.
+     */
+    public static void setRoutes(Map<InetSocketAddress, InetSocketAddress> newRoutes) {
+        routes = newRoutes;
+    }
 }
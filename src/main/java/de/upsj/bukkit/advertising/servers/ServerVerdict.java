@@ -0,0 +1,358 @@
+package de.upsj.bukkit.advertising.servers;
+
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.Whitelist;
+
+/**
+ * The final, immutable result of a server request.
+ * Stored in the verdict cache, so it is kept as small as possible:
+ * packed IP address, interned and length-capped MOTD, primitive player counts.
+ *
+ * @author upsj
+ * @version 1.0
+ */
+public final class ServerVerdict extends ResolvedServer {
+    /** Verdict state. */
+    public enum State {
+        /** Minecraft server responding to pings. */
+        SERVER(true),
+        /** No minecraft server (ping failed or loopback). */
+        NO_SERVER(false),
+        /** Whitelisted server. */
+        WHITELISTED(false),
+        /** Server with a blocked domain or in a blocked IP range, not pinged. */
+        BLOCKED(true),
+        /** Advertised by a blocked keyword without an address. */
+        KEYWORD(true),
+        /** Matched by a custom pattern of the administrator. */
+        PATTERN(true);
+
+        /** True iff the verdict counts as a server. */
+        private final boolean server;
+
+        /**
+         * Initializes the state by its properties.
+         * @param server Does the verdict count as a server?
+         */
+        private State(boolean server) {
+            this.server = server;
+        }
+
+        /** @return True if and only if the verdict counts as a server. */
+        public boolean isServer() { return server; }
+    }
+
+    /** Maximal stored MOTD length. */
+    public static final int MAX_MOTD_LENGTH = 64;
+    /** MOTD used for invalid ping responses. */
+    private static final String INVALID_MOTD = "INVALID SERVER RESPONSE";
+
+    /** The verdict state. */
+    private final State state;
+    /** Server message of the day or null if not pinged successfully. */
+    private final String motd;
+    /** Current player count. */
+    private final int players;
+    /** Maximal player count. */
+    private final int maxPlayers;
+    /** Full response string of the server ping, only kept in debug mode. */
+    private final String fullResponse;
+    /** Creation time of the verdict (ms). */
+    private final long checkedAt;
+    /** True iff the verdict doesn't stand for an advertised server (like a message with too many matches). */
+    private final boolean synthetic;
+
+    /**
+     * Initializes a verdict.
+     * @param srv The resolved server.
+     * @param state The verdict state.
+     * @param motd The message of the day.
+     * @param players The current player count.
+     * @param maxPlayers The maximal player count.
+     * @param fullResponse The full ping response or null.
+     */
+    private ServerVerdict(ResolvedServer srv, State state, String motd, int players, int maxPlayers,
+                          String fullResponse) {
+        super(srv);
+        this.state = srv.whitelisted ? State.WHITELISTED : state;
+        this.motd = motd;
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.fullResponse = fullResponse;
+        this.checkedAt = System.currentTimeMillis();
+        this.synthetic = false;
+    }
+
+    /**
+     * Restores a verdict from persistent storage.
+     * @param srvAddr The matched server address.
+     * @param port The port.
+     * @param ip The packed IP address.
+     * @param state The verdict state.
+     * @param motd The message of the day or null.
+     * @param players The current player count.
+     * @param maxPlayers The maximal player count.
+     * @param checkedAt The original creation time (ms).
+     * @param synthetic True iff the verdict doesn't stand for an advertised server.
+     */
+    private ServerVerdict(String srvAddr, int port, byte[] ip, State state, String motd,
+                          int players, int maxPlayers, long checkedAt, boolean synthetic) {
+        super(srvAddr, port, ip, state == State.WHITELISTED);
+        this.state = state;
+        this.motd = motd;
+        this.players = players;
+        this.maxPlayers = maxPlayers;
+        this.fullResponse = null;
+        this.checkedAt = checkedAt;
+        this.synthetic = synthetic;
+    }
+
+    /**
+     * Creates a verdict for a server that responded to a ping.
+     * @param srv The server.
+     * @param response The ping response.
+     * @return The verdict.
+     */
+    public static ServerVerdict pinged(ResolvedServer srv, String response) {
+        String motd;
+        int players;
+        int maxPlayers;
+        // new protocol
+        if (response.startsWith("§")) {
+            String[] parts = response.split("\0");
+
+            motd = parts.length > 3 ? parts[3] : INVALID_MOTD;
+            players = getArrayValue(parts, 4);
+            maxPlayers = getArrayValue(parts, 5);
+        // old protocol (pre-1.4)
+        } else {
+            String[] parts = response.split("§");
+
+            motd = parts[0];
+            players = getArrayValue(parts, 1);
+            maxPlayers = getArrayValue(parts, 2);
+        }
+        return new ServerVerdict(srv, State.SERVER, compactMOTD(motd), players, maxPlayers,
+                Log.isDebug(Log.Subsystem.NETWORK) ? response : null);
+    }
+
+    /**
+     * Creates a verdict for a resolved address without a minecraft server.
+     * @param srv The server.
+     * @return The verdict.
+     */
+    public static ServerVerdict noServer(ResolvedServer srv) {
+        return new ServerVerdict(srv, State.NO_SERVER, null, -1, -1, null);
+    }
+
+    /**
+     * Creates a verdict for a server resolved to a whitelisted address.
+     * @param srv The server.
+     * @return The verdict.
+     */
+    public static ServerVerdict whitelisted(ResolvedServer srv) {
+        return new ServerVerdict(srv, State.WHITELISTED, null, -1, -1, null);
+    }
+
+    /**
+     * Creates a verdict for a server in a blocked IP range.
+     * @param srv The server.
+     * @return The verdict.
+     */
+    public static ServerVerdict blocked(ResolvedServer srv) {
+        return new ServerVerdict(srv, State.BLOCKED, null, -1, -1, null);
+    }
+
+    /**
+     * Creates a verdict for a server whose domain is blocked.
+     * The verdict has no IP address, so it mustn't be stored in the known servers.
+     * @param srv The server.
+     * @return The verdict.
+     */
+    public static ServerVerdict blockedDomain(PotentialServer srv) {
+        return new ServerVerdict(srv.address, srv.port, new byte[0], State.BLOCKED, null, -1, -1,
+                System.currentTimeMillis(), false);
+    }
+
+    /**
+     * Creates a verdict for a blocked keyword (e.g. the name of a network).
+     * The verdict has no IP address, so it mustn't be stored in the known servers.
+     * @param keyword The keyword.
+     * @return The verdict.
+     */
+    public static ServerVerdict keyword(String keyword) {
+        return new ServerVerdict(keyword, DEFAULT_PORT, new byte[0], State.KEYWORD, null, -1, -1,
+                System.currentTimeMillis(), false);
+    }
+
+    /**
+     * Creates a verdict for a match of a custom pattern.
+     * The verdict has no IP address, so it mustn't be stored in the known servers.
+     * @param pattern The pattern name.
+     * @return The verdict.
+     */
+    public static ServerVerdict pattern(String pattern) {
+        return new ServerVerdict(pattern, DEFAULT_PORT, new byte[0], State.PATTERN, null, -1, -1,
+                System.currentTimeMillis(), false);
+    }
+
+    /**
+     * Creates a verdict treated like a custom pattern match that doesn't stand for an advertised server,
+     * e.g. for a message with more matches than are checked. It isn't counted for raids or statistics.
+     * @param reason The reason, shown as pattern name.
+     * @return The verdict.
+     */
+    public static ServerVerdict synthetic(String reason) {
+        return new ServerVerdict(reason, DEFAULT_PORT, new byte[0], State.PATTERN, null, -1, -1,
+                System.currentTimeMillis(), true);
+    }
+
+    /**
+     * Determines the verdict of a resolved server by the whitelist and the IP blocklist, without pinging it.
+     * @param srv The server.
+     * @return The verdict or null if the server has to be pinged.
+     */
+    public static ServerVerdict lookup(ResolvedServer srv) {
+        if (Whitelist.get().matchesAddress(srv.ipAddress, srv.getPort())) {
+            return whitelisted(srv);
+        }
+        if (IPBlocklist.get().match(srv.ipAddress) != null) {
+            return blocked(srv);
+        }
+        return null;
+    }
+
+    /**
+     * Restores a verdict from persistent storage.
+     * @param srvAddr The matched server address.
+     * @param port The port.
+     * @param ip The packed IP address.
+     * @param state The verdict state.
+     * @param motd The message of the day or null.
+     * @param players The current player count.
+     * @param maxPlayers The maximal player count.
+     * @param checkedAt The original creation time (ms).
+     * @return The verdict.
+     */
+    public static ServerVerdict restore(String srvAddr, int port, byte[] ip, State state, String motd,
+                                        int players, int maxPlayers, long checkedAt) {
+        return new ServerVerdict(srvAddr, port, ip, state, motd == null ? null : compactMOTD(motd),
+                players, maxPlayers, checkedAt, false);
+    }
+
+    /**
+     * @param motd The MOTD.
+     * @return The MOTD, capped to {@link #MAX_MOTD_LENGTH} and interned.
+     */
+    private static String compactMOTD(String motd) {
+        if (motd.length() > MAX_MOTD_LENGTH) {
+            motd = motd.substring(0, MAX_MOTD_LENGTH);
+        }
+        return motd.intern();
+    }
+
+    /**
+     * @param parts array
+     * @param i index
+     * @return The integer value in the array at i or -1 if not found.
+     */
+    private static int getArrayValue(String[] parts, int i) {
+        if (i >= 0 && i < parts.length) {
+            try {
+                return Integer.parseInt(parts[i]);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The verdict state.
+     */
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return True iff the verdict doesn't stand for an advertised server, see {@link #synthetic(String)}.
+     */
+    public boolean isSynthetic() {
+        return synthetic;
+    }
+
+    /**
+     * @return The message of the day or null if the server didn't respond.
+     */
+    public String getMOTD() {
+        return motd;
+    }
+
+    /**
+     * @return The online player count.
+     */
+    public int getPlayers() {
+        return players;
+    }
+
+    /**
+     * @return The maximal player count.
+     */
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    /**
+     * @return The full ping response, only available in debug mode.
+     */
+    public String getFullResponse() {
+        return fullResponse;
+    }
+
+    /**
+     * @return The creation time of the verdict (ms).
+     */
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    /**
+     * @param now The current time (ms).
+     * @param maxAge The maximal verdict age (ms).
+     * @return True iff the verdict is older than {@code maxAge}.
+     */
+    public boolean isExpired(long now, long maxAge) {
+        return now - checkedAt > maxAge;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerVerdict (" + state + " " + address + ":" + port
+                + " - " + getHostAddress()
+                + (motd == null ? "" : " - " + motd + " " + players + "/" + maxPlayers) + ")";
+    }
+
+    @Override
+    public String toDisplayString() {
+        if (state == State.KEYWORD) {
+            return address + " - blocked keyword";
+        } else if (state == State.PATTERN) {
+            return address + " - custom pattern";
+        } else if (state == State.BLOCKED) {
+            return super.toDisplayString()
+                    + (ipAddress.length == 0 ? " - blocked domain" : " - blocked address range");
+        } else if (motd == null) {
+            return super.toDisplayString() + " - no minecraft server";
+        }
+        return motd + " (" + players + "/" + maxPlayers + ")";
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return this, as this is the final state of the server.
+     */
+    public ServerVerdict call() {
+        return this;
+    }
+}
@@ -0,0 +1,160 @@
+package de.upsj.bukkit.advertising.util;
+
+/**
+ * Finds domain names and IPv4 addresses (with optional port) in a text in linear time.
+ * Replaces the regular expressions
+ * {@code ([a-zA-Z0-9\-]+\.)+[a-zA-Z]{2,}(:[0-9]{1,5})?} and
+ * {@code [0-9]{1,3}\.[0-9]{1,3}\.[0-9]{1,3}\.[0-9]{1,3}(:[0-9]{1,5})?}
+ * with the same matches, whose backtracking took quadratic time on inputs like "a.a.a.a...1".
+ * <p>
+ * A domain is a chain of labels ending in dots, followed by at least two letters.
+ * All start positions within a chain share its dots, so a chain without a valid top level domain
+ * is skipped as a whole, every character is only looked at a constant number of times.
+ * An IP address is at most 21 characters long, so trying every start position is linear, too.
+ * @author upsj
+ * @version 1.0
+ */
+public final class AddressScanner {
+    /** Maximal count of port digits. */
+    private static final int PORT_DIGITS = 5;
+    /** Maximal count of digits of an IP address part. */
+    private static final int IP_PART_DIGITS = 3;
+
+    /** Utility class. */
+    private AddressScanner() { }
+
+    /**
+     * Finds the next domain (with optional port), like {@code Matcher.find()} of the domain regex.
+     * @param text The text.
+     * @param from The index to start at.
+     * @param to The index to stop at (exclusive).
+     * @param range Receives the start and end index of the match.
+     * @return True iff a domain was found.
+     */
+    public static boolean findDomain(CharSequence text, int from, int to, int[] range) {
+        int start = from;
+        while (start < to) {
+            if (!isLabelChar(text.charAt(start))) {
+                start++;
+                continue;
+            }
+            // chain of labels ending in dots, remember the last dot followed by a top level domain
+            int end = -1;
+            int pos = start;
+            while (true) {
+                int labelEnd = pos;
+                while (labelEnd < to && isLabelChar(text.charAt(labelEnd))) {
+                    labelEnd++;
+                }
+                if (labelEnd == pos || labelEnd >= to || text.charAt(labelEnd) != '.') {
+                    pos = labelEnd;
+                    break;
+                }
+                pos = labelEnd + 1;
+                int tld = pos;
+                while (tld < to && isLetter(text.charAt(tld))) {
+                    tld++;
+                }
+                if (tld - pos >= 2) {
+                    end = tld;
+                }
+            }
+            if (end >= 0) {
+                range[0] = start;
+                range[1] = port(text, end, to);
+                return true;
+            }
+            // no position within the chain starts a domain
+            start = Math.max(pos, start + 1);
+        }
+        return false;
+    }
+
+    /**
+     * Finds the next IPv4 address (with optional port), like {@code Matcher.find()} of the IP regex.
+     * @param text The text.
+     * @param from The index to start at.
+     * @param to The index to stop at (exclusive).
+     * @param range Receives the start and end index of the match.
+     * @return True iff an address was found.
+     */
+    public static boolean findIP(CharSequence text, int from, int to, int[] range) {
+        for (int start = from; start < to; start++) {
+            if (!isDigit(text.charAt(start))) {
+                continue;
+            }
+            int pos = start;
+            boolean valid = true;
+            for (int part = 0; part < 4 && valid; part++) {
+                int digits = 0;
+                while (pos < to && digits < IP_PART_DIGITS && isDigit(text.charAt(pos))) {
+                    pos++;
+                    digits++;
+                }
+                if (digits == 0) {
+                    valid = false;
+                } else if (part < 3) {
+                    // the dot has to follow immediately, shorter digit runs would be followed by a digit, too
+                    valid = pos < to && text.charAt(pos) == '.';
+                    pos++;
+                }
+            }
+            if (valid) {
+                range[0] = start;
+                range[1] = port(text, pos, to);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param name The name.
+     * @return True iff the whole name is a domain (with optional port).
+     */
+    public static boolean isDomain(String name) {
+        int[] range = new int[2];
+        return findDomain(name, 0, name.length(), range) && range[0] == 0 && range[1] == name.length();
+    }
+
+    /**
+     * @param text The text.
+     * @param end The end index of the address.
+     * @param to The index to stop at (exclusive).
+     * @return The end index of the address including an optional port.
+     */
+    private static int port(CharSequence text, int end, int to) {
+        if (end + 1 < to && text.charAt(end) == ':' && isDigit(text.charAt(end + 1))) {
+            int pos = end + 1;
+            while (pos < to && pos - end <= PORT_DIGITS && isDigit(text.charAt(pos))) {
+                pos++;
+            }
+            return pos;
+        }
+        return end;
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the character may be part of a domain label.
+     */
+    private static boolean isLabelChar(char c) {
+        return isLetter(c) || isDigit(c) || c == '-';
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the character is an ASCII letter.
+     */
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the character is an ASCII digit.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -0,0 +1,188 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aho-Corasick automaton finding all occurrences of a set of keywords (case-insensitive)
+ * in a single pass, in time linear in the text length regardless of the keyword count.
+ * The automaton is compiled into a complete transition table over the keyword alphabet,
+ * so every step is a single array lookup. Characters outside the alphabet reset the automaton.
+ * All keywords ending in a state are found by following the dictionary suffix links from the longest one.
+ * Immutable and thread-safe, the matching state is a plain int held by the caller.
+ * @author upsj
+ * @version 1.0
+ */
+public final class AhoCorasick {
+    /** The start state. */
+    public static final int START = 0;
+
+    /** Alphabet index of the ASCII characters (fast path). */
+    private final int[] asciiAlphabet;
+    /** The other characters of the alphabet, sorted. */
+    private final char[] otherChars;
+    /** Alphabet index of the other characters. */
+    private final int[] otherClasses;
+    /** Alphabet size (including the unknown character class 0). */
+    private final int alphabetSize;
+    /** Transition table: state * alphabetSize + character class. */
+    private final int[] transitions;
+    /** Index of the longest keyword ending in each state, -1 if there is none. */
+    private final int[] output;
+    /** Index of the longest keyword that is a proper suffix of each keyword, -1 if there is none. */
+    private final int[] suffixMatch;
+    /** Length of the keywords. */
+    private final int[] lengths;
+
+    /**
+     * Compiles the automaton.
+     * @param keywords The keywords (compared case-insensitively), not empty strings.
+     */
+    public AhoCorasick(List<String> keywords) {
+        // alphabet
+        Map<Character, Integer> alphabet = new HashMap<Character, Integer>();
+        asciiAlphabet = new int[128];
+        int size = 1;
+        for (String keyword : keywords) {
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = Character.toLowerCase(keyword.charAt(i));
+                if (!alphabet.containsKey(c)) {
+                    alphabet.put(c, size);
+                    if (c < 128) {
+                        asciiAlphabet[c] = size;
+                    }
+                    size++;
+                }
+            }
+        }
+        alphabetSize = size;
+        List<Character> others = new ArrayList<Character>();
+        for (Character c : alphabet.keySet()) {
+            if (c >= 128) {
+                others.add(c);
+            }
+        }
+        otherChars = new char[others.size()];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherChars[i] = others.get(i);
+        }
+        Arrays.sort(otherChars);
+        otherClasses = new int[otherChars.length];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherClasses[i] = alphabet.get(otherChars[i]);
+        }
+
+        // trie
+        List<int[]> children = new ArrayList<int[]>();
+        List<Integer> outputs = new ArrayList<Integer>();
+        children.add(new int[alphabetSize]);
+        outputs.add(-1);
+        lengths = new int[keywords.size()];
+        suffixMatch = new int[keywords.size()];
+        Arrays.fill(suffixMatch, -1);
+        for (int k = 0; k < keywords.size(); k++) {
+            String keyword = keywords.get(k);
+            lengths[k] = keyword.length();
+            int state = START;
+            for (int i = 0; i < keyword.length(); i++) {
+                int c = alphabet.get(Character.toLowerCase(keyword.charAt(i)));
+                if (children.get(state)[c] == 0) {
+                    children.get(state)[c] = children.size();
+                    children.add(new int[alphabetSize]);
+                    outputs.add(-1);
+                }
+                state = children.get(state)[c];
+            }
+            outputs.set(state, k);
+        }
+
+        // failure links in breadth-first order, turning the trie into a complete transition table
+        int states = children.size();
+        transitions = new int[states * alphabetSize];
+        output = new int[states];
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0;
+        int tail = 0;
+        for (int c = 1; c < alphabetSize; c++) {
+            int child = children.get(START)[c];
+            transitions[c] = child;
+            if (child != 0) {
+                queue[tail++] = child;
+            }
+        }
+        output[START] = outputs.get(START);
+        while (head < tail) {
+            int state = queue[head++];
+            int own = outputs.get(state);
+            int inherited = output[fail[state]];
+            // longest keyword ending here: own keyword or the one of the failure state,
+            // which is the next shorter one (dictionary suffix link)
+            output[state] = own >= 0 ? own : inherited;
+            if (own >= 0) {
+                suffixMatch[own] = inherited;
+            }
+            for (int c = 1; c < alphabetSize; c++) {
+                int child = children.get(state)[c];
+                if (child != 0) {
+                    fail[child] = transitions[fail[state] * alphabetSize + c];
+                    transitions[state * alphabetSize + c] = child;
+                    queue[tail++] = child;
+                } else {
+                    transitions[state * alphabetSize + c] = transitions[fail[state] * alphabetSize + c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs a transition.
+     * @param state The current state.
+     * @param c The next character.
+     * @return The next state.
+     */
+    public int next(int state, char c) {
+        int cls;
+        if (c < 128) {
+            cls = asciiAlphabet[c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c];
+        } else {
+            int index = Arrays.binarySearch(otherChars, Character.toLowerCase(c));
+            cls = index < 0 ? 0 : otherClasses[index];
+        }
+        return cls == 0 ? START : transitions[state * alphabetSize + cls];
+    }
+
+    /**
+     * @param state The state.
+     * @return The index of the longest keyword ending in this state or -1 if there is none.
+     */
+    public int getMatch(int state) {
+        return output[state];
+    }
+
+    /**
+     * Finds the next shorter keyword ending at the same position, to iterate all keywords ending in a state:
+     * {@code for (int k = getMatch(state); k >= 0; k = getSuffixMatch(k))}.
+     * @param keyword The keyword index.
+     * @return The index of the longest keyword that is a proper suffix of the keyword or -1 if there is none.
+     */
+    public int getSuffixMatch(int keyword) {
+        return suffixMatch[keyword];
+    }
+
+    /**
+     * @param keyword The keyword index.
+     * @return The keyword length.
+     */
+    public int getLength(int keyword) {
+        return lengths[keyword];
+    }
+
+    /** @return The count of states. */
+    public int size() {
+        return output.length;
+    }
+}
@@ -0,0 +1,117 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends log lines to a file from a background thread.
+ * Appending never blocks: if the queue is full (the disk can't keep up), lines are dropped and counted.
+ * @author upsj
+ * @version 1.0
+ */
+public class AsyncFileAppender implements Runnable {
+    /** Maximal count of queued lines. */
+    public static final int CAPACITY = 8192;
+    /** Interval (ms) the writer thread checks for being closed. */
+    private static final long POLL_INTERVAL = 500;
+
+    /** The queued lines. */
+    private final BlockingQueue<String> queue;
+    /** The file writer. */
+    private final Writer writer;
+    /** The writer thread. */
+    private final Thread thread;
+    /** Count of dropped lines not reported yet. */
+    private final AtomicLong dropped;
+    /** True once closed. */
+    private volatile boolean closed;
+
+    /**
+     * Opens the file for appending and starts the writer thread.
+     * @param file The log file.
+     * @throws IOException If the file can't be opened.
+     */
+    public AsyncFileAppender(File file) throws IOException {
+        this.queue = new ArrayBlockingQueue<String>(CAPACITY);
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        this.dropped = new AtomicLong();
+        this.thread = new Thread(this, "AntiAdvertising log appender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Queues a line, dropping it if the queue is full.
+     * @param line The line.
+     * @return True iff the line was queued.
+     */
+    public boolean append(String line) {
+        if (closed || !queue.offer(line)) {
+            dropped.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /** @return The count of lines waiting to be written. */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /** Writes the queued lines, flushing whenever the queue runs empty. */
+    public void run() {
+        try {
+            while (!closed || !queue.isEmpty()) {
+                String line = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (line != null) {
+                    write(line);
+                }
+                if (queue.isEmpty()) {
+                    long lost = dropped.getAndSet(0);
+                    if (lost > 0) {
+                        write("(" + lost + " line(s) dropped, the log file couldn't keep up)");
+                    }
+                    writer.flush();
+                }
+            }
+        } catch (InterruptedException e) {
+            // closed
+        } catch (IOException e) {
+            closed = true;
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                // nothing left to do
+            }
+        }
+    }
+
+    /**
+     * Writes a single line.
+     * @param line The line.
+     * @throws IOException If writing fails.
+     */
+    private void write(String line) throws IOException {
+        writer.write(line);
+        writer.write(System.getProperty("line.separator"));
+    }
+
+    /** Writes the remaining lines and closes the file, waiting at most a second. */
+    public void close() {
+        closed = true;
+        try {
+            thread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
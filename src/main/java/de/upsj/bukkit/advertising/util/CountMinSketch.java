@@ -0,0 +1,109 @@
+package de.upsj.bukkit.advertising.util;
+
+/**
+ * Count-Min sketch: estimates the counts of arbitrarily many keys in fixed memory.
+ * Estimates are never too low and too high by at most 2/width of the total count (with high probability).
+ * Keys are given as 64 bit hashes, see {@link #hash(String)}.
+ * @author upsj
+ * @version 1.0
+ */
+public class CountMinSketch {
+    /** Count of rows. */
+    private final int depth;
+    /** Count of counters per row, a power of two. */
+    private final int width;
+    /** The counters, row by row. */
+    private final int[] counts;
+    /** The total count. */
+    private long total;
+
+    /**
+     * Initializes an empty sketch.
+     * @param depth The count of rows (independent hash functions).
+     * @param width The count of counters per row, rounded up to a power of two.
+     */
+    public CountMinSketch(int depth, int width) {
+        this.depth = depth;
+        this.width = Integer.highestOneBit(Math.max(1, width - 1)) << 1;
+        this.counts = new int[depth * this.width];
+    }
+
+    /**
+     * 64 bit hash of a key (FNV-1a, finalized by a MurmurHash3 mix).
+     * @param key The key.
+     * @return The hash.
+     */
+    public static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param hash The key hash.
+     * @param row The row.
+     * @return The index of the key's counter in the row (double hashing).
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32) | 1;
+        return row * width + ((h1 + row * h2) & (width - 1));
+    }
+
+    /**
+     * Adds to the count of a key.
+     * @param hash The key hash.
+     * @param count The count to add.
+     */
+    public void add(long hash, int count) {
+        for (int row = 0; row < depth; row++) {
+            counts[index(hash, row)] += count;
+        }
+        total += count;
+    }
+
+    /**
+     * @param hash The key hash.
+     * @return The estimated count of the key.
+     */
+    public int estimate(long hash) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            min = Math.min(min, counts[index(hash, row)]);
+        }
+        return min;
+    }
+
+    /**
+     * Adds the counts of another sketch of the same dimensions.
+     * @param other The other sketch.
+     */
+    public void merge(CountMinSketch other) {
+        if (other.depth != depth || other.width != width) {
+            throw new IllegalArgumentException("Different dimensions");
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    /** @return The total count of all keys. */
+    public long getTotal() {
+        return total;
+    }
+
+    /** Resets all counts. */
+    public void clear() {
+        java.util.Arrays.fill(counts, 0);
+        total = 0;
+    }
+}
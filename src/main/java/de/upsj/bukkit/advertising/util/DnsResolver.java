@@ -0,0 +1,118 @@
+package de.upsj.bukkit.advertising.util;
+
+import javax.naming.NameNotFoundException;
+import javax.naming.NamingEnumeration;
+import javax.naming.NamingException;
+import javax.naming.directory.Attribute;
+import javax.naming.directory.Attributes;
+import javax.naming.directory.DirContext;
+import javax.naming.directory.InitialDirContext;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Hashtable;
+
+/**
+ * Resolves host names and looks up DNS records.
+ * The system resolver is used by default; a resolver bound to a specific DNS server
+ * (e.g. a simulated one in tests) sends all queries, including address lookups, to that server.
+ * @author upsj
+ * @version 1.0
+ */
+public final class DnsResolver {
+    /** The system resolver. */
+    public static final DnsResolver SYSTEM = new DnsResolver(null, 0, 0, 0);
+    /** The current resolver. */
+    private static volatile DnsResolver current = SYSTEM;
+
+    /** The DNS context. */
+    private final DirContext context;
+    /** Are addresses resolved by the system? */
+    private final boolean system;
+
+    /**
+     * Initializes a resolver.
+     * @param server The DNS server or null for the system resolver.
+     * @param port The DNS server port.
+     * @param timeout The initial query timeout (ms), doubled for every retry, 0 for the default.
+     * @param retries The count of retries, 0 for the default.
+     */
+    public DnsResolver(String server, int port, int timeout, int retries) {
+        Hashtable<String, String> env = new Hashtable<String, String>();
+        env.put("java.naming.factory.initial", "com.sun.jndi.dns.DnsContextFactory");
+        env.put("java.naming.provider.url", server == null ? "dns:" : "dns://" + server + ":" + port);
+        if (timeout > 0) {
+            env.put("com.sun.jndi.dns.timeout.initial", Integer.toString(timeout));
+        }
+        if (retries > 0) {
+            env.put("com.sun.jndi.dns.timeout.retries", Integer.toString(retries));
+        }
+        try {
+            context = new InitialDirContext(env);
+        } catch (NamingException e) {
+            throw new RuntimeException(e);
+        }
+        system = server == null;
+    }
+
+    /**
+     * Looks up the records of a name.
+     * @param name The name.
+     * @param type The record type (e.g. SRV).
+     * @return The records in textual form, empty if there are none.
+     * @throws NamingException If the lookup fails (including unknown names).
+     */
+    public String[] query(String name, String type) throws NamingException {
+        Attributes attributes = context.getAttributes(name, new String[] {type});
+        Attribute attribute = attributes == null ? null : attributes.get(type);
+        if (attribute == null) {
+            return new String[0];
+        }
+        String[] records = new String[attribute.size()];
+        NamingEnumeration<?> values = attribute.getAll();
+        for (int i = 0; values.hasMore(); i++) {
+            records[i] = values.next().toString();
+        }
+        return records;
+    }
+
+    /**
+     * Resolves a host name to an address (IPv4 preferred).
+     * @param host The host name (with or without trailing dot) or textual IP address.
+     * @return The address.
+     * @throws UnknownHostException If the name can't be resolved.
+     */
+    public InetAddress resolve(String host) throws UnknownHostException {
+        if (system) {
+            return InetAddress.getByName(host);
+        }
+        String name = host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+        try {
+            String[] records = query(name, "A");
+            if (records.length == 0) {
+                records = query(name, "AAAA");
+            }
+            if (records.length == 0) {
+                throw new UnknownHostException(name + ": no address");
+            }
+            // the records are literal addresses, so this doesn't query anything
+            return InetAddress.getByAddress(name, InetAddress.getByName(records[0]).getAddress());
+        } catch (NameNotFoundException e) {
+            throw new UnknownHostException(name);
+        } catch (NamingException e) {
+            throw new UnknownHostException(name + ": " + e);
+        }
+    }
+
+    /** @return The current resolver. */
+    public static DnsResolver get() {
+        return current;
+    }
+
+    /**
+     * Replaces the current resolver.
+     * @param resolver The new resolver, {@link #SYSTEM} for the system resolver.
+     */
+    public static void set(DnsResolver resolver) {
+        current = resolver;
+    }
+}
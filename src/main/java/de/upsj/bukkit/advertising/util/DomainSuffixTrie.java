@@ -0,0 +1,90 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trie of domain names stored by their reversed labels ("net" -> "example" -> "play"),
+ * matching a domain if it or one of its parent domains has been added.
+ * Not thread-safe while being built, safe to share once it isn't modified anymore.
+ * @author upsj
+ * @version 1.0
+ */
+public class DomainSuffixTrie {
+    /** The root node (empty suffix). */
+    private final Node root;
+    /** Count of stored suffixes. */
+    private int size;
+
+    /** Initializes an empty trie. */
+    public DomainSuffixTrie() {
+        root = new Node();
+    }
+
+    /**
+     * Adds a domain suffix. The domain itself and all its subdomains will match.
+     * @param domain The domain, case-insensitive.
+     */
+    public void add(String domain) {
+        domain = domain.toLowerCase();
+        Node node = root;
+        int end = domain.length();
+        while (end > 0) {
+            int start = domain.lastIndexOf('.', end - 1) + 1;
+            if (start < end) {
+                String label = domain.substring(start, end);
+                Node child = node.children == null ? null : node.children.get(label);
+                if (child == null) {
+                    child = new Node();
+                    if (node.children == null) {
+                        node.children = new HashMap<String, Node>(4);
+                    }
+                    node.children.put(label, child);
+                }
+                node = child;
+            }
+            end = start - 1;
+        }
+        if (!node.terminal && node != root) {
+            node.terminal = true;
+            size++;
+        }
+    }
+
+    /**
+     * @param domain The domain, case-insensitive.
+     * @return True iff the domain equals or is a subdomain of a stored domain.
+     */
+    public boolean matches(String domain) {
+        domain = domain.toLowerCase();
+        Node node = root;
+        int end = domain.length();
+        while (end > 0 && node.children != null) {
+            int start = domain.lastIndexOf('.', end - 1) + 1;
+            if (start < end) {
+                node = node.children.get(domain.substring(start, end));
+                if (node == null) {
+                    return false;
+                }
+                if (node.terminal) {
+                    return true;
+                }
+            }
+            end = start - 1;
+        }
+        return false;
+    }
+
+    /** @return The count of stored domains. */
+    public int size() {
+        return size;
+    }
+
+    /** Trie node for a single label. */
+    private static final class Node {
+        /** Child labels, null if there are none. */
+        private Map<String, Node> children;
+        /** True iff the path to this node is a stored domain. */
+        private boolean terminal;
+    }
+}
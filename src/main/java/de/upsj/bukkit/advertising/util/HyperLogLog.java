@@ -0,0 +1,79 @@
+package de.upsj.bukkit.advertising.util;
+
+/**
+ * HyperLogLog: estimates the count of distinct keys in fixed memory (2^precision bytes),
+ * with a standard error of about 1.04 / sqrt(2^precision). Keys are given as 64 bit hashes.
+ * @author upsj
+ * @version 1.0
+ */
+public class HyperLogLog {
+    /** Count of bits of the register index. */
+    private final int precision;
+    /** The registers: the maximal rank seen per index. */
+    private final byte[] registers;
+
+    /**
+     * Initializes an empty estimator.
+     * @param precision Count of bits of the register index (4 - 16).
+     */
+    public HyperLogLog(int precision) {
+        if (precision < 4 || precision > 16) {
+            throw new IllegalArgumentException("precision " + precision);
+        }
+        this.precision = precision;
+        this.registers = new byte[1 << precision];
+    }
+
+    /**
+     * Adds a key.
+     * @param hash The 64 bit key hash.
+     */
+    public void add(long hash) {
+        int index = (int) (hash >>> (64 - precision));
+        // position of the first 1 bit in the remaining bits, the sentinel bit caps it
+        int rank = Long.numberOfLeadingZeros((hash << precision) | (1L << (precision - 1))) + 1;
+        if (rank > registers[index]) {
+            registers[index] = (byte) rank;
+        }
+    }
+
+    /** @return The estimated count of distinct keys. */
+    public long estimate() {
+        int m = registers.length;
+        double sum = 0;
+        int zeros = 0;
+        for (byte register : registers) {
+            sum += 1.0 / (1L << register);
+            if (register == 0) {
+                zeros++;
+            }
+        }
+        double alpha = m == 16 ? 0.673 : (m == 32 ? 0.697 : (m == 64 ? 0.709 : 0.7213 / (1 + 1.079 / m)));
+        double estimate = alpha * m * m / sum;
+        if (estimate <= 2.5 * m && zeros > 0) {
+            // linear counting for small cardinalities
+            estimate = m * Math.log((double) m / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Adds the keys of another estimator of the same precision.
+     * @param other The other estimator.
+     */
+    public void merge(HyperLogLog other) {
+        if (other.precision != precision) {
+            throw new IllegalArgumentException("Different precision");
+        }
+        for (int i = 0; i < registers.length; i++) {
+            if (other.registers[i] > registers[i]) {
+                registers[i] = other.registers[i];
+            }
+        }
+    }
+
+    /** Removes all keys. */
+    public void clear() {
+        java.util.Arrays.fill(registers, (byte) 0);
+    }
+}
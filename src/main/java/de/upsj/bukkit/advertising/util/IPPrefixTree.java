@@ -0,0 +1,310 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Path-compressed binary radix tree mapping IP prefixes (CIDR ranges) to values.
+ * IPv4 and IPv6 prefixes are stored in separate trees.
+ * Lookups are allocation-free longest-prefix matches.
+ * Not thread-safe while being built, safe to share once it isn't modified anymore.
+ * @author upsj
+ * @version 1.0
+ * @param <V> The value type.
+ */
+public class IPPrefixTree<V> {
+    /** Root of the IPv4 tree (prefix length 0). */
+    private final Node<V> root4;
+    /** Root of the IPv6 tree (prefix length 0). */
+    private final Node<V> root6;
+    /** Count of stored prefixes. */
+    private int size;
+
+    /** Initializes an empty tree. */
+    public IPPrefixTree() {
+        root4 = new Node<V>(new byte[4], 0, null);
+        root6 = new Node<V>(new byte[16], 0, null);
+    }
+
+    /**
+     * Stores a value for the given prefix, replacing a previous value of the same prefix.
+     * @param address The packed address (4 or 16 bytes).
+     * @param prefixLength The prefix length in bits.
+     * @param value The value, not null.
+     * @throws IllegalArgumentException If the address or prefix length is invalid.
+     */
+    public void put(byte[] address, int prefixLength, V value) throws IllegalArgumentException {
+        Node<V> node = getRoot(address);
+        if (node == null || prefixLength < 0 || prefixLength > address.length * 8 || value == null) {
+            throw new IllegalArgumentException("invalid prefix");
+        }
+        byte[] key = mask(address, prefixLength);
+        Node<V> parent = null;
+        while (true) {
+            int common = commonPrefix(node.key, key, parent == null ? 0 : parent.length,
+                                      Math.min(node.length, prefixLength));
+            if (common < node.length) {
+                // split the edge to node
+                Node<V> split;
+                if (common == prefixLength) {
+                    split = new Node<V>(key, prefixLength, value);
+                } else {
+                    split = new Node<V>(mask(key, common), common, null);
+                    split.setChild(bit(key, common), new Node<V>(key, prefixLength, value));
+                }
+                split.setChild(bit(node.key, common), node);
+                parent.setChild(bit(key, parent.length), split);
+                size++;
+                return;
+            }
+            if (node.length == prefixLength) {
+                if (node.value == null) {
+                    size++;
+                }
+                node.value = value;
+                return;
+            }
+            int b = bit(key, node.length);
+            Node<V> child = node.getChild(b);
+            if (child == null) {
+                node.setChild(b, new Node<V>(key, prefixLength, value));
+                size++;
+                return;
+            }
+            parent = node;
+            node = child;
+        }
+    }
+
+    /**
+     * Parses and stores a CIDR range like {@code 10.0.0.0/8} or {@code 2001:db8::/32}.
+     * A plain address is stored as a single-address range.
+     * @param cidr The CIDR range.
+     * @param value The value, not null.
+     * @return False if the range couldn't be parsed.
+     */
+    public boolean put(String cidr, V value) {
+        int slash = cidr.indexOf('/');
+        byte[] address = parseAddress(slash < 0 ? cidr : cidr.substring(0, slash));
+        if (address == null) {
+            return false;
+        }
+        int length = address.length * 8;
+        if (slash >= 0) {
+            try {
+                length = Integer.parseInt(cidr.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                return false;
+            }
+        }
+        if (length < 0 || length > address.length * 8) {
+            return false;
+        }
+        put(address, length, value);
+        return true;
+    }
+
+    /**
+     * Returns the value of the longest stored prefix containing the given address.
+     * @param address The packed address (4 or 16 bytes).
+     * @return The value or null if no stored prefix contains the address.
+     */
+    public V longestMatch(byte[] address) {
+        Node<V> node = getRoot(address);
+        V best = null;
+        int checked = 0;
+        while (node != null) {
+            if (commonPrefix(node.key, address, checked, node.length) < node.length) {
+                break;
+            }
+            if (node.value != null) {
+                best = node.value;
+            }
+            if (node.length == address.length * 8) {
+                break;
+            }
+            checked = node.length;
+            node = node.getChild(bit(address, checked));
+        }
+        return best;
+    }
+
+    /**
+     * @param address The packed address (4 or 16 bytes).
+     * @return True iff a stored prefix contains the address.
+     */
+    public boolean contains(byte[] address) {
+        return longestMatch(address) != null;
+    }
+
+    /** @return The count of stored prefixes. */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Parses a literal IPv4 or IPv6 address without resolving host names.
+     * @param literal The address literal.
+     * @return The packed address or null if it isn't a valid literal.
+     */
+    public static byte[] parseAddress(String literal) {
+        if (literal.length() == 0) {
+            return null;
+        }
+        boolean v6 = literal.indexOf(':') >= 0;
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            boolean valid = c >= '0' && c <= '9' || c == '.'
+                    || v6 && (c == ':' || c >= 'a' && c <= 'f' || c >= 'A' && c <= 'F');
+            if (!valid) {
+                return null;
+            }
+        }
+        if (!v6) {
+            return parseIPv4(literal);
+        }
+        try {
+            // bracketed literals are never looked up
+            return InetAddress.getByName("[" + literal + "]").getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @param literal The dotted quad, containing only digits and dots.
+     * @return The packed address or null if it isn't four octets of 0 - 255.
+     */
+    private static byte[] parseIPv4(String literal) {
+        String[] octets = literal.split("\\.", -1);
+        if (octets.length != 4) {
+            return null;
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            if (octets[i].length() == 0 || octets[i].length() > 3) {
+                return null;
+            }
+            int value = Integer.parseInt(octets[i]);
+            if (value > 255) {
+                return null;
+            }
+            address[i] = (byte) value;
+        }
+        return address;
+    }
+
+    /**
+     * @param address The packed address.
+     * @return The root for the address family or null for invalid lengths.
+     */
+    private Node<V> getRoot(byte[] address) {
+        if (address.length == 4) {
+            return root4;
+        } else if (address.length == 16) {
+            return root6;
+        }
+        return null;
+    }
+
+    /**
+     * @param address The address.
+     * @param i The bit index (0 = most significant bit of the first byte).
+     * @return The bit value (0 or 1).
+     */
+    private static int bit(byte[] address, int i) {
+        return (address[i >>> 3] >>> (7 - (i & 7))) & 1;
+    }
+
+    /**
+     * @param a The first address.
+     * @param b The second address.
+     * @param from The first bit to compare.
+     * @param to The bit index after the last bit to compare.
+     * @return The index of the first differing bit in [from, to) or to if there is none.
+     */
+    private static int commonPrefix(byte[] a, byte[] b, int from, int to) {
+        int i = from;
+        // bitwise up to the next byte boundary, bytewise afterwards
+        while (i < to && (i & 7) != 0) {
+            if (bit(a, i) != bit(b, i)) {
+                return i;
+            }
+            i++;
+        }
+        while (i + 8 <= to && a[i >>> 3] == b[i >>> 3]) {
+            i += 8;
+        }
+        while (i < to) {
+            if (bit(a, i) != bit(b, i)) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param address The address.
+     * @param length The prefix length.
+     * @return A copy of the address with all bits after the prefix cleared.
+     */
+    private static byte[] mask(byte[] address, int length) {
+        byte[] result = new byte[address.length];
+        int full = length >>> 3;
+        System.arraycopy(address, 0, result, 0, full);
+        if ((length & 7) != 0) {
+            result[full] = (byte) (address[full] & (0xFF << (8 - (length & 7))));
+        }
+        return result;
+    }
+
+    /**
+     * Tree node representing a prefix.
+     * @param <V> The value type.
+     */
+    private static final class Node<V> {
+        /** Address containing the prefix, all following bits are cleared. */
+        private final byte[] key;
+        /** The prefix length. */
+        private final int length;
+        /** Child with next bit 0. */
+        private Node<V> zero;
+        /** Child with next bit 1. */
+        private Node<V> one;
+        /** The stored value or null for pure branch nodes. */
+        private V value;
+
+        /**
+         * Initializes a node.
+         * @param key The prefix address.
+         * @param length The prefix length.
+         * @param value The stored value or null.
+         */
+        private Node(byte[] key, int length, V value) {
+            this.key = key;
+            this.length = length;
+            this.value = value;
+        }
+
+        /**
+         * @param bit The next bit.
+         * @return The child.
+         */
+        private Node<V> getChild(int bit) {
+            return bit == 0 ? zero : one;
+        }
+
+        /**
+         * @param bit The next bit.
+         * @param child The child.
+         */
+        private void setChild(int bit, Node<V> child) {
+            if (bit == 0) {
+                zero = child;
+            } else {
+                one = child;
+            }
+        }
+    }
+}
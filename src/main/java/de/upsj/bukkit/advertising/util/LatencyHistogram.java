@@ -0,0 +1,148 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of durations (in microseconds) with a fixed relative precision, in the style of HdrHistogram.
+ * Values below 64 have their own bucket, every further power of two is split into 32 buckets,
+ * so a recorded value is off by at most 1/32 (3%). Values up to 2^40 (12 days) are distinguished.
+ * Recording is lock-free and doesn't allocate, so it may be called on hot paths by any thread.
+ * @author upsj
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+    /** Bits of the sub-bucket index within a power of two. */
+    private static final int SUB_BITS = 5;
+    /** Count of sub-buckets within a power of two. */
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    /** Bit index of the largest distinguished value. */
+    private static final int MAX_BITS = 40;
+    /** Largest distinguished value, larger ones are counted as this. */
+    private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    /** Count of buckets. */
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    /** The bucket counts. */
+    private final AtomicLongArray counts;
+    /** The count of recorded values. */
+    private final StripedCounter count;
+    /** The sum of recorded values. */
+    private final StripedCounter sum;
+    /** The largest recorded value. */
+    private final AtomicLong max;
+
+    /** Initializes an empty histogram. */
+    public LatencyHistogram() {
+        counts = new AtomicLongArray(BUCKETS);
+        count = new StripedCounter();
+        sum = new StripedCounter();
+        max = new AtomicLong();
+    }
+
+    /**
+     * @param value The value, at least 0 and at most {@link #MAX_VALUE}.
+     * @return The index of the bucket containing the value.
+     */
+    private static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return shift * SUB_BUCKETS + (int) (value >>> shift);
+    }
+
+    /**
+     * @param index The bucket index.
+     * @return The smallest value in the bucket.
+     */
+    private static long lowestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) (index % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    /**
+     * Records a value.
+     * @param micros The value (µs), negative values are counted as 0.
+     */
+    public void record(long micros) {
+        long value = Math.max(0, Math.min(micros, MAX_VALUE));
+        counts.incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time passed since the given start time.
+     * @param startNanos The start time ({@link System#nanoTime()}).
+     */
+    public void recordSince(long startNanos) {
+        record((System.nanoTime() - startNanos) / 1000);
+    }
+
+    /** @return The count of recorded values. */
+    public long getCount() {
+        return count.get();
+    }
+
+    /** @return The sum of the recorded values (µs). */
+    public long getSum() {
+        return sum.get();
+    }
+
+    /** @return The mean of the recorded values (µs), 0 if empty. */
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : (double) sum.get() / n;
+    }
+
+    /** @return The largest recorded value (µs), 0 if empty. */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets a percentile of the recorded values.
+     * Concurrent recording may make it slightly inaccurate.
+     * @param percentile The percentile (0 to 100).
+     * @return The largest value (µs) of the bucket reaching the percentile, 0 if empty.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(Math.min(percentile, 100) / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                long highest = i + 1 < BUCKETS ? lowestValue(i + 1) - 1 : MAX_VALUE;
+                return Math.min(highest, max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /** Removes all recorded values, concurrent recording may get partially lost. */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,32 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named after their pool, so that they can be told apart in thread dumps and profilers.
+ * @author upsj
+ * @version 1.0
+ */
+public class NamedThreadFactory implements ThreadFactory {
+    /** The name prefix. */
+    private final String name;
+    /** Count of created threads. */
+    private final AtomicInteger count;
+
+    /**
+     * Initializes the thread factory.
+     * @param name The pool name, the threads are called "name #n".
+     */
+    public NamedThreadFactory(String name) {
+        this.name = name;
+        this.count = new AtomicInteger();
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, name + " #" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,346 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Chat message with common address obfuscations removed, mapped back to the original message.
+ * Normalizes in a single, table-driven pass (linear time, no per-character allocation):
+ * <ul>
+ *     <li>fullwidth and ideographic dots ("．", "。") and spelled dots ("(dot)", "[dot]", "{dot}") become '.',</li>
+ *     <li>whitespace in front of a dot (and behind it, if there was whitespace in front) is dropped
+ *     if the labels behind the dot end in a plausible top level domain or IP address part
+ *     ("play . example . net", but not "lol . ok"),</li>
+ *     <li>fullwidth letters and digits and common Cyrillic / Greek homoglyphs become ASCII,</li>
+ *     <li>zero-width characters and soft hyphens are dropped.</li>
+ * </ul>
+ * Every normalized character corresponds to a contiguous range of original characters,
+ * so a range in the normalized text can be mapped back to the original text.
+ * @author upsj
+ * @version 1.0
+ */
+public final class NormalizedText {
+    /** Marker for removed characters in the table. */
+    private static final char REMOVE = '\uFFFF';
+    /** Maximal length of a top level domain that is looked up. */
+    private static final int MAX_TLD_LENGTH = 12;
+    /**
+     * Top level domains whose dots are joined across whitespace.
+     * Common generic and country domains, without those that are common (English) words like "it" or "no".
+     */
+    private static final Set<String> TLDS = new HashSet<String>(Arrays.asList((
+              "com net org info biz eu de uk ru pl nl fr es ch cz sk hu ro dk se fi br ca au nz jp cn kr tk ml ga "
+            + "cf gq cc ws tv me us io gg co xyz pro club online site top space host network games world live "
+            + "fun mc server cloud").split(" ")));
+    /** Size of the lookup table (Latin, Greek, Cyrillic). */
+    private static final int TABLE_SIZE = 0x0530;
+    /** Lookup table for characters below {@link #TABLE_SIZE}. */
+    private static final char[] TABLE = new char[TABLE_SIZE];
+    /** Homoglyphs and their ASCII replacements (pairs). */
+    private static final String HOMOGLYPHS =
+            // Cyrillic lower case
+              "аaеeоoрpсcхxуyіiѕsјjӏlԁd"
+            // Cyrillic upper case
+            + "АAВBЕEКKМMНHОOРPСCТTХXІIЅSЈJ"
+            // Greek
+            + "οoαaνvρpιiκkΟOΑAΒBΕEΖZΗHΙI"
+            + "ΚKΜMΝNΡPΤTΥYΧX"
+            // dot-like punctuation
+            + "·.";
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            TABLE[c] = c;
+        }
+        for (int i = 0; i < HOMOGLYPHS.length(); i += 2) {
+            TABLE[HOMOGLYPHS.charAt(i)] = HOMOGLYPHS.charAt(i + 1);
+        }
+        TABLE['\u00AD'] = REMOVE; // soft hyphen
+    }
+
+    /** The original text. */
+    private final String original;
+    /** The normalized text. */
+    private final String text;
+    /**
+     * Start index of the original range of each normalized character
+     * (length + 1, the last entry is the original length), null if unchanged.
+     */
+    private final int[] offsets;
+
+    /**
+     * Initializes the normalized text.
+     * @param original The original text.
+     * @param text The normalized text.
+     * @param offsets The offset map or null if unchanged.
+     */
+    private NormalizedText(String original, String text, int[] offsets) {
+        this.original = original;
+        this.text = text;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Normalizes the given text.
+     * @param original The original text.
+     * @return The normalized text.
+     */
+    public static NormalizedText normalize(String original) {
+        int length = original.length();
+        // fast path: nothing to normalize
+        int first = 0;
+        while (first < length && !needsNormalization(original, first)) {
+            first++;
+        }
+        if (first == length) {
+            return new NormalizedText(original, original, null);
+        }
+        // whitespace in front of a dot is dropped
+        while (first > 0 && Character.isWhitespace(original.charAt(first - 1))) {
+            first--;
+        }
+
+        char[] out = new char[length];
+        int[] offsets = new int[length + 1];
+        original.getChars(0, first, out, 0);
+        for (int i = 0; i < first; i++) {
+            offsets[i] = i;
+        }
+        int n = first;
+        int groupStart = first;
+        boolean dropSpaces = false;
+        // the decision for the current chain of labels, which every dot in the chain shares
+        int chainEnd = -1;
+        boolean joinChain = false;
+        int[] label = new int[2];
+        int i = first;
+        while (i < length) {
+            char c = original.charAt(i);
+            int dot = dotLength(original, i);
+            if (dot > 0) {
+                offsets[n] = groupStart;
+                out[n++] = '.';
+                i += dot;
+                groupStart = i;
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                int end = i + 1;
+                while (end < length && Character.isWhitespace(original.charAt(end))) {
+                    end++;
+                }
+                boolean dotNext = end < length && dotLength(original, end) > 0;
+                if (dotNext && end >= chainEnd) {
+                    chainEnd = lastLabel(original, end, label);
+                    joinChain = isPlausibleEnd(original, label[0], label[1]);
+                }
+                if (dropSpaces || dotNext && joinChain) {
+                    // whitespace around a dot: attributed to the next normalized character
+                    dropSpaces = dotNext && joinChain;
+                    i = end;
+                    continue;
+                }
+                while (i < end) {
+                    offsets[n] = groupStart;
+                    out[n++] = original.charAt(i++);
+                    groupStart = i;
+                }
+                continue;
+            }
+            dropSpaces = false;
+            char mapped = map(c);
+            i++;
+            if (mapped != REMOVE) {
+                offsets[n] = groupStart;
+                out[n++] = mapped;
+                groupStart = i;
+            }
+        }
+        offsets[n] = length;
+        return new NormalizedText(original, new String(out, 0, n), offsets);
+    }
+
+    /**
+     * Finds the last label of the chain of labels behind a dot, allowing whitespace around the dots.
+     * @param s The text.
+     * @param dot The index of the dot.
+     * @param label Receives the start and end index of the last label (empty if there is none).
+     * @return The end index of the chain.
+     */
+    private static int lastLabel(String s, int dot, int[] label) {
+        int length = s.length();
+        int pos = dot + dotLength(s, dot);
+        while (true) {
+            while (pos < length && Character.isWhitespace(s.charAt(pos))) {
+                pos++;
+            }
+            int start = pos;
+            while (pos < length && isLabelChar(s.charAt(pos))) {
+                pos++;
+            }
+            label[0] = start;
+            label[1] = pos;
+            int next = pos;
+            while (next < length && Character.isWhitespace(s.charAt(next))) {
+                next++;
+            }
+            if (pos == start || next >= length || dotLength(s, next) == 0) {
+                return pos;
+            }
+            pos = next + dotLength(s, next);
+        }
+    }
+
+    /**
+     * @param c The character.
+     * @return True iff the normalized character may be part of a domain label (or is removed).
+     */
+    private static boolean isLabelChar(char c) {
+        char mapped = map(c);
+        return mapped == REMOVE || mapped >= 'a' && mapped <= 'z' || mapped >= 'A' && mapped <= 'Z'
+            || mapped >= '0' && mapped <= '9' || mapped == '-';
+    }
+
+    /**
+     * @param s The text.
+     * @param from The start index of the label.
+     * @param to The end index of the label.
+     * @return True iff the label is a known top level domain or an IP address part (up to 255).
+     */
+    private static boolean isPlausibleEnd(String s, int from, int to) {
+        StringBuilder label = new StringBuilder(MAX_TLD_LENGTH);
+        for (int i = from; i < to && label.length() <= MAX_TLD_LENGTH; i++) {
+            char c = map(s.charAt(i));
+            if (c != REMOVE) {
+                label.append(Character.toLowerCase(c));
+            }
+        }
+        int length = label.length();
+        if (length >= 1 && length <= 3) {
+            int value = 0;
+            for (int i = 0; i < length && value >= 0; i++) {
+                char c = label.charAt(i);
+                value = c >= '0' && c <= '9' ? value * 10 + (c - '0') : -1;
+            }
+            if (value >= 0) {
+                return value <= 255;
+            }
+        }
+        return TLDS.contains(label.toString());
+    }
+
+    /**
+     * @param s The text.
+     * @param i The index.
+     * @return True iff the character at i might be changed by the normalization.
+     */
+    private static boolean needsNormalization(String s, int i) {
+        char c = s.charAt(i);
+        if (c == '.') {
+            return i > 0 && Character.isWhitespace(s.charAt(i - 1));
+        } else if (c < 0x80) {
+            return dotLength(s, i) > 0;
+        }
+        return map(c) != c;
+    }
+
+    /**
+     * @param c The character.
+     * @return The normalized character or {@link #REMOVE}.
+     */
+    private static char map(char c) {
+        if (c < TABLE_SIZE) {
+            return TABLE[c];
+        }
+        if (c >= '\uFF01' && c <= '\uFF5E') { // fullwidth ASCII
+            return (char) (c - 0xFEE0);
+        }
+        switch (c) {
+            case '\u3002': // ideographic full stop
+            case '\uFF61': // halfwidth ideographic full stop
+            case '\uFE52': // small full stop
+            case '\u2024': // one dot leader
+                return '.';
+            case '\u200B': // zero width space
+            case '\u200C': // zero width non-joiner
+            case '\u200D': // zero width joiner
+            case '\u2060': // word joiner
+            case '\uFEFF': // zero width no-break space
+                return REMOVE;
+            default:
+                return c;
+        }
+    }
+
+    /**
+     * @param s The text.
+     * @param i The index.
+     * @return The length of the dot (or spelled dot) at the given index, 0 if there is none.
+     */
+    private static int dotLength(String s, int i) {
+        char c = s.charAt(i);
+        if (map(c) == '.') {
+            return 1;
+        }
+        char close;
+        switch (c) {
+            case '(': close = ')'; break;
+            case '[': close = ']'; break;
+            case '{': close = '}'; break;
+            default: return 0;
+        }
+        if (i + 4 < s.length() && s.charAt(i + 4) == close && (s.charAt(i + 1) | 0x20) == 'd'
+                && (s.charAt(i + 2) | 0x20) == 'o' && (s.charAt(i + 3) | 0x20) == 't') {
+            return 5;
+        }
+        return 0;
+    }
+
+    /** @return The normalized text. */
+    public String getText() {
+        return text;
+    }
+
+    /** @return The original text. */
+    public String getOriginal() {
+        return original;
+    }
+
+    /**
+     * @param index Start index in the normalized text.
+     * @return The corresponding start index in the original text.
+     */
+    public int originalStart(int index) {
+        return offsets == null ? index : offsets[index];
+    }
+
+    /**
+     * @param originalIndex Index in the original text.
+     * @return The index of the first normalized character not in front of the original index.
+     */
+    public int normalizedIndex(int originalIndex) {
+        if (offsets == null) {
+            return originalIndex;
+        }
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (offsets[mid] < originalIndex) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param index End index (exclusive) in the normalized text.
+     * @return The corresponding end index (exclusive) in the original text.
+     */
+    public int originalEnd(int index) {
+        return offsets == null ? index : offsets[index];
+    }
+}
@@ -0,0 +1,742 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * A set of regular expressions compiled into deterministic automata, matched case-insensitively
+ * in a single pass regardless of the pattern count and without backtracking.
+ * <p>
+ * Supported syntax: literals, {@code .}, character classes ({@code [a-z]}, {@code [^0-9]}),
+ * escapes ({@code \d \w \s \D \W \S} and escaped special characters), groups ({@code (...)}, {@code (?:...)}),
+ * alternation ({@code |}) and the quantifiers {@code * + ? {n} {n,} {n,m}}.
+ * Anchors, back references and lookaround aren't supported, patterns mustn't match the empty string.
+ * <p>
+ * The patterns are compiled into a Thompson NFA, whose character ranges are partitioned
+ * into disjoint character classes, and then into two DFAs by subset construction:
+ * A reverse DFA finding all match starts in one backward pass and an anchored forward DFA
+ * finding the longest match from a start. Matches are leftmost-longest and non-overlapping,
+ * no match is longer than {@link #MAX_MATCH_LENGTH}, so matching is linear in the text length.
+ * The count of DFA states is limited, as it can grow exponentially with the pattern length.
+ * Immutable and thread-safe.
+ * @author upsj
+ * @version 1.0
+ */
+public final class PatternDFA {
+    /** Maximal length of a single match. */
+    public static final int MAX_MATCH_LENGTH = 256;
+    /** Maximal count of repetitions of a bounded quantifier. */
+    private static final int MAX_REPEAT = 64;
+    /** Maximal count of NFA states. */
+    private static final int MAX_NFA_STATES = 65536;
+    /** Marker for the dead state (no match possible). */
+    private static final int DEAD = -1;
+
+    /** Lower bounds of the character classes, sorted, starting with 0. */
+    private final int[] cuts;
+    /** Character class of the (lower case) ASCII characters. */
+    private final int[] asciiClass;
+    /** Reverse DFA finding match starts, matching from the end of the text. */
+    private final Dfa reverse;
+    /** Anchored forward DFA finding match ends. */
+    private final Dfa forward;
+
+    /**
+     * Compiles the patterns.
+     * @param patterns The patterns, matched case-insensitively.
+     * @param maxStates The maximal count of states of each DFA.
+     * @throws IllegalArgumentException If a pattern is invalid or there are too many states.
+     */
+    public PatternDFA(List<String> patterns, int maxStates) {
+        Nfa nfa = new Nfa();
+        int start = nfa.add();
+        int[] patternStarts = new int[patterns.size()];
+        for (int p = 0; p < patterns.size(); p++) {
+            int[] frag = new Parser(nfa, patterns.get(p)).parse();
+            nfa.epsilon(start, frag[0]);
+            nfa.accepts.set(frag[1], p);
+            patternStarts[p] = frag[0];
+        }
+
+        // character classes: all range bounds split the alphabet
+        TreeSet<Integer> bounds = new TreeSet<Integer>();
+        bounds.add(0);
+        for (int[] ranges : nfa.edgeRanges) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                bounds.add(ranges[i]);
+                if (ranges[i + 1] < Character.MAX_VALUE) {
+                    bounds.add(ranges[i + 1] + 1);
+                }
+            }
+        }
+        cuts = new int[bounds.size()];
+        int n = 0;
+        for (int bound : bounds) {
+            cuts[n++] = bound;
+        }
+        asciiClass = new int[128];
+        for (char c = 0; c < 128; c++) {
+            asciiClass[c] = classOf((int) Character.toLowerCase(c));
+        }
+
+        // reverse NFA: all edges reversed, starting in the accepting states, accepting in the pattern starts
+        Nfa reversed = new Nfa();
+        for (int i = 0; i < nfa.size(); i++) {
+            reversed.add();
+        }
+        for (int s = 0; s < nfa.size(); s++) {
+            for (int t : nfa.epsilons.get(s)) {
+                reversed.epsilon(t, s);
+            }
+            for (int e : nfa.edges.get(s)) {
+                reversed.edge(nfa.edgeTargets.get(e), nfa.edgeRanges.get(e), s);
+            }
+        }
+        int reverseStart = reversed.add();
+        for (int s = 0; s < nfa.size(); s++) {
+            if (nfa.accepts.get(s) >= 0) {
+                reversed.epsilon(reverseStart, s);
+            }
+        }
+        for (int p = 0; p < patternStarts.length; p++) {
+            reversed.accepts.set(patternStarts[p], p);
+        }
+
+        forward = build(nfa, start, false, maxStates);
+        reverse = build(reversed, reverseStart, true, maxStates);
+    }
+
+    /**
+     * Checks the syntax of a single pattern.
+     * @param pattern The pattern.
+     * @throws IllegalArgumentException If the pattern is invalid.
+     */
+    public static void check(String pattern) {
+        new Parser(new Nfa(), pattern).parse();
+    }
+
+    /**
+     * Finds all leftmost-longest, non-overlapping matches.
+     * @param text The text.
+     * @param maxMatches The maximal count of matches to be reported.
+     * @return The matches: start index, end index and pattern index.
+     */
+    public List<int[]> findAll(CharSequence text, int maxMatches) {
+        List<int[]> result = new ArrayList<int[]>();
+        int length = text.length();
+        int classes = cuts.length;
+
+        // backward pass: which positions does a match start at?
+        BitSet starts = new BitSet(length);
+        int state = reverse.start;
+        for (int i = length - 1; i >= 0; i--) {
+            state = reverse.transitions[state * classes + classOf(text.charAt(i))];
+            if (reverse.accept[state] >= 0) {
+                starts.set(i);
+            }
+        }
+
+        // forward passes from the leftmost starts
+        int from = starts.nextSetBit(0);
+        while (from >= 0 && result.size() < maxMatches) {
+            int end = -1;
+            int pattern = -1;
+            state = forward.start;
+            int limit = Math.min(length, from + MAX_MATCH_LENGTH);
+            for (int i = from; i < limit; i++) {
+                state = forward.transitions[state * classes + classOf(text.charAt(i))];
+                if (state == DEAD) {
+                    break;
+                }
+                if (forward.accept[state] >= 0) {
+                    end = i + 1;
+                    pattern = forward.accept[state];
+                }
+            }
+            if (end < 0) {
+                // only longer matches start here
+                from = starts.nextSetBit(from + 1);
+            } else {
+                result.add(new int[] {from, end, pattern});
+                from = starts.nextSetBit(end);
+            }
+        }
+        return result;
+    }
+
+    /** @return The total count of DFA states. */
+    public int size() {
+        return forward.accept.length + reverse.accept.length;
+    }
+
+    /**
+     * @param c The character.
+     * @return The character class of its lower case variant.
+     */
+    private int classOf(char c) {
+        if (c < 128) {
+            return asciiClass[c];
+        }
+        return classOf((int) Character.toLowerCase(c));
+    }
+
+    /**
+     * @param c The character.
+     * @return The index of its character class.
+     */
+    private int classOf(int c) {
+        int low = 0;
+        int high = cuts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (cuts[mid] <= c) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Converts an NFA into a DFA by subset construction.
+     * @param nfa The NFA.
+     * @param start The start state of the NFA.
+     * @param unanchored True iff a match may start at every position.
+     * @param maxStates The maximal count of DFA states.
+     * @return The DFA.
+     */
+    private Dfa build(Nfa nfa, int start, boolean unanchored, int maxStates) {
+        int classes = cuts.length;
+        BitSet startSet = new BitSet(nfa.size());
+        startSet.set(start);
+        nfa.closure(startSet);
+
+        Map<BitSet, Integer> ids = new HashMap<BitSet, Integer>();
+        List<BitSet> sets = new ArrayList<BitSet>();
+        ids.put(startSet, 0);
+        sets.add(startSet);
+        int[] transitions = new int[16 * classes];
+        for (int d = 0; d < sets.size(); d++) {
+            BitSet set = sets.get(d);
+            BitSet[] next = new BitSet[classes];
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                for (int e : nfa.edges.get(s)) {
+                    int[] ranges = nfa.edgeRanges.get(e);
+                    for (int r = 0; r < ranges.length; r += 2) {
+                        int last = classOf(ranges[r + 1]);
+                        for (int c = classOf(ranges[r]); c <= last; c++) {
+                            if (next[c] == null) {
+                                next[c] = new BitSet(nfa.size());
+                            }
+                            next[c].set(nfa.edgeTargets.get(e));
+                        }
+                    }
+                }
+            }
+            if ((d + 1) * classes > transitions.length) {
+                int[] grown = new int[transitions.length * 2];
+                System.arraycopy(transitions, 0, grown, 0, transitions.length);
+                transitions = grown;
+            }
+            for (int c = 0; c < classes; c++) {
+                BitSet target = next[c];
+                if (unanchored) {
+                    if (target == null) {
+                        target = new BitSet(nfa.size());
+                    }
+                    target.or(startSet);
+                } else if (target == null) {
+                    transitions[d * classes + c] = DEAD;
+                    continue;
+                }
+                nfa.closure(target);
+                Integer id = ids.get(target);
+                if (id == null) {
+                    if (sets.size() >= maxStates) {
+                        throw new IllegalArgumentException("Patterns too complex (more than " + maxStates + " states)");
+                    }
+                    id = sets.size();
+                    ids.put(target, id);
+                    sets.add(target);
+                }
+                transitions[d * classes + c] = id;
+            }
+        }
+
+        int[] accept = new int[sets.size()];
+        for (int d = 0; d < accept.length; d++) {
+            accept[d] = -1;
+            BitSet set = sets.get(d);
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                int p = nfa.accepts.get(s);
+                if (p >= 0 && (accept[d] < 0 || p < accept[d])) {
+                    accept[d] = p;
+                }
+            }
+        }
+        int[] table = new int[sets.size() * classes];
+        System.arraycopy(transitions, 0, table, 0, table.length);
+        return new Dfa(table, accept, 0);
+    }
+
+    /** Compiled DFA. */
+    private static final class Dfa {
+        /** Transition table: state * class count + character class, {@link #DEAD} if there is no transition. */
+        private final int[] transitions;
+        /** Index of the pattern accepted in each state, -1 if none. */
+        private final int[] accept;
+        /** The start state. */
+        private final int start;
+
+        /**
+         * Initializes the DFA.
+         * @param transitions The transition table.
+         * @param accept The accepted patterns.
+         * @param start The start state.
+         */
+        private Dfa(int[] transitions, int[] accept, int start) {
+            this.transitions = transitions;
+            this.accept = accept;
+            this.start = start;
+        }
+    }
+
+    /** Thompson NFA with character range transitions. */
+    private static final class Nfa {
+        /** Epsilon transitions of each state. */
+        private final List<List<Integer>> epsilons = new ArrayList<List<Integer>>();
+        /** Character transitions (edge indices) of each state. */
+        private final List<List<Integer>> edges = new ArrayList<List<Integer>>();
+        /** Character ranges of each edge (pairs of inclusive bounds). */
+        private final List<int[]> edgeRanges = new ArrayList<int[]>();
+        /** Target state of each edge. */
+        private final List<Integer> edgeTargets = new ArrayList<Integer>();
+        /** Index of the pattern accepted in each state, -1 if none. */
+        private final List<Integer> accepts = new ArrayList<Integer>();
+
+        /** @return A new state. */
+        private int add() {
+            if (accepts.size() >= MAX_NFA_STATES) {
+                throw new IllegalArgumentException("Patterns too long");
+            }
+            epsilons.add(new ArrayList<Integer>(2));
+            edges.add(new ArrayList<Integer>(1));
+            accepts.add(-1);
+            return accepts.size() - 1;
+        }
+
+        /** @return The count of states. */
+        private int size() {
+            return accepts.size();
+        }
+
+        /**
+         * Adds an epsilon transition.
+         * @param from The source state.
+         * @param to The target state.
+         */
+        private void epsilon(int from, int to) {
+            epsilons.get(from).add(to);
+        }
+
+        /**
+         * Adds a character transition.
+         * @param from The source state.
+         * @param ranges The character ranges.
+         * @param to The target state.
+         */
+        private void edge(int from, int[] ranges, int to) {
+            edges.get(from).add(edgeRanges.size());
+            edgeRanges.add(ranges);
+            edgeTargets.add(to);
+        }
+
+        /**
+         * Adds all states reachable by epsilon transitions.
+         * @param set The state set.
+         */
+        private void closure(BitSet set) {
+            int[] stack = new int[size()];
+            int top = 0;
+            for (int s = set.nextSetBit(0); s >= 0; s = set.nextSetBit(s + 1)) {
+                stack[top++] = s;
+            }
+            while (top > 0) {
+                for (int t : epsilons.get(stack[--top])) {
+                    if (!set.get(t)) {
+                        set.set(t);
+                        stack[top++] = t;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Recursive descent parser compiling a pattern into NFA fragments (start and end state). */
+    private static final class Parser {
+        /** The NFA. */
+        private final Nfa nfa;
+        /** The pattern. */
+        private final String pattern;
+        /** The current position. */
+        private int pos;
+
+        /**
+         * Initializes the parser.
+         * @param nfa The NFA to add the states to.
+         * @param pattern The pattern.
+         */
+        private Parser(Nfa nfa, String pattern) {
+            this.nfa = nfa;
+            this.pattern = pattern;
+        }
+
+        /** @return The fragment of the whole pattern. */
+        private int[] parse() {
+            int[] frag = alternation();
+            if (pos < pattern.length()) {
+                throw error("unmatched ')'");
+            }
+            BitSet set = new BitSet(nfa.size());
+            set.set(frag[0]);
+            nfa.closure(set);
+            if (set.get(frag[1])) {
+                throw error("matches the empty string");
+            }
+            return frag;
+        }
+
+        /** @return The fragment of alternatives separated by '|'. */
+        private int[] alternation() {
+            int[] frag = sequence();
+            while (pos < pattern.length() && pattern.charAt(pos) == '|') {
+                pos++;
+                int[] other = sequence();
+                int start = nfa.add();
+                int end = nfa.add();
+                nfa.epsilon(start, frag[0]);
+                nfa.epsilon(start, other[0]);
+                nfa.epsilon(frag[1], end);
+                nfa.epsilon(other[1], end);
+                frag = new int[] {start, end};
+            }
+            return frag;
+        }
+
+        /** @return The fragment of a (possibly empty) sequence of atoms. */
+        private int[] sequence() {
+            int start = nfa.add();
+            int end = start;
+            while (pos < pattern.length() && pattern.charAt(pos) != '|' && pattern.charAt(pos) != ')') {
+                int[] frag = repetition();
+                nfa.epsilon(end, frag[0]);
+                end = frag[1];
+            }
+            return new int[] {start, end};
+        }
+
+        /** @return The fragment of an atom with an optional quantifier. */
+        private int[] repetition() {
+            int atomStart = pos;
+            int[] frag = atom();
+            if (pos >= pattern.length()) {
+                return frag;
+            }
+            int min;
+            int max;
+            char c = pattern.charAt(pos);
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                pos++;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                pos++;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                pos++;
+            } else if (c == '{') {
+                pos++;
+                min = number();
+                max = min;
+                if (pos < pattern.length() && pattern.charAt(pos) == ',') {
+                    pos++;
+                    max = pos < pattern.length() && pattern.charAt(pos) == '}' ? -1 : number();
+                }
+                if (pos >= pattern.length() || pattern.charAt(pos) != '}') {
+                    throw error("missing '}'");
+                }
+                pos++;
+                if (max >= 0 && max < min) {
+                    throw error("invalid repetition bounds");
+                }
+            } else {
+                return frag;
+            }
+            if (pos < pattern.length() && "*+?{".indexOf(pattern.charAt(pos)) >= 0) {
+                throw error("nested quantifier");
+            }
+            return repeat(frag, atomStart, min, max);
+        }
+
+        /**
+         * Repeats an atom, compiling copies of it by parsing it again.
+         * @param first The already compiled first copy.
+         * @param atomStart The start position of the atom.
+         * @param min The minimal count of repetitions.
+         * @param max The maximal count of repetitions, -1 if unbounded.
+         * @return The fragment.
+         */
+        private int[] repeat(int[] first, int atomStart, int min, int max) {
+            int copies = min + (max < 0 ? 1 : max - min);
+            int start = nfa.add();
+            int end = start;
+            for (int i = 0; i < copies; i++) {
+                int[] frag = first;
+                if (i > 0) {
+                    int saved = pos;
+                    pos = atomStart;
+                    frag = atom();
+                    pos = saved;
+                }
+                if (i < min) {
+                    // required copy
+                    nfa.epsilon(end, frag[0]);
+                    end = frag[1];
+                } else if (max < 0) {
+                    // loop
+                    int loop = nfa.add();
+                    nfa.epsilon(end, loop);
+                    nfa.epsilon(loop, frag[0]);
+                    nfa.epsilon(frag[1], loop);
+                    end = loop;
+                } else {
+                    // optional copy
+                    int next = nfa.add();
+                    nfa.epsilon(end, frag[0]);
+                    nfa.epsilon(end, next);
+                    nfa.epsilon(frag[1], next);
+                    end = next;
+                }
+            }
+            return new int[] {start, end};
+        }
+
+        /** @return The repetition count at the current position. */
+        private int number() {
+            int start = pos;
+            while (pos < pattern.length() && Character.isDigit(pattern.charAt(pos)) && pos - start < 3) {
+                pos++;
+            }
+            if (pos == start) {
+                throw error("missing repetition count");
+            }
+            int value = Integer.parseInt(pattern.substring(start, pos));
+            if (value > MAX_REPEAT) {
+                throw error("repetition count above " + MAX_REPEAT);
+            }
+            return value;
+        }
+
+        /** @return The fragment of a single atom. */
+        private int[] atom() {
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (pattern.startsWith("?:", pos)) {
+                        pos += 2;
+                    } else if (pos < pattern.length() && pattern.charAt(pos) == '?') {
+                        throw error("unsupported group");
+                    }
+                    int[] frag = alternation();
+                    if (pos >= pattern.length() || pattern.charAt(pos) != ')') {
+                        throw error("missing ')'");
+                    }
+                    pos++;
+                    return frag;
+                case '[':
+                    return characters(characterClass());
+                case '.':
+                    return characters(new int[] {0, Character.MAX_VALUE});
+                case '\\':
+                    return characters(foldCase(escape()));
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw error("quantifier without atom");
+                case '^':
+                case '$':
+                    throw error("anchors aren't supported");
+                default:
+                    return characters(foldCase(new int[] {c, c}));
+            }
+        }
+
+        /**
+         * @param ranges The character ranges.
+         * @return A fragment matching a single character in the ranges.
+         */
+        private int[] characters(int[] ranges) {
+            int start = nfa.add();
+            int end = nfa.add();
+            nfa.edge(start, ranges, end);
+            return new int[] {start, end};
+        }
+
+        /** @return The ranges of the character class, after the opening '['. */
+        private int[] characterClass() {
+            boolean negated = pos < pattern.length() && pattern.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+            List<int[]> ranges = new ArrayList<int[]>();
+            boolean first = true;
+            while (pos < pattern.length() && (first || pattern.charAt(pos) != ']')) {
+                first = false;
+                char c = pattern.charAt(pos++);
+                int[] item;
+                if (c == '\\') {
+                    item = escape();
+                } else if (pos + 1 < pattern.length() && pattern.charAt(pos) == '-' && pattern.charAt(pos + 1) != ']') {
+                    char last = pattern.charAt(pos + 1);
+                    pos += 2;
+                    if (last < c) {
+                        throw error("invalid character range");
+                    }
+                    item = new int[] {c, last};
+                } else {
+                    item = new int[] {c, c};
+                }
+                ranges.add(item);
+            }
+            if (pos >= pattern.length()) {
+                throw error("missing ']'");
+            }
+            pos++;
+            int[] result = foldCase(merge(ranges));
+            return negated ? complement(result) : result;
+        }
+
+        /** @return The ranges of the escape sequence, after the backslash. */
+        private int[] escape() {
+            if (pos >= pattern.length()) {
+                throw error("trailing backslash");
+            }
+            char c = pattern.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return new int[] {'0', '9'};
+                case 'D':
+                    return complement(new int[] {'0', '9'});
+                case 'w':
+                    return new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+                case 'W':
+                    return complement(new int[] {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'});
+                case 's':
+                    return new int[] {'\t', '\r', ' ', ' '};
+                case 'S':
+                    return complement(new int[] {'\t', '\r', ' ', ' '});
+                case 'n':
+                    return new int[] {'\n', '\n'};
+                case 't':
+                    return new int[] {'\t', '\t'};
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        throw error("unsupported escape sequence \\" + c);
+                    }
+                    return new int[] {c, c};
+            }
+        }
+
+        /**
+         * @param message The error description.
+         * @return An exception describing the error at the current position.
+         */
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Invalid pattern '" + pattern + "' at " + pos + ": " + message);
+        }
+    }
+
+    /**
+     * @param ranges Character ranges.
+     * @return The ranges with the lower case variants of the ASCII upper case letters added.
+     */
+    private static int[] foldCase(int[] ranges) {
+        List<int[]> result = new ArrayList<int[]>();
+        for (int i = 0; i < ranges.length; i += 2) {
+            result.add(new int[] {ranges[i], ranges[i + 1]});
+            int low = Math.max(ranges[i], 'A');
+            int high = Math.min(ranges[i + 1], 'Z');
+            if (low <= high) {
+                result.add(new int[] {low + ('a' - 'A'), high + ('a' - 'A')});
+            }
+            if (ranges[i] == ranges[i + 1] && ranges[i] >= 128) {
+                int lower = Character.toLowerCase((char) ranges[i]);
+                result.add(new int[] {lower, lower});
+            }
+        }
+        return merge(result);
+    }
+
+    /**
+     * @param ranges Character ranges (pairs), possibly overlapping.
+     * @return The sorted, merged ranges as flat array.
+     */
+    private static int[] merge(List<int[]> ranges) {
+        List<int[]> flat = new ArrayList<int[]>();
+        for (int[] range : ranges) {
+            for (int i = 0; i < range.length; i += 2) {
+                flat.add(new int[] {range[i], range[i + 1]});
+            }
+        }
+        Collections.sort(flat, new Comparator<int[]>() {
+            public int compare(int[] a, int[] b) {
+                return a[0] < b[0] ? -1 : (a[0] == b[0] ? 0 : 1);
+            }
+        });
+        List<int[]> merged = new ArrayList<int[]>();
+        for (int[] range : flat) {
+            int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+            }
+        }
+        int[] result = new int[merged.size() * 2];
+        for (int i = 0; i < merged.size(); i++) {
+            result[2 * i] = merged.get(i)[0];
+            result[2 * i + 1] = merged.get(i)[1];
+        }
+        return result;
+    }
+
+    /**
+     * @param ranges Sorted, merged character ranges.
+     * @return The ranges of all other characters.
+     */
+    private static int[] complement(int[] ranges) {
+        List<int[]> result = new ArrayList<int[]>();
+        int next = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            if (ranges[i] > next) {
+                result.add(new int[] {next, ranges[i] - 1});
+            }
+            next = ranges[i + 1] + 1;
+        }
+        if (next <= Character.MAX_VALUE) {
+            result.add(new int[] {next, Character.MAX_VALUE});
+        }
+        return merge(result);
+    }
+}
@@ -0,0 +1,152 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.List;
+
+/**
+ * Counts keys over a sliding time window in fixed memory.
+ * The window is split into slots, each with its own Count-Min sketch, space-saving summary and
+ * HyperLogLog; a slot is cleared when its time comes round again and queries merge the live slots.
+ * @author upsj
+ * @version 1.0
+ */
+public class SlidingTopK {
+    /** Rows of the Count-Min sketches. */
+    private static final int DEPTH = 4;
+    /** Counters per row of the Count-Min sketches. */
+    private static final int WIDTH = 256;
+    /** Precision of the HyperLogLogs. */
+    private static final int PRECISION = 10;
+
+    /** Length of a slot (ms). */
+    private final long slotLength;
+    /** Count frequencies per slot. */
+    private final CountMinSketch[] counts;
+    /** Most frequent keys per slot. */
+    private final SpaceSaving[] top;
+    /** Distinct keys per slot. */
+    private final HyperLogLog[] distinct;
+    /** Number (time / slot length) of the slot each index currently holds. */
+    private final long[] slotNumbers;
+    /** Count of keys tracked per slot. */
+    private final int capacity;
+
+    /**
+     * Initializes an empty window.
+     * @param slots The count of slots.
+     * @param slotLength The length of a slot (ms), the window is slots * slotLength long.
+     * @param capacity The count of most frequent keys tracked per slot.
+     */
+    public SlidingTopK(int slots, long slotLength, int capacity) {
+        this.slotLength = slotLength;
+        this.capacity = capacity;
+        this.counts = new CountMinSketch[slots];
+        this.top = new SpaceSaving[slots];
+        this.distinct = new HyperLogLog[slots];
+        this.slotNumbers = new long[slots];
+        for (int i = 0; i < slots; i++) {
+            counts[i] = new CountMinSketch(DEPTH, WIDTH);
+            top[i] = new SpaceSaving(capacity);
+            distinct[i] = new HyperLogLog(PRECISION);
+            slotNumbers[i] = -1;
+        }
+    }
+
+    /**
+     * Adds a key.
+     * @param key The key.
+     * @param now The current time (ms).
+     */
+    public synchronized void add(String key, long now) {
+        long number = now / slotLength;
+        int index = (int) (number % slotNumbers.length);
+        if (slotNumbers[index] != number) {
+            counts[index].clear();
+            top[index].clear();
+            distinct[index].clear();
+            slotNumbers[index] = number;
+        }
+        long hash = CountMinSketch.hash(key);
+        counts[index].add(hash, 1);
+        top[index].add(key, 1);
+        distinct[index].add(hash);
+    }
+
+    /**
+     * @param index The slot index.
+     * @param now The current time (ms).
+     * @return True iff the slot belongs to the window ending now.
+     */
+    private boolean isLive(int index, long now) {
+        return slotNumbers[index] > now / slotLength - slotNumbers.length;
+    }
+
+    /**
+     * @param n The maximal count of keys.
+     * @param now The current time (ms).
+     * @return The most frequent keys in the window, most frequent first.
+     */
+    public synchronized List<SpaceSaving.Entry> top(int n, long now) {
+        SpaceSaving merged = new SpaceSaving(capacity);
+        for (int i = 0; i < top.length; i++) {
+            if (isLive(i, now)) {
+                merged.merge(top[i]);
+            }
+        }
+        List<SpaceSaving.Entry> entries = merged.getEntries();
+        return entries.subList(0, Math.min(n, entries.size()));
+    }
+
+    /**
+     * @param key The key.
+     * @param now The current time (ms).
+     * @return The estimated count of the key in the window (never too low).
+     */
+    public synchronized long estimate(String key, long now) {
+        long hash = CountMinSketch.hash(key);
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (isLive(i, now)) {
+                sum += counts[i].estimate(hash);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param now The current time (ms).
+     * @return The total count of keys in the window.
+     */
+    public synchronized long total(long now) {
+        long sum = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (isLive(i, now)) {
+                sum += counts[i].getTotal();
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param now The current time (ms).
+     * @return The estimated count of distinct keys in the window.
+     */
+    public synchronized long distinct(long now) {
+        HyperLogLog merged = new HyperLogLog(PRECISION);
+        for (int i = 0; i < distinct.length; i++) {
+            if (isLive(i, now)) {
+                merged.merge(distinct[i]);
+            }
+        }
+        return merged.estimate();
+    }
+
+    /** Removes all keys. */
+    public synchronized void clear() {
+        for (int i = 0; i < slotNumbers.length; i++) {
+            counts[i].clear();
+            top[i].clear();
+            distinct[i].clear();
+            slotNumbers[i] = -1;
+        }
+    }
+}
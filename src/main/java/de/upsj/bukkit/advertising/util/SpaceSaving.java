@@ -0,0 +1,156 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Space-saving top-k: tracks the most frequent keys of a stream in a fixed count of entries.
+ * A new key replaces the entry with the lowest count and inherits it (as its possible overestimation),
+ * so every key more frequent than total / capacity is guaranteed to be tracked.
+ * @author upsj
+ * @version 1.0
+ */
+public class SpaceSaving {
+    /** Maximal count of tracked keys. */
+    private final int capacity;
+    /** The tracked keys. */
+    private final Map<String, Entry> entries;
+
+    /**
+     * Initializes an empty summary.
+     * @param capacity Maximal count of tracked keys.
+     */
+    public SpaceSaving(int capacity) {
+        this.capacity = capacity;
+        this.entries = new HashMap<String, Entry>(capacity * 2);
+    }
+
+    /**
+     * Adds to the count of a key.
+     * @param key The key.
+     * @param count The count to add.
+     */
+    public void add(String key, long count) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            long error = 0;
+            if (entries.size() >= capacity) {
+                Entry min = null;
+                for (Entry e : entries.values()) {
+                    if (min == null || e.count < min.count) {
+                        min = e;
+                    }
+                }
+                entries.remove(min.key);
+                error = min.count;
+            }
+            entry = new Entry(key, error, error);
+            entries.put(key, entry);
+        }
+        entry.count += count;
+    }
+
+    /**
+     * Adds the entries of another summary, keeping at most the capacity of this one.
+     * A key missing from a full summary may have been counted up to its minimum count,
+     * so that count is added to the count and error of the key (mergeable space-saving).
+     * @param other The other summary.
+     */
+    public void merge(SpaceSaving other) {
+        long thisMin = minCount();
+        long otherMin = other.minCount();
+        for (Entry entry : entries.values()) {
+            if (!other.entries.containsKey(entry.key)) {
+                entry.count += otherMin;
+                entry.error += otherMin;
+            }
+        }
+        for (Entry e : other.entries.values()) {
+            Entry entry = entries.get(e.key);
+            if (entry == null) {
+                entries.put(e.key, new Entry(e.key, e.count + thisMin, e.error + thisMin));
+            } else {
+                entry.count += e.count;
+                entry.error += e.error;
+            }
+        }
+        if (entries.size() > capacity) {
+            List<Entry> sorted = getEntries();
+            for (Entry e : sorted.subList(capacity, sorted.size())) {
+                entries.remove(e.key);
+            }
+        }
+    }
+
+    /** @return The lowest tracked count if the summary is full, otherwise 0 (untracked keys weren't seen). */
+    private long minCount() {
+        if (entries.size() < capacity) {
+            return 0;
+        }
+        long min = Long.MAX_VALUE;
+        for (Entry e : entries.values()) {
+            min = Math.min(min, e.count);
+        }
+        return min;
+    }
+
+    /** @return Copies of the tracked entries, most frequent first. */
+    public List<Entry> getEntries() {
+        List<Entry> result = new ArrayList<Entry>(entries.size());
+        for (Entry e : entries.values()) {
+            result.add(new Entry(e.key, e.count, e.error));
+        }
+        Collections.sort(result, new Comparator<Entry>() {
+            public int compare(Entry a, Entry b) {
+                return a.count > b.count ? -1 : (a.count == b.count ? a.key.compareTo(b.key) : 1);
+            }
+        });
+        return result;
+    }
+
+    /** Removes all entries. */
+    public void clear() {
+        entries.clear();
+    }
+
+    /** A tracked key. */
+    public static final class Entry {
+        /** The key. */
+        private final String key;
+        /** The count, including the error. */
+        private long count;
+        /** The maximal overestimation of the count. */
+        private long error;
+
+        /**
+         * Initializes the entry.
+         * @param key The key.
+         * @param count The count.
+         * @param error The maximal overestimation of the count.
+         */
+        private Entry(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        /** @return The key. */
+        public String getKey() {
+            return key;
+        }
+
+        /** @return The count, possibly overestimated by at most {@link #getError()}. */
+        public long getCount() {
+            return count;
+        }
+
+        /** @return The maximal overestimation of the count. */
+        public long getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package de.upsj.bukkit.advertising.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter incremented by many threads without contending on a single value.
+ * Every thread adds to one of several cells (chosen by its id), each on its own cache line,
+ * the value is the sum of all cells. Reading is slower than writing and not atomic.
+ * @author upsj
+ * @version 1.0
+ */
+public final class StripedCounter {
+    /** Count of cells, a power of two. */
+    private static final int STRIPES = stripes();
+    /** Distance (in longs) between two cells, a 64 byte cache line. */
+    private static final int PADDING = 8;
+
+    /** The cells. */
+    private final AtomicLongArray cells;
+
+    /** Initializes the counter with 0. */
+    public StripedCounter() {
+        cells = new AtomicLongArray(STRIPES * PADDING);
+    }
+
+    /** @return The count of cells: a power of two of at least twice the processor count, at most 64. */
+    private static int stripes() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        int stripes = 1;
+        while (stripes < 2 * cpus && stripes < 64) {
+            stripes <<= 1;
+        }
+        return stripes;
+    }
+
+    /**
+     * Adds a value.
+     * @param value The value.
+     */
+    public void add(long value) {
+        cells.addAndGet(cell(), value);
+    }
+
+    /** Increments the counter. */
+    public void increment() {
+        cells.incrementAndGet(cell());
+    }
+
+    /** @return The cell index of the current thread. */
+    private static int cell() {
+        long id = Thread.currentThread().getId();
+        return (int) ((id ^ (id >>> 16)) & (STRIPES - 1)) * PADDING;
+    }
+
+    /** @return The current sum. */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    /** Resets the counter to 0, concurrent additions may get lost. */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * PADDING, 0);
+        }
+    }
+}
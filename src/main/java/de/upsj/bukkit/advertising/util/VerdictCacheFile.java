@@ -0,0 +1,193 @@
+package de.upsj.bukkit.advertising.util;
+
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Compact binary snapshot of the server verdict cache.
+ * Format: magic, version, entry count, followed by the entries
+ * (time, state, packed IP, port, name, MOTD, player counts).
+ * @author upsj
+ * @version 1.0
+ */
+public final class VerdictCacheFile {
+    /** File magic ("AAVC"). */
+    private static final int MAGIC = 0x41415643;
+    /** Current format version. */
+    private static final int VERSION = 1;
+    /** Charset of the stored strings. */
+    private static final String CHARSET = "UTF-8";
+    /** Maximal length of a stored server name (the DNS limit), longer names can't be servers. */
+    private static final int MAX_NAME_LENGTH = 253;
+
+    /** Avoid instances. */
+    private VerdictCacheFile() { }
+
+    /**
+     * Writes the verdicts to the given file.
+     * The snapshot is written to a temporary file first and renamed over the old one only once it is complete,
+     * so a crash never leaves a partial or missing snapshot behind.
+     * Verdicts of names longer than a domain can be are skipped, they couldn't be stored.
+     * @param file The file.
+     * @param verdicts The verdicts.
+     * @throws IOException If writing the file fails.
+     */
+    public static void save(File file, Collection<ServerVerdict> verdicts) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Couldn't create " + dir);
+        }
+        List<ServerVerdict> stored = new ArrayList<ServerVerdict>(verdicts.size());
+        for (ServerVerdict verdict : verdicts) {
+            if (verdict.getMatchedAddress().length() <= MAX_NAME_LENGTH) {
+                stored.add(verdict);
+            }
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+        boolean written = false;
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(stored.size());
+            for (ServerVerdict verdict : stored) {
+                byte[] ip = verdict.getRawAddress();
+                out.writeLong(verdict.getCheckedAt());
+                out.writeByte(verdict.getState().ordinal());
+                out.writeByte(ip.length);
+                out.write(ip);
+                out.writeShort(verdict.getPort());
+                writeString(out, verdict.getMatchedAddress());
+                writeString(out, verdict.getMOTD());
+                out.writeInt(verdict.getPlayers());
+                out.writeInt(verdict.getMaxPlayers());
+            }
+            out.flush();
+            stream.getFD().sync();
+            written = true;
+        } finally {
+            out.close();
+            if (!written && !tmp.delete()) {
+                Log.debug(Log.Subsystem.CHECKER, "Couldn't delete {}", tmp);
+            }
+        }
+        // atomically replaces the old snapshot on POSIX systems
+        if (tmp.renameTo(file)) {
+            return;
+        }
+        // Windows doesn't rename over existing files: keep the old snapshot as backup until it is replaced
+        File backup = getBackup(file);
+        if (backup.exists() && !backup.delete() || !file.renameTo(backup) || !tmp.renameTo(file)) {
+            throw new IOException("Couldn't replace " + file);
+        }
+        if (!backup.delete()) {
+            Log.debug(Log.Subsystem.CHECKER, "Couldn't delete {}", backup);
+        }
+    }
+
+    /**
+     * @param file The snapshot file.
+     * @return The backup of the previous snapshot, only existing while it is being replaced.
+     */
+    private static File getBackup(File file) {
+        return new File(file.getPath() + ".bak");
+    }
+
+    /**
+     * Reads all verdicts that are not expired from the given file
+     * (or its backup, if saving a snapshot was interrupted while replacing it).
+     * A corrupt or outdated file is ignored.
+     * @param file The file.
+     * @param maxAge The maximal verdict age (ms).
+     * @return The verdicts, empty if the file doesn't exist.
+     * @throws IOException If reading the file fails.
+     */
+    public static List<ServerVerdict> load(File file, long maxAge) throws IOException {
+        List<ServerVerdict> result = new ArrayList<ServerVerdict>();
+        if (!file.isFile()) {
+            file = getBackup(file);
+            if (!file.isFile()) {
+                return result;
+            }
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Log.warn("Ignoring verdict cache " + file + ": unknown format");
+                return result;
+            }
+            ServerVerdict.State[] states = ServerVerdict.State.values();
+            long now = System.currentTimeMillis();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long checkedAt = in.readLong();
+                int state = in.readByte();
+                byte[] ip = new byte[in.readUnsignedByte()];
+                in.readFully(ip);
+                int port = in.readUnsignedShort();
+                String name = readString(in);
+                String motd = readString(in);
+                int players = in.readInt();
+                int maxPlayers = in.readInt();
+                if (now - checkedAt <= maxAge && state >= 0 && state < states.length
+                        && (ip.length == 4 || ip.length == 16) && name != null) {
+                    result.add(ServerVerdict.restore(name, port, ip, states[state], motd,
+                            players, maxPlayers, checkedAt));
+                }
+            }
+        } catch (EOFException e) {
+            Log.warn("Verdict cache " + file + " is truncated, restored " + result.size() + " entries");
+        } finally {
+            in.close();
+        }
+        return result;
+    }
+
+    /**
+     * Writes a nullable string (length -1 for null).
+     * @param out The output stream.
+     * @param s The string.
+     * @throws IOException .
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeShort(-1);
+        } else {
+            byte[] bytes = s.getBytes(CHARSET);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a nullable string.
+     * @param in The input stream.
+     * @return The string or null.
+     * @throws IOException If reading fails or the length is invalid.
+     */
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readShort();
+        if (length == -1) {
+            return null;
+        } else if (length < 0) {
+            throw new IOException("invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, CHARSET);
+    }
+}
@@ -0,0 +1,144 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.AdvertisementStats;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.util.CountMinSketch;
+import de.upsj.bukkit.advertising.util.HyperLogLog;
+import de.upsj.bukkit.advertising.util.SlidingTopK;
+import de.upsj.bukkit.advertising.util.SpaceSaving;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class AdvertisementStatsTest {
+    @After
+    public void reset() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+    }
+
+    @Test
+    public void testCountMinSketch() {
+        CountMinSketch sketch = new CountMinSketch(4, 256);
+        for (int i = 0; i < 1000; i++) {
+            sketch.add(CountMinSketch.hash("server" + (i % 100)), 1);
+        }
+        sketch.add(CountMinSketch.hash("heavy"), 500);
+        assertEquals(1500, sketch.getTotal());
+        for (int i = 0; i < 100; i++) {
+            int estimate = sketch.estimate(CountMinSketch.hash("server" + i));
+            assertTrue(estimate >= 10);
+            assertTrue(estimate <= 10 + 2 * 1500 / 256);
+        }
+        assertTrue(sketch.estimate(CountMinSketch.hash("heavy")) >= 500);
+    }
+
+    @Test
+    public void testSpaceSaving() {
+        SpaceSaving top = new SpaceSaving(16);
+        for (int i = 0; i < 2000; i++) {
+            top.add("noise" + i, 1);
+            if (i % 4 == 0) {
+                top.add("heavy", 1);
+            }
+            if (i % 10 == 0) {
+                top.add("medium", 1);
+            }
+        }
+        List<SpaceSaving.Entry> entries = top.getEntries();
+        assertEquals(16, entries.size());
+        assertEquals("heavy", entries.get(0).getKey());
+        assertEquals("medium", entries.get(1).getKey());
+        assertTrue(entries.get(0).getCount() - entries.get(0).getError() <= 500);
+        assertTrue(entries.get(0).getCount() >= 500);
+    }
+
+    @Test
+    public void testSpaceSavingMerge() {
+        SpaceSaving a = new SpaceSaving(2);
+        a.add("x", 10);
+        a.add("y", 5);
+        SpaceSaving b = new SpaceSaving(2);
+        b.add("z", 8);
+        b.add("w", 4);
+        SpaceSaving merged = new SpaceSaving(2);
+        merged.merge(a);
+        merged.merge(b);
+        // x and z could each have been counted up to the minimum of the other summary
+        List<SpaceSaving.Entry> entries = merged.getEntries();
+        assertEquals("x", entries.get(0).getKey());
+        assertEquals(14, entries.get(0).getCount());
+        assertEquals(4, entries.get(0).getError());
+        assertEquals("z", entries.get(1).getKey());
+        assertEquals(13, entries.get(1).getCount());
+        assertEquals(5, entries.get(1).getError());
+    }
+
+    @Test
+    public void testHyperLogLog() {
+        HyperLogLog distinct = new HyperLogLog(10);
+        assertEquals(0, distinct.estimate());
+        for (int i = 0; i < 10000; i++) {
+            distinct.add(CountMinSketch.hash("server" + i + ".example.com"));
+            // duplicates don't count
+            distinct.add(CountMinSketch.hash("server" + i + ".example.com"));
+        }
+        assertEquals(10000, distinct.estimate(), 10000 * 0.1);
+
+        HyperLogLog small = new HyperLogLog(10);
+        for (int i = 0; i < 50; i++) {
+            small.add(CountMinSketch.hash("a" + i));
+        }
+        assertEquals(50, small.estimate(), 3);
+        small.merge(distinct);
+        assertEquals(10050, small.estimate(), 10050 * 0.1);
+    }
+
+    @Test
+    public void testWindow() {
+        SlidingTopK window = new SlidingTopK(4, 1000, 16);
+        window.add("a", 0);
+        window.add("a", 1500);
+        window.add("b", 2500);
+        assertEquals(2, window.estimate("a", 3999));
+        assertEquals(3, window.total(3999));
+        assertEquals("a", window.top(1, 3999).get(0).getKey());
+        // the first slot expired
+        assertEquals(1, window.estimate("a", 4000));
+        assertEquals(2, window.distinct(4000));
+        // the slot is reused
+        window.add("b", 4100);
+        assertEquals(2, window.estimate("b", 4100));
+        assertEquals("b", window.top(1, 4100).get(0).getKey());
+        assertEquals(0, window.total(10000));
+        assertTrue(window.top(5, 10000).isEmpty());
+    }
+
+    @Test
+    public void testMessages() throws IOException {
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+        AdvertisementStats stats = new AdvertisementStats();
+        stats.record(ChatMessage.parse("Bot1", "Join 192.0.2.55"), 0);
+        stats.record(ChatMessage.parse("Bot1", "Join 192.0.2.55 now"), 1000);
+        stats.record(ChatMessage.parse("Bot2", "Join 192.0.2.66"), 2000);
+
+        List<SpaceSaving.Entry> players = stats.top(AdvertisementStats.Category.PLAYERS,
+                                                    AdvertisementStats.Window.HOUR, 10, 3000);
+        assertEquals(2, players.size());
+        assertEquals("bot1", players.get(0).getKey());
+        assertEquals(2, players.get(0).getCount());
+        List<SpaceSaving.Entry> ips = stats.top(AdvertisementStats.Category.IPS,
+                                                AdvertisementStats.Window.DAY, 1, 3000);
+        assertEquals("192.0.2.55", ips.get(0).getKey());
+        assertEquals(2, stats.distinct(AdvertisementStats.Category.DOMAINS, AdvertisementStats.Window.DAY, 3000));
+        // out of the hour window, still in the day window
+        assertEquals(0, stats.total(AdvertisementStats.Category.PLAYERS, AdvertisementStats.Window.HOUR, 7200000));
+        assertEquals(3, stats.total(AdvertisementStats.Category.PLAYERS, AdvertisementStats.Window.DAY, 7200000));
+    }
+}
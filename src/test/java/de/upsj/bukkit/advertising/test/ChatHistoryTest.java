@@ -0,0 +1,65 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatHistory;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class ChatHistoryTest {
+    private static final UUID PLAYER = new UUID(1, 2);
+
+    private static ChatMessage send(ChatHistory history, String line, long time) {
+        ChatMessage msg = ChatMessage.parse("test", line, history.getContext(PLAYER, line, time));
+        history.add(PLAYER, line, time);
+        return msg;
+    }
+
+    @Test
+    public void testSplitAddress() {
+        ChatHistory history = new ChatHistory(3, 10000);
+        assertEquals(ChatMessage.State.CLEAN, send(history, "join play", 0).getState());
+        send(history, ".example", 1000);
+        ChatMessage msg = send(history, ".net", 2000);
+        assertEquals(1, msg.getMatchCount());
+        assertEquals("play.example.net", msg.getMatch(0).getMatchedAddress());
+        // the match is reported against the new line
+        msg.updateStatus(msg.getMatch(0), ServerVerdict.blockedDomain(msg.getMatch(0)));
+        msg.censorAll();
+        assertEquals("****", msg.getMessage());
+        assertEquals("join play.example", msg.getContext());
+
+        history.add(PLAYER, "join play.", 3000);
+        assertEquals("play.example.net", send(history, "example.net", 4000).getMatch(0).getMatchedAddress());
+    }
+
+    @Test
+    public void testSeparateLines() {
+        ChatHistory history = new ChatHistory(3, 10000);
+        send(history, "hello", 0);
+        ChatMessage msg = send(history, "world.com", 100);
+        assertEquals(1, msg.getMatchCount());
+        assertEquals("world.com", msg.getMatch(0).getMatchedAddress());
+        // matches within the earlier lines are not reported again
+        send(history, "visit example.net", 200);
+        assertEquals(ChatMessage.State.CLEAN, send(history, "thanks", 300).getState());
+    }
+
+    @Test
+    public void testLimits() {
+        ChatHistory history = new ChatHistory(2, 1000);
+        history.add(PLAYER, "play", 0);
+        assertEquals("play", history.getContext(PLAYER, ".net", 1000));
+        assertNull(history.getContext(PLAYER, ".net", 5000));
+        history.add(PLAYER, "a", 6000);
+        history.add(PLAYER, "b", 6001);
+        history.add(PLAYER, "c", 6002);
+        assertEquals("b c ", history.getContext(PLAYER, "d", 6003));
+        history.remove(PLAYER);
+        assertNull(history.getContext(PLAYER, "d", 6003));
+        assertEquals(0, history.size());
+    }
+}
@@ -1,9 +1,24 @@
 package de.upsj.bukkit.advertising.test;
 
+import de.upsj.bukkit.advertising.AdvertisementStats;
 import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.CustomPatterns;
+import de.upsj.bukkit.advertising.Keywords;
 import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.servers.ResolvedServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.AddressScanner;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 import static org.junit.Assert.*;
 
 public class ChatMessageTest {
@@ -49,12 +64,38 @@ public class ChatMessageTest {
         String s2 = "This page ********** is just so 127.0.0.1:4922!";
         String s3 = "This page ********** is just so **************!";
         ChatMessage msg = ChatMessage.parse("Player", s1);
-        msg.censorMatch(0);
+        // only advertisement is censored
+        msg.censorAll();
+        assertEquals(s1, msg.getMessage());
+        msg.updateStatus(msg.getMatch(0), ServerVerdict.blockedDomain(msg.getMatch(0)));
+        msg.censorAll();
         assertEquals(s2, msg.getMessage());
-        msg.censorMatch(1);
+        msg.updateStatus(msg.getMatch(1), ServerVerdict.blocked((ResolvedServer) msg.getMatch(1)));
+        msg.censorAll();
         assertEquals(s3, msg.getMessage());
     }
 
+    @Test
+    public void testCensorOverlapping() {
+        Map<String, String> regexes = new HashMap<String, String>();
+        regexes.put("storm", "minestorm\\.\\w+");
+        List<String> invalid = new ArrayList<String>();
+        Keywords.set(Keywords.compile(Arrays.asList("minestorm"), invalid));
+        CustomPatterns.set(CustomPatterns.compile(regexes, new HashMap<String, List<String>>(), invalid));
+        try {
+            String text = "join minestorm.net and minestorm now";
+            ChatMessage msg = ChatMessage.parse("Player", text);
+            msg.censorAll("[ad]");
+            assertEquals("join [ad] and [ad] now", msg.getMessage());
+            msg = ChatMessage.parse("Player", text);
+            msg.censorAll();
+            assertEquals("join ************* and ********* now", msg.getMessage());
+        } finally {
+            Keywords.set(Keywords.EMPTY);
+            CustomPatterns.set(CustomPatterns.EMPTY);
+        }
+    }
+
     @Test
     public void testPerformance() {
         long start = System.currentTimeMillis();
@@ -75,4 +116,82 @@ public class ChatMessageTest {
         System.out.println("Single advertisement: " + ((System.currentTimeMillis() - start) / 10000f) + " ms");
         Log.setDebugMode(true);
     }
+
+    @Test
+    public void testScannerMatchesRegex() {
+        Pattern domain = Pattern.compile("([a-zA-Z0-9\\-]+\\.)+[a-zA-Z]{2,}(:[0-9]{1,5})?");
+        Pattern ip = Pattern.compile("[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}\\.[0-9]{1,3}(:[0-9]{1,5})?");
+        String alphabet = "ab1.:- 2Z";
+        Random random = new Random(42);
+        int[] range = new int[2];
+        for (int n = 0; n < 20000; n++) {
+            StringBuilder text = new StringBuilder();
+            int length = random.nextInt(24);
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            for (int kind = 0; kind < 2; kind++) {
+                Matcher m = (kind == 0 ? domain : ip).matcher(text);
+                int from = 0;
+                while (true) {
+                    boolean found = kind == 0 ? AddressScanner.findDomain(text, from, text.length(), range)
+                                              : AddressScanner.findIP(text, from, text.length(), range);
+                    assertEquals(text.toString(), m.find(), found);
+                    if (!found) {
+                        break;
+                    }
+                    assertEquals(text.toString(), m.start(), range[0]);
+                    assertEquals(text.toString(), m.end(), range[1]);
+                    from = range[1];
+                }
+            }
+        }
+    }
+
+    @Test(timeout = 1000)
+    public void testAdversarialInput() {
+        StringBuilder labels = new StringBuilder();
+        StringBuilder digits = new StringBuilder();
+        StringBuilder dots = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            labels.append("a.");
+            digits.append(i % 10).append(i % 7 == 0 ? "." : "");
+            dots.append('.');
+        }
+        for (String text : new String[] {labels + "1", digits.toString(), dots.toString(), labels + "com"}) {
+            long start = System.currentTimeMillis();
+            ChatMessage.parse("Player", text);
+            long time = System.currentTimeMillis() - start;
+            assertTrue("Parsing took " + time + " ms", time < 250);
+        }
+    }
+
+    @Test
+    public void testLimits() {
+        ChatMessage.setMaxMatches(1);
+        try {
+            ChatMessage msg = ChatMessage.parse("Player", "a.example.net b.example.net c.example.net");
+            assertEquals(2, msg.getMatchCount());
+            assertEquals(ChatMessage.State.ADVERTISEMENT_PENDING, msg.getState());
+            ServerVerdict verdict = (ServerVerdict) msg.getMatch(1);
+            assertEquals(ChatMessage.TOO_MANY_MATCHES, verdict.getMatchedAddress());
+            // not an advertised server of its own
+            assertTrue(verdict.isSynthetic());
+            AdvertisementStats stats = new AdvertisementStats();
+            long now = System.currentTimeMillis();
+            stats.record(msg, now);
+            assertTrue(stats.top(AdvertisementStats.Category.DOMAINS, AdvertisementStats.Window.HOUR, 10, now)
+                    .isEmpty());
+            // padding doesn't hide an address
+            StringBuilder padded = new StringBuilder();
+            for (int i = 0; i < 2000; i++) {
+                padded.append("lorem ");
+            }
+            msg = ChatMessage.parse("Player", padded + "b.example.net");
+            assertEquals(1, msg.getMatchCount());
+            assertEquals(ChatMessage.State.UNKNOWN, msg.getState());
+        } finally {
+            ChatMessage.setMaxMatches(16);
+        }
+    }
 }
@@ -0,0 +1,117 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.ClassificationService;
+import de.upsj.bukkit.advertising.Keywords;
+import de.upsj.bukkit.advertising.ServerChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClassificationServiceTest {
+    private ClassificationService service;
+
+    @Before
+    public void setUp() {
+        service = new ClassificationService(new ChatListener(new ServerChecker(), new ActionHandler(null)));
+        Keywords.set(Keywords.compile(Arrays.asList("minestorm"), new ArrayList<String>()));
+    }
+
+    @After
+    public void tearDown() {
+        service.shutdown();
+        Keywords.set(Keywords.EMPTY);
+    }
+
+    @Test(timeout = 5000)
+    public void testClassify() throws Exception {
+        ClassificationService.Classification ad = service.classify("Player", "join MineStorm", null);
+        ClassificationService.Classification clean = service.classify("Player", "hello world", null);
+        assertEquals(ChatMessage.State.ADVERTISEMENT, ad.get(2, TimeUnit.SECONDS).getState());
+        assertEquals(ChatMessage.State.CLEAN, clean.get(2, TimeUnit.SECONDS).getState());
+        assertTrue(ad.isDone());
+        assertFalse(ad.cancel(false));
+    }
+
+    @Test(timeout = 5000)
+    public void testCallback() throws Exception {
+        final List<ChatMessage> classified = new ArrayList<ChatMessage>();
+        ClassificationService.Classification sign = service.classify("Player", "play minestorm", new ClassificationService.Callback() {
+            public void classified(ChatMessage msg) {
+                classified.add(msg);
+            }
+        });
+        sign.get(2, TimeUnit.SECONDS);
+        assertTrue(classified.isEmpty());
+        // listeners are only called by the main thread task
+        service.run();
+        assertEquals(1, classified.size());
+        assertEquals("play minestorm", classified.get(0).getMessage());
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testFailure() throws Exception {
+        final List<ChatMessage> classified = new ArrayList<ChatMessage>();
+        // parsing fails
+        ClassificationService.Classification broken = service.classify("Player", null, new ClassificationService.Callback() {
+            public void classified(ChatMessage msg) {
+                classified.add(msg);
+            }
+        });
+        try {
+            broken.get(2, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            // expected
+        }
+        // the listener still learns about it, with a clean result
+        service.run();
+        assertEquals(1, classified.size());
+        assertEquals(ChatMessage.State.CLEAN, classified.get(0).getState());
+        assertEquals(0, service.getPendingCount());
+    }
+
+    @Test(timeout = 5000)
+    public void testError() throws Exception {
+        ChatListener listener = new ChatListener(new ServerChecker(), new ActionHandler(null)) {
+            @Override
+            public synchronized ChatMessage classify(String player, UUID id, String message) {
+                throw new StackOverflowError();
+            }
+        };
+        ClassificationService failing = new ClassificationService(listener);
+        try {
+            final List<ChatMessage> classified = new ArrayList<ChatMessage>();
+            ClassificationService.Classification broken = failing.classify("Player", "text",
+                    new ClassificationService.Callback() {
+                        public void classified(ChatMessage msg) {
+                            classified.add(msg);
+                        }
+                    });
+            try {
+                broken.get(2, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof StackOverflowError);
+            }
+            failing.run();
+            assertEquals(1, classified.size());
+            assertEquals(ChatMessage.State.CLEAN, classified.get(0).getState());
+            assertEquals(0, failing.getPendingCount());
+        } finally {
+            failing.shutdown();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.CustomPatterns;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.PatternDFA;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class CustomPatternsTest {
+    @After
+    public void reset() {
+        CustomPatterns.set(CustomPatterns.EMPTY);
+    }
+
+    private static List<String> findAll(PatternDFA dfa, String text) {
+        List<String> found = new ArrayList<String>();
+        for (int[] match : dfa.findAll(text, 100)) {
+            found.add(match[2] + ":" + text.substring(match[0], match[1]));
+        }
+        return found;
+    }
+
+    @Test
+    public void testLeftmostLongest() {
+        PatternDFA dfa = new PatternDFA(Arrays.asList("bc", "abcd", "x+"), 100);
+        assertEquals(Arrays.asList("1:abcd", "0:bc", "2:XxX"), findAll(dfa, "abcd bcd XxX"));
+        dfa = new PatternDFA(Arrays.asList("discord\\.gg/\\w+", "(?:[0-9]{3}-){2}[0-9]{4}"), 1000);
+        assertEquals(Arrays.asList("0:Discord.gg/AbC_1", "1:555-123-4567"),
+                findAll(dfa, "join Discord.gg/AbC_1! or call 555-123-4567."));
+        dfa = new PatternDFA(Arrays.asList("[^a-z ]{2}", "a(b|c)?d{1,2}"), 100);
+        assertEquals(Arrays.asList("1:ad", "1:abdd", "0:12", "0:34", "1:acd"), findAll(dfa, "ad abddd 1234 A acd"));
+    }
+
+    @Test
+    public void testInvalidPatterns() {
+        for (String invalid : Arrays.asList("(ab", "ab)", "[a-", "a**", "*a", "a{3,1}", "a*", "(a|)", "^a", "\\q")) {
+            try {
+                PatternDFA.check(invalid);
+                fail(invalid);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+        try {
+            // exponential subset construction
+            new PatternDFA(Arrays.asList("a.{20}b"), 1000);
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testPatternMatches() {
+        Map<String, String> regexes = new LinkedHashMap<String, String>();
+        Map<String, List<String>> actions = new LinkedHashMap<String, List<String>>();
+        regexes.put("discord", "discord\\.gg/\\w+");
+        actions.put("discord", Arrays.asList("hide", "log"));
+        regexes.put("broken", "(");
+        List<String> invalid = new ArrayList<String>();
+        CustomPatterns.set(CustomPatterns.compile(regexes, actions, invalid));
+        assertEquals(Arrays.asList("broken"), invalid);
+        assertTrue(CustomPatterns.get().usesAction("discord", "hide"));
+        assertFalse(CustomPatterns.get().usesAction("discord", "kick"));
+
+        ChatMessage msg = ChatMessage.parse("Player", "join discord.gg/abc now");
+        assertTrue(msg.getState().hasAdvertisement());
+        ServerVerdict verdict = (ServerVerdict) msg.getMatch(msg.getMatchCount() - 1);
+        assertEquals(ServerVerdict.State.PATTERN, verdict.getState());
+        assertEquals("discord", verdict.getMatchedAddress());
+        msg.censorAll();
+        assertEquals("join ************** now", msg.getMessage());
+    }
+
+    @Test
+    public void testTooComplex() {
+        Map<String, String> regexes = new LinkedHashMap<String, String>();
+        regexes.put("discord", "discord\\.gg/\\w+");
+        // the DFA needs 2^13 states to remember the last 13 characters
+        regexes.put("complex", "[ab]*a[ab]{12,12}");
+        regexes.put("phone", "(?:[0-9]{3}-){2}[0-9]{4}");
+        List<String> invalid = new ArrayList<String>();
+        CustomPatterns patterns = CustomPatterns.compile(regexes, new LinkedHashMap<String, List<String>>(), invalid);
+        assertEquals(Arrays.asList("complex"), invalid);
+        assertEquals(2, patterns.size());
+        assertEquals(Arrays.asList("0:discord.gg/abc", "1:555-123-4567"),
+                findAll(patterns.getAutomaton(), "discord.gg/abc 555-123-4567"));
+    }
+
+    @Test(timeout = 2000)
+    public void testLinearTime() {
+        PatternDFA dfa = new PatternDFA(Arrays.asList("(a|aa)*b", "a.*c"), 1000);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 200000; i++) {
+            text.append('a');
+        }
+        assertTrue(dfa.findAll(text, 100).isEmpty());
+        // matches are capped, every start is only scanned up to the maximal match length
+        text.append('b');
+        List<int[]> matches = dfa.findAll(text, 100);
+        assertEquals(1, matches.size());
+        assertEquals(text.length() - PatternDFA.MAX_MATCH_LENGTH, matches.get(0)[0]);
+        assertEquals(text.length(), matches.get(0)[1]);
+    }
+}
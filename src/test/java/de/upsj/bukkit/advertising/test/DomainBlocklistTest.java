@@ -0,0 +1,121 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.DomainBlocklist;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class DomainBlocklistTest {
+    @After
+    public void reset() {
+        DomainBlocklist.set(DomainBlocklist.EMPTY);
+    }
+
+    private DomainBlocklist build(String content) throws IOException {
+        File text = File.createTempFile("blocked", ".txt");
+        File out = File.createTempFile("blocked", ".dat");
+        try {
+            FileWriter writer = new FileWriter(text);
+            writer.write(content);
+            writer.close();
+            DomainBlocklist.build(text, out);
+            return DomainBlocklist.open(out);
+        } finally {
+            text.delete();
+            out.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        StringBuilder content = new StringBuilder("# comment\nMineStorm.net\n*.cheap-hosting.org\nnot a domain\n");
+        for (int i = 0; i < 10000; i++) {
+            content.append("server").append(i).append(".example.com\n");
+        }
+        content.append("minestorm.net\n");
+        DomainBlocklist blocklist = build(content.toString());
+        assertEquals(10002, blocklist.size());
+        assertTrue(blocklist.matches("minestorm.net"));
+        assertTrue(blocklist.matches("PLAY.MineStorm.net"));
+        assertTrue(blocklist.matches("a.b.cheap-hosting.org"));
+        assertTrue(blocklist.matches("server9999.example.com"));
+        assertTrue(blocklist.matches("hub.server0.example.com"));
+        assertFalse(blocklist.matches("server10000.example.com"));
+        assertFalse(blocklist.matches("example.com"));
+        assertFalse(blocklist.matches("net"));
+        assertFalse(blocklist.matches("otherstorm.net"));
+    }
+
+    @Test
+    public void testParse() throws IOException {
+        DomainBlocklist.set(build("minestorm.net\n"));
+        ChatMessage msg = ChatMessage.parse("Player", "join play.minestorm.net:25570 now!");
+        assertEquals(ChatMessage.State.ADVERTISEMENT, msg.getState());
+        assertEquals(25570, msg.getMatch(0).getPort());
+        assertEquals(ChatMessage.State.UNKNOWN, ChatMessage.parse("Player", TestConfig.TEST_SERVER).getState());
+    }
+
+    @Test
+    public void testExternalSort() throws IOException {
+        File text = File.createTempFile("blocked", ".txt");
+        File out = File.createTempFile("blocked", ".dat");
+        try {
+            FileWriter writer = new FileWriter(text);
+            for (int i = 999; i >= 0; i--) {
+                writer.write("server" + i + ".example.com\n");
+                writer.write("SERVER" + (i / 2) + ".example.com\n");
+            }
+            writer.close();
+            assertEquals(1000, DomainBlocklist.build(text, out, 64));
+            DomainBlocklist blocklist = DomainBlocklist.open(out);
+            assertEquals(1000, blocklist.size());
+            assertTrue(blocklist.matches("server0.example.com"));
+            assertTrue(blocklist.matches("server500.example.com"));
+            assertTrue(blocklist.matches("server999.example.com"));
+            assertFalse(blocklist.matches("server1000.example.com"));
+        } finally {
+            text.delete();
+            out.deleteOnExit();
+        }
+    }
+
+    @Test
+    public void testGenerations() throws IOException {
+        File folder = File.createTempFile("blocked", "");
+        assertTrue(folder.delete() && folder.mkdir());
+        File text = new File(folder, "blocked-domains.txt");
+        try {
+            FileWriter writer = new FileWriter(text);
+            writer.write("minestorm.net\n");
+            writer.close();
+            assertFalse(DomainBlocklist.latest(folder).exists());
+            File first = DomainBlocklist.nextGeneration(folder);
+            DomainBlocklist.build(text, first);
+            assertEquals(first, DomainBlocklist.latest(folder));
+            DomainBlocklist mapped = DomainBlocklist.open(first);
+
+            File second = DomainBlocklist.nextGeneration(folder);
+            assertFalse(second.equals(first));
+            DomainBlocklist.build(text, second);
+            assertEquals(second, DomainBlocklist.latest(folder));
+            DomainBlocklist.deleteGenerations(folder, second);
+            assertTrue(second.exists());
+            assertTrue(mapped.matches("minestorm.net"));
+            assertTrue(DomainBlocklist.open(second).matches("minestorm.net"));
+        } finally {
+            File[] files = folder.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.deleteOnExit();
+                }
+            }
+            folder.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.util.IPPrefixTree;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IPPrefixTreeTest {
+    @After
+    public void reset() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+    }
+
+    @Test
+    public void testLongestMatch() {
+        IPPrefixTree<String> tree = new IPPrefixTree<String>();
+        assertTrue(tree.put("10.0.0.0/8", "a"));
+        assertTrue(tree.put("10.1.0.0/16", "b"));
+        assertTrue(tree.put("10.1.2.3", "c"));
+        assertTrue(tree.put("2001:db8::/32", "d"));
+        assertFalse(tree.put("10.0.0.0/40", "x"));
+        assertFalse(tree.put("example.com/8", "x"));
+        assertEquals(4, tree.size());
+        assertEquals("a", tree.longestMatch(IPPrefixTree.parseAddress("10.2.0.1")));
+        assertEquals("b", tree.longestMatch(IPPrefixTree.parseAddress("10.1.2.4")));
+        assertEquals("c", tree.longestMatch(IPPrefixTree.parseAddress("10.1.2.3")));
+        assertNull(tree.longestMatch(IPPrefixTree.parseAddress("11.1.2.3")));
+        assertEquals("d", tree.longestMatch(IPPrefixTree.parseAddress("2001:db8:ffff::1")));
+        assertNull(tree.longestMatch(IPPrefixTree.parseAddress("::1")));
+    }
+
+    @Test
+    public void testRandomPrefixes() {
+        Random random = new Random(42);
+        IPPrefixTree<Integer> tree = new IPPrefixTree<Integer>();
+        int[] prefixes = new int[500];
+        int[] lengths = new int[prefixes.length];
+        for (int i = 0; i < prefixes.length; i++) {
+            lengths[i] = 8 + random.nextInt(25);
+            prefixes[i] = random.nextInt(1 << 12) << 20 & (int) (0xFFFFFFFFL << (32 - lengths[i]));
+            tree.put(toBytes(prefixes[i]), lengths[i], i);
+        }
+        for (int n = 0; n < 20000; n++) {
+            int address = random.nextInt(1 << 12) << 20 | random.nextInt(1 << 20);
+            int best = -1;
+            for (int i = 0; i < prefixes.length; i++) {
+                int mask = (int) (0xFFFFFFFFL << (32 - lengths[i]));
+                if ((address & mask) == prefixes[i] && (best < 0 || lengths[i] >= lengths[best])) {
+                    best = i;
+                }
+            }
+            Integer match = tree.longestMatch(toBytes(address));
+            if (best < 0) {
+                assertNull(match);
+            } else {
+                assertNotNull(match);
+                assertEquals(lengths[best], lengths[match]);
+            }
+        }
+    }
+
+    @Test
+    public void testBlockedIP() throws IOException {
+        List<String> invalid = new ArrayList<String>();
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, invalid));
+        ChatMessage msg = ChatMessage.parse("Player", "Join 192.0.2.55:25570 now");
+        assertEquals(ChatMessage.State.ADVERTISEMENT, msg.getState());
+        assertTrue(msg.getMatch(0).isServer());
+        msg = ChatMessage.parse("Player", "Join 198.51.100.1 now");
+        assertEquals(ChatMessage.State.UNKNOWN, msg.getState());
+    }
+
+    private static byte[] toBytes(int address) {
+        return new byte[] {(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+}
@@ -0,0 +1,76 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.Keywords;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.AhoCorasick;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KeywordsTest {
+    @After
+    public void reset() {
+        Keywords.set(Keywords.EMPTY);
+    }
+
+    @Test
+    public void testAutomaton() {
+        AhoCorasick automaton = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+        String text = "ushers";
+        List<String> found = new ArrayList<String>();
+        int state = AhoCorasick.START;
+        for (int i = 0; i < text.length(); i++) {
+            state = automaton.next(state, text.charAt(i));
+            for (int match = automaton.getMatch(state); match >= 0; match = automaton.getSuffixMatch(match)) {
+                found.add(text.substring(i + 1 - automaton.getLength(match), i + 1));
+            }
+        }
+        assertEquals(Arrays.asList("she", "he", "hers"), found);
+        assertEquals(AhoCorasick.START, automaton.next(automaton.next(AhoCorasick.START, 'h'), '!'));
+
+        automaton = new AhoCorasick(Arrays.asList("käse", "ΣΕΡΒΕΡ"));
+        state = AhoCorasick.START;
+        for (char c : "KÄSE".toCharArray()) {
+            state = automaton.next(state, c);
+        }
+        assertEquals(0, automaton.getMatch(state));
+        state = AhoCorasick.START;
+        for (char c : "σερβερ".toCharArray()) {
+            state = automaton.next(state, c);
+        }
+        assertEquals(1, automaton.getMatch(state));
+    }
+
+    @Test
+    public void testKeywordMatches() {
+        List<String> invalid = new ArrayList<String>();
+        Keywords.set(Keywords.compile(Arrays.asList("minestorm", "craftia=play.craftia.net", "x=", " "), invalid));
+        assertEquals(Arrays.asList("x=", " "), invalid);
+        assertEquals(2, Keywords.get().size());
+
+        ChatMessage msg = ChatMessage.parse("Player", "join MineStorm!");
+        assertEquals(ChatMessage.State.ADVERTISEMENT, msg.getState());
+        assertEquals(ServerVerdict.State.KEYWORD, ((ServerVerdict) msg.getMatch(0)).getState());
+        msg.censorAll();
+        assertEquals("join *********!", msg.getMessage());
+
+        // only whole words
+        assertEquals(ChatMessage.State.CLEAN, ChatMessage.parse("Player", "minestorms are scary").getState());
+        Keywords.set(Keywords.compile(Arrays.asList("mc storm", "storm"), invalid));
+        msg = ChatMessage.parse("Player", "joinmc storm");
+        assertEquals(ChatMessage.State.ADVERTISEMENT, msg.getState());
+        assertEquals("storm", msg.getMatch(0).getMatchedAddress());
+        Keywords.set(Keywords.compile(Arrays.asList("minestorm", "craftia=play.craftia.net"), invalid));
+
+        // probe hint
+        msg = ChatMessage.parse("Player", "anyone on craftia?");
+        assertEquals(ChatMessage.State.UNKNOWN, msg.getState());
+        assertEquals("play.craftia.net", msg.getMatch(0).getMatchedAddress());
+    }
+}
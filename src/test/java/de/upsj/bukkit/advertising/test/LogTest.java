@@ -0,0 +1,110 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.util.AsyncFileAppender;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+public class LogTest {
+    private final List<String> logged = new ArrayList<String>();
+
+    /** Counts its conversions to a string. */
+    private static class Counting {
+        private int count;
+
+        @Override
+        public String toString() {
+            count++;
+            return "counted";
+        }
+    }
+
+    @Before
+    public void setUp() {
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            public void publish(LogRecord record) {
+                logged.add(record.getMessage());
+            }
+
+            public void flush() { }
+
+            public void close() { }
+        });
+        Log.init(logger, false);
+    }
+
+    @After
+    public void tearDown() {
+        Log.setAppender(null);
+        Log.setTraceSampling(1);
+        Log.init(Logger.getLogger("Minecraft"), true);
+    }
+
+    @Test
+    public void testLazyArguments() {
+        Counting arg = new Counting();
+        Log.debug(Log.Subsystem.CHECKER, "Enqueued server {}", arg);
+        assertEquals(0, arg.count);
+        assertTrue(logged.isEmpty());
+
+        Log.setLevel(Log.Subsystem.CHECKER, Log.Level.DEBUG);
+        Log.debug(Log.Subsystem.NETWORK, "Pinged {}", arg);
+        Log.debug(Log.Subsystem.CHECKER, "Replaced {} by {}: {}", arg, null, 3);
+        assertEquals(1, arg.count);
+        assertEquals("[DEBUG] Replaced counted by null: 3", logged.get(0));
+        Log.debug(Log.Subsystem.CHECKER, "No placeholder", arg);
+        assertEquals("[DEBUG] No placeholder", logged.get(1));
+        assertEquals(1, arg.count);
+    }
+
+    @Test
+    public void testSampledTrace() {
+        Log.setLevel(Log.Subsystem.CHAT, Log.Level.DEBUG);
+        for (int i = 0; i < 10; i++) {
+            Log.trace(Log.Subsystem.CHAT, "{} {}", i, null);
+        }
+        assertTrue(logged.isEmpty());
+        Log.setLevel(Log.Subsystem.CHAT, Log.Level.TRACE);
+        Log.setTraceSampling(5);
+        for (int i = 0; i < 10; i++) {
+            Log.trace(Log.Subsystem.CHAT, "{} {}", "line", null);
+        }
+        assertEquals(2, logged.size());
+    }
+
+    @Test(timeout = 5000)
+    public void testFileAppender() throws Exception {
+        File file = File.createTempFile("antiad", ".log");
+        file.deleteOnExit();
+        Log.setAppender(new AsyncFileAppender(file));
+        Log.setDebugMode(true);
+        Log.debug(Log.Subsystem.ACTIONS, "Ignoring '{}' by {}", "hello", "Player");
+        Log.warn("Warning");
+        // closes the appender, writing all lines
+        Log.setAppender(null);
+        assertEquals(1, logged.size());
+        assertEquals("Warning", logged.get(0));
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String first = reader.readLine();
+        String second = reader.readLine();
+        reader.close();
+        assertTrue(first, first.endsWith(" DEBUG ACTIONS [" + Thread.currentThread().getName()
+                + "] Ignoring 'hello' by Player"));
+        assertTrue(second, second.endsWith("] Warning"));
+    }
+}
@@ -0,0 +1,60 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.ServerChecker;
+import de.upsj.bukkit.advertising.jmx.MBeans;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.*;
+
+public class MBeansTest {
+    private final ServerChecker checker = new ServerChecker();
+
+    @After
+    public void tearDown() {
+        MBeans.unregister();
+        checker.shutdown();
+        ChatMessage.setMaxMatches(16);
+    }
+
+    @Test
+    public void testRuntimeTuning() throws Exception {
+        ActionHandler handler = new ActionHandler(null);
+        ChatListener listener = new ChatListener(checker, handler);
+        MBeans.register(checker, handler, listener);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        ObjectName name = new ObjectName(MBeans.DOMAIN + ":type=ServerChecker");
+        assertEquals(32, server.getAttribute(name, "Threads"));
+        server.setAttribute(name, new Attribute("Threads", 4));
+        assertEquals(4, checker.getThreads());
+        server.setAttribute(name, new Attribute("Timeout", 20000));
+        assertEquals(10000, checker.getTimeout());
+        assertEquals(0, server.getAttribute(name, "InFlightProbes"));
+        server.setAttribute(name, new Attribute("CacheMinutes", 5L));
+        assertEquals(5 * 60 * 1000L, listener.getCache().getMaxAge());
+
+        name = new ObjectName(MBeans.DOMAIN + ":type=ChatListener");
+        server.setAttribute(name, new Attribute("MaxMatches", 4));
+        assertEquals(4, ChatMessage.getMaxMatches());
+        server.setAttribute(name, new Attribute("MessageCacheCapacity", 0));
+        assertFalse(listener.getCache().isEnabled());
+
+        name = new ObjectName(MBeans.DOMAIN + ":type=ActionHandler");
+        server.setAttribute(name, new Attribute("RaidWindow", 30L));
+        assertEquals(30000, handler.getRaids().getWindow());
+
+        // registering again replaces the beans
+        MBeans.register(checker, handler, listener);
+        MBeans.unregister();
+        assertFalse(server.isRegistered(name));
+    }
+}
@@ -0,0 +1,70 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.MessageCache;
+import de.upsj.bukkit.advertising.Whitelist;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class MessageCacheTest {
+    private MessageCache cache;
+
+    @Before
+    public void setUp() throws IOException {
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+        cache = new MessageCache(2, 60000);
+    }
+
+    @After
+    public void reset() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+        Whitelist.set(Whitelist.EMPTY);
+    }
+
+    @Test
+    public void testRepeatedMessage() {
+        ChatMessage first = ChatMessage.parse("Bot", "Join 192.0.2.55 now", null, cache);
+        assertEquals(ChatMessage.State.ADVERTISEMENT, first.getState());
+        assertNotNull(first.getCacheKey());
+        cache.put(first);
+        assertEquals(1, cache.size());
+
+        // same normalized text, different obfuscation
+        ChatMessage repeat = ChatMessage.parse("Bot2", "Join 192 . 0.2.55 now", null, cache);
+        assertSame(first.getCacheKey(), repeat.getCacheKey());
+        assertEquals(ChatMessage.State.ADVERTISEMENT, repeat.getState());
+        assertSame(first.getMatch(0), repeat.getMatch(0));
+        repeat.censorAll();
+        assertEquals("Join ************ now", repeat.getMessage());
+
+        // different message
+        assertNotSame(first.getCacheKey(), ChatMessage.parse("Bot", "Join 192.0.2.56 now", null, cache).getCacheKey());
+    }
+
+    @Test
+    public void testInvalidation() {
+        ChatMessage first = ChatMessage.parse("Bot", "Join 192.0.2.55 now", null, cache);
+        cache.put(first);
+        Whitelist.set(Whitelist.compile(Arrays.asList("example.net"), new ArrayList<String>()));
+        assertNotSame(first.getCacheKey(), ChatMessage.parse("Bot", "Join 192.0.2.55 now", null, cache).getCacheKey());
+        assertEquals(0, cache.size());
+
+        // unfinished messages aren't cached
+        cache.put(ChatMessage.parse("Bot", "Join example.org now", null, cache));
+        assertEquals(0, cache.size());
+
+        // LRU eviction
+        cache.put(ChatMessage.parse("Bot", "Join 192.0.2.1 now", null, cache));
+        cache.put(ChatMessage.parse("Bot", "Join 192.0.2.2 now", null, cache));
+        cache.put(ChatMessage.parse("Bot", "Join 192.0.2.3 now", null, cache));
+        assertEquals(2, cache.size());
+    }
+}
@@ -0,0 +1,98 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.PipelineTrace;
+import de.upsj.bukkit.advertising.util.LatencyHistogram;
+import de.upsj.bukkit.advertising.util.StripedCounter;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MetricsTest {
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 100);
+        }
+        histogram.record(-5);
+        assertEquals(1001, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        // at most 1/32 above the exact value
+        assertEquals(50000, histogram.getPercentile(50), 50000 / 32);
+        assertTrue(histogram.getPercentile(50) >= 50000);
+        assertEquals(99000, histogram.getPercentile(99), 99000 / 32);
+        assertEquals(100000, histogram.getPercentile(100));
+        assertEquals(0, histogram.getPercentile(0));
+        // small values are exact
+        histogram.reset();
+        histogram.record(7);
+        histogram.record(63);
+        assertEquals(7, histogram.getPercentile(50));
+        assertEquals(63, histogram.getPercentile(100));
+        assertEquals(35.0, histogram.getMean(), 0.001);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 40) - 1, histogram.getMax());
+    }
+
+    @Test(timeout = 5000)
+    public void testConcurrentCounting() throws InterruptedException {
+        final StripedCounter counter = new StripedCounter();
+        final LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        counter.increment();
+                        histogram.record(i);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(80000, counter.get());
+        assertEquals(80000, histogram.getCount());
+        assertEquals(9999, histogram.getMax());
+    }
+
+    @Test
+    public void testReport() {
+        Metrics.reset();
+        Metrics.CACHE_HITS.add(3);
+        Metrics.CACHE_MISSES.increment();
+        List<String> report = Metrics.report();
+        assertTrue(report.toString(), report.contains(
+                "Verdict cache: 3 hits, 0 joined, 1 misses (75.0% hit rate)"));
+        Metrics.reset();
+    }
+
+    @Test
+    public void testTrace() {
+        PipelineTrace.record(PipelineTrace.Stage.PARSE, "Player", System.nanoTime());
+        assertEquals(0, PipelineTrace.getRecordedCount());
+        PipelineTrace.setEnabled(true);
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < PipelineTrace.CAPACITY + 10; i++) {
+                PipelineTrace.record(PipelineTrace.Stage.PING, i, start);
+            }
+            PipelineTrace.record(PipelineTrace.Stage.RELEASE, null, System.nanoTime() - 5000000000L);
+            List<PipelineTrace.Event> events = PipelineTrace.getEvents();
+            assertEquals(PipelineTrace.CAPACITY, events.size());
+            // ordered by start time
+            assertEquals(PipelineTrace.Stage.RELEASE, events.get(0).getStage());
+            assertEquals("", events.get(0).getTarget());
+            assertTrue(events.get(0).getMicros() >= 5000000);
+            assertEquals(Thread.currentThread().getName(), events.get(1).getThread());
+        } finally {
+            PipelineTrace.setEnabled(false);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.NormalizedText;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class NormalizedTextTest {
+    private static String normalize(String s) {
+        return NormalizedText.normalize(s).getText();
+    }
+
+    @Test
+    public void testUnchanged() {
+        String s = "Just a normal message. Nothing to see here (really)";
+        NormalizedText text = NormalizedText.normalize(s);
+        assertSame(s, text.getText());
+        assertEquals(5, text.originalStart(5));
+    }
+
+    @Test
+    public void testObfuscations() {
+        assertEquals("join play.example.net now", normalize("join play . example . net now"));
+        assertEquals("join play.example.net", normalize("join play(dot)example[DOT]net"));
+        assertEquals("join play.example.net", normalize("join play (dot) example {dot} net"));
+        assertEquals("play.example.net", normalize("play．example。net"));
+        assertEquals("play.example.net", normalize("ｐｌａｙ.ex​ample.nеt"));
+        assertEquals("End. Next sentence", normalize("End. Next sentence"));
+        assertEquals("join 192.168.0.1:25565", normalize("join 192 . 168 . 0 . 1:25565"));
+    }
+
+    @Test
+    public void testOrdinaryDots() {
+        assertEquals("lol . ok", normalize("lol . ok"));
+        assertEquals("wait ... what", normalize("wait ... what"));
+        assertEquals("it costs 5 . 300 of them", normalize("it costs 5 . 300 of them"));
+        assertEquals("see mc.lol.ok.com", normalize("see mc . lol . ok . com"));
+        assertEquals(ChatMessage.State.CLEAN, ChatMessage.parse("Player", "lol . ok").getState());
+    }
+
+    @Test
+    public void testOffsets() {
+        String original = "hi play (dot) example . net!";
+        NormalizedText text = NormalizedText.normalize(original);
+        assertEquals("hi play.example.net!", text.getText());
+        int start = text.getText().indexOf("play");
+        int end = start + "play.example.net".length();
+        assertEquals("play (dot) example . net",
+                original.substring(text.originalStart(start), text.originalEnd(end)));
+    }
+
+    @Test
+    public void testCensorObfuscated() {
+        ChatMessage msg = ChatMessage.parse("Player", "Join play . example . net :)");
+        assertEquals("Match count", 1, msg.getMatchCount());
+        assertEquals("play.example.net", msg.getMatch(0).getMatchedAddress());
+        msg.updateStatus(msg.getMatch(0), ServerVerdict.blockedDomain(msg.getMatch(0)));
+        msg.censorAll();
+        assertEquals("Join ******************** :)", msg.getMessage());
+    }
+}
@@ -1,19 +1,43 @@
 package de.upsj.bukkit.advertising.test;
 
 import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.servers.ResolvedServer;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.test.sim.FakeMinecraftServer;
+import de.upsj.bukkit.advertising.test.sim.NetworkSimulator;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
+
+import java.io.IOException;
+
 import static org.junit.Assert.*;
 
 public class PotentialServerTest {
+    private NetworkSimulator network;
+
+    @Before
+    public void setUp() throws IOException {
+        network = new NetworkSimulator(1);
+        network.addServer(TestConfig.TEST_SERVER, FakeMinecraftServer.Protocol.MODERN);
+        network.addHost(TestConfig.TEST_NO_SERVER);
+        network.addServer("mc.mineyc.com", 25570, FakeMinecraftServer.Protocol.LEGACY, false);
+        network.addSrv(TestConfig.TEST_SRV_DOMAIN, "mc.mineyc.com", 25570);
+        network.install();
+    }
+
+    @After
+    public void tearDown() {
+        network.close();
+    }
+
     @Test(timeout=5000)
     public void testNoServer() {
         PotentialServer server = new PotentialServer(TestConfig.TEST_NO_SERVER);
         assertFalse("New server claims to be final", server.isFinal());
         assertFalse("New server claims to be known server", server.isServer());
-        // Requires network permission
         PotentialServer server2 = server.call().call();
         assertTrue("Pinged server not final", server2.isFinal());
-        // Should work as long as google doesn't start a minecraft server.
         assertFalse(TestConfig.TEST_NO_SERVER + " considered minecraft server", server2.isServer());
     }
 
@@ -22,12 +46,11 @@ public class PotentialServerTest {
         PotentialServer server = new PotentialServer(TestConfig.TEST_SERVER);
         assertFalse("New server claims to be final", server.isFinal());
         assertFalse("New server claims to be known server", server.isServer());
-        // Requires network permission
         PotentialServer server2 = server.call().call();
         assertTrue("Pinged server not final", server2.isFinal());
-        // Should work as long as the server is still running.
         assertTrue(TestConfig.TEST_SERVER + " not considered minecraft server", server2.isServer());
-        System.out.println(server2);
+        assertEquals(7, ((ServerVerdict) server2).getPlayers());
+        assertEquals(20, ((ServerVerdict) server2).getMaxPlayers());
     }
 
     @Test(timeout=5000)
@@ -35,8 +58,72 @@ public class PotentialServerTest {
         PotentialServer server = new PotentialServer(TestConfig.TEST_SRV_DOMAIN);
         server = server.call();
         assertTrue("server is null", server != null);
+        assertEquals(25570, server.getPort());
         server = server.call();
         assertTrue(TestConfig.TEST_SRV_DOMAIN + " not considered minecraft server", server.isServer());
-        System.out.println(server);
+    }
+
+    @Test(timeout=5000)
+    public void testUnknownHost() {
+        assertNull(new PotentialServer("unknown.example.org").call());
+    }
+
+    @Test(timeout=5000)
+    public void testDnsTimeout() {
+        network.addDnsTimeout("slow.example.org");
+        assertNull(new PotentialServer("slow.example.org").call());
+    }
+
+    @Test(timeout=5000)
+    public void testIPv6() throws IOException {
+        network.addServer("v6.example.org", NetworkSimulator.DEFAULT_PORT, FakeMinecraftServer.Protocol.MODERN, true);
+        PotentialServer server = new PotentialServer("v6.example.org").call();
+        assertEquals(16, ((ResolvedServer) server).getRawAddress().length);
+        assertTrue(server.call().isServer());
+    }
+
+    @Test(timeout=5000)
+    public void testLargeResponse() throws IOException {
+        network.addServer("big.example.org", FakeMinecraftServer.Protocol.LEGACY).setPadding(20000);
+        PotentialServer server = new PotentialServer("big.example.org").call().call();
+        assertTrue(server.isServer());
+        assertEquals(ServerVerdict.MAX_MOTD_LENGTH, ((ServerVerdict) server).getMOTD().length());
+    }
+
+    @Test(timeout=5000)
+    public void testNotMinecraft() throws IOException {
+        int timeout = ResolvedServer.getTimeout();
+        ResolvedServer.setTimeout(300);
+        try {
+            network.addServer("web.example.org", FakeMinecraftServer.Protocol.GARBAGE);
+            network.addServer("silent.example.org", FakeMinecraftServer.Protocol.SILENT);
+            assertFalse(new PotentialServer("web.example.org").call().call().isServer());
+            assertFalse(new PotentialServer("silent.example.org").call().call().isServer());
+        } finally {
+            ResolvedServer.setTimeout(timeout);
+        }
+    }
+
+    @Test(timeout=10000)
+    public void testLossAndLatency() throws IOException {
+        network.getDns().setLatency(20);
+        network.getDns().setLoss(0.3);
+        FakeMinecraftServer lossy = network.addServer("lossy.example.org", FakeMinecraftServer.Protocol.MODERN);
+        lossy.setLatency(20);
+        lossy.setLoss(0.5);
+        int resolved = 0;
+        int servers = 0;
+        for (int i = 0; i < 10; i++) {
+            PotentialServer server = new PotentialServer("lossy.example.org").call();
+            if (server != null) {
+                resolved++;
+                if (server.call().isServer()) {
+                    servers++;
+                }
+            }
+        }
+        // seeded, so always the same, but some pings are lost
+        assertEquals(resolved, lossy.getPingCount());
+        assertTrue(servers > 0 && servers < resolved);
     }
 }
@@ -0,0 +1,57 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.PrometheusEndpoint;
+import de.upsj.bukkit.advertising.ServerChecker;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import static org.junit.Assert.*;
+
+public class PrometheusEndpointTest {
+    private final ServerChecker checker = new ServerChecker();
+    private final PrometheusEndpoint endpoint = new PrometheusEndpoint(checker);
+
+    @After
+    public void tearDown() {
+        endpoint.stop();
+        checker.shutdown();
+        Metrics.reset();
+    }
+
+    @Test(timeout = 10000)
+    public void testScrape() throws Exception {
+        Metrics.reset();
+        Metrics.HOLD.record(1500);
+        Metrics.DNS_FAILURES.increment();
+
+        YamlConfiguration config = new YamlConfiguration();
+        config.set(PrometheusEndpoint.CONF_PORT, 0);
+        endpoint.reloadConfig(config);
+        assertEquals(0, endpoint.getPort());
+
+        String text = endpoint.scrape();
+        assertTrue(text, text.contains("# TYPE antiad_hold_seconds summary\n"));
+        assertTrue(text, text.contains("antiad_hold_seconds_count 1\n"));
+        assertTrue(text, text.contains("antiad_hold_seconds_sum 0.001500\n"));
+        assertTrue(text, text.contains("antiad_dns_failures_total 1\n"));
+
+        config.set(PrometheusEndpoint.CONF_ENABLED, true);
+        config.set(PrometheusEndpoint.CONF_PORT, 39225);
+        endpoint.reloadConfig(config);
+        assertEquals(39225, endpoint.getPort());
+        HttpURLConnection connection = (HttpURLConnection)
+                new URL("http://127.0.0.1:39225" + PrometheusEndpoint.PATH).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain"));
+        BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+        assertEquals("# HELP antiad_parse_seconds Time spent parsing messages.", reader.readLine());
+        reader.close();
+    }
+}
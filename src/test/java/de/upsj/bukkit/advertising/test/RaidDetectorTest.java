@@ -0,0 +1,89 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.RaidDetector;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class RaidDetectorTest {
+    private ServerVerdict verdict;
+
+    @Before
+    public void setUp() throws IOException {
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+        verdict = (ServerVerdict) ChatMessage.parse("Bot", "Join 192.0.2.55").getMatch(0);
+    }
+
+    @After
+    public void reset() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+    }
+
+    @Test
+    public void testRaid() {
+        RaidDetector raids = new RaidDetector(3, 10000, 60000);
+        assertFalse(raids.record(verdict, "Bot1", 0));
+        // same player again
+        assertFalse(raids.record(verdict, "Bot1", 1000));
+        assertFalse(raids.record(verdict, "Bot2", 2000));
+        assertFalse(raids.isRaided(verdict, 2000));
+        assertTrue(raids.record(verdict, "Bot3", 3000));
+        assertTrue(raids.isRaided(verdict, 3000));
+        assertEquals(3, raids.getPlayerCount(verdict));
+        // only one summary
+        assertFalse(raids.record(verdict, "Bot4", 4000));
+
+        // instant block
+        ChatMessage msg = ChatMessage.parse("Bot5", "Join 192.0.2.55 now");
+        assertSame(verdict, raids.find(msg, 5000));
+        assertNull(raids.find(ChatMessage.parse("Bot5", "Join example.net now"), 5000));
+        assertNull(raids.find(msg, 63001));
+        assertFalse(raids.isRaided(verdict, 63001));
+    }
+
+    @Test
+    public void testWindow() {
+        RaidDetector raids = new RaidDetector(3, 10000, 60000);
+        assertFalse(raids.record(verdict, "Bot1", 0));
+        assertFalse(raids.record(verdict, "Bot2", 6000));
+        assertFalse(raids.record(verdict, "Bot3", 12000));
+        assertEquals(2, raids.getPlayerCount(verdict));
+
+        raids.setLimits(0, 10000, 60000);
+        assertFalse(raids.record(verdict, "Bot1", 0));
+        assertFalse(raids.record(verdict, "Bot2", 0));
+        assertFalse(raids.record(verdict, "Bot3", 0));
+    }
+
+    @Test
+    public void testExpiry() {
+        RaidDetector raids = new RaidDetector(2, 10000, 60000);
+        raids.record(verdict, "Bot1", 0);
+        assertTrue(raids.record(verdict, "Bot2", 0));
+        raids.expire(30000);
+        assertTrue(raids.isRaided(verdict, 30000));
+        assertEquals(0, raids.getPlayerCount(verdict));
+        raids.expire(60000);
+        assertFalse(raids.isRaided(verdict, 60000));
+        assertNull(raids.find(ChatMessage.parse("Bot3", "Join 192.0.2.55"), 60000));
+
+        // the least recently advertised servers are evicted
+        ServerVerdict first = (ServerVerdict) ChatMessage.parse("Bot", "Join 192.0.2.1:20000").getMatch(0);
+        ServerVerdict last = first;
+        for (int i = 0; i < 2000; i++) {
+            last = (ServerVerdict) ChatMessage.parse("Bot", "Join 192.0.2.1:" + (20000 + i)).getMatch(0);
+            raids.record(last, "Bot1", 100000);
+        }
+        assertEquals(0, raids.getPlayerCount(first));
+        assertEquals(1, raids.getPlayerCount(last));
+    }
+}
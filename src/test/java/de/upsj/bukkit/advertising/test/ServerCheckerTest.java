@@ -3,11 +3,15 @@ package de.upsj.bukkit.advertising.test;
 import de.upsj.bukkit.advertising.ChatMessage;
 import de.upsj.bukkit.advertising.ServerChecker;
 import de.upsj.bukkit.advertising.servers.PotentialServer;
+import de.upsj.bukkit.advertising.test.sim.FakeMinecraftServer;
+import de.upsj.bukkit.advertising.test.sim.NetworkSimulator;
 import org.bukkit.configuration.file.YamlConfiguration;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+
 import static org.junit.Assert.assertEquals;
 
 public class ServerCheckerTest {
@@ -19,9 +23,14 @@ public class ServerCheckerTest {
     private ChatMessage original3;
     private PotentialServer whitelisted;
     private ServerChecker checker;
+    private NetworkSimulator network;
 
     @Before
-    public void setup() {
+    public void setup() throws IOException {
+        network = new NetworkSimulator(1);
+        network.addServer(TestConfig.TEST_SERVER, FakeMinecraftServer.Protocol.MODERN);
+        network.addHost(TestConfig.TEST_NO_SERVER);
+        network.install();
         msg1 = ChatMessage.parse("Player", "Hallo! Geht auf meinen Server unter " + TestConfig.TEST_NO_SERVER);
         msg2 = ChatMessage.parse("Player", "Hallo! Geht auf meinen Server unter " + TestConfig.TEST_SERVER);
         msg3 = ChatMessage.parse("Player", "Hallo! Geht auf meinen Server unter " + TestConfig.TEST_SERVER
@@ -45,6 +54,7 @@ public class ServerCheckerTest {
     public void shutdown() throws InterruptedException {
         checker.awaitCompletion();
         checker.shutdown();
+        network.close();
     }
 
     @Test(timeout=10000)
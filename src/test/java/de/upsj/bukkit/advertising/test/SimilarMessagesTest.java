@@ -0,0 +1,69 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.IPBlocklist;
+import de.upsj.bukkit.advertising.SimilarMessages;
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class SimilarMessagesTest {
+    private static final String AD = "Join the best survival server at 192.0.2.55 - free ranks for everyone!";
+    private ServerVerdict verdict;
+
+    @Before
+    public void setUp() throws IOException {
+        IPBlocklist.set(IPBlocklist.compile(Arrays.asList("192.0.2.0/24"), null, new ArrayList<String>()));
+        verdict = (ServerVerdict) ChatMessage.parse("Bot", AD).getMatch(0);
+    }
+
+    @After
+    public void reset() {
+        IPBlocklist.set(IPBlocklist.EMPTY);
+    }
+
+    @Test
+    public void testNearDuplicates() {
+        SimilarMessages similar = new SimilarMessages(80, 60000);
+        similar.add(AD, verdict, 0);
+        assertSame(verdict, similar.find(AD, 1000));
+        assertSame(verdict, similar.find("Join the best survival server at 192.0.2.55 - free ranks for everyone! xq7", 1000));
+        assertSame(verdict, similar.find("free ranks for everyone! Join the best survival server at 192.0.2.55 :D", 1000));
+        assertNull(similar.find("Does anyone know how to build an automatic wheat farm?", 1000));
+        assertNull(similar.find("hi", 1000));
+    }
+
+    @Test
+    public void testEviction() {
+        SimilarMessages similar = new SimilarMessages(60, 60000);
+        similar.add(AD, verdict, 0);
+        assertEquals(1, similar.size());
+        assertNull(similar.find(AD, 60001));
+        assertEquals(0, similar.size());
+
+        for (int i = 0; i < SimilarMessages.MAX_ENTRIES + 10; i++) {
+            similar.add(AD + " " + i, verdict, 100000);
+        }
+        assertEquals(SimilarMessages.MAX_ENTRIES, similar.size());
+
+        similar.setLimits(0, 60000);
+        assertNull(similar.find(AD, 100000));
+    }
+
+    @Test
+    public void testInheritedVerdict() {
+        ChatMessage msg = ChatMessage.parse("Bot", "Join the best survival server at example.org - free ranks!");
+        assertEquals(ChatMessage.State.UNKNOWN, msg.getState());
+        msg.inherit(verdict);
+        assertEquals(ChatMessage.State.ADVERTISEMENT, msg.getState());
+        msg.censorAll();
+        assertEquals("Join the best survival server at *********** - free ranks!", msg.getMessage());
+    }
+}
@@ -0,0 +1,106 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.servers.ServerVerdict;
+import de.upsj.bukkit.advertising.util.VerdictCacheFile;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class VerdictCacheFileTest {
+    private static final long HOUR = 60 * 60 * 1000L;
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        long now = System.currentTimeMillis();
+        List<ServerVerdict> verdicts = new ArrayList<ServerVerdict>();
+        verdicts.add(ServerVerdict.restore(TestConfig.TEST_SERVER, 25570, new byte[] {1, 2, 3, 4},
+                ServerVerdict.State.SERVER, "A Minecraft Server", 3, 20, now));
+        verdicts.add(ServerVerdict.restore(TestConfig.TEST_NO_SERVER, TestConfig.DEFAULT_PORT, new byte[16],
+                ServerVerdict.State.NO_SERVER, null, -1, -1, now - HOUR));
+        verdicts.add(ServerVerdict.restore("old.example.com", TestConfig.DEFAULT_PORT, new byte[] {5, 6, 7, 8},
+                ServerVerdict.State.SERVER, "Expired", 1, 2, now - 3 * HOUR));
+
+        File file = File.createTempFile("verdicts", ".dat");
+        try {
+            VerdictCacheFile.save(file, verdicts);
+            List<ServerVerdict> loaded = VerdictCacheFile.load(file, 2 * HOUR);
+            assertEquals("Expired entry restored", 2, loaded.size());
+            ServerVerdict server = loaded.get(0);
+            assertEquals(verdicts.get(0), server);
+            assertEquals(TestConfig.TEST_SERVER, server.getMatchedAddress());
+            assertEquals(25570, server.getPort());
+            assertTrue("Server verdict lost", server.isServer());
+            assertEquals("A Minecraft Server", server.getMOTD());
+            assertEquals(20, server.getMaxPlayers());
+            ServerVerdict noServer = loaded.get(1);
+            assertEquals(verdicts.get(1), noServer);
+            assertTrue("Not final", noServer.isFinal());
+            assertFalse("No-server verdict lost", noServer.isServer());
+            assertNull(noServer.getMOTD());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testOversizedName() throws IOException {
+        long now = System.currentTimeMillis();
+        StringBuilder name = new StringBuilder();
+        while (name.length() < 40000) {
+            name.append("label.");
+        }
+        name.append("com");
+        List<ServerVerdict> verdicts = new ArrayList<ServerVerdict>();
+        verdicts.add(ServerVerdict.restore(name.toString(), TestConfig.DEFAULT_PORT, new byte[] {1, 2, 3, 4},
+                ServerVerdict.State.NO_SERVER, null, -1, -1, now));
+        verdicts.add(ServerVerdict.restore(TestConfig.TEST_SERVER, 25570, new byte[] {1, 2, 3, 4},
+                ServerVerdict.State.SERVER, "A Minecraft Server", 3, 20, now));
+        verdicts.add(ServerVerdict.restore(TestConfig.TEST_NO_SERVER, TestConfig.DEFAULT_PORT, new byte[16],
+                ServerVerdict.State.NO_SERVER, null, -1, -1, now));
+
+        File file = File.createTempFile("verdicts", ".dat");
+        try {
+            VerdictCacheFile.save(file, verdicts);
+            List<ServerVerdict> loaded = VerdictCacheFile.load(file, HOUR);
+            assertEquals(2, loaded.size());
+            assertEquals(TestConfig.TEST_SERVER, loaded.get(0).getMatchedAddress());
+            assertEquals("A Minecraft Server", loaded.get(0).getMOTD());
+            assertEquals(TestConfig.TEST_NO_SERVER, loaded.get(1).getMatchedAddress());
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingFile() throws IOException {
+        File file = new File(System.getProperty("java.io.tmpdir"), "nonexistent-verdicts.dat");
+        assertTrue(VerdictCacheFile.load(file, HOUR).isEmpty());
+    }
+
+    @Test
+    public void testInterruptedReplace() throws IOException {
+        List<ServerVerdict> verdicts = new ArrayList<ServerVerdict>();
+        verdicts.add(ServerVerdict.restore(TestConfig.TEST_SERVER, 25570, new byte[] {1, 2, 3, 4},
+                ServerVerdict.State.SERVER, "A Minecraft Server", 3, 20, System.currentTimeMillis()));
+        File file = File.createTempFile("verdicts", ".dat");
+        File backup = new File(file.getPath() + ".bak");
+        try {
+            VerdictCacheFile.save(file, verdicts);
+            // saved again over the existing file
+            VerdictCacheFile.save(file, verdicts);
+            assertFalse(new File(file.getPath() + ".tmp").exists());
+            assertFalse(backup.exists());
+            // crashed after moving the old snapshot away
+            assertTrue(file.renameTo(backup));
+            assertEquals(1, VerdictCacheFile.load(file, HOUR).size());
+        } finally {
+            file.delete();
+            backup.delete();
+        }
+    }
+}
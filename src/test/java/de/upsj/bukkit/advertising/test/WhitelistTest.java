@@ -0,0 +1,100 @@
+package de.upsj.bukkit.advertising.test;
+
+import de.upsj.bukkit.advertising.ChatMessage;
+import de.upsj.bukkit.advertising.Whitelist;
+import de.upsj.bukkit.advertising.test.sim.NetworkSimulator;
+import de.upsj.bukkit.advertising.util.IPPrefixTree;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WhitelistTest {
+    private Whitelist compile(String... entries) {
+        List<String> invalid = new ArrayList<String>();
+        Whitelist whitelist = Whitelist.compile(Arrays.asList(entries), invalid);
+        assertTrue("Invalid entries " + invalid, invalid.isEmpty());
+        return whitelist;
+    }
+
+    @After
+    public void reset() {
+        Whitelist.set(Whitelist.EMPTY);
+    }
+
+    @Test
+    public void testDomains() {
+        Whitelist whitelist = compile("play.example.com:25566", "*.ournetwork.net");
+        assertTrue(whitelist.matchesDomain("PLAY.example.com", 25566));
+        assertFalse(whitelist.matchesDomain("play.example.com", 25565));
+        assertFalse(whitelist.matchesDomain("example.com", 25566));
+        assertTrue(whitelist.matchesDomain("ournetwork.net", 25565));
+        assertTrue(whitelist.matchesDomain("hub.eu.ournetwork.net", 1234));
+        assertFalse(whitelist.matchesDomain("notournetwork.net", 25565));
+        assertFalse(whitelist.matchesDomain("ournetwork.net.evil.com", 25565));
+    }
+
+    @Test
+    public void testRanges() {
+        Whitelist whitelist = compile("10.0.0.0/8", "192.168.1.17:25566", "2001:db8::/32");
+        assertTrue(whitelist.matchesAddress(IPPrefixTree.parseAddress("10.200.3.4"), 25565));
+        assertFalse(whitelist.matchesAddress(IPPrefixTree.parseAddress("11.0.0.1"), 25565));
+        assertTrue(whitelist.matchesAddress(IPPrefixTree.parseAddress("192.168.1.17"), 25566));
+        assertFalse(whitelist.matchesAddress(IPPrefixTree.parseAddress("192.168.1.17"), 25565));
+        assertFalse(whitelist.matchesAddress(IPPrefixTree.parseAddress("192.168.1.18"), 25566));
+        assertTrue(whitelist.matchesAddress(IPPrefixTree.parseAddress("2001:db8:1::5"), 25565));
+        assertFalse(whitelist.matchesAddress(IPPrefixTree.parseAddress("2001:db9::5"), 25565));
+    }
+
+    @Test
+    public void testInvalid() {
+        List<String> invalid = new ArrayList<String>();
+        Whitelist.compile(Arrays.asList("no server", "10.0.0.0/33", "*.", "ok.example.com", "example.com:70000"),
+                          invalid);
+        assertEquals(4, invalid.size());
+        // never looked up as host name
+        assertNull(IPPrefixTree.parseAddress("1.2.3.400"));
+        assertNull(IPPrefixTree.parseAddress("1.2.3"));
+        assertArrayEquals(new byte[] {1, 2, 3, (byte) 255}, IPPrefixTree.parseAddress("1.2.3.255"));
+    }
+
+    @Test
+    public void testParse() {
+        Whitelist.set(compile("*.ournetwork.net", "127.0.0.0/8"));
+        ChatMessage msg = ChatMessage.parse("Player", "Join hub.ournetwork.net or 127.0.0.1, not "
+                + TestConfig.TEST_SERVER);
+        assertEquals("Match count", 1, msg.getMatchCount());
+        assertEquals(TestConfig.TEST_SERVER, msg.getMatch(0).getMatchedAddress());
+        msg = ChatMessage.parse("Player", "Join hub.ournetwork.net:25566");
+        assertEquals(ChatMessage.State.CLEAN, msg.getState());
+    }
+
+    @Test
+    public void testResolve() throws IOException {
+        NetworkSimulator network = new NetworkSimulator(7);
+        try {
+            InetAddress play = network.addHost("play.example.com");
+            InetAddress hub = network.addHost("hub.example.com");
+            network.install();
+            Whitelist whitelist = compile("play.example.com", "hub.example.com:25566", "gone.example.com");
+            assertFalse(whitelist.matchesAddress(play.getAddress(), 25565));
+            whitelist = whitelist.resolve();
+            // the server advertised by its IP address
+            assertTrue(whitelist.matchesAddress(play.getAddress(), 25565));
+            // other servers on the same IP address aren't whitelisted
+            assertFalse(whitelist.matchesAddress(play.getAddress(), 25580));
+            assertTrue(whitelist.matchesDomain("play.example.com", 25580));
+            assertTrue(whitelist.matchesAddress(hub.getAddress(), 25566));
+            assertFalse(whitelist.matchesAddress(hub.getAddress(), 25565));
+            assertTrue(whitelist.matchesDomain("gone.example.com", 25565));
+        } finally {
+            network.close();
+        }
+    }
+}
@@ -0,0 +1,500 @@
+package de.upsj.bukkit.advertising.test.load;
+
+import de.upsj.bukkit.advertising.Action;
+import de.upsj.bukkit.advertising.ActionHandler;
+import de.upsj.bukkit.advertising.ChatListener;
+import de.upsj.bukkit.advertising.Log;
+import de.upsj.bukkit.advertising.Metrics;
+import de.upsj.bukkit.advertising.ServerChecker;
+import de.upsj.bukkit.advertising.test.sim.FakeMinecraftServer;
+import de.upsj.bukkit.advertising.test.sim.NetworkSimulator;
+import de.upsj.bukkit.advertising.util.LatencyHistogram;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * End-to-end load test: a synthetic chat firehose from thousands of players is sent through
+ * {@link ChatListener}, {@link ServerChecker} and {@link ActionHandler}, ticked like the main thread would,
+ * against the {@link NetworkSimulator}, so nothing leaves the machine.
+ * <p>
+ * The messages are a configurable mix of clean chat, advertisement of a few servers that are repeated
+ * (and thus answered by the caches), advertisement of servers never seen before (DNS lookup and ping)
+ * and garbage domains that don't resolve. The offered rate is raised stage by stage; every stage reports
+ * the achieved throughput, the hold time percentiles, the time chat threads spend in the listener,
+ * thread counts and the allocation rate as JSON, followed by the largest sustainable rate.
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test
+ *     -Dexec.mainClass=de.upsj.bukkit.advertising.test.load.LoadHarness
+ *     -Dexec.args="--rates=500,1000,2000 --duration=10 --out=target/load.json"
+ * </pre>
+ * Options (with defaults): players (2000), threads (8, chat threads), rates (250,500,1000,2000,4000 msg/s),
+ * duration (10 s per stage), clean/repeated/new/garbage (70/15/10/5, percentages of the mix),
+ * servers (4, fake servers behind the advertised domains), pingLatency (20 ms), dnsLatency (1 ms),
+ * maxHoldP99 (1000 ms), drain (5 s to release held messages after a stage), seed (42), out (stdout).
+ * @author upsj
+ * @version 1.0
+ */
+public class LoadHarness {
+    /** Tick length of the main thread (ms). */
+    private static final long TICK = 50;
+    /** Count of repeatedly advertised domains. */
+    private static final int REPEATED_DOMAINS = 8;
+    /** Share of the offered rate a stage has to achieve to be sustainable. */
+    private static final double MIN_ACHIEVED = 0.95;
+    /** Filler words of the clean messages. */
+    private static final String[] WORDS = {"hello", "anyone", "want", "to", "trade", "diamonds", "for", "iron",
+                                           "where", "is", "the", "spawn", "lol", "brb", "nice", "build",
+                                           "thanks", "who", "has", "food", "creeper", "behind", "you", "gg"};
+
+    private final Map<String, String> options;
+    private final MockServer server;
+    private final ServerChecker checker;
+    private final ActionHandler handler;
+    private final ChatListener listener;
+    private final NetworkSimulator network;
+    private final List<String> repeatedDomains;
+    private final List<String> newDomains;
+    private final AtomicInteger nextNewDomain;
+    /** Time (µs) chat threads spend in the listener. */
+    private final LatencyHistogram listenerTime;
+    private final AtomicLong sent;
+    private final int players;
+    private final int threads;
+    private final int[] mix;
+    private final long seed;
+    private volatile boolean ticking;
+
+    /**
+     * Sets up the pipeline and the simulated network.
+     * @param options The options.
+     * @throws IOException If the simulated network can't be started.
+     */
+    public LoadHarness(Map<String, String> options) throws IOException {
+        this.options = options;
+        this.players = getInt("players", 2000);
+        this.threads = getInt("threads", 8);
+        this.seed = getInt("seed", 42);
+        this.mix = new int[] {getInt("clean", 70), getInt("repeated", 15), getInt("new", 10), getInt("garbage", 5)};
+        this.listenerTime = new LatencyHistogram();
+        this.sent = new AtomicLong();
+        this.nextNewDomain = new AtomicInteger();
+
+        server = new MockServer(players);
+        checker = new ServerChecker();
+        checker.reloadConfig(new YamlConfiguration());
+        handler = new ActionHandler(server.getServer());
+        YamlConfiguration actions = new YamlConfiguration();
+        enableAction(actions, "hide", 1);
+        enableAction(actions, "nofityMods", 1);
+        enableAction(actions, "kick", 3);
+        handler.reloadConfig(actions);
+        listener = new ChatListener(checker, handler);
+        listener.reloadConfig(new YamlConfiguration());
+        server.setListener(listener);
+
+        network = new NetworkSimulator(seed);
+        network.getDns().setLatency(getInt("dnsLatency", 1));
+        List<FakeMinecraftServer> fakes = new ArrayList<FakeMinecraftServer>();
+        for (int i = 0; i < Math.max(1, getInt("servers", 4)); i++) {
+            FakeMinecraftServer fake = network.addServer("host" + i + ".load.example.net",
+                                                         FakeMinecraftServer.Protocol.MODERN);
+            fake.setLatency(getInt("pingLatency", 20));
+            fakes.add(fake);
+        }
+        repeatedDomains = new ArrayList<String>();
+        for (int i = 0; i < REPEATED_DOMAINS; i++) {
+            String domain = "play" + i + ".example.net";
+            network.addAlias(domain, fakes.get(i % fakes.size()));
+            repeatedDomains.add(domain);
+        }
+        // enough never seen domains for all stages, reused (and thus cached) only if they run out
+        long total = 0;
+        for (int rate : getRates()) {
+            total += (long) rate * getInt("duration", 10) * mix[2] / sum(mix) + 1;
+        }
+        newDomains = new ArrayList<String>();
+        for (int i = 0; i < Math.min(total, 100000); i++) {
+            String domain = "mc" + i + ".example.org";
+            network.addAlias(domain, fakes.get(i % fakes.size()));
+            newDomains.add(domain);
+        }
+        network.install();
+    }
+
+    /**
+     * @param config The action configuration.
+     * @param action The action name.
+     * @param attempts The attempt the action is taken from on (enables it).
+     */
+    private static void enableAction(ConfigurationSection config, String action, int attempts) {
+        config.createSection(action).set(Action.CONF_ATTEMPTS, attempts);
+    }
+
+    /**
+     * @param name The option name.
+     * @param defaultValue The default value.
+     * @return The integer value of the option.
+     */
+    private int getInt(String name, int defaultValue) {
+        String value = options.get(name);
+        return value == null ? defaultValue : Integer.parseInt(value.trim());
+    }
+
+    /** @return The offered rates of the stages (messages per second). */
+    private int[] getRates() {
+        String value = options.get("rates");
+        String[] parts = (value == null ? "250,500,1000,2000,4000" : value).split(",");
+        int[] rates = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            rates[i] = Integer.parseInt(parts[i].trim());
+        }
+        return rates;
+    }
+
+    /**
+     * @param values Some values.
+     * @return Their sum.
+     */
+    private static int sum(int[] values) {
+        int result = 0;
+        for (int value : values) {
+            result += value;
+        }
+        return result;
+    }
+
+    /**
+     * Generates a chat message.
+     * @param random The random source of the chat thread.
+     * @return The message.
+     */
+    private String nextMessage(Random random) {
+        int kind = random.nextInt(sum(mix));
+        StringBuilder text = new StringBuilder();
+        int words = 3 + random.nextInt(6);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        if (kind < mix[0]) {
+            return text.toString();
+        }
+        String domain;
+        kind -= mix[0];
+        if (kind < mix[1]) {
+            domain = repeatedDomains.get(random.nextInt(repeatedDomains.size()));
+        } else if (kind < mix[1] + mix[2]) {
+            domain = newDomains.get(nextNewDomain.getAndIncrement() % newDomains.size());
+        } else {
+            domain = "x" + Long.toString(random.nextLong() & Long.MAX_VALUE, 36) + ".com";
+        }
+        return random.nextBoolean() ? "join " + domain + " " + text : text + " " + domain;
+    }
+
+    /**
+     * Ticks the checker and the action handler like the main thread, until stopped.
+     * @return The started thread.
+     */
+    private Thread startTicking() {
+        ticking = true;
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                long next = System.currentTimeMillis();
+                while (ticking) {
+                    checker.run();
+                    handler.run();
+                    next += TICK;
+                    long sleep = next - System.currentTimeMillis();
+                    if (sleep > 0) {
+                        try {
+                            Thread.sleep(sleep);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    } else {
+                        next = System.currentTimeMillis();
+                    }
+                }
+            }
+        }, "Server thread");
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Sends chat at the given rate for the given time.
+     * @param stage The stage number, part of the seed.
+     * @param rate The offered rate (messages per second).
+     * @param millis The duration (ms).
+     * @return The elapsed time (ns).
+     * @throws InterruptedException If interrupted.
+     */
+    private long fire(final int stage, int rate, long millis) throws InterruptedException {
+        final long interval = (long) (threads * 1e9 / rate);
+        final long start = System.nanoTime();
+        final long end = start + millis * 1000000L;
+        List<Thread> chatters = new ArrayList<Thread>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            Thread chatter = new Thread(new Runnable() {
+                public void run() {
+                    Random random = new Random(seed * 31 * 31 + stage * 31 + index);
+                    // each thread starts at its own offset, so the messages are spread evenly
+                    long next = start + interval * index / threads;
+                    while (next < end) {
+                        long wait = next - System.nanoTime();
+                        if (wait > 0) {
+                            try {
+                                Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                        Player player = server.getPlayer(random.nextInt(players));
+                        AsyncPlayerChatEvent event = new AsyncPlayerChatEvent(true, player, nextMessage(random),
+                                                                              Collections.<Player>emptySet());
+                        long before = System.nanoTime();
+                        listener.onChat(event);
+                        listenerTime.recordSince(before);
+                        sent.incrementAndGet();
+                        // a thread falling behind doesn't catch up with a burst, the achieved rate drops instead
+                        next = Math.max(next + interval, System.nanoTime() - interval);
+                    }
+                }
+            }, "Chat thread " + t);
+            chatter.start();
+            chatters.add(chatter);
+        }
+        for (Thread chatter : chatters) {
+            chatter.join();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Runs all stages.
+     * @return The report (JSON).
+     * @throws InterruptedException If interrupted.
+     */
+    public String run() throws InterruptedException {
+        ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        boolean allocation = mx instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) mx).isThreadAllocatedMemorySupported();
+        if (allocation) {
+            ((com.sun.management.ThreadMXBean) mx).setThreadAllocatedMemoryEnabled(true);
+        }
+        int duration = getInt("duration", 10);
+        long drain = getInt("drain", 5) * 1000L;
+        long maxHold = getInt("maxHoldP99", 1000) * 1000L;
+
+        StringBuilder json = new StringBuilder("{\n  \"config\": {");
+        json.append("\"players\": ").append(players).append(", \"threads\": ").append(threads)
+            .append(", \"duration\": ").append(duration)
+            .append(", \"mix\": {\"clean\": ").append(mix[0]).append(", \"repeated\": ").append(mix[1])
+            .append(", \"new\": ").append(mix[2]).append(", \"garbage\": ").append(mix[3]).append("}")
+            .append(", \"pingLatencyMs\": ").append(getInt("pingLatency", 20))
+            .append(", \"dnsLatencyMs\": ").append(getInt("dnsLatency", 1))
+            .append(", \"seed\": ").append(seed).append("},\n  \"stages\": [");
+
+        Thread ticker = startTicking();
+        int sustainable = 0;
+        int[] rates = getRates();
+        try {
+            for (int i = 0; i < rates.length; i++) {
+                Metrics.reset();
+                listenerTime.reset();
+                sent.set(0);
+                long resent = server.getResent();
+                long kicks = server.getKicks();
+                mx.resetPeakThreadCount();
+                long allocated = allocation ? allocatedBytes(mx) : 0;
+                int peakActive = 0;
+
+                long elapsed = fire(i, rates[i], duration * 1000L);
+                long messages = sent.get();
+                long allocatedDuring = allocation ? allocatedBytes(mx) - allocated : -1;
+                int liveThreads = mx.getThreadCount();
+                int pluginThreads = countPluginThreads();
+
+                // release the held messages before the next stage
+                long drainStart = System.currentTimeMillis();
+                boolean drained = false;
+                while (System.currentTimeMillis() - drainStart < drain) {
+                    peakActive = Math.max(peakActive, checker.getActiveCount());
+                    if (Metrics.getPending() == 0 && checker.getActiveCount() == 0
+                            && checker.getQueuedCount() == 0) {
+                        drained = true;
+                        break;
+                    }
+                    Thread.sleep(TICK);
+                }
+                long drainTime = System.currentTimeMillis() - drainStart;
+
+                double achieved = messages * 1e9 / elapsed;
+                long holdP99 = Metrics.HOLD.getPercentile(99);
+                boolean ok = drained && achieved >= rates[i] * MIN_ACHIEVED && holdP99 <= maxHold;
+                if (ok) {
+                    sustainable = Math.max(sustainable, rates[i]);
+                }
+
+                json.append(i == 0 ? "\n" : ",\n").append("    {");
+                json.append("\"offeredRate\": ").append(rates[i]);
+                json.append(", \"achievedRate\": ").append(format(achieved));
+                json.append(", \"messages\": ").append(messages);
+                json.append(", \"held\": ").append(Metrics.HOLD.getCount());
+                json.append(", \"passedThrough\": ").append(server.getResent() - resent);
+                json.append(", \"advertisement\": ").append(Metrics.ADVERTISEMENT.get());
+                json.append(", \"kicks\": ").append(server.getKicks() - kicks);
+                json.append(",\n     \"holdUs\": ").append(percentiles(Metrics.HOLD));
+                json.append(",\n     \"listenerUs\": ").append(percentiles(listenerTime));
+                json.append(",\n     \"parseUs\": ").append(percentiles(Metrics.PARSE));
+                json.append(",\n     \"cache\": {\"hits\": ").append(Metrics.CACHE_HITS.get())
+                    .append(", \"joins\": ").append(Metrics.CACHE_JOINS.get())
+                    .append(", \"misses\": ").append(Metrics.CACHE_MISSES.get())
+                    .append(", \"dnsFailures\": ").append(Metrics.DNS_FAILURES.get())
+                    .append(", \"pingFailures\": ").append(Metrics.PING_FAILURES.get()).append("}");
+                json.append(",\n     \"queues\": {\"peakPending\": ").append(Metrics.getPeakPending())
+                    .append(", \"peakProcessing\": ").append(Metrics.getPeakProcessing())
+                    .append(", \"drained\": ").append(drained)
+                    .append(", \"drainMs\": ").append(drainTime).append("}");
+                json.append(",\n     \"threads\": {\"live\": ").append(liveThreads)
+                    .append(", \"peak\": ").append(mx.getPeakThreadCount())
+                    .append(", \"plugin\": ").append(pluginThreads)
+                    .append(", \"checkerPoolSize\": ").append(checker.getThreads())
+                    .append(", \"checkerActivePeak\": ").append(peakActive).append("}");
+                json.append(",\n     \"allocation\": {\"bytesPerSecond\": ")
+                    .append(allocatedDuring < 0 ? "-1" : format(allocatedDuring * 1e9 / elapsed))
+                    .append(", \"bytesPerMessage\": ")
+                    .append(allocatedDuring < 0 || messages == 0 ? "-1" : format((double) allocatedDuring / messages))
+                    .append("}");
+                json.append(",\n     \"sustainable\": ").append(ok).append("}");
+            }
+        } finally {
+            ticking = false;
+            ticker.join();
+        }
+        json.append("\n  ],\n  \"maxSustainableRate\": ").append(sustainable).append("\n}\n");
+        return json.toString();
+    }
+
+    /**
+     * Sums the bytes allocated by all live threads; bytes of threads that ended in between are missed.
+     * @param mx The thread bean (supporting allocation measurement).
+     * @return The allocated bytes.
+     */
+    private static long allocatedBytes(ThreadMXBean mx) {
+        long[] bytes = ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(mx.getAllThreadIds());
+        long total = 0;
+        for (long value : bytes) {
+            if (value > 0) {
+                total += value;
+            }
+        }
+        return total;
+    }
+
+    /** @return The count of live threads started by the plugin (checker and classifier pools). */
+    private static int countPluginThreads() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("AntiAdvertising")) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param histogram A latency histogram.
+     * @return Its percentiles (µs) as JSON object.
+     */
+    private static String percentiles(LatencyHistogram histogram) {
+        return "{\"count\": " + histogram.getCount() + ", \"mean\": " + format(histogram.getMean())
+                + ", \"p50\": " + histogram.getPercentile(50) + ", \"p99\": " + histogram.getPercentile(99)
+                + ", \"p999\": " + histogram.getPercentile(99.9) + ", \"max\": " + histogram.getMax() + "}";
+    }
+
+    /**
+     * @param value A value.
+     * @return The value with one decimal place.
+     */
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.1f", value);
+    }
+
+    /** Stops the pipeline and the simulated network. */
+    public void close() {
+        handler.onDisable();
+        checker.shutdown();
+        network.close();
+    }
+
+    /**
+     * Parses the command line options (--name=value).
+     * @param args The arguments.
+     * @return The options by name.
+     */
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> result = new HashMap<String, String>();
+        for (String arg : args) {
+            if (!arg.startsWith("--") || arg.indexOf('=') < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            result.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Runs the load test.
+     * @param args The options, see the class description.
+     * @throws Exception If the load test fails.
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        // one line per advertisement would measure the console
+        Logger quiet = Logger.getLogger("AntiAdvertising.load");
+        quiet.setUseParentHandlers(false);
+        Log.init(quiet, false);
+
+        LoadHarness harness = new LoadHarness(options);
+        String report;
+        try {
+            report = harness.run();
+        } finally {
+            harness.close();
+        }
+        String out = options.get("out");
+        if (out == null) {
+            System.out.print(report);
+        } else {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(out), "UTF-8");
+            try {
+                writer.write(report);
+            } finally {
+                writer.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package de.upsj.bukkit.advertising.test.load;
+
+import de.upsj.bukkit.advertising.ChatListener;
+import org.bukkit.Server;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.AsyncPlayerChatEvent;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Minimal Bukkit server with online players, built from dynamic proxies.
+ * Players resend approved messages through the chat listener like the server would,
+ * broadcasts and kicks are only counted. Every other method returns null, false or 0.
+ * @author upsj
+ * @version 1.0
+ */
+public class MockServer implements InvocationHandler {
+    private final Server server;
+    private final Map<String, Player> players;
+    private final AtomicLong resent;
+    private final AtomicLong broadcasts;
+    private final AtomicLong kicks;
+    private volatile ChatListener listener;
+
+    /**
+     * Creates the server with the given count of players, named Player0, Player1 ...
+     * @param playerCount The count of online players.
+     */
+    public MockServer(int playerCount) {
+        server = (Server) Proxy.newProxyInstance(Server.class.getClassLoader(), new Class<?>[] {Server.class}, this);
+        players = new ConcurrentHashMap<String, Player>();
+        resent = new AtomicLong();
+        broadcasts = new AtomicLong();
+        kicks = new AtomicLong();
+        for (int i = 0; i < playerCount; i++) {
+            String name = "Player" + i;
+            players.put(name, (Player) Proxy.newProxyInstance(Player.class.getClassLoader(),
+                    new Class<?>[] {Player.class}, new PlayerHandler(name)));
+        }
+    }
+
+    /** @return The server. */
+    public Server getServer() {
+        return server;
+    }
+
+    /**
+     * @param i The player number.
+     * @return The player.
+     */
+    public Player getPlayer(int i) {
+        return players.get("Player" + i);
+    }
+
+    /** @param chatListener The chat listener approved messages are resent through. */
+    public void setListener(ChatListener chatListener) {
+        listener = chatListener;
+    }
+
+    /** @return The count of messages resent after their approval. */
+    public long getResent() {
+        return resent.get();
+    }
+
+    /** @return The count of broadcasts (notifications). */
+    public long getBroadcasts() {
+        return broadcasts.get();
+    }
+
+    /** @return The count of kicked players. */
+    public long getKicks() {
+        return kicks.get();
+    }
+
+    public Object invoke(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        if (name.equals("getPlayerExact")) {
+            return players.get((String) args[0]);
+        } else if (name.equals("broadcast") || name.equals("broadcastMessage")) {
+            broadcasts.incrementAndGet();
+            return 1;
+        }
+        return defaultValue(proxy, method, args);
+    }
+
+    /**
+     * @param proxy The proxy.
+     * @param method The method.
+     * @param args The arguments.
+     * @return The default result of the method (null, false, 0 or the identity based Object methods).
+     */
+    private static Object defaultValue(Object proxy, Method method, Object[] args) {
+        String name = method.getName();
+        Class<?> type = method.getReturnType();
+        if (name.equals("equals") && args != null && args.length == 1) {
+            return proxy == args[0];
+        } else if (name.equals("hashCode") && args == null) {
+            return System.identityHashCode(proxy);
+        } else if (type == boolean.class) {
+            return false;
+        } else if (type == int.class || type == short.class || type == byte.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type == double.class) {
+            return 0.0;
+        } else if (type == float.class) {
+            return 0.0f;
+        } else if (type == char.class) {
+            return '\0';
+        }
+        return null;
+    }
+
+    /** A player. */
+    private final class PlayerHandler implements InvocationHandler {
+        private final String name;
+        private final UUID id;
+
+        /** @param name The player name. */
+        private PlayerHandler(String name) {
+            this.name = name;
+            this.id = UUID.nameUUIDFromBytes(name.getBytes());
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String method1 = method.getName();
+            if (method1.equals("getName") || method1.equals("getDisplayName") || method1.equals("toString")) {
+                return name;
+            } else if (method1.equals("getUniqueId")) {
+                return id;
+            } else if (method1.equals("isOnline")) {
+                return true;
+            } else if (method1.equals("getServer")) {
+                return server;
+            } else if (method1.equals("chat")) {
+                // the server fires the (synchronous) chat event again
+                resent.incrementAndGet();
+                ChatListener chat = listener;
+                if (chat != null) {
+                    chat.onChat(new AsyncPlayerChatEvent(false, (Player) proxy, (String) args[0],
+                                                         Collections.<Player>emptySet()));
+                }
+                return null;
+            } else if (method1.equals("kickPlayer")) {
+                kicks.incrementAndGet();
+                return null;
+            }
+            return defaultValue(proxy, method, args);
+        }
+    }
+}
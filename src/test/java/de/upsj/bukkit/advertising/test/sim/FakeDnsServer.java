@@ -0,0 +1,300 @@
+package de.upsj.bukkit.advertising.test.sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * DNS responder on a loopback UDP port answering A, AAAA and SRV queries from a fixed zone.
+ * Unknown names are answered with NXDOMAIN, names marked as timing out aren't answered at all.
+ * Latency and packet loss are configurable, the loss is seeded and thus reproducible.
+ * @author upsj
+ * @version 1.0
+ */
+public class FakeDnsServer implements Runnable {
+    /** Record type A. */
+    private static final int TYPE_A = 1;
+    /** Record type SRV. */
+    private static final int TYPE_SRV = 33;
+    /** Record type AAAA. */
+    private static final int TYPE_AAAA = 28;
+    /** Query type ANY. */
+    private static final int TYPE_ANY = 255;
+    /** Response code NXDOMAIN. */
+    private static final int NXDOMAIN = 3;
+    /** Response code FORMERR. */
+    private static final int FORMERR = 1;
+
+    private final DatagramSocket socket;
+    private final Thread thread;
+    private final ScheduledExecutorService delayed;
+    /** Records by lower case name. */
+    private final Map<String, List<Record>> zone;
+    /** Names that are never answered. */
+    private final Set<String> timeouts;
+    private final Random random;
+    private final AtomicInteger queries;
+    private volatile long latency;
+    private volatile double loss;
+
+    /**
+     * Starts the responder on a free loopback port.
+     * @param seed The seed of the packet loss.
+     * @throws IOException If the socket can't be bound.
+     */
+    public FakeDnsServer(long seed) throws IOException {
+        socket = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        zone = new HashMap<String, List<Record>>();
+        timeouts = new HashSet<String>();
+        random = new Random(seed);
+        queries = new AtomicInteger();
+        delayed = Executors.newSingleThreadScheduledExecutor();
+        thread = new Thread(this, "Fake DNS server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** @return The port the responder listens on. */
+    public int getPort() {
+        return socket.getLocalPort();
+    }
+
+    /** @return The count of queries received. */
+    public int getQueryCount() {
+        return queries.get();
+    }
+
+    /** @param ms The delay of every response (ms). */
+    public void setLatency(long ms) {
+        latency = ms;
+    }
+
+    /** @param probability The probability that a query is dropped (0 - 1). */
+    public void setLoss(double probability) {
+        loss = probability;
+    }
+
+    /**
+     * Adds an address record (A or AAAA, depending on the address).
+     * @param name The name.
+     * @param address The address.
+     */
+    public synchronized void addAddress(String name, InetAddress address) {
+        add(name, new Record(address instanceof Inet6Address ? TYPE_AAAA : TYPE_A, address.getAddress()));
+    }
+
+    /**
+     * Adds an SRV record.
+     * @param name The full record name (e.g. _minecraft._tcp.example.com).
+     * @param port The target port.
+     * @param target The target host.
+     */
+    public synchronized void addSrv(String name, int port, String target) {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        // priority, weight
+        writeShort(data, 0);
+        writeShort(data, 5);
+        writeShort(data, port);
+        writeName(data, target);
+        add(name, new Record(TYPE_SRV, data.toByteArray()));
+    }
+
+    /**
+     * Makes queries for a name time out.
+     * @param name The name.
+     */
+    public synchronized void addTimeout(String name) {
+        timeouts.add(normalize(name));
+    }
+
+    /**
+     * @param name The name.
+     * @param record The record.
+     */
+    private void add(String name, Record record) {
+        String key = normalize(name);
+        List<Record> records = zone.get(key);
+        if (records == null) {
+            records = new ArrayList<Record>();
+            zone.put(key, records);
+        }
+        records.add(record);
+    }
+
+    /**
+     * @param name A name.
+     * @return The name in lower case without trailing dot.
+     */
+    private static String normalize(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".") ? lower.substring(0, lower.length() - 1) : lower;
+    }
+
+    /** Receives and answers queries until closed. */
+    public void run() {
+        byte[] buffer = new byte[512];
+        while (!socket.isClosed()) {
+            DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+            try {
+                socket.receive(packet);
+            } catch (IOException e) {
+                break;
+            }
+            queries.incrementAndGet();
+            final byte[] response = answer(Arrays.copyOf(packet.getData(), packet.getLength()));
+            if (response == null) {
+                continue;
+            }
+            final DatagramPacket reply = new DatagramPacket(response, response.length, packet.getSocketAddress());
+            Runnable send = new Runnable() {
+                public void run() {
+                    try {
+                        socket.send(reply);
+                    } catch (IOException e) {
+                        // closed
+                    }
+                }
+            };
+            if (latency > 0) {
+                delayed.schedule(send, latency, TimeUnit.MILLISECONDS);
+            } else {
+                send.run();
+            }
+        }
+    }
+
+    /**
+     * @param query The query packet.
+     * @return The response packet or null if the query is dropped.
+     */
+    private synchronized byte[] answer(byte[] query) {
+        if (query.length < 12 || loss > 0 && random.nextDouble() < loss) {
+            return null;
+        }
+        // question: labels, type, class
+        StringBuilder name = new StringBuilder();
+        int pos = 12;
+        while (pos < query.length && query[pos] != 0) {
+            int length = query[pos] & 0xFF;
+            if (name.length() > 0) {
+                name.append('.');
+            }
+            name.append(new String(query, pos + 1, Math.min(length, query.length - pos - 1)));
+            pos += length + 1;
+        }
+        int questionEnd = pos + 5;
+        if (questionEnd > query.length) {
+            return header(query, FORMERR, 0, query.length).toByteArray();
+        }
+        int type = ((query[pos + 1] & 0xFF) << 8) | (query[pos + 2] & 0xFF);
+        String key = normalize(name.toString());
+        if (timeouts.contains(key)) {
+            return null;
+        }
+        List<Record> records = zone.get(key);
+        if (records == null) {
+            return header(query, NXDOMAIN, 0, questionEnd).toByteArray();
+        }
+        List<Record> answers = new ArrayList<Record>();
+        for (Record record : records) {
+            if (record.type == type || type == TYPE_ANY) {
+                answers.add(record);
+            }
+        }
+        ByteArrayOutputStream response = header(query, 0, answers.size(), questionEnd);
+        for (Record record : answers) {
+            // pointer to the name in the question
+            writeShort(response, 0xC00C);
+            writeShort(response, record.type);
+            // class IN
+            writeShort(response, 1);
+            // TTL
+            writeShort(response, 0);
+            writeShort(response, 60);
+            writeShort(response, record.data.length);
+            response.write(record.data, 0, record.data.length);
+        }
+        return response.toByteArray();
+    }
+
+    /**
+     * @param query The query.
+     * @param rcode The response code.
+     * @param answers The count of answers.
+     * @param questionEnd The end of the question in the query.
+     * @return The response header followed by the question.
+     */
+    private static ByteArrayOutputStream header(byte[] query, int rcode, int answers, int questionEnd) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // id
+        out.write(query, 0, 2);
+        // response, authoritative, recursion desired (copied) and available
+        out.write(0x84 | (query[2] & 0x01));
+        out.write(0x80 | rcode);
+        writeShort(out, questionEnd > 12 ? 1 : 0);
+        writeShort(out, answers);
+        writeShort(out, 0);
+        writeShort(out, 0);
+        out.write(query, 12, questionEnd - 12);
+        return out;
+    }
+
+    /**
+     * @param out The output.
+     * @param value The unsigned 16 bit value.
+     */
+    private static void writeShort(ByteArrayOutputStream out, int value) {
+        out.write(value >> 8);
+        out.write(value);
+    }
+
+    /**
+     * @param out The output.
+     * @param name The name, written as uncompressed labels.
+     */
+    private static void writeName(ByteArrayOutputStream out, String name) {
+        for (String label : normalize(name).split("\\.")) {
+            byte[] bytes = label.getBytes();
+            out.write(bytes.length);
+            out.write(bytes, 0, bytes.length);
+        }
+        out.write(0);
+    }
+
+    /** Stops the responder. */
+    public void close() {
+        socket.close();
+        delayed.shutdownNow();
+    }
+
+    /** A resource record. */
+    private static final class Record {
+        private final int type;
+        private final byte[] data;
+
+        /**
+         * @param type The record type.
+         * @param data The record data.
+         */
+        private Record(int type, byte[] data) {
+            this.type = type;
+            this.data = data;
+        }
+    }
+}
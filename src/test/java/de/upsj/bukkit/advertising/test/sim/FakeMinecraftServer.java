@@ -0,0 +1,193 @@
+package de.upsj.bukkit.advertising.test.sim;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minecraft server on a loopback port answering server list pings (0xFE) like a real server would.
+ * Latency, connection loss and the size of the response (padding of the MOTD) are configurable,
+ * the loss is seeded and thus reproducible.
+ * @author upsj
+ * @version 1.0
+ */
+public class FakeMinecraftServer implements Runnable {
+    /** How the server responds to pings. */
+    public enum Protocol {
+        /** Pre-1.4 servers: MOTD, players and maximal players separated by section signs. */
+        LEGACY,
+        /** 1.4 - 1.6 servers: "§1" followed by NUL separated protocol, version, MOTD and player counts. */
+        MODERN,
+        /** Not a Minecraft server: responds with an HTTP error. */
+        GARBAGE,
+        /** Accepts connections, but never responds. */
+        SILENT
+    }
+
+    private final ServerSocket socket;
+    private final Thread thread;
+    private final ExecutorService connections;
+    private final Protocol protocol;
+    private final String motd;
+    private final Random random;
+    private final AtomicInteger pings;
+    private volatile int players;
+    private volatile int maxPlayers;
+    private volatile long latency;
+    private volatile double loss;
+    private volatile int padding;
+
+    /**
+     * Starts the server on a free loopback port.
+     * @param protocol How the server responds.
+     * @param motd The message of the day.
+     * @param seed The seed of the connection loss.
+     * @throws IOException If the socket can't be bound.
+     */
+    public FakeMinecraftServer(Protocol protocol, String motd, long seed) throws IOException {
+        this.protocol = protocol;
+        this.motd = motd;
+        this.players = 7;
+        this.maxPlayers = 20;
+        this.random = new Random(seed);
+        this.pings = new AtomicInteger();
+        this.socket = new ServerSocket();
+        this.socket.bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        this.connections = Executors.newCachedThreadPool();
+        this.thread = new Thread(this, "Fake Minecraft server " + socket.getLocalPort());
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** @return The loopback address the server listens on. */
+    public InetSocketAddress getAddress() {
+        return new InetSocketAddress(socket.getInetAddress(), socket.getLocalPort());
+    }
+
+    /** @return The count of pings received. */
+    public int getPingCount() {
+        return pings.get();
+    }
+
+    /**
+     * @param current The current player count.
+     * @param max The maximal player count.
+     */
+    public void setPlayers(int current, int max) {
+        players = current;
+        maxPlayers = max;
+    }
+
+    /** @param ms The delay of every response (ms). */
+    public void setLatency(long ms) {
+        latency = ms;
+    }
+
+    /** @param probability The probability that a connection is closed without response (0 - 1). */
+    public void setLoss(double probability) {
+        loss = probability;
+    }
+
+    /** @param chars Count of characters appended to the MOTD to enlarge the response. */
+    public void setPadding(int chars) {
+        padding = chars;
+    }
+
+    /** Accepts connections until closed. */
+    public void run() {
+        while (!socket.isClosed()) {
+            final Socket client;
+            try {
+                client = socket.accept();
+            } catch (IOException e) {
+                break;
+            }
+            connections.execute(new Runnable() {
+                public void run() {
+                    try {
+                        respond(client);
+                    } catch (IOException e) {
+                        // the client gave up
+                    } catch (InterruptedException e) {
+                        // closed
+                    } finally {
+                        try {
+                            client.close();
+                        } catch (IOException e) {
+                            // nothing left to do
+                        }
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Answers a single connection.
+     * @param client The client connection.
+     * @throws IOException If the client closes the connection.
+     * @throws InterruptedException If the server is closed.
+     */
+    private void respond(Socket client) throws IOException, InterruptedException {
+        InputStream in = client.getInputStream();
+        if (in.read() != 0xFE) {
+            return;
+        }
+        pings.incrementAndGet();
+        boolean lost;
+        synchronized (random) {
+            lost = loss > 0 && random.nextDouble() < loss;
+        }
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        if (lost || protocol == Protocol.SILENT) {
+            if (protocol == Protocol.SILENT) {
+                // hold the connection open until the client gives up
+                in.read();
+            }
+            return;
+        }
+        DataOutputStream out = new DataOutputStream(client.getOutputStream());
+        if (protocol == Protocol.GARBAGE) {
+            out.write("HTTP/1.1 400 Bad Request\r\n\r\n".getBytes("US-ASCII"));
+            out.flush();
+            return;
+        }
+        StringBuilder text = new StringBuilder(motd);
+        for (int i = 0; i < padding; i++) {
+            text.append('.');
+        }
+        String response;
+        if (protocol == Protocol.LEGACY) {
+            response = text + "§" + players + "§" + maxPlayers;
+        } else {
+            // the modern ping carries a second byte (0x01)
+            in.read();
+            response = "§1\u000061\u00001.5.2\u0000" + text + "\u0000" + players + "\u0000" + maxPlayers;
+        }
+        // kick packet: 0xFF, string length, UTF-16BE characters
+        out.write(0xFF);
+        out.writeShort(response.length());
+        out.write(response.getBytes("UTF-16BE"));
+        out.flush();
+    }
+
+    /** Stops the server. */
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do
+        }
+        connections.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package de.upsj.bukkit.advertising.test.sim;
+
+import de.upsj.bukkit.advertising.servers.ResolvedServer;
+import de.upsj.bukkit.advertising.util.DnsResolver;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process network for tests and benchmarks: a fake DNS server and fake Minecraft servers on loopback.
+ * Simulated hosts get addresses from the ranges reserved for benchmarks and documentation
+ * (198.18.0.0/15, 2001:db8::/32);
+ * once installed, the resolver queries the fake DNS server and pings to the added hosts and ports are routed
+ * to the fake servers, so checks are deterministic and never leave the machine.
+ * <pre>
+ * NetworkSimulator sim = new NetworkSimulator(42);
+ * sim.addServer("play.example.net", FakeMinecraftServer.Protocol.MODERN);
+ * sim.install();
+ * ...
+ * sim.close();
+ * </pre>
+ * @author upsj
+ * @version 1.0
+ */
+public class NetworkSimulator {
+    /** The Minecraft default port. */
+    public static final int DEFAULT_PORT = 25565;
+    /** Initial DNS query timeout (ms), doubled for the retry. */
+    private static final int DNS_TIMEOUT = 250;
+
+    private final long seed;
+    private final FakeDnsServer dns;
+    private final Map<InetSocketAddress, InetSocketAddress> routes;
+    private final List<FakeMinecraftServer> servers;
+    /** A loopback port nothing listens on (connections are refused). */
+    private final InetSocketAddress closedPort;
+    private int nextHost;
+
+    /**
+     * Starts the fake DNS server.
+     * @param seed The seed of all simulated packet loss.
+     * @throws IOException If a socket can't be bound.
+     */
+    public NetworkSimulator(long seed) throws IOException {
+        this.seed = seed;
+        this.dns = new FakeDnsServer(seed);
+        this.routes = new ConcurrentHashMap<InetSocketAddress, InetSocketAddress>();
+        this.servers = new ArrayList<FakeMinecraftServer>();
+        ServerSocket free = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        this.closedPort = new InetSocketAddress(free.getInetAddress(), free.getLocalPort());
+        free.close();
+    }
+
+    /** @return The fake DNS server, e.g. to configure latency and loss. */
+    public FakeDnsServer getDns() {
+        return dns;
+    }
+
+    /**
+     * @param ipv6 True for an IPv6 address.
+     * @return The next unused simulated address.
+     * @throws IOException Never.
+     */
+    private synchronized InetAddress nextAddress(boolean ipv6) throws IOException {
+        nextHost++;
+        if (ipv6) {
+            return InetAddress.getByAddress(new byte[] {0x20, 0x01, 0x0d, (byte) 0xb8, 0, 0, 0, 0,
+                                                        0, 0, 0, 0, 0, 0, (byte) (nextHost >> 8), (byte) nextHost});
+        }
+        return InetAddress.getByAddress(new byte[] {(byte) 198, (byte) (18 + ((nextHost >> 16) & 1)),
+                                                    (byte) (nextHost >> 8), (byte) nextHost});
+    }
+
+    /**
+     * Adds a host without Minecraft server: pings are refused.
+     * @param name The host name.
+     * @return The simulated address of the host.
+     * @throws IOException Never.
+     */
+    public InetAddress addHost(String name) throws IOException {
+        InetAddress address = nextAddress(false);
+        dns.addAddress(name, address);
+        routes.put(new InetSocketAddress(address, DEFAULT_PORT), closedPort);
+        return address;
+    }
+
+    /**
+     * Adds a host running a Minecraft server on the default port.
+     * @param name The host name.
+     * @param protocol How the server responds.
+     * @return The fake server, e.g. to configure latency, loss and response size.
+     * @throws IOException If the server can't be started.
+     */
+    public FakeMinecraftServer addServer(String name, FakeMinecraftServer.Protocol protocol) throws IOException {
+        return addServer(name, DEFAULT_PORT, protocol, false);
+    }
+
+    /**
+     * Adds a host running a Minecraft server.
+     * @param name The host name.
+     * @param port The server port.
+     * @param protocol How the server responds.
+     * @param ipv6 True to give the host an IPv6 (AAAA) address only.
+     * @return The fake server.
+     * @throws IOException If the server can't be started.
+     */
+    public synchronized FakeMinecraftServer addServer(String name, int port, FakeMinecraftServer.Protocol protocol,
+                                                      boolean ipv6) throws IOException {
+        InetAddress address = nextAddress(ipv6);
+        dns.addAddress(name, address);
+        FakeMinecraftServer server = new FakeMinecraftServer(protocol, "A simulated server", seed + nextHost);
+        servers.add(server);
+        routes.put(new InetSocketAddress(address, port), server.getAddress());
+        return server;
+    }
+
+    /**
+     * Adds another host with its own address, served by an existing fake server on the default port,
+     * so that many distinct servers can be simulated without a socket each.
+     * @param name The host name.
+     * @param server The fake server.
+     * @return The simulated address of the host.
+     * @throws IOException Never.
+     */
+    public InetAddress addAlias(String name, FakeMinecraftServer server) throws IOException {
+        InetAddress address = nextAddress(false);
+        dns.addAddress(name, address);
+        routes.put(new InetSocketAddress(address, DEFAULT_PORT), server.getAddress());
+        return address;
+    }
+
+    /**
+     * Adds an SRV record pointing a domain to a server on another host and port.
+     * @param domain The advertised domain.
+     * @param target The host name of the server (added with {@link #addServer}).
+     * @param port The server port.
+     */
+    public void addSrv(String domain, String target, int port) {
+        dns.addSrv("_minecraft._tcp." + domain, port, target);
+    }
+
+    /**
+     * Makes DNS queries for a host time out.
+     * @param name The host name.
+     */
+    public void addDnsTimeout(String name) {
+        dns.addTimeout(name);
+    }
+
+    /**
+     * Points the resolver and the pings at the simulated network.
+     * Names not added to it can't be resolved.
+     */
+    public void install() {
+        DnsResolver.set(new DnsResolver("127.0.0.1", dns.getPort(), DNS_TIMEOUT, 1));
+        ResolvedServer.setRoutes(routes);
+    }
+
+    /** Stops all simulated servers and restores the system resolver and direct pings. */
+    public synchronized void close() {
+        DnsResolver.set(DnsResolver.SYSTEM);
+        ResolvedServer.setRoutes(null);
+        dns.close();
+        for (FakeMinecraftServer server : servers) {
+            server.close();
+        }
+        servers.clear();
+    }
+}